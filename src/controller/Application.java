@@ -38,6 +38,8 @@ public class Application extends JFrame {
         TextField textField = new TextField();
         Button buttonAdd = new Button("Add Item");
         Button buttonDel = new Button("Remove Item");
+        Button buttonUndo = new Button("Undo");
+        Button buttonRedo = new Button("Redo");
         Label label = new Label("Add/Remove nodes using the text field");
         Label emptySpaceLabel = new Label("   ");
         Label infoLabel = new Label(
@@ -97,6 +99,34 @@ public class Application extends JFrame {
             }
         });
 
+        buttonUndo.setMaximumSize(new Dimension(70,30));
+        buttonUndo.setFont(font);
+        buttonUndo.addActionListener(e -> {
+            if (!display.undo()) {
+                label.setForeground(Color.RED);
+                label.setText("Nothing To Undo!");
+            }
+            else {
+                display.update();
+                label.setForeground(Color.BLUE);
+                label.setText("Undone");
+            }
+        });
+
+        buttonRedo.setMaximumSize(new Dimension(70,30));
+        buttonRedo.setFont(font);
+        buttonRedo.addActionListener(e -> {
+            if (!display.redo()) {
+                label.setForeground(Color.RED);
+                label.setText("Nothing To Redo!");
+            }
+            else {
+                display.update();
+                label.setForeground(Color.BLUE);
+                label.setText("Redone");
+            }
+        });
+
         label.setMaximumSize(new Dimension(500,30));
         label.setFont(font);
 
@@ -187,6 +217,8 @@ public class Application extends JFrame {
         topPanel.add(textField);
         topPanel.add(buttonAdd);
         topPanel.add(buttonDel);
+        topPanel.add(buttonUndo);
+        topPanel.add(buttonRedo);
         topPanel.add(emptySpaceLabel);
         topPanel.add(label);
         topPanel.add(jComboBox);
@@ -1,9 +1,38 @@
 package data;
 
+import model.storage.Codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
 public class Email implements Comparable<Email>{
+    /**
+     * Writes the date as its epoch day, a flag byte for which of header and content are set, then the strings
+     */
+    public static final Codec<Email> CODEC = new Codec<Email>() {
+        @Override
+        public void write(Email item, DataOutput out) throws IOException {
+            out.writeInt((int) item.date.toEpochDay());
+            out.writeByte((item.header != null ? 1 : 0) | (item.content != null ? 2 : 0));
+            out.writeUTF(item.sender);
+            if (item.header != null) out.writeUTF(item.header);
+            if (item.content != null) out.writeUTF(item.content);
+        }
+
+        @Override
+        public Email read(DataInput in) throws IOException {
+            LocalDate date = LocalDate.ofEpochDay(in.readInt());
+            int flags = in.readByte();
+            String sender = in.readUTF();
+            String header = (flags & 1) != 0 ? in.readUTF() : null;
+            String content = (flags & 2) != 0 ? in.readUTF() : null;
+            return new Email(date, sender, header, content);
+        }
+    };
+
     LocalDate date;
     String sender;
     String header;
@@ -19,6 +48,13 @@ public class Email implements Comparable<Email>{
         this.content = content;
     }
 
+    private Email(LocalDate date, String sender, String header, String content){
+        this.date = date;
+        this.sender = sender;
+        this.header = header;
+        this.content = content;
+    }
+
     public String toString(){
         return "Date: "+date+"\nSender: "+sender+"\nHeader: "+header+"\nContent: "+content;
     }
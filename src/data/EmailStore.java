@@ -0,0 +1,363 @@
+package data;
+
+import model.BTreeMap;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Emails stored by record ID, with optional secondary indexes on date, sender and header.
+ * <br>
+ * Every index is a {@link BTreeMap} from a field value to the IDs of the emails with that value, and all indexes are
+ * updated together on insert and delete. IDs are handed out in increasing order, so the IDs of one key are sorted.
+ * <br>
+ * A query is a conjunction of predicates (see {@link Query}). The planner estimates how many emails each indexed
+ * predicate matches, from the posting counts of the index, and fetches the IDs from the most selective one.
+ * If another index matches few enough emails, its IDs are intersected with the first ones before any email is read.
+ * Remaining predicates are checked on the fetched emails. Without a usable index the planner scans all emails.
+ * {@link #explain(Query)} describes the chosen plan.
+ * <br>
+ * Header and content can also be indexed for full-text search, see {@link InvertedIndex}.
+ */
+public class EmailStore {
+
+    /**
+     * The fields that can be indexed and queried
+     */
+    public enum Field {
+        DATE {
+            @Override
+            Comparable<?> get(Email email) { return email.date; }
+        },
+        SENDER {
+            @Override
+            Comparable<?> get(Email email) { return email.sender; }
+        },
+        HEADER {
+            @Override
+            Comparable<?> get(Email email) { return email.header; }
+        };
+
+        abstract Comparable<?> get(Email email);
+    }
+
+    /**
+     * A predicate on one field: value in [from, to), or value equal to from when to is null
+     */
+    static final class Predicate {
+        final Field field;
+        final Comparable<Object> from;
+        final Comparable<Object> to;
+
+        @SuppressWarnings("unchecked")
+        Predicate(Field field, Comparable<?> from, Comparable<?> to) {
+            this.field = field;
+            this.from = (Comparable<Object>) from;
+            this.to = (Comparable<Object>) to;
+        }
+
+        boolean matches(Email email) {
+            Object value = field.get(email);
+            if (value == null) return false;
+            if (to == null) return from.compareTo(value) == 0;
+            return from.compareTo(value) <= 0 && to.compareTo(value) > 0;
+        }
+
+        @Override
+        public String toString() {
+            return to == null ? field + " = " + from : from + " <= " + field + " < " + to;
+        }
+    }
+
+    /**
+     * A conjunction of predicates, e.g. {@code new Query().sender("A").dateBetween(from, to)}
+     */
+    public static class Query {
+        final List<Predicate> predicates = new ArrayList<>();
+
+        public Query sender(String sender) {
+            predicates.add(new Predicate(Field.SENDER, sender, null));
+            return this;
+        }
+
+        public Query header(String header) {
+            predicates.add(new Predicate(Field.HEADER, header, null));
+            return this;
+        }
+
+        public Query date(LocalDate date) {
+            predicates.add(new Predicate(Field.DATE, date, null));
+            return this;
+        }
+
+        /**
+         * @param from the first date, inclusive
+         * @param to the last date, inclusive
+         */
+        public Query dateBetween(LocalDate from, LocalDate to) {
+            predicates.add(new Predicate(Field.DATE, from, to.plusDays(1)));
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return predicates.toString();
+        }
+    }
+
+    /**
+     * An index is intersected with the most selective one if it matches at most this many times as many emails.
+     * Intersecting costs a walk over both ID lists, which is cheaper than reading emails only when the lists are
+     * of similar length.
+     */
+    static final int INTERSECT_FACTOR = 8;
+
+    private final ArrayList<Email> records = new ArrayList<>();
+    private final EnumMap<Field, BTreeMap<Comparable<Object>, Integer>> indexes = new EnumMap<>(Field.class);
+    private final InvertedIndex textIndex;
+    private int size = 0;
+
+    /**
+     * Constructor
+     * @param indexed the fields to index
+     * @param minChildren the minimum number of children of the index nodes
+     * @param textIndexed whether to keep a full-text index of header and content, see {@link #getTextIndex()}
+     */
+    public EmailStore(Set<Field> indexed, int minChildren, boolean textIndexed) {
+        for (Field field : indexed) indexes.put(field, new BTreeMap<>(minChildren));
+        textIndex = textIndexed ? new InvertedIndex() : null;
+    }
+
+    public EmailStore(Set<Field> indexed, int minChildren) {
+        this(indexed, minChildren, false);
+    }
+
+    /**
+     * Constructor with every field and the text indexed
+     */
+    public EmailStore() {
+        this(EnumSet.allOf(Field.class), 8, true);
+    }
+
+    /**
+     * Stores an email and adds it to every index
+     * @param email the email
+     * @return the record ID of the email
+     */
+    @SuppressWarnings("unchecked")
+    public int insert(Email email) {
+        int id = records.size();
+        records.add(email);
+        size++;
+        for (Field field : indexes.keySet()) {
+            Comparable<Object> key = (Comparable<Object>) field.get(email);
+            if (key != null) indexes.get(field).put(key, id);
+        }
+        if (textIndex != null) textIndex.add(id, email);
+        return id;
+    }
+
+    /**
+     * Deletes an email and removes it from every index
+     * @param id the record ID
+     * @return whether there was an email with the ID
+     */
+    @SuppressWarnings("unchecked")
+    public boolean delete(int id) {
+        Email email = get(id);
+        if (email == null) return false;
+        for (Field field : indexes.keySet()) {
+            Comparable<Object> key = (Comparable<Object>) field.get(email);
+            if (key != null) indexes.get(field).removeValue(key, id);
+        }
+        if (textIndex != null) textIndex.delete(id);
+        records.set(id, null);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param id the record ID
+     * @return the email, or null if there is none with the ID
+     */
+    public Email get(int id) {
+        return id >= 0 && id < records.size() ? records.get(id) : null;
+    }
+
+    /**
+     * @param ids record IDs, e.g. from the text index
+     * @return the emails with the IDs, skipping deleted ones
+     */
+    public List<Email> get(int[] ids) {
+        List<Email> emails = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Email email = get(id);
+            if (email != null) emails.add(email);
+        }
+        return emails;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * @return the full-text index, kept up to date by insert and delete, or null if the store has none
+     */
+    public InvertedIndex getTextIndex() { return textIndex; }
+
+    public Set<Field> getIndexedFields() { return indexes.keySet(); }
+
+    /**
+     * How a query is run: the IDs of the driving predicate, intersected with those of the others in intersect,
+     * then the emails are checked against every predicate
+     */
+    static final class Plan {
+        Predicate driver;
+        int estimate;
+        final List<Predicate> intersect = new ArrayList<>();
+        final List<Integer> intersectEstimates = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            if (driver == null) return "scan all, filter";
+            StringBuilder builder = new StringBuilder("index ").append(driver).append(" (").append(estimate).append(')');
+            for (int i = 0; i < intersect.size(); i++)
+                builder.append(" AND index ").append(intersect.get(i)).append(" (").append(intersectEstimates.get(i)).append(')');
+            return builder.append(", filter").toString();
+        }
+    }
+
+    /**
+     * Picks the indexes for a query
+     */
+    Plan plan(Query query) {
+        Plan plan = new Plan();
+        List<Predicate> candidates = new ArrayList<>();
+        List<Integer> estimates = new ArrayList<>();
+        int best = size;
+        for (Predicate predicate : query.predicates) {
+            BTreeMap<Comparable<Object>, Integer> index = indexes.get(predicate.field);
+            if (index == null) continue;
+            // Counts above what could still be intersected do not change the plan, so stop counting there
+            int limit = (int) Math.min(size, (long) best * INTERSECT_FACTOR) + 1;
+            int estimate = predicate.to == null ? index.count(predicate.from) : index.countRange(predicate.from, predicate.to, limit);
+            candidates.add(predicate);
+            estimates.add(estimate);
+            best = Math.min(best, estimate);
+        }
+        int driver = -1;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (driver == -1 || estimates.get(i) < estimates.get(driver)) driver = i;
+        }
+        if (driver == -1) return plan;
+        plan.driver = candidates.get(driver);
+        plan.estimate = estimates.get(driver);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i != driver && estimates.get(i) <= (long) plan.estimate * INTERSECT_FACTOR) {
+                plan.intersect.add(candidates.get(i));
+                plan.intersectEstimates.add(estimates.get(i));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @param query the query
+     * @return a description of how the query would be run
+     */
+    public String explain(Query query) {
+        return plan(query).toString();
+    }
+
+    /**
+     * Finds the emails matching every predicate of a query
+     * @param query the query
+     * @return the emails, in order of record ID
+     */
+    public List<Email> query(Query query) {
+        Plan plan = plan(query);
+        List<Email> result = new ArrayList<>();
+        if (plan.driver == null) {
+            for (Email email : records) {
+                if (email != null && matches(email, query)) result.add(email);
+            }
+            return result;
+        }
+        int[] ids = ids(plan.driver);
+        for (Predicate predicate : plan.intersect) {
+            if (ids.length == 0) break;
+            ids = intersect(ids, ids(predicate));
+        }
+        for (int id : ids) {
+            Email email = records.get(id);
+            if (matches(email, query)) result.add(email);
+        }
+        return result;
+    }
+
+    private static boolean matches(Email email, Query query) {
+        for (Predicate predicate : query.predicates) {
+            if (!predicate.matches(email)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the sorted IDs of the emails matching an indexed predicate
+     */
+    private int[] ids(Predicate predicate) {
+        BTreeMap<Comparable<Object>, Integer> index = indexes.get(predicate.field);
+        if (predicate.to == null) {
+            // The IDs of one key were added in increasing order
+            List<Integer> posting = index.getAll(predicate.from);
+            int[] ids = new int[posting.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = posting.get(i);
+            return ids;
+        }
+        int[][] ids = {new int[16]};
+        int[] count = {0};
+        index.forEachInRange(predicate.from, predicate.to, (key, id) -> {
+            if (count[0] == ids[0].length) ids[0] = Arrays.copyOf(ids[0], 2 * count[0]);
+            ids[0][count[0]++] = id;
+        });
+        int[] sorted = Arrays.copyOf(ids[0], count[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Merges two sorted ID lists
+     */
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return the emails in order of record ID
+     */
+    public List<Email> getAll() {
+        List<Email> emails = new ArrayList<>(size);
+        for (Email email : records) {
+            if (email != null) emails.add(email);
+        }
+        return Collections.unmodifiableList(emails);
+    }
+}
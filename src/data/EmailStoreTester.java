@@ -0,0 +1,99 @@
+package data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+public class EmailStoreTester {
+    public static void main(String[] args) {
+        List<EnumSet<EmailStore.Field>> configurations = List.of(
+                EnumSet.noneOf(EmailStore.Field.class),
+                EnumSet.of(EmailStore.Field.SENDER),
+                EnumSet.of(EmailStore.Field.DATE, EmailStore.Field.HEADER),
+                EnumSet.allOf(EmailStore.Field.class));
+        for (EnumSet<EmailStore.Field> indexed : configurations) testQueries(indexed);
+        testPlans();
+        testIntersect();
+        System.out.println("All email store tests passed");
+    }
+
+    static Email randomEmail(Random random, int i) {
+        LocalDate date = LocalDate.of(2021, 1, 1).plusDays(random.nextInt(365));
+        return new Email(date.toString(), "Sender " + random.nextInt(40), "Header " + random.nextInt(15), "Content " + i);
+    }
+
+    /**
+     * Runs random queries of every shape against a store with some fields indexed, checking the results against a scan
+     */
+    public static void testQueries(EnumSet<EmailStore.Field> indexed) {
+        Random random = new Random(indexed.hashCode());
+        EmailStore store = new EmailStore(indexed, 3);
+        List<Email> emails = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            Email email = randomEmail(random, i);
+            emails.add(email);
+            ids.add(store.insert(email));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            int k = random.nextInt(emails.size());
+            emails.remove(k);
+            if (!store.delete(ids.remove(k))) throw new AssertionError("delete failed");
+        }
+        if (store.delete(-1) || store.size() != emails.size()) throw new AssertionError("size is wrong after deletes");
+
+        for (int i = 0; i < 300; ++i) {
+            EmailStore.Query query = new EmailStore.Query();
+            String sender = "Sender " + random.nextInt(45);
+            String header = "Header " + random.nextInt(15);
+            LocalDate from = LocalDate.of(2021, 1, 1).plusDays(random.nextInt(365));
+            LocalDate to = from.plusDays(random.nextInt(60));
+            switch (i % 5) {
+                case 0: query.sender(sender); break;
+                case 1: query.dateBetween(from, to); break;
+                case 2: query.dateBetween(from, to).sender(sender); break;
+                case 3: query.sender(sender).header(header); break;
+                default: query.date(from).header(header).sender(sender); break;
+            }
+            List<Email> expected = new ArrayList<>();
+            for (Email email : emails) {
+                boolean matches = true;
+                for (EmailStore.Predicate predicate : query.predicates) matches &= predicate.matches(email);
+                if (matches) expected.add(email);
+            }
+            List<Email> actual = store.query(query);
+            if (!actual.equals(expected))
+                throw new AssertionError(query + " with " + indexed + " (" + store.explain(query) + ") found " + actual.size() + ", expected " + expected.size());
+        }
+    }
+
+    /**
+     * The planner drives from the most selective index, intersects an index of similar selectivity and ignores a poor one
+     */
+    public static void testPlans() {
+        EmailStore store = new EmailStore();
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; ++i) store.insert(randomEmail(random, i));
+        // A rare sender and a rare header
+        for (int i = 0; i < 10; ++i) store.insert(new Email("2021-06-0" + (1 + i % 9), "Rare", "Rare header", "x"));
+        for (int i = 0; i < 20; ++i) store.insert(new Email("2021-07-01", "Sender " + i, "Rare header", "x"));
+
+        String plan = store.explain(new EmailStore.Query().header("Header 1").sender("Rare"));
+        if (!plan.startsWith("index SENDER = Rare (10)") || plan.contains("HEADER")) throw new AssertionError("Bad plan: " + plan);
+        plan = store.explain(new EmailStore.Query().header("Rare header").sender("Rare"));
+        if (!plan.equals("index SENDER = Rare (10) AND index HEADER = Rare header (30), filter")) throw new AssertionError("Bad plan: " + plan);
+        plan = store.explain(new EmailStore.Query().dateBetween(LocalDate.of(2021, 6, 1), LocalDate.of(2021, 6, 9)).sender("Sender 3"));
+        if (!plan.startsWith("index")) throw new AssertionError("Bad plan: " + plan);
+        plan = new EmailStore(EnumSet.of(EmailStore.Field.HEADER), 3).explain(new EmailStore.Query().sender("Rare"));
+        if (!plan.equals("scan all, filter")) throw new AssertionError("Bad plan: " + plan);
+    }
+
+    public static void testIntersect() {
+        int[] a = {1, 3, 5, 7, 9, 11};
+        int[] b = {0, 3, 4, 9, 10, 11, 12};
+        if (!java.util.Arrays.equals(EmailStore.intersect(a, b), new int[]{3, 9, 11})) throw new AssertionError("intersect failed");
+        if (EmailStore.intersect(a, new int[0]).length != 0) throw new AssertionError("intersect with empty failed");
+    }
+}
@@ -1,31 +1,50 @@
 package data;
 
 import model.BTree;
+import model.storage.BTreeSnapshot;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 
 public class EmailTester {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // Parsed on the first run, loaded from a snapshot of the tree after that
+        String filename = "src/data/emails.csv";
+        BTree<Email> tree = BTreeSnapshot.cached(Path.of(filename).toUri().toURL(), "Email-m10", Email.CODEC,
+                () -> readEmails(filename));
+
+        // The sample email to be searched for
+        System.out.println(tree.search(tree.root, new Email("2021-08-09","Seen Ga Poh")));
+    }
+
+    /**
+     * Parses a CSV file of emails into a tree
+     * @param filename the file
+     * @return the tree
+     */
+    public static BTree<Email> readEmails(String filename) {
         BTree<Email> tree = new BTree<>(10);
+        ArrayList<Email> emails = new ArrayList<>();
         String line = "";
         String splitBy = ",";
-        try
+        try (BufferedReader br = new BufferedReader(new FileReader(filename)))
         {
-            BufferedReader br = new BufferedReader(new FileReader("src/data/emails.csv"));
             while ((line = br.readLine()) != null)   //returns a Boolean value
             {
                 String[] entry = line.split(splitBy);    // use comma as separator
-                tree.add(new Email(entry[0],entry[1],entry[2],entry[3]));
+                emails.add(new Email(entry[0],entry[1],entry[2],entry[3]));
             }
         }
         catch (IOException e)
         {
             e.printStackTrace();
         }
-
-        // The sample email to be searched for
-        System.out.println(tree.search(tree.root, new Email("2021-08-09","Seen Ga Poh")));
+        // emails.csv is sorted by date already, so this sort is linear and the tree is built bottom-up
+        emails.sort(null);
+        tree.bulkLoad(emails.iterator(), BTree.DEFAULT_FILL_FACTOR);
+        return tree;
     }
 }
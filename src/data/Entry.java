@@ -1,6 +1,26 @@
 package data;
 
+import model.storage.Codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Entry implements Comparable<Entry> {
+    public static final Codec<Entry> CODEC = new Codec<Entry>() {
+        @Override
+        public void write(Entry item, DataOutput out) throws IOException {
+            out.writeInt(item.year);
+            out.writeUTF(item.country);
+            out.writeFloat(item.gov_left1);
+        }
+
+        @Override
+        public Entry read(DataInput in) throws IOException {
+            return new Entry(in.readInt(), in.readUTF(), in.readFloat());
+        }
+    };
+
     public int year;
     public String country;
     public float gov_left1;
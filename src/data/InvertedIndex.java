@@ -0,0 +1,319 @@
+package data;
+
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Full-text index over the header and content of emails, by email ID.
+ * <br>
+ * Text is split into lower case terms of letters and digits. The term dictionary is a {@link BTree} of {@link Term}s
+ * ordered by text, so a prefix query is a range scan of the dictionary. Each term holds a posting list: the sorted IDs
+ * of the emails containing it, stored as varint-encoded gaps, so frequent terms take about one byte per email.
+ * <pre>
+ * IDs      3      7      8      300
+ * gaps     4      4      1      292      (the first gap is from -1)
+ * bytes    04     04     01     a4 02    (7 bits per byte, low bits first, high bit set if more bytes follow)
+ * </pre>
+ * IDs must be added in increasing order, which {@link EmailStore} does, so adding only appends to posting lists.
+ * Deleting marks the ID in a bitset that queries skip, and once a quarter of the indexed emails are deleted
+ * every posting list is rewritten without them, keeping the cost of deletes amortised O(1) per posting.
+ */
+public class InvertedIndex {
+
+    /**
+     * A term and its posting list
+     */
+    static final class Term implements Comparable<Term> {
+        final String text;
+        private byte[] bytes;
+        private int length;
+        private int count;
+        private int last = -1;
+
+        Term(String text) {
+            this.text = text;
+            this.bytes = new byte[4];
+        }
+
+        void append(int id) {
+            if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + 5));
+            int gap = id - last;
+            while ((gap & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7f) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            last = id;
+            count++;
+        }
+
+        /**
+         * @param deleted IDs to leave out, or null
+         * @return the IDs in increasing order
+         */
+        int[] decode(BitSet deleted) {
+            int[] ids = new int[count];
+            int n = 0;
+            int id = -1;
+            int position = 0;
+            while (position < length) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += gap;
+                if (deleted == null || !deleted.get(id)) ids[n++] = id;
+            }
+            return n == ids.length ? ids : Arrays.copyOf(ids, n);
+        }
+
+        /**
+         * Rewrites the list without deleted IDs
+         */
+        void purge(BitSet deleted) {
+            int[] ids = decode(deleted);
+            bytes = new byte[Math.max(4, length)];
+            length = 0;
+            count = 0;
+            last = -1;
+            for (int id : ids) append(id);
+            bytes = Arrays.copyOf(bytes, Math.max(4, length));
+        }
+
+        int count() { return count; }
+
+        int byteSize() { return length; }
+
+        @Override
+        public int compareTo(Term other) {
+            return text.compareTo(other.text);
+        }
+
+        @Override
+        public String toString() {
+            return text + " (" + count + ")";
+        }
+    }
+
+    private final BTree<Term> dictionary;
+    private final BitSet deleted = new BitSet();
+    private int lastId = -1;
+    private int indexed = 0;
+    private int deletedCount = 0;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children of the dictionary nodes
+     */
+    public InvertedIndex(int minChildren) {
+        dictionary = new BTree<>(minChildren);
+    }
+
+    public InvertedIndex() {
+        this(16);
+    }
+
+    /**
+     * Splits text into lower case terms of letters and digits
+     * @param text the text, may be null
+     * @param terms the set to add the terms to
+     */
+    static void tokenize(String text, TreeSet<String> terms) {
+        if (text == null) return;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) start = i;
+            else if (!letter && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * @param email the email
+     * @return the distinct terms of the header and content, in order
+     */
+    static TreeSet<String> terms(Email email) {
+        TreeSet<String> terms = new TreeSet<>();
+        tokenize(email.header, terms);
+        tokenize(email.content, terms);
+        return terms;
+    }
+
+    /**
+     * Indexes an email
+     * @param id the ID of the email, greater than every ID added before
+     * @param email the email
+     * @throws IllegalArgumentException if the ID is not greater than every ID added before
+     */
+    public void add(int id, Email email) {
+        if (id <= lastId) throw new IllegalArgumentException("IDs must increase: " + id + " after " + lastId);
+        lastId = id;
+        indexed++;
+        for (String text : terms(email)) {
+            Term term = find(text);
+            if (term == null) {
+                term = new Term(text);
+                dictionary.add(term);
+            }
+            term.append(id);
+        }
+    }
+
+    /**
+     * Removes an email from the results of all queries
+     * @param id the ID of the email
+     */
+    public void delete(int id) {
+        if (id < 0 || id > lastId || deleted.get(id)) return;
+        deleted.set(id);
+        deletedCount++;
+        if (deletedCount > indexed / 4) compact();
+    }
+
+    /**
+     * Rewrites every posting list without the deleted IDs, and drops terms left without emails
+     */
+    public void compact() {
+        List<Term> empty = new ArrayList<>();
+        for (Term term : dictionary) {
+            term.purge(deleted);
+            if (term.count() == 0) empty.add(term);
+        }
+        for (Term term : empty) dictionary.delete(term);
+        indexed -= deletedCount;
+        deletedCount = 0;
+        // IDs are never reused, so the bits are only kept to ignore repeated deletes of the same ID
+    }
+
+    private Term find(String text) {
+        return dictionary.search(new Term(text));
+    }
+
+    /**
+     * @param text a term
+     * @return the IDs of the emails containing the term, in increasing order
+     */
+    public int[] term(String text) {
+        Term term = find(text.toLowerCase());
+        return term == null ? new int[0] : term.decode(deletedCount == 0 ? null : deleted);
+    }
+
+    /**
+     * @param texts terms
+     * @return the IDs of the emails containing every term, in increasing order
+     */
+    public int[] and(String... texts) {
+        if (texts.length == 0) return new int[0];
+        Term[] terms = new Term[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            terms[i] = find(texts[i].toLowerCase());
+            if (terms[i] == null) return new int[0];
+        }
+        // Start from the shortest list, so every intersection is at most that long
+        Arrays.sort(terms, (a, b) -> Integer.compare(a.count(), b.count()));
+        int[] result = terms[0].decode(deletedCount == 0 ? null : deleted);
+        for (int i = 1; i < terms.length && result.length > 0; i++) result = EmailStore.intersect(result, terms[i].decode(null));
+        return result;
+    }
+
+    /**
+     * @param texts terms
+     * @return the IDs of the emails containing any of the terms, in increasing order
+     */
+    public int[] or(String... texts) {
+        List<Term> terms = new ArrayList<>();
+        for (String text : texts) {
+            Term term = find(text.toLowerCase());
+            if (term != null) terms.add(term);
+        }
+        return union(terms);
+    }
+
+    /**
+     * @param prefix the start of a term
+     * @return the IDs of the emails containing a term that starts with the prefix, in increasing order
+     */
+    public int[] prefix(String prefix) {
+        prefix = prefix.toLowerCase();
+        List<Term> terms = new ArrayList<>();
+        Iterator<Term> iterator = dictionary.iterator(new Term(prefix));
+        while (iterator.hasNext()) {
+            Term term = iterator.next();
+            if (!term.text.startsWith(prefix)) break;
+            terms.add(term);
+        }
+        return union(terms);
+    }
+
+    private int[] union(List<Term> terms) {
+        if (terms.isEmpty()) return new int[0];
+        // Merges pairs of lists, so each ID is copied O(log k) times for k lists
+        List<int[]> lists = new ArrayList<>();
+        for (Term term : terms) lists.add(term.decode(deletedCount == 0 ? null : deleted));
+        while (lists.size() > 1) {
+            List<int[]> merged = new ArrayList<>();
+            for (int i = 0; i + 1 < lists.size(); i += 2) merged.add(union(lists.get(i), lists.get(i + 1)));
+            if (lists.size() % 2 == 1) merged.add(lists.get(lists.size() - 1));
+            lists = merged;
+        }
+        return lists.get(0);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) result[count++] = a[i++];
+            else if (a[i] > b[j]) result[count++] = b[j++];
+            else {
+                result[count++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) result[count++] = a[i++];
+        while (j < b.length) result[count++] = b[j++];
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return the number of distinct terms
+     */
+    public int getTermCount() {
+        int count = 0;
+        for (Term ignored : dictionary) count++;
+        return count;
+    }
+
+    /**
+     * @return the bytes used by all posting lists, not counting unused capacity
+     */
+    public long getPostingBytes() {
+        long bytes = 0;
+        for (Term term : dictionary) bytes += term.byteSize();
+        return bytes;
+    }
+
+    /**
+     * @return the number of postings, one per term of every indexed email
+     */
+    public long getPostingCount() {
+        long postings = 0;
+        for (Term term : dictionary) postings += term.count();
+        return postings;
+    }
+}
@@ -0,0 +1,98 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class InvertedIndexTester {
+
+    static final String[] WORDS = {"meeting", "meet", "exam", "exams", "examiner", "grade", "grades", "parent", "Parents",
+            "homework", "holiday", "national", "day", "happy", "report", "reports", "urgent", "form", "class", "42"};
+
+    public static void main(String[] args) {
+        testTokenize();
+        testAgainstScan();
+        testIdsMustIncrease();
+        System.out.println("All inverted index tests passed");
+    }
+
+    public static void testTokenize() {
+        TreeSet<String> terms = new TreeSet<>();
+        InvertedIndex.tokenize("Happy National Day!! Dear Mr Lim, I wish you a very happy day~ SGP-2021", terms);
+        List<String> expected = List.of("2021", "a", "day", "dear", "happy", "i", "lim", "mr", "national", "sgp", "very", "wish", "you");
+        if (!new ArrayList<>(terms).equals(expected)) throw new AssertionError("Tokenized to " + terms);
+    }
+
+    static Email randomEmail(Random random, int i) {
+        StringBuilder header = new StringBuilder();
+        StringBuilder content = new StringBuilder();
+        for (int j = 0; j < 1 + random.nextInt(3); ++j) header.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        for (int j = 0; j < random.nextInt(12); ++j) content.append(WORDS[random.nextInt(WORDS.length)]).append(", ");
+        return new Email("2021-08-09", "Sender " + i % 7, header.toString(), content.toString());
+    }
+
+    /**
+     * Adds and deletes random emails through an EmailStore, past several compactions,
+     * and checks term, AND, OR and prefix queries against tokenizing every email
+     */
+    public static void testAgainstScan() {
+        Random random = new Random(14);
+        EmailStore store = new EmailStore();
+        InvertedIndex index = store.getTextIndex();
+        List<Integer> live = new ArrayList<>();
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 500; ++i) live.add(store.insert(randomEmail(random, i)));
+            for (int i = 0; i < 300; ++i) store.delete(live.remove(random.nextInt(live.size())));
+            for (int i = 0; i < 50; ++i) {
+                String a = WORDS[random.nextInt(WORDS.length)];
+                String b = WORDS[random.nextInt(WORDS.length)];
+                String c = WORDS[random.nextInt(WORDS.length)];
+                String prefix = a.substring(0, 1 + random.nextInt(a.length()));
+                check(index.term(a), scan(store, live, new String[]{a}, true), "term " + a);
+                check(index.and(a, b, c), scan(store, live, new String[]{a, b, c}, true), "and " + a + " " + b + " " + c);
+                check(index.or(a, b, "missing"), scan(store, live, new String[]{a, b}, false), "or " + a + " " + b);
+                check(index.prefix(prefix), scanPrefix(store, live, prefix), "prefix " + prefix);
+            }
+        }
+        if (index.and("missing", "exam").length != 0 || index.prefix("zz").length != 0) throw new AssertionError("Missing terms matched");
+        if (store.get(index.and("exam")).size() != index.and("exam").length) throw new AssertionError("Deleted IDs were returned");
+    }
+
+    private static void check(int[] actual, int[] expected, String query) {
+        if (!Arrays.equals(actual, expected))
+            throw new AssertionError(query + " gave " + actual.length + " emails, expected " + expected.length);
+    }
+
+    private static int[] scan(EmailStore store, List<Integer> live, String[] words, boolean all) {
+        return live.stream().sorted().filter(id -> {
+            TreeSet<String> terms = InvertedIndex.terms(store.get(id));
+            for (String word : words) {
+                if (terms.contains(word.toLowerCase()) != all) return !all;
+            }
+            return all;
+        }).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] scanPrefix(EmailStore store, List<Integer> live, String prefix) {
+        String lower = prefix.toLowerCase();
+        return live.stream().sorted()
+                .filter(id -> InvertedIndex.terms(store.get(id)).stream().anyMatch(term -> term.startsWith(lower)))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    public static void testIdsMustIncrease() {
+        InvertedIndex index = new InvertedIndex(2);
+        index.add(5, new Email("2021-08-09", "A", "exam", "report"));
+        try {
+            index.add(5, new Email("2021-08-09", "A", "exam", "report"));
+            throw new AssertionError("Repeated ID was accepted");
+        } catch (IllegalArgumentException expected) {
+            // IDs must increase
+        }
+        // Large gaps take several varint bytes
+        index.add(1 << 20, new Email("2021-08-09", "A", "exam", null));
+        if (!Arrays.equals(index.term("EXAM"), new int[]{5, 1 << 20})) throw new AssertionError("Large gap decoded wrongly");
+    }
+}
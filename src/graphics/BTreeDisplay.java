@@ -10,6 +10,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
@@ -28,6 +29,23 @@ public class BTreeDisplay extends Canvas {
      */
     private final TreeItemFactory<? extends Comparable<?>> treeItemFactory;
 
+    /**
+     * The number of changes that can be undone, the oldest are forgotten beyond it
+     */
+    private static final int MAX_HISTORY = 100;
+
+    /**
+     * Snapshots of the tree before each add or delete, most recent first, at most {@link #MAX_HISTORY}.
+     * Snapshots share unchanged nodes with the tree, so each one only costs the nodes its change copied.
+     */
+    private final ArrayDeque<BTree> undoHistory = new ArrayDeque<>();
+
+    /**
+     * Snapshots of the tree before each undo, most recent first. Each undo takes one snapshot off the undo history
+     * for the one it adds here, so there are never more than {@link #MAX_HISTORY} either.
+     */
+    private final ArrayDeque<BTree> redoHistory = new ArrayDeque<>();
+
     /**
      * The offset x amount for the display graphics
      */
@@ -202,6 +220,7 @@ public class BTreeDisplay extends Canvas {
     public boolean addItem(String itemStrRep) {
         if (!treeItemFactory.isValidString(itemStrRep))
             return false;
+        saveHistory();
         getTree().add(treeItemFactory.createItemFromString(itemStrRep));
         return true;
     }
@@ -214,10 +233,52 @@ public class BTreeDisplay extends Canvas {
     public boolean deleteItem(String itemStrRep) {
         if (!treeItemFactory.isValidString(itemStrRep))
             return false;
+        saveHistory();
         getTree().delete(treeItemFactory.createItemFromString(itemStrRep));
         return true;
     }
 
+    /**
+     * Records the current tree before a change, which clears the changes that could be redone
+     */
+    private void saveHistory() {
+        pushUndo(getTree().snapshot());
+        redoHistory.clear();
+    }
+
+    /**
+     * Adds a snapshot to the undo history, dropping the oldest one if it is full
+     */
+    private void pushUndo(BTree snapshot) {
+        if (undoHistory.size() == MAX_HISTORY)
+            undoHistory.removeLast();
+        undoHistory.push(snapshot);
+    }
+
+    /**
+     * Reverts the B Tree to before the last add or delete
+     * @return if there was a change to undo
+     */
+    public boolean undo() {
+        if (undoHistory.isEmpty())
+            return false;
+        redoHistory.push(getTree().snapshot());
+        getTree().restore(undoHistory.pop());
+        return true;
+    }
+
+    /**
+     * Reapplies the last undone add or delete
+     * @return if there was a change to redo
+     */
+    public boolean redo() {
+        if (redoHistory.isEmpty())
+            return false;
+        pushUndo(getTree().snapshot());
+        getTree().restore(redoHistory.pop());
+        return true;
+    }
+
     /**
      * Getter for the B Tree
      * @return the B Tree
@@ -2,7 +2,6 @@ package graphics;
 
 import model.BNode;
 import model.BTree;
-import model.Node;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
@@ -25,6 +24,12 @@ public class BTreeGraphics {
      */
     private final BTree tree;
 
+    /**
+     * Snapshot of the tree taken at the last update, which is what gets drawn.
+     * Changes to the tree after the update can not affect a paint in progress.
+     */
+    private BTree snapshot;
+
     /**
      * Stores the graphics node objects
      */
@@ -133,8 +138,10 @@ public class BTreeGraphics {
     /**
      * Must be called when an update is made to the tree to update the NodeGraphics ArrayList.
      * This is to update the node graphics.
+     * Takes a snapshot of the tree, so the tree can keep changing until the next update.
      */
     public void update() {
+        snapshot = tree.snapshot();
         hasUpdate = true;
     }
 
@@ -149,7 +156,8 @@ public class BTreeGraphics {
         // Iterate level-order through the tree using breadth-first iteration
         // Tracks down nodes as well as their children.
 
-        int height = getTree().getHeight();
+        BTree drawnTree = snapshot;
+        int height = drawnTree.getHeight();
 
         // List to record down level order nodes
         ArrayList<ArrayList<BNode>> levelsNodes = new ArrayList<>(height + 1);
@@ -168,7 +176,7 @@ public class BTreeGraphics {
         // Stack to keep track of the indices of the parents of the nodes in the iteration stack.
         ArrayList<Integer> parentsIterationStack = new ArrayList<>();
         // Start from root
-        nodesIterationStack.add(getTree().root);
+        nodesIterationStack.add(drawnTree.root);
         levelsIterationStack.add(0);
         parentsIterationStack.add(-1);  // Root node does not have a parent
 
@@ -191,10 +199,10 @@ public class BTreeGraphics {
 
             // If the node is not a leaf, add more iterable child nodes and relevant data
             if (!currNode.isLeaf) {
-                for (Node<?> node : currNode.neighbours) {
+                for (BNode<?> node : currNode.neighbours) {
                     if (node == null)
                         break;
-                    nodesIterationStack.add((BNode) node);
+                    nodesIterationStack.add(node);
                     levelsIterationStack.add(currLevel + 1);  // Child nodes are one level down
                     parentsIterationStack.add(currIndex);
                 }
@@ -0,0 +1,76 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link BEpsilonTree}.
+ * <br>
+ * The items of an internal node are pivots: child i holds the items from pivot i - 1 (inclusive) up to pivot i
+ * (exclusive), so equal items are always in the same child. An internal node also buffers messages for its
+ * subtree, adds and deletes that have not reached a leaf yet. The buffer is sorted by item, and messages for
+ * equal items are in the order they were sent.
+ * <br>
+ * Leaves hold the items themselves, like the leaves of a {@link BNode}, and have no buffer.
+ */
+public class BEpsilonNode<T extends Comparable<? super T>> extends BNode<T> {
+
+    /**
+     * The items of the buffered messages, followed by unused space
+     */
+    public T[] messages;
+
+    /**
+     * Whether each buffered message deletes its item, rather than adding it
+     */
+    public boolean[] deletes;
+
+    public int numMessages = 0;
+
+    /**
+     * Constructor
+     * @param maxChildren the maximum number of children, or for a leaf one more than the number of items it holds
+     * @param bufferSize the number of messages the buffer holds before it grows, unused for a leaf
+     * @param isLeaf whether the node is a leaf
+     */
+    public BEpsilonNode(int maxChildren, int bufferSize, boolean isLeaf) {
+        super(maxChildren, isLeaf);
+        if (!isLeaf) {
+            messages = (T[]) new Comparable[bufferSize];
+            deletes = new boolean[bufferSize];
+        }
+    }
+
+    /**
+     * Makes room for a number of items and children, for a node that holds more than its maximum until it is split
+     * @param numItems the number of items
+     */
+    void ensureItems(int numItems) {
+        if (numItems <= items.length) return;
+        items = Arrays.copyOf(items, Math.max(numItems, 2 * items.length));
+        if (!isLeaf) neighbours = Arrays.copyOf(neighbours, items.length + 1);
+    }
+
+    /**
+     * Makes room for a number of buffered messages
+     * @param numMessages the number of messages
+     */
+    void ensureMessages(int numMessages) {
+        if (numMessages <= messages.length) return;
+        int length = Math.max(numMessages, 2 * messages.length);
+        messages = Arrays.copyOf(messages, length);
+        deletes = Arrays.copyOf(deletes, length);
+    }
+
+    /**
+     * Removes a range of buffered messages
+     * @param from the index of the first message removed
+     * @param to the index after the last message removed
+     */
+    void removeMessages(int from, int to) {
+        System.arraycopy(messages, to, messages, from, numMessages - to);
+        System.arraycopy(deletes, to, deletes, from, numMessages - to);
+        int removed = to - from;
+        Arrays.fill(messages, numMessages - removed, numMessages, null);
+        numMessages -= removed;
+    }
+}
@@ -0,0 +1,539 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Implementation of a B-epsilon tree, a B Tree that trades some search speed for cheaper adds and deletes
+ * <br>
+ * Internal nodes have few children (a fanout of B^epsilon for nodes of B items) and use the rest of their space to
+ * buffer messages, see {@link BEpsilonNode}. An add or delete is only put in the buffer of the root. When a buffer
+ * holds more than nodeSize messages, the messages for the child with the most of them are moved down to it in one
+ * batch, so a node is loaded and changed once for many messages rather than once per message, and splits happen
+ * once per batch. Leaves hold up to nodeSize items and apply the messages that reach them.
+ * <br>
+ * A search has to look for messages about its item in every buffer on the way to the leaf. Messages higher up
+ * are newer, so the leaf's items are counted first and the buffers replayed from the bottom up.
+ * <br>
+ * Like {@link BTree} it allows duplicate items, and a delete removes one item equal to it if there is one.
+ * A delete that meets an add of an equal item in a buffer cancels it there. Equal items are never split between
+ * leaves, so a leaf holding more than nodeSize equal items is allowed to grow.
+ */
+public class BEpsilonTree<T extends Comparable<? super T>> {
+
+    public static final int DEFAULT_NODE_SIZE = 1024;
+
+    /**
+     * The minimum number of children an internal node should have, it has at most 2 * minChildren
+     */
+    private final int minChildren;
+
+    /**
+     * The number of messages an internal node buffers, and the number of items a leaf holds
+     */
+    private final int nodeSize;
+
+    /**
+     * The root node of the tree
+     */
+    public BEpsilonNode<T> root;
+
+    /**
+     * The number of levels below the root
+     */
+    private int height = 0;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children an internal node can have
+     */
+    public BEpsilonTree(int minChildren) {
+        this(minChildren, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children an internal node can have
+     * @param nodeSize the number of messages an internal node buffers, and the number of items a leaf holds
+     */
+    public BEpsilonTree(int minChildren, int nodeSize) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        if (nodeSize < 4) throw new IllegalArgumentException("nodeSize must be at least 4");
+        this.minChildren = minChildren;
+        this.nodeSize = nodeSize;
+        root = newNode(true);
+    }
+
+    public int getMinChildren() { return minChildren; }
+
+    public int getNodeSize() { return nodeSize; }
+
+    public int getHeight() { return height; }
+
+    private BEpsilonNode<T> newNode(boolean isLeaf) {
+        return isLeaf ? new BEpsilonNode<>(nodeSize + 1, 0, true) : new BEpsilonNode<>(2 * minChildren, nodeSize, false);
+    }
+
+    /**
+     * The nodes a node was split into, and the pivots between them. A single node if it was not split.
+     */
+    private class Split {
+        final ArrayList<T> items = new ArrayList<>();
+        final ArrayList<BEpsilonNode<T>> nodes = new ArrayList<>();
+    }
+
+    public void add(T item) {
+        send(item, false);
+    }
+
+    /**
+     * Deletes one item equal to the given item, if there is one by the time the delete reaches it
+     * @param item the item
+     */
+    public void delete(T item) {
+        send(item, true);
+    }
+
+    /**
+     * Puts a message in the buffer of the root, or applies it to the root if the root is a leaf,
+     * then flushes the root and splits or collapses it as needed
+     */
+    private void send(T item, boolean delete) {
+        Split split;
+        if (root.isLeaf) {
+            split = apply(root, (T[]) new Comparable[]{item}, new boolean[]{delete});
+        } else {
+            buffer(root, item, delete);
+            flush(root);
+            split = split(root);
+        }
+        while (true) {
+            if (split.nodes.size() > 1) {
+                BEpsilonNode<T> newRoot = newNode(false);
+                replace(newRoot, 0, 0, split);
+                root = newRoot;
+                height++;
+                split = split(root);
+            } else if (!root.isLeaf && root.numItems == 0) {
+                // A root with a single child passes its buffer down and is dropped
+                BEpsilonNode<T> child = (BEpsilonNode<T>) root.neighbours[0];
+                T[] run = Arrays.copyOf(root.messages, root.numMessages);
+                boolean[] runDeletes = Arrays.copyOf(root.deletes, root.numMessages);
+                root = child;
+                height--;
+                split = child.isLeaf ? apply(child, run, runDeletes) : flushInto(child, run, runDeletes);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds a message to the buffer of a node, after the messages for equal items.
+     * A delete right after an add of an equal item cancels it.
+     */
+    private void buffer(BEpsilonNode<T> node, T item, boolean delete) {
+        int i = upperBound(node.messages, 0, node.numMessages, item);
+        if (delete && i > 0 && !node.deletes[i - 1] && node.messages[i - 1].compareTo(item) == 0) {
+            node.removeMessages(i - 1, i);
+            return;
+        }
+        node.ensureMessages(node.numMessages + 1);
+        System.arraycopy(node.messages, i, node.messages, i + 1, node.numMessages - i);
+        System.arraycopy(node.deletes, i, node.deletes, i + 1, node.numMessages - i);
+        node.messages[i] = item;
+        node.deletes[i] = delete;
+        node.numMessages++;
+    }
+
+    /**
+     * Moves the messages for the child with the most of them down to it, until the buffer of the node is not full
+     * @param node an internal node
+     */
+    private void flush(BEpsilonNode<T> node) {
+        while (node.numMessages > nodeSize) {
+            int best = 0;
+            int bestFrom = 0;
+            int bestTo = 0;
+            int from = 0;
+            for (int i = 0; i <= node.numItems; i++) {
+                int to = i < node.numItems ? lowerBound(node.messages, from, node.numMessages, node.items[i]) : node.numMessages;
+                if (to - from > bestTo - bestFrom) {
+                    best = i;
+                    bestFrom = from;
+                    bestTo = to;
+                }
+                from = to;
+            }
+            T[] run = Arrays.copyOfRange(node.messages, bestFrom, bestTo);
+            boolean[] runDeletes = Arrays.copyOfRange(node.deletes, bestFrom, bestTo);
+            node.removeMessages(bestFrom, bestTo);
+
+            BEpsilonNode<T> child = (BEpsilonNode<T>) node.neighbours[best];
+            Split split = child.isLeaf ? apply(child, run, runDeletes) : flushInto(child, run, runDeletes);
+            if (split.nodes.size() > 1) replace(node, best, best, split);
+            else rebalance(node, best);
+        }
+    }
+
+    /**
+     * Merges a sorted run of messages into the buffer of an internal node, after its own messages for equal items,
+     * and flushes the node if its buffer is full
+     * @return the node, or the nodes it had to be split into as its children split
+     */
+    private Split flushInto(BEpsilonNode<T> node, T[] run, boolean[] runDeletes) {
+        node.ensureMessages(node.numMessages + run.length);
+        mergeInto(node.messages, node.deletes, node.numMessages, run, runDeletes);
+        node.numMessages += run.length;
+        flush(node);
+        return split(node);
+    }
+
+    /**
+     * Applies a sorted run of messages to a leaf
+     * @return the leaf, or the leaves it had to be split into
+     */
+    private Split apply(BEpsilonNode<T> leaf, T[] run, boolean[] runDeletes) {
+        int n = leaf.numItems;
+        if (n + run.length <= nodeSize && !contains(runDeletes, true)) {
+            mergeInto(leaf.items, null, n, run, null);
+            leaf.numItems += run.length;
+            Split split = new Split();
+            split.nodes.add(leaf);
+            return split;
+        }
+        if (run.length <= 8 && n + run.length <= nodeSize) {
+            // A few messages with deletes are applied one by one
+            for (int k = 0; k < run.length; k++) {
+                if (runDeletes[k]) {
+                    int i = leaf.lowerBound(run[k]);
+                    if (leaf.matches(i, run[k])) {
+                        System.arraycopy(leaf.items, i + 1, leaf.items, i, leaf.numItems - i - 1);
+                        leaf.items[--leaf.numItems] = null;
+                    }
+                } else {
+                    int i = leaf.upperBound(run[k]);
+                    System.arraycopy(leaf.items, i, leaf.items, i + 1, leaf.numItems - i);
+                    leaf.items[i] = run[k];
+                    leaf.numItems++;
+                }
+            }
+            Split split = new Split();
+            split.nodes.add(leaf);
+            return split;
+        }
+        return fill(leaf, merge(leaf.items, n, run, runDeletes));
+    }
+
+    /**
+     * Merges a sorted run into the front of an array with room for it, after the items equal to each. The run is
+     * short next to the array, so each of its items is binary searched for and the items after it moved in one
+     * copy, from the back, rather than comparing every item of the array.
+     * @param array the array, sorted
+     * @param deletes the delete flags of the array, null for a leaf
+     * @param n the number of items in the array
+     * @param run the run
+     * @param runDeletes the delete flags of the run, null for a leaf
+     */
+    private static <T extends Comparable<? super T>> void mergeInto(T[] array, boolean[] deletes, int n, T[] run, boolean[] runDeletes) {
+        int end = n;
+        for (int k = run.length - 1; k >= 0; k--) {
+            // Gallop back from where the previous item went, as the run is spread over the array
+            int lo = end;
+            int hi = end;
+            for (int step = 1; lo > 0 && array[lo - 1].compareTo(run[k]) > 0; step *= 2) {
+                hi = lo - 1;
+                lo = Math.max(0, lo - step);
+            }
+            int i = upperBound(array, lo, hi, run[k]);
+            System.arraycopy(array, i, array, i + k + 1, end - i);
+            array[i + k] = run[k];
+            if (deletes != null) {
+                System.arraycopy(deletes, i, deletes, i + k + 1, end - i);
+                deletes[i + k] = runDeletes[k];
+            }
+            end = i;
+        }
+    }
+
+    private static boolean contains(boolean[] array, boolean value) {
+        for (boolean b : array) if (b == value) return true;
+        return false;
+    }
+
+    /**
+     * Applies sorted messages to sorted items
+     * @param leafItems the items
+     * @param n the number of items
+     * @param run the items of the messages
+     * @param runDeletes whether each message is a delete
+     * @return the items after the messages
+     */
+    private static <T extends Comparable<? super T>> ArrayList<T> merge(T[] leafItems, int n, T[] run, boolean[] runDeletes) {
+        ArrayList<T> items = new ArrayList<>(n + run.length);
+        int i = 0;
+        for (int k = 0; k < run.length; ) {
+            T key = run[k];
+            while (i < n && leafItems[i].compareTo(key) < 0) items.add(leafItems[i++]);
+            // The items equal to the key in the order they were added, then the messages in the order they were sent
+            int equal = items.size();
+            while (i < n && leafItems[i].compareTo(key) == 0) items.add(leafItems[i++]);
+            for (; k < run.length && run[k].compareTo(key) == 0; k++) {
+                if (!runDeletes[k]) items.add(run[k]);
+                else if (items.size() > equal) items.remove(equal);
+            }
+        }
+        while (i < n) items.add(leafItems[i++]);
+        return items;
+    }
+
+    /**
+     * Puts sorted items into a leaf, or if there are more than nodeSize into as many leaves as they fill to
+     * three quarters. Leaves are only cut between items that are not equal.
+     * @param leaf the leaf, which becomes the first of the leaves
+     * @param items the items
+     * @return the leaves
+     */
+    private Split fill(BEpsilonNode<T> leaf, ArrayList<T> items) {
+        Split split = new Split();
+        int count = items.size();
+        int target = Math.max(1, 3 * nodeSize / 4);
+        int pieces = count <= nodeSize ? 1 : (count + target - 1) / target;
+        int start = 0;
+        for (int k = 0; k == 0 || start < count; k++) {
+            int end = k >= pieces - 1 ? count : cut(items, start, start + (count - start) / (pieces - k));
+            BEpsilonNode<T> piece = k == 0 ? leaf : newNode(true);
+            if (piece.items.length < end - start) piece.items = (T[]) new Comparable[end - start];
+            for (int j = start; j < end; j++) piece.items[j - start] = items.get(j);
+            Arrays.fill(piece.items, end - start, Math.max(end - start, piece.numItems), null);
+            piece.numItems = end - start;
+            if (k > 0) split.items.add(items.get(start));
+            split.nodes.add(piece);
+            start = end;
+        }
+        return split;
+    }
+
+    /**
+     * @return the index between two items that are not equal closest to target, or count if there is none after start
+     */
+    private static <T extends Comparable<? super T>> int cut(ArrayList<T> items, int start, int target) {
+        int count = items.size();
+        for (int d = 0; target + d < count || target - d > start; d++) {
+            int after = target + d;
+            if (after < count && after > start && items.get(after - 1).compareTo(items.get(after)) < 0) return after;
+            int before = target - d;
+            if (before > start && before < count && items.get(before - 1).compareTo(items.get(before)) < 0) return before;
+        }
+        return count;
+    }
+
+    /**
+     * Splits an internal node with more than 2 * minChildren children into nodes with between minChildren and
+     * 2 * minChildren children, dividing its buffer between them
+     * @return the node, or the nodes it was split into
+     */
+    private Split split(BEpsilonNode<T> node) {
+        Split split = new Split();
+        int count = node.numItems;
+        if (node.isLeaf || count <= 2 * minChildren - 1) {
+            split.nodes.add(node);
+            return split;
+        }
+        int pieces = (count + 2 * minChildren) / (2 * minChildren);
+        int kept = count - (pieces - 1);
+        int index = 0;
+        int message = 0;
+        for (int k = 0; k < pieces; k++) {
+            int n = kept / pieces + (k < kept % pieces ? 1 : 0);
+            BEpsilonNode<T> piece = newNode(false);
+            System.arraycopy(node.items, index, piece.items, 0, n);
+            System.arraycopy(node.neighbours, index, piece.neighbours, 0, n + 1);
+            piece.numItems = n;
+            int messageEnd = k < pieces - 1 ? lowerBound(node.messages, message, node.numMessages, node.items[index + n]) : node.numMessages;
+            piece.ensureMessages(messageEnd - message);
+            System.arraycopy(node.messages, message, piece.messages, 0, messageEnd - message);
+            System.arraycopy(node.deletes, message, piece.deletes, 0, messageEnd - message);
+            piece.numMessages = messageEnd - message;
+            split.nodes.add(piece);
+            index += n;
+            if (k < pieces - 1) split.items.add(node.items[index++]);
+            message = messageEnd;
+        }
+        return split;
+    }
+
+    /**
+     * Merges child i of a node with a sibling if it has too few items (a quarter of nodeSize for a leaf,
+     * minChildren - 1 pivots otherwise), splitting them again evenly if they do not fit in one node
+     */
+    private void rebalance(BEpsilonNode<T> node, int i) {
+        BEpsilonNode<T> child = (BEpsilonNode<T>) node.neighbours[i];
+        boolean underfull = child.isLeaf ? child.numItems < nodeSize / 4 : child.numItems < minChildren - 1;
+        if (!underfull || node.numItems == 0) return;
+        int j = i < node.numItems ? i : i - 1;
+        BEpsilonNode<T> left = (BEpsilonNode<T>) node.neighbours[j];
+        BEpsilonNode<T> right = (BEpsilonNode<T>) node.neighbours[j + 1];
+        Split split;
+        if (left.isLeaf) {
+            ArrayList<T> items = new ArrayList<>(left.numItems + right.numItems);
+            items.addAll(Arrays.asList(left.items).subList(0, left.numItems));
+            items.addAll(Arrays.asList(right.items).subList(0, right.numItems));
+            split = fill(left, items);
+        } else {
+            // The pivot comes down between the two, and the buffers are in order already
+            int n = left.numItems;
+            left.ensureItems(n + 1 + right.numItems);
+            left.items[n] = node.items[j];
+            System.arraycopy(right.items, 0, left.items, n + 1, right.numItems);
+            System.arraycopy(right.neighbours, 0, left.neighbours, n + 1, right.numItems + 1);
+            left.numItems = n + 1 + right.numItems;
+            left.ensureMessages(left.numMessages + right.numMessages);
+            System.arraycopy(right.messages, 0, left.messages, left.numMessages, right.numMessages);
+            System.arraycopy(right.deletes, 0, left.deletes, left.numMessages, right.numMessages);
+            left.numMessages += right.numMessages;
+            flush(left);
+            split = split(left);
+        }
+        replace(node, j, j + 1, split);
+    }
+
+    /**
+     * Replaces children from to to (inclusive) of an internal node, and the pivots between them, with other nodes
+     * and the pivots between those
+     */
+    private void replace(BEpsilonNode<T> node, int from, int to, Split split) {
+        int n = node.numItems;
+        int r = split.nodes.size() - 1;
+        int count = n - (to - from) + r;
+        node.ensureItems(count);
+        System.arraycopy(node.items, to, node.items, from + r, n - to);
+        System.arraycopy(node.neighbours, to + 1, node.neighbours, from + r + 1, n - to);
+        for (int k = 0; k < r; k++) node.items[from + k] = split.items.get(k);
+        for (int k = 0; k <= r; k++) node.neighbours[from + k] = split.nodes.get(k);
+        for (int k = count; k < n; k++) {
+            node.items[k] = null;
+            node.neighbours[k + 1] = null;
+        }
+        node.numItems = count;
+    }
+
+    /**
+     * Searches for an item, replaying the messages about it on the path from the root
+     * @param item the item
+     * @return an item equal to it, or null if there is none
+     */
+    public T search(T item) {
+        BEpsilonNode<T>[] path = new BEpsilonNode[height];
+        BEpsilonNode<T> node = root;
+        for (int level = 0; !node.isLeaf; level++) {
+            path[level] = node;
+            node = (BEpsilonNode<T>) node.neighbours[node.upperBound(item)];
+        }
+        int count = 0;
+        T found = null;
+        for (int i = node.lowerBound(item); node.matches(i, item); i++) {
+            count++;
+            found = node.items[i];
+        }
+        for (int level = height - 1; level >= 0; level--) {
+            node = path[level];
+            for (int i = lowerBound(node.messages, 0, node.numMessages, item); i < node.numMessages && node.messages[i].compareTo(item) == 0; i++) {
+                if (!node.deletes[i]) {
+                    count++;
+                    found = node.messages[i];
+                } else if (count > 0) {
+                    count--;
+                }
+            }
+        }
+        return count > 0 ? found : null;
+    }
+
+    /**
+     * @return all items of the tree in ascending order, as if every buffered message had reached its leaf
+     */
+    public ArrayList<T> getItems() {
+        return getItems(root);
+    }
+
+    private ArrayList<T> getItems(BEpsilonNode<T> node) {
+        ArrayList<T> items = new ArrayList<>();
+        if (node.isLeaf) {
+            items.addAll(Arrays.asList(node.items).subList(0, node.numItems));
+            return items;
+        }
+        for (int i = 0; i <= node.numItems; i++) items.addAll(getItems((BEpsilonNode<T>) node.neighbours[i]));
+        if (node.numMessages == 0) return items;
+        // Apply the buffer like a leaf would
+        T[] array = items.toArray((T[]) new Comparable[0]);
+        return merge(array, array.length, Arrays.copyOf(node.messages, node.numMessages), Arrays.copyOf(node.deletes, node.numMessages));
+    }
+
+    /**
+     * @return the number of items, in O(n)
+     */
+    public int size() {
+        return getItems().size();
+    }
+
+    public void validate() throws Exception {
+        validate(root, null, null, height);
+    }
+
+    /**
+     * Checks that the items, pivots and messages of a subtree are sorted and within the range of its parent pivots,
+     * that every leaf is at the same depth and that no node is over its limits
+     */
+    private void validate(BEpsilonNode<T> node, T low, T high, int depth) throws Exception {
+        for (int i = 0; i < node.numItems; i++) {
+            T item = node.items[i];
+            if ((i > 0 && node.items[i - 1].compareTo(item) > 0) || (low != null && item.compareTo(low) < 0)
+                    || (high != null && item.compareTo(high) >= 0))
+                throw new Exception("B-epsilon tree invalid: " + item + " out of order in " + node);
+        }
+        if (node.isLeaf) {
+            if (depth != 0) throw new Exception("B-epsilon tree invalid: leaves at different depths");
+            return;
+        }
+        if (node.numItems > 2 * minChildren - 1) throw new Exception("B-epsilon tree invalid: " + node.numItems + " pivots");
+        if (node.numMessages > nodeSize) throw new Exception("B-epsilon tree invalid: " + node.numMessages + " messages");
+        for (int i = 0; i < node.numMessages; i++) {
+            T message = node.messages[i];
+            if ((i > 0 && node.messages[i - 1].compareTo(message) > 0) || (low != null && message.compareTo(low) < 0)
+                    || (high != null && message.compareTo(high) >= 0))
+                throw new Exception("B-epsilon tree invalid: message " + message + " out of order");
+        }
+        for (int i = 0; i <= node.numItems; i++) {
+            validate((BEpsilonNode<T>) node.neighbours[i], i == 0 ? low : node.items[i - 1], i == node.numItems ? high : node.items[i], depth - 1);
+        }
+    }
+
+    /**
+     * @return the index of the first item of array[lo, hi) greater than or equal to item
+     */
+    private static <T extends Comparable<? super T>> int lowerBound(T[] array, int lo, int hi, T item) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid].compareTo(item) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first item of array[lo, hi) strictly greater than item
+     */
+    private static <T extends Comparable<? super T>> int upperBound(T[] array, int lo, int hi, T item) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid].compareTo(item) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -2,35 +2,141 @@ package model;
 
 import java.util.Arrays;
 
-public class BNode<T extends Comparable<? super T>> extends Node<T>{
+/**
+ * Node of a {@link BTree}.
+ * <br>
+ * Leaf nodes do not allocate a child array, and a node has no fields besides the ones the tree uses,
+ * see {@code NodeLayoutBenchmark}.
+ */
+public class BNode<T extends Comparable<? super T>> {
     public int numItems = 0;
     public T[] items;
     public BNode[] neighbours;
-    public boolean isLeaf;
+    public final boolean isLeaf;
 
-    public BNode(int maxChildren){
-        super(null, maxChildren);
+    /**
+     * The epoch of the tree that created this node. A tree only modifies nodes of its own epoch in place,
+     * nodes of older epochs may be shared with snapshots and are copied first.
+     */
+    int epoch;
+
+    /**
+     * The number of items in the subtree of this node, kept only by augmented trees
+     */
+    int size;
+
+    /**
+     * The {@link Monoid} summary of the items in the subtree of this node, kept only by trees with a monoid
+     */
+    Object summary;
+
+    public BNode(int maxChildren, boolean isLeaf){
+        this.isLeaf = isLeaf;
         items = (T[]) new Comparable[maxChildren-1];
-        neighbours = new BNode[maxChildren];
+        neighbours = isLeaf ? null : new BNode[maxChildren];
     }
 
-    int binarySearch(T item) {
-        if(item == null) return -1;
-        int leftIndex = 0;
-        int rightIndex = numItems - 1;
-        while (leftIndex <= rightIndex) {
-            final int middleIndex = leftIndex + ((rightIndex - leftIndex) / 2);
-            if(items[middleIndex] == null) return -1;
-            if (items[middleIndex].compareTo(item) < 0) {
-                leftIndex = middleIndex + 1;
-            } else if (items[middleIndex].compareTo(item) > 0) {
-                rightIndex = middleIndex - 1;
-            } else {
-                return middleIndex;
-            }
+    /**
+     * Returns a copy of this node owned by another epoch, sharing the child nodes
+     * @param epoch the epoch of the copy
+     * @return the copy
+     */
+    BNode<T> copy(int epoch) {
+        BNode<T> copy = new BNode<>(items.length + 1, isLeaf);
+        System.arraycopy(items, 0, copy.items, 0, numItems);
+        if (!isLeaf) System.arraycopy(neighbours, 0, copy.neighbours, 0, numItems + 1);
+        copy.numItems = numItems;
+        copy.epoch = epoch;
+        copy.size = size;
+        copy.summary = summary;
+        return copy;
+    }
+
+    /**
+     * Nodes with at most this many items (minChildren 4) are scanned linearly, larger ones are binary searched, so a
+     * node of minChildren 15 costs about 5 compareTo calls instead of up to 29.
+     * <br>
+     * A linear scan loads the items independently of each other and the CPU overlaps the loads, while each step of a
+     * binary search depends on the previous compare. With the cheap compareTo of Integer, String and Email keys the
+     * scan keeps up with binary search well past this size (the node rows of {@code NodeSearchBenchmark}), but the
+     * compareTo of other item types can cost far more than a load, so the scan is kept to nodes where it makes at most
+     * a few more compares.
+     */
+    static final int LINEAR_SEARCH_THRESHOLD = 8;
+
+    /**
+     * The in-node search used by every path of the tree.
+     * <br>
+     * Small nodes are scanned. Larger nodes are binary searched for the lower bound, without a separate test for
+     * equality, so each step is one compareTo and one branch.
+     * A branch-free step (a conditional move) was slower: it keeps the CPU from loading ahead on a predicted path.
+     * @param item the item
+     * @return the index of the first item greater than or equal to item, numItems if there is none
+     */
+    int lowerBound(T item) {
+        int low = 0;
+        int high = numItems;
+        if (high <= LINEAR_SEARCH_THRESHOLD) {
+            while (low < high && items[low].compareTo(item) < 0) low++;
+            return low;
+        }
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle].compareTo(item) < 0) low = middle + 1;
+            else high = middle;
         }
+        return low;
+    }
+
+    /**
+     * Like {@link #lowerBound}, so that equal items are added after the ones already in the node
+     * @param item the item
+     * @return the index of the first item strictly greater than item, numItems if there is none
+     */
+    int upperBound(T item) {
+        int low = 0;
+        int high = numItems;
+        if (high <= LINEAR_SEARCH_THRESHOLD) {
+            while (low < high && items[low].compareTo(item) <= 0) low++;
+            return low;
+        }
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle].compareTo(item) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * The number of compareTo calls of a {@link #lowerBound} or {@link #upperBound}, for {@link BTreeMetrics}.
+     * Exact for scanned nodes; a binary search makes this many or one fewer.
+     * @param numItems the number of items in the node
+     * @param index the index the search returned
+     * @return the number of compareTo calls
+     */
+    static int compares(int numItems, int index) {
+        if (numItems <= LINEAR_SEARCH_THRESHOLD) return index < numItems ? index + 1 : numItems;
+        return 32 - Integer.numberOfLeadingZeros(numItems);
+    }
+
+    /**
+     * @param index an index returned by {@link #lowerBound}
+     * @param item the item searched for
+     * @return whether the item at the index equals the item
+     */
+    boolean matches(int index, T item) {
+        return index < numItems && items[index].compareTo(item) == 0;
+    }
 
-        return -1;
+    /**
+     * @param item the item
+     * @return the index of an item equal to item, -1 if there is none
+     */
+    int binarySearch(T item) {
+        if (item == null) return -1;
+        int i = lowerBound(item);
+        return matches(i, item) ? i : -1;
     }
 
     /**
@@ -91,17 +197,11 @@ public class BNode<T extends Comparable<? super T>> extends Node<T>{
     /**
      *
      * @param item
-     * @return the index of the smallest item greater than item
+     * @return the index of the smallest item greater than or equal to item
      */
     int subtreeRootNodeIndex(T item) {
         if(item == null) return 0;
-        for (int i = 0; i < numItems; i++) {
-            if(items[i] == null) return i;
-            if (item.compareTo(items[i]) <= 0) {
-                return i;
-            }
-        }
-        return numItems;
+        return lowerBound(item);
     }
 
     @Override
@@ -124,6 +224,7 @@ public class BNode<T extends Comparable<? super T>> extends Node<T>{
         buffer.append(Arrays.asList(items));
         buffer.append('\n');
 
+        if (isLeaf) return;
         for (BNode node : neighbours) {
             if (node != null) {
                 if (numItems != 0 && node != neighbours[numItems]) {
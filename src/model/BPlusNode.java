@@ -0,0 +1,110 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link BPlusTree}.
+ * <br>
+ * Leaf nodes hold the items and are linked to their neighbouring leaves in both directions.
+ * Internal nodes hold only separator items and child pointers.
+ */
+public class BPlusNode<T extends Comparable<? super T>> {
+    public int numItems = 0;
+    public T[] items;
+    public BPlusNode<T>[] neighbours;
+    public final boolean isLeaf;
+
+    /**
+     * The next leaf in ascending order, null for internal nodes and the last leaf
+     */
+    public BPlusNode<T> next;
+
+    /**
+     * The previous leaf in ascending order, null for internal nodes and the first leaf
+     */
+    public BPlusNode<T> previous;
+
+    @SuppressWarnings("unchecked")
+    public BPlusNode(int maxChildren, boolean isLeaf) {
+        this.isLeaf = isLeaf;
+        items = (T[]) new Comparable[maxChildren - 1];
+        neighbours = isLeaf ? null : new BPlusNode[maxChildren];
+    }
+
+    /**
+     * @param item the item
+     * @return the index of the first item greater than or equal to item
+     */
+    int lowerBound(T item) {
+        int low = 0;
+        int high = numItems;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle].compareTo(item) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param item the item
+     * @return the index of the first item strictly greater than item
+     */
+    int upperBound(T item) {
+        int low = 0;
+        int high = numItems;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle].compareTo(item) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Inserts an item (and for internal nodes, the child to its right) at an index
+     */
+    void insert(int index, T item, BPlusNode<T> rightChild) {
+        System.arraycopy(items, index, items, index + 1, numItems - index);
+        items[index] = item;
+        if (!isLeaf) {
+            System.arraycopy(neighbours, index + 1, neighbours, index + 2, numItems - index);
+            neighbours[index + 1] = rightChild;
+        }
+        numItems++;
+    }
+
+    /**
+     * Removes the item at an index, and for internal nodes the child to its right
+     */
+    void remove(int index) {
+        System.arraycopy(items, index + 1, items, index, numItems - index - 1);
+        items[numItems - 1] = null;
+        if (!isLeaf) {
+            System.arraycopy(neighbours, index + 2, neighbours, index + 1, numItems - index - 1);
+            neighbours[numItems] = null;
+        }
+        numItems--;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(50);
+        print(buffer, "", "");
+        return buffer.toString();
+    }
+
+    private void print(StringBuilder buffer, String prefix, String childrenPrefix) {
+        buffer.append(prefix);
+        buffer.append(Arrays.asList(items).subList(0, numItems));
+        buffer.append('\n');
+        if (isLeaf) return;
+        for (int i = 0; i <= numItems; i++) {
+            if (i != numItems) {
+                neighbours[i].print(buffer, childrenPrefix + "+--- ", childrenPrefix + "|   ");
+            } else {
+                neighbours[i].print(buffer, childrenPrefix + "L___ ", childrenPrefix + "    ");
+            }
+        }
+    }
+}
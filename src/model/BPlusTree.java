@@ -0,0 +1,422 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of a B+ Tree
+ * <br>
+ * Utilises the model.BPlusNode class.
+ * All items are stored in the leaves, internal nodes only hold separator items used to route searches,
+ * and the leaves are linked to each other in both directions so ordered scans never go back up the tree.
+ * <br>
+ * Offers the same add/delete/search operations as {@link BTree}, as well as range scans.
+ * Like BTree, duplicate items are allowed.
+ */
+public class BPlusTree<T extends Comparable<? super T>> {
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    /**
+     * The root node of the tree
+     */
+    public BPlusNode<T> root;
+
+    /**
+     * The number of items in the tree
+     */
+    private int size;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public BPlusTree(int minChildren) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        this.minChildren = minChildren;
+        root = new BPlusNode<>(2 * minChildren, true);
+    }
+
+    /**
+     * @return the number of items in the tree
+     */
+    public int size() { return size; }
+
+    public int getHeight() {
+        int height = 0;
+        BPlusNode<T> node = root;
+        while (!node.isLeaf) {
+            node = node.neighbours[0];
+            height++;
+        }
+        return height;
+    }
+
+    public void add(T item) {
+        if (root.numItems == 2 * minChildren - 1) {
+            BPlusNode<T> newRootNode = new BPlusNode<>(2 * minChildren, false);
+            newRootNode.neighbours[0] = root;
+            splitChildNode(newRootNode, 0);
+            root = newRootNode;
+        }
+        // Descend iteratively, splitting full children before entering them.
+        // Items equal to a separator go to its right, where the separator was copied from.
+        BPlusNode<T> node = root;
+        while (!node.isLeaf) {
+            int i = node.upperBound(item);
+            if (node.neighbours[i].numItems == 2 * minChildren - 1) {
+                splitChildNode(node, i);
+                if (item.compareTo(node.items[i]) >= 0) i++;
+            }
+            node = node.neighbours[i];
+        }
+        node.insert(node.upperBound(item), item, null);
+        size++;
+    }
+
+    /**
+     * Splits the full child at index i of parentNode.
+     * <br>
+     * A leaf keeps its first minChildren - 1 items and a copy of the first item of the new right leaf
+     * becomes the separator. An internal node moves its median separator up, as in {@link BTree}.
+     * <pre>
+     *        [,A,B,]               [,A,d,B,]
+     *           |         ->          /  \
+     *    [a,b,c,d,e]  (leaf)      [a,b,c] <-> [d,e]
+     * </pre>
+     * @param parentNode the parent of the full node
+     * @param i the index of the full node in the parent
+     */
+    void splitChildNode(BPlusNode<T> parentNode, int i) {
+        BPlusNode<T> node = parentNode.neighbours[i];
+        BPlusNode<T> newNode = new BPlusNode<>(2 * minChildren, node.isLeaf);
+        T separator;
+        if (node.isLeaf) {
+            int moved = node.numItems - (minChildren - 1);
+            System.arraycopy(node.items, minChildren - 1, newNode.items, 0, moved);
+            for (int j = minChildren - 1; j < node.numItems; j++) node.items[j] = null;
+            newNode.numItems = moved;
+            node.numItems = minChildren - 1;
+            separator = newNode.items[0];
+
+            // Link the new leaf in after node
+            newNode.next = node.next;
+            if (node.next != null) node.next.previous = newNode;
+            newNode.previous = node;
+            node.next = newNode;
+        } else {
+            System.arraycopy(node.items, minChildren, newNode.items, 0, minChildren - 1);
+            System.arraycopy(node.neighbours, minChildren, newNode.neighbours, 0, minChildren);
+            separator = node.items[minChildren - 1];
+            for (int j = minChildren - 1; j < node.numItems; j++) node.items[j] = null;
+            for (int j = minChildren; j <= node.numItems; j++) node.neighbours[j] = null;
+            newNode.numItems = minChildren - 1;
+            node.numItems = minChildren - 1;
+        }
+        parentNode.insert(i, separator, newNode);
+    }
+
+    /**
+     * Deletes one occurrence of an item from the tree, if present.
+     * @param item the item to delete
+     * @return whether an item was deleted
+     */
+    public boolean delete(T item) {
+        boolean deleted = delete(root, item);
+        if (!root.isLeaf && root.numItems == 0) root = root.neighbours[0];
+        if (deleted) size--;
+        return deleted;
+    }
+
+    /**
+     * Deletes an item from a subtree, then fixes any child left with too few items on the way back up
+     * by borrowing from or merging with a sibling.
+     * @param node the root of the subtree
+     * @param item the item to delete
+     * @return whether an item was deleted
+     */
+    private boolean delete(BPlusNode<T> node, T item) {
+        int i = node.lowerBound(item);
+        if (node.isLeaf) {
+            if (i < node.numItems && node.items[i].compareTo(item) == 0) {
+                node.remove(i);
+                return true;
+            }
+            return false;
+        }
+        // Items equal to a separator may be on either side of it, so try the next child while that is the case
+        while (i <= node.numItems) {
+            if (delete(node.neighbours[i], item)) {
+                if (node.neighbours[i].numItems < minChildren - 1) rebalance(node, i);
+                return true;
+            }
+            if (i < node.numItems && node.items[i].compareTo(item) == 0) i++;
+            else break;
+        }
+        return false;
+    }
+
+    /**
+     * Tops up the child at index i of a node, which has one item too few
+     */
+    private void rebalance(BPlusNode<T> node, int i) {
+        BPlusNode<T> leftSibling = i > 0 ? node.neighbours[i - 1] : null;
+        BPlusNode<T> rightSibling = i < node.numItems ? node.neighbours[i + 1] : null;
+        if (leftSibling != null && leftSibling.numItems >= minChildren) {
+            borrowFromLeft(node, i);
+        } else if (rightSibling != null && rightSibling.numItems >= minChildren) {
+            borrowFromRight(node, i);
+        } else if (leftSibling != null) {
+            mergeChildNodes(node, i - 1);
+        } else {
+            mergeChildNodes(node, i);
+        }
+    }
+
+    private void borrowFromLeft(BPlusNode<T> node, int i) {
+        BPlusNode<T> childNode = node.neighbours[i];
+        BPlusNode<T> sibling = node.neighbours[i - 1];
+        if (childNode.isLeaf) {
+            // [a,b,c] | [e]  ->  [a,b] | [c,e], separator becomes c
+            childNode.insert(0, sibling.items[sibling.numItems - 1], null);
+            sibling.remove(sibling.numItems - 1);
+            node.items[i - 1] = childNode.items[0];
+        } else {
+            // Rotate through the parent: the separator comes down, the sibling's last separator goes up
+            System.arraycopy(childNode.items, 0, childNode.items, 1, childNode.numItems);
+            System.arraycopy(childNode.neighbours, 0, childNode.neighbours, 1, childNode.numItems + 1);
+            childNode.items[0] = node.items[i - 1];
+            childNode.neighbours[0] = sibling.neighbours[sibling.numItems];
+            childNode.numItems++;
+            node.items[i - 1] = sibling.items[sibling.numItems - 1];
+            sibling.items[sibling.numItems - 1] = null;
+            sibling.neighbours[sibling.numItems] = null;
+            sibling.numItems--;
+        }
+    }
+
+    private void borrowFromRight(BPlusNode<T> node, int i) {
+        BPlusNode<T> childNode = node.neighbours[i];
+        BPlusNode<T> sibling = node.neighbours[i + 1];
+        if (childNode.isLeaf) {
+            // [a] | [c,d,e]  ->  [a,c] | [d,e], separator becomes d
+            childNode.items[childNode.numItems++] = sibling.items[0];
+            sibling.remove(0);
+            node.items[i] = sibling.items[0];
+        } else {
+            childNode.items[childNode.numItems] = node.items[i];
+            childNode.neighbours[childNode.numItems + 1] = sibling.neighbours[0];
+            childNode.numItems++;
+            node.items[i] = sibling.items[0];
+            System.arraycopy(sibling.items, 1, sibling.items, 0, sibling.numItems - 1);
+            System.arraycopy(sibling.neighbours, 1, sibling.neighbours, 0, sibling.numItems);
+            sibling.items[sibling.numItems - 1] = null;
+            sibling.neighbours[sibling.numItems] = null;
+            sibling.numItems--;
+        }
+    }
+
+    /**
+     * Merges the child at index j + 1 into the child at index j and removes the separator between them
+     */
+    private void mergeChildNodes(BPlusNode<T> node, int j) {
+        BPlusNode<T> target = node.neighbours[j];
+        BPlusNode<T> source = node.neighbours[j + 1];
+        if (target.isLeaf) {
+            System.arraycopy(source.items, 0, target.items, target.numItems, source.numItems);
+            target.numItems += source.numItems;
+            // Unlink the source leaf
+            target.next = source.next;
+            if (source.next != null) source.next.previous = target;
+        } else {
+            target.items[target.numItems] = node.items[j];
+            System.arraycopy(source.items, 0, target.items, target.numItems + 1, source.numItems);
+            System.arraycopy(source.neighbours, 0, target.neighbours, target.numItems + 1, source.numItems + 1);
+            target.numItems += source.numItems + 1;
+        }
+        node.remove(j);
+    }
+
+    /**
+     * Searches for an item in the tree
+     * @param item the item to search for
+     * @return an item equal to the given item, or null if there is none
+     */
+    public T search(T item) {
+        BPlusNode<T> leaf = findLeaf(item);
+        int i = leaf.lowerBound(item);
+        if (i == leaf.numItems) {
+            // All items of this leaf are smaller, the next leaf starts with the first greater or equal item
+            leaf = leaf.next;
+            i = 0;
+        }
+        if (leaf != null && i < leaf.numItems && leaf.items[i].compareTo(item) == 0) return leaf.items[i];
+        return null;
+    }
+
+    /**
+     * Descends to the leftmost leaf that could contain an item greater than or equal to the given item
+     */
+    private BPlusNode<T> findLeaf(T item) {
+        BPlusNode<T> node = root;
+        while (!node.isLeaf) node = node.neighbours[node.lowerBound(item)];
+        return node;
+    }
+
+    /**
+     * @return the first leaf of the tree
+     */
+    BPlusNode<T> firstLeaf() {
+        BPlusNode<T> node = root;
+        while (!node.isLeaf) node = node.neighbours[0];
+        return node;
+    }
+
+    /**
+     * @return the last leaf of the tree
+     */
+    BPlusNode<T> lastLeaf() {
+        BPlusNode<T> node = root;
+        while (!node.isLeaf) node = node.neighbours[node.numItems];
+        return node;
+    }
+
+    /**
+     * Returns the items from one item to another, both inclusive, in ascending order.
+     * <br>
+     * The scan descends the tree once to find the start and then follows the leaf links.
+     * Items are produced lazily, so the tree must not be modified while iterating.
+     * @param from the smallest item to return, or null to start from the first item
+     * @param to the largest item to return, or null to go up to the last item
+     * @return the items in range
+     */
+    public Iterable<T> range(T from, T to) {
+        return () -> new LeafIterator(from, to, true);
+    }
+
+    /**
+     * Returns the items from one item to another, both inclusive, in descending order.
+     * @param from the smallest item to return, or null to go down to the first item
+     * @param to the largest item to return, or null to start from the last item
+     * @return the items in range
+     */
+    public Iterable<T> descendingRange(T from, T to) {
+        return () -> new LeafIterator(from, to, false);
+    }
+
+    /**
+     * Iterator that walks the linked leaves in either direction
+     */
+    private class LeafIterator implements Iterator<T> {
+        private final T bound;
+        private final boolean ascending;
+        private BPlusNode<T> leaf;
+        private int index;
+
+        LeafIterator(T from, T to, boolean ascending) {
+            this.ascending = ascending;
+            if (ascending) {
+                bound = to;
+                if (from == null) {
+                    leaf = firstLeaf();
+                    index = 0;
+                } else {
+                    leaf = findLeaf(from);
+                    index = leaf.lowerBound(from);
+                }
+            } else {
+                bound = from;
+                if (to == null) {
+                    leaf = lastLeaf();
+                    index = leaf.numItems - 1;
+                } else {
+                    // Descend to the rightmost leaf that could contain an item less than or equal to the given item
+                    leaf = root;
+                    while (!leaf.isLeaf) leaf = leaf.neighbours[leaf.upperBound(to)];
+                    index = leaf.upperBound(to) - 1;
+                }
+            }
+            skipExhaustedLeaves();
+        }
+
+        private void skipExhaustedLeaves() {
+            if (ascending) {
+                while (leaf != null && index >= leaf.numItems) {
+                    leaf = leaf.next;
+                    index = 0;
+                }
+            } else {
+                while (leaf != null && index < 0) {
+                    leaf = leaf.previous;
+                    if (leaf != null) index = leaf.numItems - 1;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (leaf == null) return false;
+            if (bound == null) return true;
+            int comparison = leaf.items[index].compareTo(bound);
+            return ascending ? comparison <= 0 : comparison >= 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            T item = leaf.items[index];
+            index += ascending ? 1 : -1;
+            skipExhaustedLeaves();
+            return item;
+        }
+    }
+
+    /**
+     * @return all items of the tree in ascending order
+     */
+    public ArrayList<T> getItems() {
+        ArrayList<T> array = new ArrayList<>(size);
+        for (BPlusNode<T> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.numItems; i++) array.add(leaf.items[i]);
+        }
+        return array;
+    }
+
+    /**
+     * Checks that the items are sorted along the leaf links in both directions,
+     * and that every subtree lies between the separators around it.
+     * @throws Exception if the tree is invalid
+     */
+    public void validate() throws Exception {
+        ArrayList<T> array = getItems();
+        for (int i = 0; i < array.size() - 1; i++) {
+            if (array.get(i).compareTo(array.get(i + 1)) > 0) {
+                throw new Exception("B+ Tree invalid: " + array.get(i) + " greater than " + array.get(i + 1));
+            }
+        }
+        if (array.size() != size) throw new Exception("B+ Tree invalid: " + array.size() + " items, expected " + size);
+        int count = 0;
+        for (BPlusNode<T> leaf = lastLeaf(); leaf != null; leaf = leaf.previous) count += leaf.numItems;
+        if (count != size) throw new Exception("B+ Tree invalid: leaf links are inconsistent");
+        validate(root, null, null);
+    }
+
+    private void validate(BPlusNode<T> node, T lower, T upper) throws Exception {
+        for (int i = 0; i < node.numItems; i++) {
+            if ((lower != null && node.items[i].compareTo(lower) < 0) || (upper != null && node.items[i].compareTo(upper) > 0))
+                throw new Exception("B+ Tree invalid: " + node.items[i] + " outside of [" + lower + ", " + upper + "]");
+        }
+        if (node.isLeaf) return;
+        for (int i = 0; i <= node.numItems; i++) {
+            validate(node.neighbours[i], i == 0 ? lower : node.items[i - 1], i == node.numItems ? upper : node.items[i]);
+        }
+    }
+
+    public String toString() {
+        return root.toString();
+    }
+}
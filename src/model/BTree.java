@@ -1,24 +1,60 @@
 package model;
 
+import model.storage.Codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementation of a B Tree
  * <br>
  * Utilises the model.BNode_ class
  * <br>
+ * Supports O(1) snapshots by path copying: after {@link #snapshot()}, the snapshot and the tree share all nodes,
+ * and each later add or delete copies only the nodes on its path (and the siblings it borrows from) before changing them.
+ * Snapshots are never modified by the tree, so they can be read without locks while the tree changes.
+ * <br>
+ * An augmented tree also keeps in every node the number of items of its subtree, and optionally a {@link Monoid}
+ * summary of them, which answers {@link #rank}, {@link #select}, {@link #countRange} and {@link #aggregate}
+ * in O(log n). Adds update the nodes on their path as they walk down; deletes update them on the way back up,
+ * recomputing a node from its children only when its summary can not be undone (e.g. min) or its children changed.
+ * <br>
+ * {@link #addAll} and {@link #deleteAll} apply a sorted batch with one descent per touched node.
+ * <br>
+ * {@link #enableMetrics()} counts operations, splits, merges and borrows and records latencies, see {@link BTreeMetrics}.
+ * <br>
  * <em>Taken and modified from <a href="https://gist.github.com/adderllyer/3bfa2d04200386b5664c">here</a></em>
  * <br>
  * <em>Google is best</em>
  */
 
-public class BTree<T extends Comparable<? super T>> {
+public class BTree<T extends Comparable<? super T>> implements Iterable<T> {
 
     /**
      * The minimum number of children a node in the tree should have
      */
     private int minChildren;
 
+    /**
+     * The default fraction of a node that bulk loading fills,
+     * leaving room so that the first few adds into a node do not immediately split it
+     */
+    public static final double DEFAULT_FILL_FACTOR = 0.75;
+
     /**
      * The root node of the tree
      */
@@ -26,17 +62,226 @@ public class BTree<T extends Comparable<? super T>> {
     private static final int LEFT_CHILD_NODE = 0;
     private static final int RIGHT_CHILD_NODE = 1;
 
+    /**
+     * Source of epochs, unique across all trees so that no two trees (or a tree and its snapshots) own the same nodes
+     */
+    private static final AtomicInteger EPOCHS = new AtomicInteger();
+
+    /**
+     * The epoch of this tree. Nodes with this epoch belong to this tree alone and may be modified in place,
+     * any other node may be shared with a snapshot.
+     */
+    private int epoch = EPOCHS.incrementAndGet();
+
+    /**
+     * Whether every node keeps the size of its subtree
+     */
+    private final boolean augmented;
+
+    /**
+     * The summary kept in every node besides the size, or null
+     */
+    private final Monoid<? super T, Object> monoid;
+
+    /**
+     * The number of levels below the root, kept as the root splits and collapses
+     */
+    private int height = 0;
+
+    /**
+     * Null unless metrics are enabled
+     */
+    private BTreeMetrics metrics;
+
+    /**
+     * Null unless node pooling is enabled
+     */
+    private NodePool pool;
+
+    /**
+     * The compareTo calls of the running delete, added to the metrics once it returns
+     */
+    private long deleteCompares;
+
     /**
      * Constructor
      * @param minChildren the minimum number of children a node can have
      */
     public BTree(int minChildren) {
         this.minChildren = minChildren;
-        root = new BNode(2*minChildren);
-        root.isLeaf = true;
+        this.augmented = false;
+        this.monoid = null;
+        root = newNode(true);
+    }
+
+    /**
+     * Constructor for an augmented tree, which supports rank, select, countRange and aggregate in O(log n)
+     * @param minChildren the minimum number of children a node can have
+     * @param monoid the summary to keep for {@link #aggregate}, or null to keep only the sizes of subtrees
+     */
+    @SuppressWarnings("unchecked")
+    public BTree(int minChildren, Monoid<? super T, ?> monoid) {
+        this.minChildren = minChildren;
+        this.augmented = true;
+        this.monoid = (Monoid<? super T, Object>) monoid;
+        root = newNode(true);
+        summarize(root);
+    }
+
+    /**
+     * Creates a node owned by this tree
+     * @param isLeaf whether the node is a leaf
+     * @return the node
+     */
+    private BNode newNode(boolean isLeaf) {
+        BNode node = pool != null ? pool.take(isLeaf) : null;
+        if (node == null) node = new BNode(2 * minChildren, isLeaf);
+        node.epoch = epoch;
+        return node;
+    }
+
+    /**
+     * Hands a node that was dropped from the tree to the pool, unless it may be shared with a snapshot
+     * @param node the node, which the caller no longer uses
+     */
+    private void release(BNode node) {
+        if (pool != null && node.epoch == epoch) pool.release(node);
     }
 
-    public int getHeight() { return getHeight(root); }
+    /**
+     * Returns a node that can be modified in place, copying it if it may be shared with a snapshot.
+     * The caller must replace its reference to the node with the returned node.
+     * @param node the node
+     * @return the node itself, or a copy owned by this tree
+     */
+    private BNode writable(BNode node) {
+        return node.epoch == epoch ? node : node.copy(epoch);
+    }
+
+    /**
+     * Returns a child of a writable node that can be modified in place, copying it into the parent if necessary
+     * @param parent the parent node, which must already be writable
+     * @param i the index of the child
+     * @return the child node
+     */
+    private BNode writableChild(BNode parent, int i) {
+        BNode child = parent.neighbours[i];
+        if (child.epoch != epoch) {
+            child = child.copy(epoch);
+            parent.neighbours[i] = child;
+        }
+        return child;
+    }
+
+    /**
+     * Takes a snapshot of the tree in O(1).
+     * <br>
+     * The snapshot shares every node with this tree. From then on both trees copy a shared node before changing it,
+     * so later adds and deletes on either tree never show in the other.
+     * Each such change allocates O(height * maxChildren) for the copied path.
+     * @return a tree with the current contents
+     */
+    public BTree<T> snapshot() {
+        BTree<T> snapshot = new BTree<>(this);
+        epoch = EPOCHS.incrementAndGet();
+        return snapshot;
+    }
+
+    /**
+     * Replaces the contents of the tree with the contents of a snapshot in O(1), e.g. to undo changes.
+     * Afterwards the tree and the snapshot share all nodes, and neither sees later changes to the other.
+     * @param snapshot a snapshot taken from a tree with the same minimum number of children and augmentation
+     * @throws IllegalArgumentException if the minimum number of children or the augmentation differs
+     */
+    public void restore(BTree<T> snapshot) {
+        if (snapshot.minChildren != minChildren)
+            throw new IllegalArgumentException("Snapshot has minChildren " + snapshot.minChildren + ", expected " + minChildren);
+        if (snapshot.augmented != augmented || snapshot.monoid != monoid)
+            throw new IllegalArgumentException("Snapshot is augmented differently");
+        root = snapshot.root;
+        height = snapshot.height;
+        epoch = EPOCHS.incrementAndGet();
+        snapshot.epoch = EPOCHS.incrementAndGet();
+        if (metrics != null) measureShape(metrics);
+    }
+
+    /**
+     * Constructor for snapshots, sharing the nodes of another tree
+     */
+    private BTree(BTree<T> tree) {
+        this.minChildren = tree.minChildren;
+        this.augmented = tree.augmented;
+        this.monoid = tree.monoid;
+        this.root = tree.root;
+        this.height = tree.height;
+    }
+
+    /**
+     * Starts collecting metrics, if they are not collected yet. Counts the items and nodes once, in O(n).
+     * @return the metrics of the tree
+     */
+    public BTreeMetrics enableMetrics() {
+        if (metrics == null) {
+            BTreeMetrics metrics = new BTreeMetrics(2 * minChildren - 1);
+            measureShape(metrics);
+            this.metrics = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops collecting metrics. Unregister them first if they were published.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return the metrics, or null if they are not enabled
+     */
+    public BTreeMetrics getMetrics() { return metrics; }
+
+    /**
+     * Starts reusing the nodes dropped by merges and root collapses for later splits, if it does not yet.
+     * Iterators must not be used across changes to a tree with a pool, as their nodes may be reused.
+     * @param capacity the number of leaves and the number of internal nodes to keep at most
+     * @return the pool of the tree
+     */
+    public NodePool enableNodePool(int capacity) {
+        if (pool == null) pool = new NodePool(capacity);
+        return pool;
+    }
+
+    /**
+     * Stops reusing nodes and drops the pooled ones
+     */
+    public void disableNodePool() {
+        pool = null;
+    }
+
+    /**
+     * @return the node pool, or null if it is not enabled
+     */
+    public NodePool getNodePool() { return pool; }
+
+    private void measureShape(BTreeMetrics metrics) {
+        long[] counts = new long[2];
+        countNodes(root, counts);
+        metrics.setShape(counts[0], counts[1], height);
+    }
+
+    private static void countNodes(BNode node, long[] counts) {
+        counts[0] += node.numItems;
+        counts[1]++;
+        if (!node.isLeaf) {
+            for (int i = 0; i <= node.numItems; i++) countNodes(node.neighbours[i], counts);
+        }
+    }
+
+    /**
+     * @return the number of levels below the root, in O(1)
+     */
+    public int getHeight() { return height; }
 
     public int getHeight(BNode<T> node) {
         int height = 0;
@@ -51,22 +296,253 @@ public class BTree<T extends Comparable<? super T>> {
     }
 
     public void add(T item) {
-        BNode rootNode = root;
+        BTreeMetrics metrics = this.metrics;
+        long start = metrics != null ? metrics.start() : 0;
+        BNode rootNode = writable(root);
+        root = rootNode;
         if (rootNode.numItems == (2 * minChildren - 1)) {
-            BNode newRootNode = new BNode(2*minChildren);
+            BNode newRootNode = newNode(false);
             root = newRootNode;
-            newRootNode.isLeaf = false;
             root.neighbours[0] = rootNode;
+            height++;
+            if (metrics != null) {
+                metrics.nodeCount.increment();
+                metrics.height = height;
+            }
             splitChildNode(newRootNode, 0, rootNode); // Split rootNode and move its median (middle) item up into newRootNode.
+            summarize(newRootNode);
             insertIntoNonFullNode(newRootNode, item); // Insert the item into the B-Tree with root newRootNode.
         } else {
             insertIntoNonFullNode(rootNode, item); // Insert the item into the B-Tree with root rootNode.
         }
+        if (metrics != null) metrics.added(start);
+    }
+
+    /**
+     * Replaces the contents of the tree with the items of a sorted iterator.
+     * <br>
+     * Instead of adding the items one at a time, leaves are packed left to right and each level of internal nodes
+     * is built from the level below it, so the whole tree is built in O(n) with no splits.
+     * Equal items keep the order of the iterator.
+     *
+     * @param sorted an iterator over the items in ascending order
+     * @param fillFactor the fraction (0, 1] of each node to fill, nodes never have fewer than the minimum items
+     * @throws IllegalArgumentException if the items are not sorted or the fill factor is out of range
+     */
+    public void bulkLoad(Iterator<T> sorted, double fillFactor) {
+        ArrayList<T> items = new ArrayList<>();
+        while (sorted.hasNext()) items.add(sorted.next());
+        bulkLoad((T[]) items.toArray(new Comparable[0]), items.size(), fillFactor, null);
+    }
+
+    /**
+     * Replaces the contents of the tree with the first items of a sorted array, building it as
+     * {@link #bulkLoad(Iterator, double)} does.
+     * <br>
+     * With a fork-join pool, the nodes of each level are built in parallel, every task building a contiguous range of
+     * them, as the items and children of a node follow from its index alone. The tree is the same either way.
+     *
+     * @param sorted the items in ascending order, which the tree keeps no reference to
+     * @param length the number of items to take from the array
+     * @param fillFactor the fraction (0, 1] of each node to fill, nodes never have fewer than the minimum items
+     * @param forkJoinPool the pool to build levels in, or null to build them on this thread
+     * @throws IllegalArgumentException if the items are not sorted or the fill factor is out of range
+     */
+    public void bulkLoad(T[] sorted, int length, double fillFactor, ForkJoinPool forkJoinPool) {
+        if (!(fillFactor > 0 && fillFactor <= 1))
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        // The node pool is not thread safe, so parallel builds take new nodes
+        boolean pooled = forkJoinPool == null;
+
+        int maxItems = 2 * minChildren - 1;
+        int targetItems = Math.max(Math.max(1, minChildren - 1), Math.min(maxItems, (int) Math.round(fillFactor * maxItems)));
+
+        // Leaf level: k leaves hold all items except the k - 1 separators between them
+        //  items:      a b c d e f g h i
+        //  leaves:   [a,b,c] d [e,f,g] h [i,...]
+        int numLeaves = numNodes(length + 1, targetItems + 1, minChildren);
+        BNode[] leaves = new BNode[numLeaves];
+        Object[] leafSeparators = new Object[numLeaves - 1];
+        int leafItems = length - (numLeaves - 1);
+        int leafBase = leafItems / numLeaves;
+        int leafExtra = leafItems % numLeaves;
+        buildRange(forkJoinPool, numLeaves, (lo, hi) -> {
+            for (int j = lo; j < hi; j++) {
+                int start = j * (leafBase + 1) + Math.min(j, leafExtra);
+                int count = leafBase + (j < leafExtra ? 1 : 0);
+                // Each leaf checks the order of its items and of the separators on either side
+                for (int i = Math.max(1, start); i <= Math.min(length - 1, start + count); i++) {
+                    if (sorted[i - 1].compareTo(sorted[i]) > 0)
+                        throw new IllegalArgumentException("Items are not sorted: " + sorted[i - 1] + " greater than " + sorted[i]);
+                }
+                BNode leaf = pooled ? newNode(true) : new BNode(2 * minChildren, true);
+                leaf.epoch = epoch;
+                leaf.numItems = count;
+                System.arraycopy(sorted, start, leaf.items, 0, count);
+                summarize(leaf);
+                leaves[j] = leaf;
+                if (j < numLeaves - 1) leafSeparators[j] = sorted[start + count];
+            }
+        });
+
+        // Internal levels: group the nodes of the level below, the separators between groups move up a level
+        BNode[] level = leaves;
+        Object[] separators = leafSeparators;
+        long numNodes = numLeaves;
+        int levels = 0;
+        while (level.length > 1) {
+            BNode[] children = level;
+            Object[] childSeparators = separators;
+            int numParents = numNodes(children.length, targetItems + 1, minChildren);
+            BNode[] parents = new BNode[numParents];
+            Object[] parentSeparators = new Object[numParents - 1];
+            int base = children.length / numParents;
+            int extra = children.length % numParents;
+            buildRange(forkJoinPool, numParents, (lo, hi) -> {
+                for (int j = lo; j < hi; j++) {
+                    int first = j * base + Math.min(j, extra);
+                    int count = base + (j < extra ? 1 : 0);
+                    BNode parent = pooled ? newNode(false) : new BNode(2 * minChildren, false);
+                    parent.epoch = epoch;
+                    System.arraycopy(children, first, parent.neighbours, 0, count);
+                    System.arraycopy(childSeparators, first, parent.items, 0, count - 1);
+                    parent.numItems = count - 1;
+                    summarize(parent);
+                    parents[j] = parent;
+                    if (j < numParents - 1) parentSeparators[j] = childSeparators[first + count - 1];
+                }
+            });
+            level = parents;
+            separators = parentSeparators;
+            numNodes += numParents;
+            levels++;
+        }
+        root = level[0];
+        height = levels;
+        if (metrics != null) metrics.setShape(length, numNodes, height);
+    }
+
+    /**
+     * Builds the nodes of a level with indices in [lo, hi)
+     */
+    private interface LevelBuilder {
+        void build(int lo, int hi);
+    }
+
+    /**
+     * Builds nodes [0, count) of a level, in tasks of contiguous ranges if there is a pool
+     */
+    private static void buildRange(ForkJoinPool forkJoinPool, int count, LevelBuilder builder) {
+        if (forkJoinPool == null || count <= BuildTask.NODES) builder.build(0, count);
+        else forkJoinPool.invoke(new BuildTask(builder, 0, count));
+    }
+
+    private static final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of nodes a task builds without splitting, enough to outweigh the cost of a task
+         */
+        static final int NODES = 64;
+
+        private final LevelBuilder builder;
+        private final int lo;
+        private final int hi;
+
+        BuildTask(LevelBuilder builder, int lo, int hi) {
+            this.builder = builder;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= NODES) {
+                builder.build(lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BuildTask(builder, lo, mid), new BuildTask(builder, mid, hi));
+        }
+    }
+
+    /**
+     * Finds the number of nodes to divide a level of a bulk loaded tree into.
+     * A level of n nodes (or items) needs numNodes - 1 separators between nodes,
+     * so each node gets (total / numNodes) children, between minChildren and 2 * minChildren.
+     * @param total the number of children (items + 1 for leaves) to divide
+     * @param target the number of children each node should have
+     * @param minChildren the minimum number of children of a node
+     * @return the number of nodes
+     */
+    private static int numNodes(int total, int target, int minChildren) {
+        int nodes = (total + target - 1) / target;
+        // Use fewer, fuller nodes if the target would leave nodes with less than the minimum
+        while (nodes > 1 && total / nodes < minChildren) nodes--;
+        return Math.max(1, nodes);
+    }
+
+    /**
+     * Writes the nodes of the tree as they are, so that {@link #readFrom} rebuilds the same tree without comparing items.
+     * <br>
+     * Layout, with the nodes in pre-order and leaves known by their depth:
+     * <pre>
+     * | minChildren (int) | height (int) | node: | numItems (int) | item | ... | children... |
+     * </pre>
+     * See {@link model.storage.BTreeSnapshot} for files.
+     * @param out the output
+     * @param codec converts items to bytes
+     * @throws IOException if the output can not be written
+     */
+    public void writeTo(DataOutput out, Codec<? super T> codec) throws IOException {
+        out.writeInt(minChildren);
+        out.writeInt(height);
+        writeNode(root, out, codec);
+    }
+
+    private void writeNode(BNode node, DataOutput out, Codec<? super T> codec) throws IOException {
+        out.writeInt(node.numItems);
+        for (int i = 0; i < node.numItems; i++) codec.write((T) node.items[i], out);
+        if (!node.isLeaf) {
+            for (int i = 0; i <= node.numItems; i++) writeNode(node.neighbours[i], out, codec);
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #writeTo}, with the same minChildren and nodes. The tree is not augmented,
+     * even if the one written was.
+     * @param in the input
+     * @param codec converts bytes to items
+     * @return the tree
+     * @throws IOException if the input can not be read or does not hold a tree
+     */
+    public static <T extends Comparable<? super T>> BTree<T> readFrom(DataInput in, Codec<T> codec) throws IOException {
+        int minChildren = in.readInt();
+        int height = in.readInt();
+        if (minChildren < 2 || minChildren > 1 << 20 || height < 0 || height > 64)
+            throw new IOException("Not a tree: minChildren " + minChildren + ", height " + height);
+        BTree<T> tree = new BTree<>(minChildren);
+        tree.root = tree.readNode(in, codec, height);
+        tree.height = height;
+        return tree;
+    }
+
+    private BNode readNode(DataInput in, Codec<T> codec, int depth) throws IOException {
+        BNode node = newNode(depth == 0);
+        int numItems = in.readInt();
+        if (numItems < 0 || numItems >= 2 * minChildren) throw new IOException("Not a tree: node of " + numItems + " items");
+        for (int i = 0; i < numItems; i++) node.items[i] = codec.read(in);
+        node.numItems = numItems;
+        if (depth > 0) {
+            for (int i = 0; i <= numItems; i++) node.neighbours[i] = readNode(in, codec, depth - 1);
+        }
+        return node;
     }
 
     /**
      * Splits a given child node and places the median child node (which moves up one level)
-     * in the given parent node at a specified index i
+     * in the given parent node at a specified index i.
+     * Both nodes must be writable.
      * @param parentNode the given parent node
      * @param i the specified index i
      * @param node the given child node
@@ -77,8 +553,7 @@ public class BTree<T extends Comparable<? super T>> {
     void splitChildNode(BNode parentNode, int i, BNode node) {
         // Create new child node
         // -> [,a,b,c,d,e,] & []
-        BNode newNode = new BNode(2*minChildren);
-        newNode.isLeaf = node.isLeaf;
+        BNode newNode = newNode(node.isLeaf);
         newNode.numItems = minChildren - 1;
 
         // Copy half of child node into new node
@@ -119,44 +594,114 @@ public class BTree<T extends Comparable<? super T>> {
         parentNode.items[i] = node.items[minChildren - 1];
         node.items[minChildren - 1] = null;
         parentNode.numItems++;
+
+        // The parent keeps the same items below it, only the two halves change
+        summarize(node);
+        summarize(newNode);
+        if (metrics != null) {
+            metrics.splits.increment();
+            metrics.nodeCount.increment();
+        }
     }
 
     /**
-     * Inserts an item into a subtree given the subtree's root node
-     * @param node the subtree's root node
+     * Inserts an item into a subtree given the subtree's root node.
+     * Walks down in a loop, splitting full children on the way, so no recursion is needed.
+     * @param node the subtree's root node, which must be writable
      * @param item the item to be inserted
      */
     void insertIntoNonFullNode(BNode node, T item) {
-        int i = node.numItems - 1;
-        if (node.isLeaf) {
-            // Since node is not a full node insert the new element into its proper place within node.
-            // [a, b, c, d, null] --> [a, b, X, c, d]
-            while (i >= 0 && item.compareTo((T) node.items[i]) < 0) {
-                node.items[i + 1] = node.items[i];
-                i--;
-            }
-            i++;
-            node.items[i] = item;
-            node.numItems++;
-        } else {
-            // Move back from the last item of node until we find the child pointer to the node
-            // that is the root node of the subtree where the new element should be placed.
-            while (i >= 0 && item.compareTo((T) node.items[i]) < 0){
-                i--;
-            }
-            i++;
-            if (node.neighbours[i].numItems == (2 * minChildren - 1)) {
-                splitChildNode(node, i, node.neighbours[i]);
+        Object measure = monoid != null ? monoid.measure(item) : null;
+        int compares = 0;
+        while (!node.isLeaf) {
+            grow(node, measure);
+            // Find the child pointer to the node that is the root node of the subtree where the new element should be placed.
+            int i = node.upperBound(item);
+            compares += BNode.compares(node.numItems, i);
+            BNode childNode = writableChild(node, i);
+            if (childNode.numItems == (2 * minChildren - 1)) {
+                splitChildNode(node, i, childNode);
                 if (item.compareTo((T) node.items[i]) > 0) {
                     i++;
                 }
+                // Both halves of the split belong to this tree
+                childNode = node.neighbours[i];
+            }
+            node = childNode;
+        }
+        // Since node is not a full node insert the new element into its proper place within node.
+        // [a, b, c, d, null] --> [a, b, X, c, d]
+        int i = node.upperBound(item);
+        System.arraycopy(node.items, i, node.items, i + 1, node.numItems - i);
+        if (metrics != null) metrics.compares.add(compares + BNode.compares(node.numItems, i));
+        node.items[i] = item;
+        node.numItems++;
+        grow(node, measure);
+    }
+
+    /**
+     * Counts an item that is being added below a node into the size and summary of the node
+     * @param node the node, which must be writable
+     * @param measure the measure of the item
+     */
+    private void grow(BNode node, Object measure) {
+        if (!augmented) return;
+        node.size++;
+        if (monoid != null) node.summary = monoid.combine(node.summary, measure);
+    }
+
+    /**
+     * Updates the size and summary of a node after an item was deleted below it.
+     * If the monoid can not undo the item (a min loses its value), the summary is recomputed from the children.
+     * @param node the node, which must be writable
+     * @param removed the deleted item
+     */
+    private void shrink(BNode node, T removed) {
+        if (!augmented) return;
+        if (monoid != null) {
+            Object summary = monoid.difference(node.summary, monoid.measure(removed));
+            if (summary == null) {
+                summarize(node);
+                return;
+            }
+            node.summary = summary;
+        }
+        node.size--;
+    }
+
+    /**
+     * Recomputes the size and summary of a node from its items and the sizes and summaries of its children
+     * @param node the node, which must be writable
+     */
+    private void summarize(BNode node) {
+        if (!augmented) return;
+        int size = node.numItems;
+        Object summary = monoid != null ? monoid.identity() : null;
+        for (int i = 0; i <= node.numItems; i++) {
+            if (!node.isLeaf) {
+                BNode child = node.neighbours[i];
+                size += child.size;
+                if (monoid != null) summary = monoid.combine(summary, child.summary);
             }
-            insertIntoNonFullNode(node.neighbours[i], item);
+            if (i < node.numItems && monoid != null) summary = monoid.combine(summary, monoid.measure((T) node.items[i]));
         }
+        node.size = size;
+        node.summary = summary;
     }
 
     public void delete(T item) {
-        delete(root, item);
+        BTreeMetrics metrics = this.metrics;
+        long start = metrics != null ? metrics.start() : 0;
+        BNode top = writable(root);
+        root = top;
+        T removed = delete(top, item);
+        // A collapsed root is still updated on the way back up, so it is released only now
+        if (root != top) release(top);
+        if (metrics != null) {
+            metrics.compares.add(deleteCompares);
+            deleteCompares = 0;
+            metrics.deleted(start, removed != null);
+        }
     }
 
     /**
@@ -173,22 +718,29 @@ public class BTree<T extends Comparable<? super T>> {
      *      we find the smallest index of the item i larger than it,
      *      and we restructure the nodes so that we can delete the item in one downward pass
      *
-     * @param node the current node we are checking
+     * @param node the current node we are checking, which must be writable
      * @param item the item to delete
+     * @return the deleted item, or null if there was none
      */
-    public void delete(BNode node, T item) {
+    public T delete(BNode node, T item) {
+        // One search per node: i is where the item is, or else the child whose subtree would hold it
+        int i = node.lowerBound(item);
+        boolean found = node.matches(i, item);
+        // matches() compares once more
+        if (metrics != null) deleteCompares += BNode.compares(node.numItems, i) + (i < node.numItems ? 1 : 0);
+        T removed = null;
         if (node.isLeaf) {
             // [a, b, X, c, d] --> [a, b, c, d, null]
-            int i;
-            if ((i = node.binarySearch(item)) != -1) {
+            if (found) {
+                removed = (T) node.items[i];
                 node.remove(i, LEFT_CHILD_NODE);
             }
         } else {
-            int i;
-            if ((i = node.binarySearch(item)) != -1) {
+            if (found) {
                 BNode leftChildNode = node.neighbours[i];
                 BNode rightChildNode = node.neighbours[i + 1];
                 if (leftChildNode.numItems >= minChildren) {
+                    leftChildNode = writableChild(node, i);
                     //  E.g. To remove 500, replace with predecessor 499
                     //       then find 499 to delete later
                     //    [1, 2, 500, ...]     -->   [1, 2, 499, ...]
@@ -200,13 +752,20 @@ public class BTree<T extends Comparable<? super T>> {
                     //        [..., 499, null] -->       [..., null, null]
                     BNode predecessorNode = leftChildNode;
                     BNode erasureNode = predecessorNode;
+                    ArrayList<BNode> path = augmented ? new ArrayList<>() : null;
                     while (!predecessorNode.isLeaf) {
                         erasureNode = predecessorNode;
-                        predecessorNode = predecessorNode.neighbours[predecessorNode.numItems];
+                        if (path != null) path.add(erasureNode);
+                        predecessorNode = writableChild(predecessorNode, predecessorNode.numItems);
                     }
+                    removed = (T) node.items[i];
                     if(predecessorNode.numItems > 0) node.items[i] = predecessorNode.items[predecessorNode.numItems - 1];
-                    delete(erasureNode, (T) node.items[i]);
+                    // The subtrees below lose the predecessor, this subtree loses the item it replaced
+                    T predecessor = delete(erasureNode, (T) node.items[i]);
+                    if (predecessor == null) removed = null;
+                    else shrinkPath(path, predecessor);
                 } else if (rightChildNode.numItems >= minChildren) {
+                    rightChildNode = writableChild(node, i + 1);
                     //  E.g. To remove 500, replace with successor 501
                     //       then find 501 to delete later
                     //    [1, 2, 500, ...]     -->   [1, 2, 501, ...]
@@ -218,12 +777,17 @@ public class BTree<T extends Comparable<? super T>> {
                     //          [501, 502, ...] -->       [502, ...]
                     BNode successorNode = rightChildNode;
                     BNode erasureNode = successorNode;
+                    ArrayList<BNode> path = augmented ? new ArrayList<>() : null;
                     while (!successorNode.isLeaf) {
                         erasureNode = successorNode;
-                        successorNode = successorNode.neighbours[0];
+                        if (path != null) path.add(erasureNode);
+                        successorNode = writableChild(successorNode, 0);
                     }
+                    removed = (T) node.items[i];
                     node.items[i] = successorNode.items[0];
-                    delete(erasureNode, (T) node.items[i]);
+                    T successor = delete(erasureNode, (T) node.items[i]);
+                    if (successor == null) removed = null;
+                    else shrinkPath(path, successor);
                 } else {
                     // E.g.   [12, 30, 42, 55, 78] and minChildren = 2, item = 42
                     //                /  \
@@ -241,17 +805,20 @@ public class BTree<T extends Comparable<? super T>> {
                     //
                     // then we run delete on * node...
 
+                    // The right child is dropped, so only the left child needs to be writable
+                    leftChildNode = writableChild(node, i);
                     int medianId = mergeNodes(leftChildNode, rightChildNode);
                     moveItem(node, i, RIGHT_CHILD_NODE, leftChildNode, medianId); // Delete i's right child pointer from node.
-                    delete(leftChildNode, item);
+                    summarize(leftChildNode);
+                    removed = delete(leftChildNode, item);
                 }
             } else {
-                i = node.subtreeRootNodeIndex(item);
-                BNode childNode = node.neighbours[i]; // childNode is i-th child of node.
+                BNode childNode = writableChild(node, i); // childNode is i-th child of node.
                 if (childNode.numItems == minChildren - 1) {
                     BNode leftChildSibling = (i - 1 >= 0) ? node.neighbours[i - 1] : null;
                     BNode rightChildSibling = (i  + 1 <= node.numItems) ? node.neighbours[i + 1] : null;
                     if (leftChildSibling != null && leftChildSibling.numItems >= minChildren) {
+                        leftChildSibling = writableChild(node, i - 1);
                         // E.g. To delete 51, i=3
                         //
                         //                   [30, 40, 50, 60, null]
@@ -277,7 +844,10 @@ public class BTree<T extends Comparable<? super T>> {
                         childNode.numItems++;
                         node.items[i - 1] = leftChildSibling.items[leftChildSibling.numItems - 1];
                         leftChildSibling.remove(leftChildSibling.numItems - 1, RIGHT_CHILD_NODE);
+                        summarize(leftChildSibling);
+                        if (metrics != null) metrics.borrows.increment();
                     } else if (rightChildSibling != null && rightChildSibling.numItems >= minChildren) {
+                        rightChildSibling = writableChild(node, i + 1);
                         // E.g. To delete 49, i=2
                         //
                         //                   [30, 40, 50, 60, null]
@@ -301,6 +871,8 @@ public class BTree<T extends Comparable<? super T>> {
                         childNode.numItems++;
                         node.items[i] = rightChildSibling.items[0];
                         rightChildSibling.remove(0, LEFT_CHILD_NODE);
+                        summarize(rightChildSibling);
+                        if (metrics != null) metrics.borrows.increment();
                     } else {
                         if (leftChildSibling != null) {
                             // E.g. To delete 51, i=3
@@ -344,11 +916,26 @@ public class BTree<T extends Comparable<? super T>> {
                             moveItem(node, i, RIGHT_CHILD_NODE, childNode, medianId);
                         }
                     }
+                    // The child took an item and maybe a subtree from its sibling or parent
+                    summarize(childNode);
                 }
                 // If merging is not an option, just keep looking downwards
-                delete(childNode, item);
+                removed = delete(childNode, item);
             }
         }
+        if (removed != null) shrink(node, removed);
+        return removed;
+    }
+
+    /**
+     * Updates the nodes walked down to a predecessor or successor after it was deleted from the last of them
+     * @param path the nodes from the top, or null if the tree is not augmented
+     * @param removed the predecessor or successor
+     */
+    private void shrinkPath(ArrayList<BNode> path, T removed) {
+        if (path == null) return;
+        // The last node updated itself
+        for (int j = path.size() - 2; j >= 0; j--) shrink(path.get(j), removed);
     }
 
     /**
@@ -410,6 +997,11 @@ public class BTree<T extends Comparable<? super T>> {
             }
         }
         target.numItems += source.numItems;
+        if (metrics != null) {
+            metrics.merges.increment();
+            metrics.nodeCount.decrement();
+        }
+        release(source);
         return medianId;
     }
 
@@ -430,71 +1022,683 @@ public class BTree<T extends Comparable<? super T>> {
 
         if (source == root && source.numItems == 0) {
             root = target;
+            height--;
+            if (metrics != null) {
+                metrics.nodeCount.decrement();
+                metrics.height = height;
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of items with one descent per touched node.
+     * <br>
+     * The batch is sorted and each node passes every run of items that falls between two of its separators down to
+     * the child that holds them, so a node is visited, and split, at most once however many of the items land in it.
+     * A node is only rebuilt if it overflows or one of its children was split.
+     * A node that overflows is split into as many nodes as it needs, filled as {@link #DEFAULT_FILL_FACTOR} fills a
+     * bulk load, and the separators between them go to the parent with the rest of its items.
+     * Items equal to items already in the tree go after them, as with {@link #add}.
+     * <br>
+     * The metrics count each item as an add, but do not time them or count their compares.
+     * @param items the items, in any order
+     */
+    public void addAll(Collection<? extends T> items) {
+        Object[] batch = items.toArray();
+        if (batch.length == 0) return;
+        Arrays.sort(batch);
+        BTreeMetrics metrics = this.metrics;
+        root = writable(root);
+        Split split = addRun(root, batch, 0, batch.length);
+        // The root split: build levels above it until one node holds them
+        while (split != null) {
+            Split parents = new Split();
+            int pieces = distribute(new BNode[0], splitPieces(split.items.size()), false, split.items, split.nodes, parents.items, parents.nodes);
+            if (metrics != null) metrics.splits.add(pieces - 1);
+            height++;
+            if (pieces == 1) root = parents.nodes.get(0);
+            split = pieces > 1 ? parents : null;
+        }
+        if (metrics != null) {
+            metrics.adds.add(batch.length);
+            metrics.itemCount.add(batch.length);
+            metrics.height = height;
         }
     }
 
+    /**
+     * The nodes a batch split a node into, the node itself first, and the items between them
+     */
+    private class Split {
+        final ArrayList<T> items = new ArrayList<>();
+        final ArrayList<BNode> nodes = new ArrayList<>();
+    }
+
+    /**
+     * Adds a sorted run of items below a node
+     * @param node the node, which must be writable
+     * @param batch the sorted batch
+     * @param lo the index of the first item of the run
+     * @param hi the index after the last item of the run
+     * @return the nodes the node was split into, or null if it holds all its items
+     */
+    private Split addRun(BNode node, Object[] batch, int lo, int hi) {
+        int n = node.numItems;
+        ArrayList<T> items;
+        ArrayList<BNode> children = null;
+        if (node.isLeaf) {
+            int total = n + hi - lo;
+            if (total <= 2 * minChildren - 1) {
+                // Insert the run from the back, each item after the ones equal to it and before those it passed.
+                // The leaf is scanned like BNode scans small nodes, and from the back it is scanned at most once
+                int i = n;
+                for (int j = hi - 1; j >= lo; j--) {
+                    T item = (T) batch[j];
+                    int position = i;
+                    while (position > 0 && ((T) node.items[position - 1]).compareTo(item) > 0) position--;
+                    System.arraycopy(node.items, position, node.items, position + j - lo + 1, i - position);
+                    node.items[position + j - lo] = item;
+                    i = position;
+                }
+                node.numItems = total;
+                summarize(node);
+                return null;
+            }
+            items = new ArrayList<>(total);
+            int i = 0;
+            int j = lo;
+            while (i < n || j < hi) {
+                if (j == hi || (i < n && ((T) node.items[i]).compareTo((T) batch[j]) <= 0)) items.add((T) node.items[i++]);
+                else items.add((T) batch[j++]);
+            }
+        } else {
+            // Child i gets the items from separator i - 1 up to, but not including, separator i.
+            // The items and children of the node are only listed once a child splits, from the untouched ones on
+            items = null;
+            int listed = 0;
+            int j = lo;
+            while (j < hi) {
+                int i = node.upperBound((T) batch[j]);
+                int end = i < n ? lowerBound(batch, j + 1, hi, (T) node.items[i]) : hi;
+                Split split = addRun(writableChild(node, i), batch, j, end);
+                if (split != null) {
+                    if (items == null) {
+                        items = new ArrayList<>(n + split.items.size());
+                        children = new ArrayList<>(n + 1 + split.items.size());
+                    }
+                    for (; listed < i; listed++) {
+                        children.add(node.neighbours[listed]);
+                        items.add((T) node.items[listed]);
+                    }
+                    children.addAll(split.nodes);
+                    items.addAll(split.items);
+                    if (i < n) items.add((T) node.items[i]);
+                    listed = i + 1;
+                }
+                j = end;
+            }
+            if (items == null) {
+                summarize(node);
+                return null;
+            }
+            for (; listed <= n; listed++) {
+                children.add(node.neighbours[listed]);
+                if (listed < n) items.add((T) node.items[listed]);
+            }
+        }
+        Split split = new Split();
+        int pieces = distribute(new BNode[]{node}, splitPieces(items.size()), node.isLeaf, items, children, split.items, split.nodes);
+        if (pieces == 1) return null;
+        if (metrics != null) metrics.splits.add(pieces - 1);
+        return split;
+    }
+
+    /**
+     * @param count the number of items a node has to hold
+     * @return 1 if they fit in a node, otherwise the number of nodes to split them into, filled as a bulk load is
+     */
+    private int splitPieces(int count) {
+        int maxItems = 2 * minChildren - 1;
+        if (count <= maxItems) return 1;
+        int targetItems = Math.max(minChildren - 1, (int) Math.round(DEFAULT_FILL_FACTOR * maxItems));
+        return numNodes(count + 1, targetItems + 1, minChildren);
+    }
+
+    /**
+     * Lays out a sequence of items, and of the children between them, over a number of nodes.
+     * The given nodes are filled first and released if they are not needed, the rest are new.
+     * Every node is summarized once its children are in place.
+     * @param reuse writable nodes to fill
+     * @param pieces the number of nodes
+     * @param isLeaf whether the nodes are leaves
+     * @param items the items
+     * @param children the children, one more than the items, or null for leaves
+     * @param outItems where the items between the nodes go
+     * @param outChildren where the nodes go
+     * @return the number of nodes
+     */
+    private int distribute(BNode[] reuse, int pieces, boolean isLeaf, ArrayList<T> items, ArrayList<BNode> children,
+                           ArrayList<T> outItems, ArrayList<BNode> outChildren) {
+        int kept = items.size() - (pieces - 1);
+        int index = 0;
+        for (int k = 0; k < pieces; k++) {
+            BNode node = k < reuse.length ? reuse[k] : newNode(isLeaf);
+            int n = kept / pieces + (k < kept % pieces ? 1 : 0);
+            for (int j = 0; j < n; j++) node.items[j] = items.get(index + j);
+            Arrays.fill(node.items, n, node.items.length, null);
+            if (!isLeaf) {
+                for (int j = 0; j <= n; j++) node.neighbours[j] = children.get(index + j);
+                Arrays.fill(node.neighbours, n + 1, node.neighbours.length, null);
+            }
+            node.numItems = n;
+            summarize(node);
+            outChildren.add(node);
+            index += n;
+            if (k < pieces - 1) outItems.add(items.get(index++));
+        }
+        for (int k = pieces; k < reuse.length; k++) release(reuse[k]);
+        if (metrics != null) metrics.nodeCount.add(pieces - reuse.length);
+        return pieces;
+    }
+
+    /**
+     * Deletes one occurrence of each item of a batch with one descent per touched node.
+     * <br>
+     * The batch is sorted and routed down the tree like {@link #addAll}. Leaves drop their items in one pass, and a
+     * separator that is deleted is replaced by its predecessor or successor once its subtrees are done.
+     * On the way back up, each node tops up the children the batch left with fewer than minChildren - 1 items
+     * by merging them with, or sharing the items of, a sibling, so each node is merged or split at most once more.
+     * <br>
+     * Equal items of the batch follow the first of them to one side of a separator; those not found there go down
+     * again in another pass, so the tree ends up as if each item had been deleted with {@link #delete}.
+     * The metrics count each item as a delete, but do not time them or count their compares.
+     * @param items the items, in any order
+     */
+    public void deleteAll(Collection<? extends T> items) {
+        Object[] batch = items.toArray();
+        if (batch.length == 0) return;
+        Arrays.sort(batch);
+        BTreeMetrics metrics = this.metrics;
+        int removed = 0;
+        Object[] run = batch;
+        while (true) {
+            ArrayList<T> missed = new ArrayList<>();
+            root = writable(root);
+            int pass = deleteRun(root, run, 0, run.length, missed);
+            while (root.numItems == 0 && !root.isLeaf) {
+                BNode top = root;
+                root = top.neighbours[0];
+                release(top);
+                height--;
+                if (metrics != null) metrics.nodeCount.decrement();
+            }
+            removed += pass;
+            // The first of equal items always finds one if there is one, so a pass that deleted nothing is the last
+            if (pass == 0 || missed.isEmpty()) break;
+            run = missed.toArray();
+        }
+        if (metrics != null) {
+            metrics.deletes.add(batch.length);
+            metrics.itemCount.add(-removed);
+            metrics.height = height;
+        }
+    }
+
+    /**
+     * Deletes a sorted run of items below a node, leaving the node with children that have at least
+     * minChildren - 1 items, or with a single child
+     * @param node the node, which must be writable
+     * @param batch the sorted batch
+     * @param lo the index of the first item of the run
+     * @param hi the index after the last item of the run
+     * @param missed where the items that were not found go
+     * @return the number of items deleted
+     */
+    private int deleteRun(BNode node, Object[] batch, int lo, int hi, ArrayList<T> missed) {
+        int n = node.numItems;
+        int removed = 0;
+        int j = lo;
+        if (node.isLeaf) {
+            // The items before the first one of the run stay where they are, and so do those after the last
+            int kept = node.lowerBound((T) batch[lo]);
+            int i = kept;
+            for (; i < n && j < hi; i++) {
+                T item = (T) node.items[i];
+                while (j < hi && ((T) batch[j]).compareTo(item) < 0) missed.add((T) batch[j++]);
+                if (j < hi && ((T) batch[j]).compareTo(item) == 0) {
+                    j++;
+                    removed++;
+                } else {
+                    node.items[kept++] = item;
+                }
+            }
+            System.arraycopy(node.items, i, node.items, kept, n - i);
+            kept += n - i;
+            while (j < hi) missed.add((T) batch[j++]);
+            Arrays.fill(node.items, kept, n, null);
+            node.numItems = kept;
+            summarize(node);
+            return removed;
+        }
+        // Child i gets the items less than separator i; the first item equal to a separator deletes it
+        boolean[] dropped = null;
+        boolean[] touched = new boolean[n + 1];
+        while (j < hi) {
+            T item = (T) batch[j];
+            int i = node.lowerBound(item);
+            if (node.matches(i, item)) {
+                if (dropped == null) dropped = new boolean[n];
+                if (!dropped[i]) {
+                    dropped[i] = true;
+                    j++;
+                    continue;
+                }
+                // The separator is already deleted, the other equal items go right
+                i++;
+            }
+            int end = i < n ? lowerBound(batch, j + 1, hi, (T) node.items[i]) : hi;
+            removed += deleteRun(writableChild(node, i), batch, j, end, missed);
+            touched[i] = true;
+            j = end;
+        }
+        if (dropped != null) {
+            for (int i = n - 1; i >= 0; i--) {
+                if (!dropped[i]) continue;
+                touched[i] = true;
+                touched[i + 1] = true;
+                if (replaceSeparator(node, i, missed)) System.arraycopy(touched, i + 2, touched, i + 1, n - i - 1);
+                removed++;
+            }
+        }
+        fixChildren(node, touched);
+        summarize(node);
+        return removed;
+    }
+
+    /**
+     * Replaces a deleted separator with the largest item of its left subtree, or else the smallest of its right
+     * subtree, or drops it with its right subtree if both are empty
+     * @param node the node, which must be writable
+     * @param i the index of the separator
+     * @param missed passed on to deleteRun, which finds the item it is given
+     * @return whether the right subtree was dropped
+     */
+    private boolean replaceSeparator(BNode node, int i, ArrayList<T> missed) {
+        BNode left = writableChild(node, i);
+        BNode leaf = left;
+        while (!leaf.isLeaf) leaf = leaf.neighbours[leaf.numItems];
+        if (leaf.numItems > 0) {
+            T predecessor = (T) leaf.items[leaf.numItems - 1];
+            deleteRun(left, new Object[]{predecessor}, 0, 1, missed);
+            node.items[i] = predecessor;
+            return false;
+        }
+        BNode right = writableChild(node, i + 1);
+        leaf = right;
+        while (!leaf.isLeaf) leaf = leaf.neighbours[0];
+        if (leaf.numItems > 0) {
+            T successor = (T) leaf.items[0];
+            deleteRun(right, new Object[]{successor}, 0, 1, missed);
+            node.items[i] = successor;
+            return false;
+        }
+        // An empty subtree is a chain of nodes with a single child down to an empty leaf
+        node.remove(i, RIGHT_CHILD_NODE);
+        while (right != null) {
+            BNode next = right.isLeaf ? null : right.neighbours[0];
+            release(right);
+            if (metrics != null) metrics.nodeCount.decrement();
+            right = next;
+        }
+        return true;
+    }
+
+    /**
+     * Tops up the children of a node with fewer than minChildren - 1 items from a sibling, until they have
+     * at least that many or the node has a single child
+     * @param node the node, which must be writable
+     * @param touched the children to check, or null for all of them
+     */
+    private void fixChildren(BNode node, boolean[] touched) {
+        // Right to left, so that merges do not move the children still to be checked
+        for (int i = node.numItems; i >= 0; i--) {
+            if (touched != null && !touched[i]) continue;
+            if (node.neighbours[i].numItems >= minChildren - 1) continue;
+            while (node.numItems > 0) {
+                int j = Math.min(i, node.numItems - 1);
+                // Either child can come out of a rebalance short, if the other one brought a short child of its own
+                if (node.neighbours[j].numItems >= minChildren - 1 && node.neighbours[j + 1].numItems >= minChildren - 1) break;
+                rebalance(node, j);
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Merges children i and i + 1 of a node and the separator between them into one node, or if they do not fit
+     * divides them evenly between the two
+     * @param node the node, which must be writable
+     * @param i the index of the separator
+     */
+    private void rebalance(BNode node, int i) {
+        BNode left = writableChild(node, i);
+        BNode right = writableChild(node, i + 1);
+        ArrayList<T> items = new ArrayList<>(left.numItems + right.numItems + 1);
+        ArrayList<BNode> children = left.isLeaf ? null : new ArrayList<>(left.numItems + right.numItems + 2);
+        for (int j = 0; j < left.numItems; j++) items.add((T) left.items[j]);
+        items.add((T) node.items[i]);
+        for (int j = 0; j < right.numItems; j++) items.add((T) right.items[j]);
+        if (children != null) {
+            for (int j = 0; j <= left.numItems; j++) children.add(left.neighbours[j]);
+            for (int j = 0; j <= right.numItems; j++) children.add(right.neighbours[j]);
+        }
+        int pieces = items.size() <= 2 * minChildren - 1 ? 1 : 2;
+        ArrayList<T> separators = new ArrayList<>(1);
+        ArrayList<BNode> nodes = new ArrayList<>(2);
+        distribute(new BNode[]{left, right}, pieces, left.isLeaf, items, children, separators, nodes);
+        if (pieces == 1) {
+            node.remove(i, RIGHT_CHILD_NODE);
+            if (metrics != null) metrics.merges.increment();
+        } else {
+            node.items[i] = separators.get(0);
+            if (metrics != null) metrics.borrows.increment();
+        }
+        // A child that was left with a single child brings it here, where it may be short of items
+        for (BNode piece : nodes) {
+            if (!piece.isLeaf) fixChildren(piece, null);
+        }
+    }
+
+    /**
+     * @return the index of the first item of batch[lo, hi) greater than or equal to item
+     */
+    private static <T extends Comparable<? super T>> int lowerBound(Object[] batch, int lo, int hi, T item) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((T) batch[mid]).compareTo(item) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Splits the tree by a key in O(log n): this tree keeps the items less than the key, and the items greater than or
+     * equal to it move to the returned tree.
+     * <br>
+     * The nodes on the path to the key are cut in two, and the pieces on each side are joined back into one tree
+     * from the bottom up, so every other node moves to one of the trees as it is. The returned tree has the same
+     * minimum number of children and augmentation, and no metrics.
+     * <br>
+     * With metrics enabled the split is O(n): nodes do not know the number of items below them, so the items and
+     * nodes left in this tree are counted again with a walk of it. Disable metrics around splits that must stay
+     * O(log n).
+     * @param key the key
+     * @return a tree of the items greater than or equal to the key
+     */
+    public BTree<T> split(T key) {
+        Subtree[] halves = splitNode(root, height, key);
+        BTree<T> right = new BTree<>(this);
+        // Each node of this epoch now belongs to one of the trees, and neither is shared with a snapshot
+        right.epoch = epoch;
+        root = halves[0].node;
+        height = halves[0].height;
+        right.root = halves[1].node;
+        right.height = halves[1].height;
+        if (metrics != null) measureShape(metrics);
+        return right;
+    }
+
+    /**
+     * Joins two trees in O(log n), all of whose items are less than or equal to the ones of the other.
+     * <br>
+     * The shorter tree is hung off the spine of the taller one at its own height, with the first item of the right
+     * tree between them, and the nodes that overflow are split on the way back up. The joined tree shares all other
+     * nodes with the two trees, which are left unchanged: from then on each of them copies a shared node before
+     * changing it, as after a {@link #snapshot}.
+     * @param left the tree of the smaller items
+     * @param right the tree of the greater items
+     * @return a tree of the items of both, without metrics: enabling them counts its items and nodes in O(n)
+     * @throws IllegalArgumentException if the trees overlap, or differ in minimum number of children or augmentation
+     */
+    public static <T extends Comparable<? super T>> BTree<T> concat(BTree<T> left, BTree<T> right) {
+        if (left.minChildren != right.minChildren)
+            throw new IllegalArgumentException("Trees have minChildren " + left.minChildren + " and " + right.minChildren);
+        if (left.augmented != right.augmented || left.monoid != right.monoid)
+            throw new IllegalArgumentException("Trees are augmented differently");
+        boolean leftEmpty = left.root.isLeaf && left.root.numItems == 0;
+        boolean rightEmpty = right.root.isLeaf && right.root.numItems == 0;
+        if (!leftEmpty && !rightEmpty) {
+            T last = (T) left.lastLeaf().items[left.lastLeaf().numItems - 1];
+            T first = (T) right.firstLeaf().items[0];
+            if (last.compareTo(first) > 0) throw new IllegalArgumentException("Trees overlap: " + last + " is greater than " + first);
+        }
+
+        BTree<T> tree = new BTree<>(rightEmpty ? left : right);
+        left.epoch = EPOCHS.incrementAndGet();
+        right.epoch = EPOCHS.incrementAndGet();
+        if (leftEmpty || rightEmpty) return tree;
+
+        // The first item of the right tree goes between the trees, taken out of a copy of its leftmost path
+        BNode rest = tree.writable(right.root);
+        T separator = tree.removeFirst(rest);
+        int restHeight = right.height;
+        if (!rest.isLeaf && rest.numItems == 0) {
+            rest = rest.neighbours[0];
+            restHeight--;
+        }
+        Subtree joined = tree.join(new Subtree(left.root, left.height), separator, new Subtree(rest, restHeight));
+        tree.root = joined.node;
+        tree.height = joined.height;
+        return tree;
+    }
+
+    private BNode firstLeaf() {
+        BNode node = root;
+        while (!node.isLeaf) node = node.neighbours[0];
+        return node;
+    }
+
+    private BNode lastLeaf() {
+        BNode node = root;
+        while (!node.isLeaf) node = node.neighbours[node.numItems];
+        return node;
+    }
+
+    /**
+     * A node that is not part of a tree yet, with its height. It may have fewer items than minChildren - 1, like a root.
+     */
+    private static final class Subtree {
+        final BNode node;
+        final int height;
+
+        Subtree(BNode node, int height) {
+            this.node = node;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Splits the subtree of a node into the items less than a key and the rest, without changing its nodes
+     * @param node the node
+     * @param height the height of the node
+     * @param key the key
+     * @return the subtree of the items less than the key, and the subtree of the rest
+     */
+    private Subtree[] splitNode(BNode node, int height, T key) {
+        int i = node.lowerBound(key);
+        if (node.isLeaf) return new Subtree[]{piece(node, 0, i, 0), piece(node, i, node.numItems, 0)};
+
+        // Child i holds the key, the children before it are less and the ones after it are not
+        Subtree[] below = splitNode(node.neighbours[i], height - 1, key);
+        Subtree less = below[0];
+        Subtree rest = below[1];
+        if (i > 0) less = join(piece(node, 0, i - 1, height), (T) node.items[i - 1], less);
+        if (i < node.numItems) rest = join(rest, (T) node.items[i], piece(node, i + 1, node.numItems, height));
+        return new Subtree[]{less, rest};
+    }
+
+    /**
+     * Copies a range of the items of a node, and the children around them, into a new node
+     * @param node the node
+     * @param from the index of the first item
+     * @param to the index after the last item
+     * @param height the height of the node
+     * @return the new node, or for an internal node and an empty range the only child in it
+     */
+    private Subtree piece(BNode node, int from, int to, int height) {
+        if (!node.isLeaf && from == to) return new Subtree(node.neighbours[from], height - 1);
+        BNode piece = newNode(node.isLeaf);
+        System.arraycopy(node.items, from, piece.items, 0, to - from);
+        if (!node.isLeaf) System.arraycopy(node.neighbours, from, piece.neighbours, 0, to - from + 1);
+        piece.numItems = to - from;
+        summarize(piece);
+        return new Subtree(piece, height);
+    }
+
+    /**
+     * Joins two subtrees and an item between them into one
+     * @param left the subtree of the items less than or equal to the separator
+     * @param separator the separator
+     * @param right the subtree of the items greater than or equal to the separator
+     * @return the joined subtree, one taller than the taller one if its root had to split
+     */
+    private Subtree join(Subtree left, T separator, Subtree right) {
+        Split split = joinNodes(left.node, left.height, separator, right.node, right.height);
+        int height = Math.max(left.height, right.height);
+        if (split.nodes.size() == 1) return new Subtree(split.nodes.get(0), height);
+        BNode root = newNode(false);
+        for (int j = 0; j < split.items.size(); j++) root.items[j] = split.items.get(j);
+        for (int j = 0; j < split.nodes.size(); j++) root.neighbours[j] = split.nodes.get(j);
+        root.numItems = split.items.size();
+        summarize(root);
+        return new Subtree(root, height + 1);
+    }
+
+    /**
+     * Joins two subtrees and a separator at the height of the taller one, descending the spine of the taller one
+     * that faces the other until the heights match. The nodes there are merged, and a merged node that is too large
+     * is split, as is each node above it that the pieces overflow.
+     * <br>
+     * Below the top, the node the shorter subtree is merged with has at least minChildren - 1 items, so the merged
+     * node and the pieces of a split one have enough items even if the shorter subtree's root has none.
+     * @return the nodes the taller root became, and the items between them
+     */
+    private Split joinNodes(BNode left, int leftHeight, T separator, BNode right, int rightHeight) {
+        BNode node;
+        ArrayList<T> items = new ArrayList<>();
+        ArrayList<BNode> children = null;
+        if (leftHeight == rightHeight) {
+            node = writable(left);
+            if (!node.isLeaf) children = new ArrayList<>();
+            for (int j = 0; j < node.numItems; j++) items.add((T) node.items[j]);
+            items.add(separator);
+            for (int j = 0; j < right.numItems; j++) items.add((T) right.items[j]);
+            if (children != null) {
+                for (int j = 0; j <= node.numItems; j++) children.add(node.neighbours[j]);
+                for (int j = 0; j <= right.numItems; j++) children.add(right.neighbours[j]);
+            }
+        } else if (leftHeight > rightHeight) {
+            node = writable(left);
+            Split below = joinNodes(node.neighbours[node.numItems], leftHeight - 1, separator, right, rightHeight);
+            children = new ArrayList<>();
+            for (int j = 0; j < node.numItems; j++) {
+                items.add((T) node.items[j]);
+                children.add(node.neighbours[j]);
+            }
+            items.addAll(below.items);
+            children.addAll(below.nodes);
+        } else {
+            node = writable(right);
+            Split below = joinNodes(left, leftHeight, separator, node.neighbours[0], rightHeight - 1);
+            items.addAll(below.items);
+            children = new ArrayList<>(below.nodes);
+            for (int j = 0; j < node.numItems; j++) {
+                items.add((T) node.items[j]);
+                children.add(node.neighbours[j + 1]);
+            }
+        }
+        Split split = new Split();
+        distribute(new BNode[]{node}, splitPieces(items.size()), node.isLeaf, items, children, split.items, split.nodes);
+        return split;
+    }
+
+    /**
+     * Removes the first item of a subtree, topping up the nodes on its leftmost path that are left short
+     * @param node the root of the subtree, which must be writable
+     * @return the item
+     */
+    private T removeFirst(BNode node) {
+        T first;
+        if (node.isLeaf) {
+            first = (T) node.items[0];
+            System.arraycopy(node.items, 1, node.items, 0, node.numItems - 1);
+            node.items[--node.numItems] = null;
+        } else {
+            BNode child = writableChild(node, 0);
+            first = removeFirst(child);
+            if (child.numItems < minChildren - 1) rebalance(node, 0);
+        }
+        summarize(node);
+        return first;
+    }
+
     /**
      * Searches for an item in the whole tree and given the associated item
      * @param item the associated item of the item.
      * @return an item
      */
     public T search(T item) {
-        return search(root, item);
+        BTreeMetrics metrics = this.metrics;
+        if (metrics == null) return search(root, item);
+        long start = metrics.start();
+        T found = search(root, item);
+        metrics.searched(start);
+        return found;
     }
 
-    // Recursive search method.
-    
     /**
      * Searches for an item in the suBTree_ and given the associated item, starting from the given root node.
+     * <br>
+     * Iterative, with one {@link BNode#lowerBound} per level, so a search allocates nothing.
      * @param node the root node where the search starts.
      * @param item the associated item of the item.
-     * @return an item
+     * @return the item in the tree that compares equal to item, or null if there is none
      */
     public T search(BNode node, T item) {
-        int i = 0;
-        while (i < node.numItems && item.compareTo((T) node.items[i]) > 0) {
-            i++;
-        }
-        if (i < node.numItems && item == node.items[i]) {
-            return (T) node.items[i];
-        }
-        if (node.isLeaf) {
-            return (T) node.items[i];
-        } else {
-            return search(node.neighbours[i], item);
+        int compares = 0;
+        T found = null;
+        while (node != null) {
+            int i = node.lowerBound(item);
+            compares += BNode.compares(node.numItems, i) + (i < node.numItems ? 1 : 0);
+            if (node.matches(i, item)) {
+                found = (T) node.items[i];
+                break;
+            }
+            if (node.isLeaf) {
+                break;
+            }
+            node = node.neighbours[i];
         }
+        BTreeMetrics metrics = this.metrics;
+        if (metrics != null) metrics.compares.add(compares);
+        return found;
     }
 
+    /**
+     * Same as {@link #search(Comparable)}, which used to be recursive
+     */
     public T search2(T item) {
-        return search2(root, item);
+        return search(root, item);
     }
 
-    // Iterative search method.
     public T search2(BNode node, T item) {
-        while (node != null) {
-            int i = 0;
-            while (i < node.numItems && item.compareTo((T) node.items[i]) > 0) {
-                i++;
-            }
-            if (i < node.numItems && item == node.items[i]) {
-                return (T) node.items[i];
-            }
-            if (node.isLeaf) {
-                return null;
-            } else {
-                node = node.neighbours[i];
-            }
-        }
-        return null;
+        return search(node, item);
     }
 
     private boolean update(BNode node, T item) {
         while (node != null) {
-            int i = 0;
-            while (i < node.numItems && item.compareTo((T) node.items[i]) > 0) {
-                i++;
-            }
-            if (i < node.numItems && item.equals(node.items[i])) {
+            int i = node.lowerBound(item);
+            if (node.matches(i, item)) {
                 //node.mObjects[i] = object;
                 return true;
             }
@@ -507,6 +1711,113 @@ public class BTree<T extends Comparable<? super T>> {
         return false;
     }
 
+    public boolean isAugmented() { return augmented; }
+
+    private void requireAugmented() {
+        if (!augmented) throw new UnsupportedOperationException("Tree is not augmented");
+    }
+
+    /**
+     * @return the number of items, in O(1) if the tree is augmented or has metrics and O(n) otherwise
+     */
+    public int size() {
+        if (augmented) return root.size;
+        BTreeMetrics metrics = this.metrics;
+        if (metrics != null) return (int) metrics.getItemCount();
+        int size = 0;
+        for (T ignored : this) size++;
+        return size;
+    }
+
+    /**
+     * Counts the items less than an item, by adding up the sizes of the subtrees left of the search path
+     * @param item the item
+     * @return the number of items strictly less than item, which is also the index of its first occurrence
+     * @throws UnsupportedOperationException if the tree is not augmented
+     */
+    public int rank(T item) {
+        requireAugmented();
+        int rank = 0;
+        BNode node = root;
+        while (true) {
+            int i = node.lowerBound(item);
+            rank += i;
+            if (node.isLeaf) return rank;
+            for (int j = 0; j < i; j++) rank += node.neighbours[j].size;
+            node = node.neighbours[i];
+        }
+    }
+
+    /**
+     * Finds the item at a position in ascending order, e.g. the first of a page of items
+     * @param index the position, from 0
+     * @return the item
+     * @throws IndexOutOfBoundsException if index is not in [0, size())
+     * @throws UnsupportedOperationException if the tree is not augmented
+     */
+    public T select(int index) {
+        requireAugmented();
+        if (index < 0 || index >= root.size) throw new IndexOutOfBoundsException("Index " + index + ", size " + root.size);
+        BNode node = root;
+        while (!node.isLeaf) {
+            int i = 0;
+            while (true) {
+                int childSize = node.neighbours[i].size;
+                if (index < childSize) break;
+                index -= childSize;
+                if (index == 0) return (T) node.items[i];
+                index--;
+                i++;
+            }
+            node = node.neighbours[i];
+        }
+        return (T) node.items[index];
+    }
+
+    /**
+     * @param from the least item to count, or null for no lower bound
+     * @param to the item to count up to, exclusive, or null for no upper bound
+     * @return the number of items in [from, to)
+     * @throws UnsupportedOperationException if the tree is not augmented
+     */
+    public int countRange(T from, T to) {
+        requireAugmented();
+        int count = (to == null ? root.size : rank(to)) - (from == null ? 0 : rank(from));
+        return Math.max(0, count);
+    }
+
+    /**
+     * Combines the summaries of the items in a range, e.g. the sum of a field to average over a range.
+     * <br>
+     * Walks down the two paths to the bounds. Between them whole subtrees are taken from the summaries of their
+     * roots, so O(height * maxChildren) summaries are combined.
+     * @param from the least item to include, or null for no lower bound
+     * @param to the item to include up to, exclusive, or null for no upper bound
+     * @param <S> the summary type of the monoid of the tree
+     * @return the summary of the items in [from, to)
+     * @throws UnsupportedOperationException if the tree keeps no summaries
+     */
+    public <S> S aggregate(T from, T to) {
+        if (monoid == null) throw new UnsupportedOperationException("Tree keeps no summaries");
+        if (from != null && to != null && from.compareTo(to) >= 0) return (S) monoid.identity();
+        return (S) aggregate(root, from, to);
+    }
+
+    private Object aggregate(BNode node, T from, T to) {
+        if (from == null && to == null) return node.summary;
+        // Items lo to hi - 1 are in the range, and children lo to hi overlap it
+        int lo = from == null ? 0 : node.lowerBound(from);
+        int hi = to == null ? node.numItems : node.lowerBound(to);
+        if (!node.isLeaf && lo == hi) return aggregate(node.neighbours[lo], from, to);
+        Object summary = node.isLeaf ? monoid.identity() : aggregate(node.neighbours[lo], from, null);
+        for (int j = lo; j < hi; j++) {
+            summary = monoid.combine(summary, monoid.measure((T) node.items[j]));
+            if (!node.isLeaf && j + 1 < hi) summary = monoid.combine(summary, node.neighbours[j + 1].summary);
+        }
+        if (!node.isLeaf) summary = monoid.combine(summary, aggregate(node.neighbours[hi], null, to));
+        return summary;
+    }
+
     // Inorder walk over the tree.
     String printBTree(BNode node) {
         String string = "";
@@ -532,31 +1843,338 @@ public class BTree<T extends Comparable<? super T>> {
     }
 
     public void validate() throws Exception {
-        ArrayList<T> array = getItems(root);
-        for (int i = 0; i < array.size() - 1; i++) {
-            if (array.get(i).compareTo(array.get(i + 1)) > 0) {
-                throw new Exception("B-Tree invalid: " + array.get(i)  + " greater than " + array.get(i + 1));
+        T previous = null;
+        for (T item : this) {
+            if (previous != null && previous.compareTo(item) > 0) {
+                throw new Exception("B-Tree invalid: " + previous  + " greater than " + item);
             }
+            previous = item;
+        }
+        if (height != getHeight(root)) throw new Exception("B-Tree invalid: height is " + height + ", expected " + getHeight(root));
+        if (augmented) validateSizes(root);
+    }
+
+    private int validateSizes(BNode node) throws Exception {
+        int size = node.numItems;
+        if (!node.isLeaf) {
+            for (int i = 0; i <= node.numItems; i++) size += validateSizes(node.neighbours[i]);
         }
+        if (node.size != size) throw new Exception("B-Tree invalid: node " + node + " has size " + node.size + ", expected " + size);
+        return size;
     }
 
     // Inorder walk over the tree.
     public ArrayList<T> getItems(BNode node) {
         ArrayList<T> array = new ArrayList<>();
-        if (node != null) {
-            if (node.isLeaf) {
-                for (int i = 0; i < node.numItems; i++) {
-                    array.add((T) node.items[i]);
+        if (node != null) getItems(node, array);
+        return array;
+    }
+
+    // Appends the items of a subtree to one list, instead of copying the list of every subtree upwards.
+    private void getItems(BNode node, ArrayList<T> array) {
+        if (node.isLeaf) {
+            for (int i = 0; i < node.numItems; i++) {
+                array.add((T) node.items[i]);
+            }
+        } else {
+            int i;
+            for (i = 0; i < node.numItems; i++) {
+                getItems(node.neighbours[i], array);
+                array.add((T) node.items[i]);
+            }
+            getItems(node.neighbours[i], array);
+        }
+    }
+
+    /**
+     * Returns an iterator over the items in ascending order.
+     * <br>
+     * Items are produced lazily by walking the tree with a stack of one frame per level,
+     * so getting the first item takes O(height) and a full scan allocates O(height).
+     * The tree must not be modified while iterating.
+     * @return the iterator
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new InOrderIterator(root, null, true);
+    }
+
+    /**
+     * Returns an iterator over the items greater than or equal to an item, in ascending order.
+     * @param from the item to start from
+     * @return the iterator
+     */
+    public Iterator<T> iterator(T from) {
+        return new InOrderIterator(root, from, true);
+    }
+
+    /**
+     * @return an iterator over the items in descending order
+     */
+    public Iterator<T> descendingIterator() {
+        return new InOrderIterator(root, null, false);
+    }
+
+    /**
+     * Returns an iterator over the items less than or equal to an item, in descending order.
+     * @param from the item to start from
+     * @return the iterator
+     */
+    public Iterator<T> descendingIterator(T from) {
+        return new InOrderIterator(root, from, false);
+    }
+
+    /**
+     * Returns a spliterator over the items in ascending order.
+     * <br>
+     * Splitting divides the remaining range of a node at its middle item, and descends into a child subtree once
+     * the range holds only that child, so each part is made of whole subtrees and parallel streams can divide the
+     * tree between threads without copying it.
+     * @return the spliterator
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new BTreeSpliterator(root, 0, root.numItems, getHeight(), null, false);
+    }
+
+    /**
+     * @return a sequential stream of the items in ascending order
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a parallel stream of the items, in ascending encounter order
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Stack based in-order iterator.
+     * <br>
+     * Each frame holds a node and the index of the next item to return from it (ascending),
+     * or the number of items not yet returned from it (descending).
+     * Deeper frames are always returned before the frames below them.
+     */
+    private class InOrderIterator implements Iterator<T> {
+        private final boolean ascending;
+        private final BNode[] nodes;
+        private final int[] indices;
+        private int depth;
+
+        /**
+         * The exclusive bound of the bottom frame's index, or -1 for the whole node
+         */
+        private final int bottomLimit;
+
+        InOrderIterator(BNode start, T from, boolean ascending) {
+            this(start, ascending ? 0 : start.numItems, -1, from, ascending);
+        }
+
+        /**
+         * Creates an ascending iterator over part of a node: child lo, item lo, ..., item hi - 1, child hi
+         */
+        InOrderIterator(BNode node, int lo, int hi) {
+            this(node, lo, hi, null, true);
+        }
+
+        private InOrderIterator(BNode node, int startIndex, int bottomLimit, T from, boolean ascending) {
+            this.ascending = ascending;
+            this.bottomLimit = bottomLimit;
+            int height = getHeight(node);
+            nodes = new BNode[height + 1];
+            indices = new int[height + 1];
+            // The first frame may start part way through the node
+            int index = from == null ? startIndex : seekIndex(node, from);
+            while (true) {
+                push(node, index);
+                if (node.isLeaf) break;
+                node = node.neighbours[index];
+                if (from != null) index = seekIndex(node, from);
+                else index = ascending ? 0 : node.numItems;
+            }
+            popExhausted();
+        }
+
+        /**
+         * Ascending: the first item greater than or equal to from, so equal items in the child before it are kept.
+         * Descending: the number of items less than or equal to from.
+         */
+        private int seekIndex(BNode node, T from) {
+            return ascending ? node.lowerBound(from) : node.upperBound(from);
+        }
+
+        private void push(BNode node, int index) {
+            nodes[depth] = node;
+            indices[depth] = index;
+            depth++;
+        }
+
+        private void popExhausted() {
+            while (depth > 0) {
+                int top = depth - 1;
+                int index = indices[top];
+                boolean exhausted;
+                if (ascending) exhausted = index >= (top == 0 && bottomLimit >= 0 ? bottomLimit : nodes[top].numItems);
+                else exhausted = index <= 0;
+                if (!exhausted) break;
+                nodes[top] = null;
+                depth--;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public T next() {
+            if (depth == 0) throw new NoSuchElementException();
+            int top = depth - 1;
+            BNode node = nodes[top];
+            // Fast path: most items come from the middle of a leaf
+            if (ascending && node.isLeaf && top > 0 && indices[top] + 1 < node.numItems)
+                return (T) node.items[indices[top]++];
+            T item;
+            if (ascending) {
+                item = (T) node.items[indices[top]++];
+                // Continue with the leftmost path of the child after the item
+                if (!node.isLeaf) {
+                    node = node.neighbours[indices[top]];
+                    while (true) {
+                        push(node, 0);
+                        if (node.isLeaf) break;
+                        node = node.neighbours[0];
+                    }
                 }
             } else {
-                int i;
-                for (i = 0; i < node.numItems; i++) {
-                    array.addAll(getItems(node.neighbours[i]));
-                    array.add((T) node.items[i]);
+                item = (T) node.items[--indices[top]];
+                // Continue with the rightmost path of the child before the item
+                if (!node.isLeaf) {
+                    node = node.neighbours[indices[top]];
+                    while (true) {
+                        push(node, node.numItems);
+                        if (node.isLeaf) break;
+                        node = node.neighbours[node.numItems];
+                    }
                 }
-                array.addAll(getItems(node.neighbours[i]));
             }
+            popExhausted();
+            return item;
+        }
+    }
+
+    /**
+     * Spliterator over a range of a node: child lo, item lo, child lo + 1, ..., item hi - 1, child hi,
+     * optionally preceded by one leading item that was split off from a parent range.
+     * Leaves have no children, so their range is just items lo to hi - 1.
+     */
+    private class BTreeSpliterator implements Spliterator<T> {
+        private BNode node;
+        private int lo;
+        private int hi;
+        private int height;
+        private T leading;
+        private boolean hasLeading;
+
+        /**
+         * Set once tryAdvance is used, after which the spliterator no longer splits
+         */
+        private Iterator<T> iterator;
+
+        BTreeSpliterator(BNode node, int lo, int hi, int height, T leading, boolean hasLeading) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.height = height;
+            this.leading = leading;
+            this.hasLeading = hasLeading;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (iterator != null) return null;
+            while (!node.isLeaf && lo == hi) {
+                // Only one child subtree is left in the range, so split that subtree instead
+                node = node.neighbours[lo];
+                lo = 0;
+                hi = node.numItems;
+                height--;
+            }
+            if (node.isLeaf && hi - lo < 2) return null;
+            int middle = (lo + hi) >>> 1;
+            // The prefix takes child lo up to child middle, this keeps item middle onwards
+            BTreeSpliterator prefix = new BTreeSpliterator(node, lo, middle, height, leading, hasLeading);
+            leading = (T) node.items[middle];
+            hasLeading = true;
+            lo = middle + 1;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (iterator == null) {
+                iterator = new InOrderIterator(node, lo, hi);
+                if (hasLeading) {
+                    hasLeading = false;
+                    action.accept(leading);
+                    return true;
+                }
+            }
+            if (!iterator.hasNext()) return false;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (iterator != null) {
+                iterator.forEachRemaining(action);
+                return;
+            }
+            if (hasLeading) action.accept(leading);
+            hasLeading = false;
+            walk(node, lo, hi, action);
+            // Nothing is left to return
+            lo = hi = 0;
+            node = new BNode(2, true);
+        }
+
+        // Recursive in-order walk of part of a node, the recursion is at most the height of the tree.
+        private void walk(BNode node, int lo, int hi, Consumer<? super T> action) {
+            if (node.isLeaf) {
+                for (int i = lo; i < hi; i++) action.accept((T) node.items[i]);
+                return;
+            }
+            for (int i = lo; i < hi; i++) {
+                BNode child = node.neighbours[i];
+                walk(child, 0, child.numItems, action);
+                action.accept((T) node.items[i]);
+            }
+            BNode child = node.neighbours[hi];
+            walk(child, 0, child.numItems, action);
+        }
+
+        @Override
+        public long estimateSize() {
+            // Assume nodes are three quarters full, a subtree of height h then holds about f^(h+1) - 1 items
+            double fanout = 1.5 * minChildren;
+            double subtree = node.isLeaf ? 0 : Math.pow(fanout, height) - 1;
+            return (long) ((hi - lo) + (node.isLeaf ? 0 : (hi - lo + 1) * subtree)) + (hasLeading ? 1 : 0);
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            // Natural ordering
+            return null;
         }
-        return array;
     }
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * A B Tree map from keys to lists of values, for data where many items share a key.
+ * <br>
+ * Each key is stored once, in a {@link Posting} holding all of its values in insertion order, so equal keys never
+ * spread over several nodes. A key with one value keeps it inline, more values grow an array.
+ * Looking up all k values of a key takes O(log n + k), counting them O(log n).
+ * <br>
+ * Built on {@link BTree}: the postings are its items, ordered by key only.
+ * Lookups walk the nodes directly and compare keys, so they allocate nothing but their result.
+ * <br>
+ * E.g. emails keyed by date, where {@code Email.compareTo} can not tell two emails of one sender on one day apart:
+ * <pre>
+ *                     [2021-08-09 -> (e4)]
+ *                      /                  \
+ * [2021-08-01 -> (e1, e2, e3)]   [2021-08-10 -> (e5), 2021-08-11 -> (e6, e7)]
+ * </pre>
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BTreeMap<K extends Comparable<? super K>, V> {
+
+    /**
+     * A key and its values. Ordered by key, so a tree never holds two postings of one key.
+     */
+    static final class Posting<K extends Comparable<? super K>, V> implements Comparable<Posting<K, V>> {
+        final K key;
+
+        /**
+         * The value itself when count is 1, otherwise an Object[] with the values in its first count slots
+         */
+        private Object values;
+        private int count;
+
+        Posting(K key, V value) {
+            this.key = key;
+            this.values = value;
+            this.count = 1;
+        }
+
+        void add(V value) {
+            if (count == 1) {
+                Object[] array = new Object[4];
+                array[0] = values;
+                values = array;
+            } else if (count == ((Object[]) values).length) {
+                values = Arrays.copyOf((Object[]) values, 2 * count);
+            }
+            ((Object[]) values)[count++] = value;
+        }
+
+        /**
+         * Removes the first value equal to a value
+         * @return whether a value was removed
+         */
+        boolean remove(Object value) {
+            if (count == 1) return false;
+            Object[] array = (Object[]) values;
+            for (int i = 0; i < count; i++) {
+                if (Objects.equals(array[i], value)) {
+                    System.arraycopy(array, i + 1, array, i, count - i - 1);
+                    array[--count] = null;
+                    // Back to inline, so that keys that once had many values do not keep their array
+                    if (count == 1) values = array[0];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int i) {
+            return count == 1 ? (V) values : (V) ((Object[]) values)[i];
+        }
+
+        int count() { return count; }
+
+        @Override
+        public int compareTo(Posting<K, V> other) {
+            return key.compareTo(other.key);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder().append(key).append(" -> (");
+            for (int i = 0; i < count; i++) builder.append(i == 0 ? "" : ", ").append(get(i));
+            return builder.append(')').toString();
+        }
+    }
+
+    private final BTree<Posting<K, V>> tree;
+    private int keyCount = 0;
+    private int size = 0;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public BTreeMap(int minChildren) {
+        tree = new BTree<>(minChildren);
+    }
+
+    /**
+     * Finds the posting of a key
+     * @param key the key
+     * @return the posting, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    private Posting<K, V> find(K key) {
+        BNode node = tree.root;
+        while (true) {
+            // Same split of scan and binary search as BNode.lowerBound, but comparing keys without a probe posting
+            int low = 0;
+            int high = node.numItems;
+            if (high <= BNode.LINEAR_SEARCH_THRESHOLD) {
+                while (low < high && ((Posting<K, V>) node.items[low]).key.compareTo(key) < 0) low++;
+            } else {
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (((Posting<K, V>) node.items[middle]).key.compareTo(key) < 0) low = middle + 1;
+                    else high = middle;
+                }
+            }
+            if (low < node.numItems) {
+                Posting<K, V> posting = (Posting<K, V>) node.items[low];
+                if (posting.key.compareTo(key) == 0) return posting;
+            }
+            if (node.isLeaf) return null;
+            node = node.neighbours[low];
+        }
+    }
+
+    /**
+     * Adds a value to the values of a key
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        Posting<K, V> posting = find(key);
+        if (posting == null) {
+            tree.add(new Posting<>(key, value));
+            keyCount++;
+        } else {
+            posting.add(value);
+        }
+        size++;
+    }
+
+    /**
+     * @param key the key
+     * @return the first value of the key, or null if the key is not in the map
+     */
+    public V get(K key) {
+        Posting<K, V> posting = find(key);
+        return posting == null ? null : posting.get(0);
+    }
+
+    /**
+     * @param key the key
+     * @return the values of the key in insertion order, empty if the key is not in the map
+     */
+    public List<V> getAll(K key) {
+        Posting<K, V> posting = find(key);
+        if (posting == null) return Collections.emptyList();
+        List<V> values = new ArrayList<>(posting.count());
+        for (int i = 0; i < posting.count(); i++) values.add(posting.get(i));
+        return values;
+    }
+
+    /**
+     * @param key the key
+     * @return the number of values of the key
+     */
+    public int count(K key) {
+        Posting<K, V> posting = find(key);
+        return posting == null ? 0 : posting.count();
+    }
+
+    public boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Removes one value from the values of a key, and the key once it has no values left
+     * @param key the key
+     * @param value the value, compared with equals
+     * @return whether the value was found
+     */
+    public boolean removeValue(K key, V value) {
+        Posting<K, V> posting = find(key);
+        if (posting == null) return false;
+        if (posting.count() == 1) {
+            if (!Objects.equals(posting.get(0), value)) return false;
+            tree.delete(posting);
+            keyCount--;
+        } else if (!posting.remove(value)) {
+            return false;
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes a key and all of its values
+     * @param key the key
+     * @return the number of values removed
+     */
+    public int removeAll(K key) {
+        Posting<K, V> posting = find(key);
+        if (posting == null) return 0;
+        tree.delete(posting);
+        keyCount--;
+        size -= posting.count();
+        return posting.count();
+    }
+
+    /**
+     * Calls an action for every value with a key in a range, in key order and then insertion order
+     * @param from the smallest key, inclusive, or null for no lower bound
+     * @param to the largest key, exclusive, or null for no upper bound
+     * @param action the action, given the key and the value
+     */
+    public void forEachInRange(K from, K to, BiConsumer<? super K, ? super V> action) {
+        Iterator<Posting<K, V>> postings = from == null ? tree.iterator() : tree.iterator(new Posting<>(from, null));
+        while (postings.hasNext()) {
+            Posting<K, V> posting = postings.next();
+            if (to != null && posting.key.compareTo(to) >= 0) return;
+            for (int i = 0; i < posting.count(); i++) action.accept(posting.key, posting.get(i));
+        }
+    }
+
+    /**
+     * @param from the smallest key, inclusive, or null for no lower bound
+     * @param to the largest key, exclusive, or null for no upper bound
+     * @return the values with a key in the range, in key order and then insertion order
+     */
+    public List<V> getRange(K from, K to) {
+        List<V> values = new ArrayList<>();
+        forEachInRange(from, to, (key, value) -> values.add(value));
+        return values;
+    }
+
+    /**
+     * Counts the values with a key in a range, giving up once the count reaches a limit.
+     * Takes O(log n + keys counted), so a limit keeps estimates of wide ranges cheap.
+     * @param from the smallest key, inclusive, or null for no lower bound
+     * @param to the largest key, exclusive, or null for no upper bound
+     * @param limit the count at which to stop
+     * @return the number of values in the range, or limit if there are at least as many
+     */
+    public int countRange(K from, K to, int limit) {
+        Iterator<Posting<K, V>> postings = from == null ? tree.iterator() : tree.iterator(new Posting<>(from, null));
+        int count = 0;
+        while (count < limit && postings.hasNext()) {
+            Posting<K, V> posting = postings.next();
+            if (to != null && posting.key.compareTo(to) >= 0) break;
+            count += posting.count();
+        }
+        return Math.min(count, limit);
+    }
+
+    /**
+     * @return the keys in ascending order
+     */
+    public List<K> keys() {
+        List<K> keys = new ArrayList<>(keyCount);
+        for (Posting<K, V> posting : tree) keys.add(posting.key);
+        return keys;
+    }
+
+    /**
+     * @return the number of values in the map
+     */
+    public int size() { return size; }
+
+    /**
+     * @return the number of distinct keys in the map
+     */
+    public int keyCount() { return keyCount; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public int getHeight() { return tree.getHeight(); }
+
+    /**
+     * Checks that keys are in strictly ascending order and the counts add up
+     * @throws Exception if the map is invalid
+     */
+    public void validate() throws Exception {
+        tree.validate();
+        Posting<K, V> previous = null;
+        int keys = 0;
+        int values = 0;
+        for (Posting<K, V> posting : tree) {
+            if (previous != null && previous.key.compareTo(posting.key) >= 0)
+                throw new Exception("BTreeMap invalid: key " + previous.key + " not less than " + posting.key);
+            if (posting.count() < 1) throw new Exception("BTreeMap invalid: key " + posting.key + " has no values");
+            previous = posting;
+            keys++;
+            values += posting.count();
+        }
+        if (keys != keyCount || values != size)
+            throw new Exception("BTreeMap invalid: counted " + keys + " keys and " + values + " values, expected " + keyCount + " and " + size);
+    }
+
+    @Override
+    public String toString() {
+        return tree.toString();
+    }
+}
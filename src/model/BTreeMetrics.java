@@ -0,0 +1,299 @@
+package model;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counts, latency histograms and the shape of one {@link BTree}, see {@link BTree#enableMetrics()}.
+ * <br>
+ * The shape (items, height, nodes) is kept up to date by the tree as it changes, instead of walking it, except
+ * after {@link BTree#restore} and {@link BTree#split}, which count it again in O(n).
+ * Counters are {@link LongAdder}s and histograms are striped by thread, so threads searching the same tree do not
+ * contend on one cache line. Reading the clock costs about as much as the counters together, so only one in
+ * {@link #SAMPLE_INTERVAL} operations is timed; every operation is counted. A tree without metrics only tests
+ * a null field per operation.
+ * <br>
+ * {@link #register(String)} publishes the metrics as an MBean named {@code model:type=BTree,name=<name>},
+ * e.g. to watch them in JConsole.
+ */
+public class BTreeMetrics implements BTreeMetricsMBean {
+
+    /**
+     * Latencies in log-linear buckets, as in HdrHistogram: 16 buckets per power of two,
+     * so a percentile is reported at most 1/16 above the recorded value.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        /**
+         * Values of 2^40 ns (about 18 minutes) and more share the last bucket
+         */
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+        private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+        /**
+         * One row of buckets per stripe, so threads on different stripes write different cache lines
+         */
+        private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) return (int) Math.max(0, value);
+            int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(value));
+            long top = Math.min(2 * SUB_BUCKETS - 1, value >>> (exponent - SUB_BITS));
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) top - SUB_BUCKETS;
+        }
+
+        /**
+         * @return the largest value that falls in a bucket
+         */
+        static long highestValue(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+            return ((top + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        public void record(long nanos) {
+            int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            counts.getAndIncrement(stripe * BUCKETS + bucket(nanos));
+        }
+
+        private long[] merged() {
+            long[] merged = new long[BUCKETS];
+            for (int i = 0; i < counts.length(); i++) merged[i % BUCKETS] += counts.get(i);
+            return merged;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (long bucket : merged()) count += bucket;
+            return count;
+        }
+
+        /**
+         * @param percentile in [0, 100]
+         * @return the value below or at which the percentile of the recorded values fall, 0 if none were recorded
+         */
+        public long getPercentile(double percentile) {
+            long[] merged = merged();
+            long count = 0;
+            for (long bucket : merged) count += bucket;
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += merged[i];
+                if (seen >= rank) return highestValue(i);
+            }
+            return highestValue(BUCKETS - 1);
+        }
+
+        public long getMax() {
+            return getPercentile(100);
+        }
+
+        public void reset() {
+            for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        }
+    }
+
+    /**
+     * One in this many operations (a power of two) records its latency
+     */
+    public static final int SAMPLE_INTERVAL = 8;
+
+    private final int maxItems;
+
+    /**
+     * Counts operations to pick the ones to time. Threads may lose increments, which only shifts the sample.
+     */
+    private int ticks;
+
+    // Shape, changed only by the thread that modifies the tree
+    final LongAdder itemCount = new LongAdder();
+    final LongAdder nodeCount = new LongAdder();
+    volatile int height;
+
+    final LongAdder adds = new LongAdder();
+    final LongAdder deletes = new LongAdder();
+    final LongAdder searches = new LongAdder();
+    final LongAdder compares = new LongAdder();
+    final LongAdder splits = new LongAdder();
+    final LongAdder merges = new LongAdder();
+    final LongAdder borrows = new LongAdder();
+
+    final Histogram addLatency = new Histogram();
+    final Histogram deleteLatency = new Histogram();
+    final Histogram searchLatency = new Histogram();
+
+    private ObjectName name;
+
+    /**
+     * Constructor
+     * @param maxItems the number of items a node can hold
+     */
+    BTreeMetrics(int maxItems) {
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * @return the start time of an operation to pass to added, deleted or searched, or 0 if it is not timed
+     */
+    long start() {
+        return (++ticks & (SAMPLE_INTERVAL - 1)) == 0 ? System.nanoTime() : 0;
+    }
+
+    void added(long start) {
+        adds.increment();
+        itemCount.increment();
+        if (start != 0) addLatency.record(System.nanoTime() - start);
+    }
+
+    void deleted(long start, boolean removed) {
+        deletes.increment();
+        if (removed) itemCount.decrement();
+        if (start != 0) deleteLatency.record(System.nanoTime() - start);
+    }
+
+    void searched(long start) {
+        searches.increment();
+        if (start != 0) searchLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sets the shape after the tree was replaced as a whole, e.g. by a bulk load
+     */
+    void setShape(long items, long nodes, int height) {
+        itemCount.reset();
+        itemCount.add(items);
+        nodeCount.reset();
+        nodeCount.add(nodes);
+        this.height = height;
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server
+     * @param name the name of the tree, unique among registered trees
+     * @throws JMException if the name is invalid or already registered
+     */
+    public synchronized void register(String name) throws JMException {
+        if (this.name != null) throw new IllegalStateException("Already registered as " + this.name);
+        ObjectName objectName = new ObjectName("model:type=BTree,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were registered
+     * @throws JMException if the MBean server fails to remove them
+     */
+    public synchronized void unregister() throws JMException {
+        if (name == null) return;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        name = null;
+    }
+
+    /**
+     * @return the name the metrics are registered under, or null
+     */
+    public synchronized ObjectName getObjectName() { return name; }
+
+    public Histogram getAddHistogram() { return addLatency; }
+
+    public Histogram getDeleteHistogram() { return deleteLatency; }
+
+    public Histogram getSearchHistogram() { return searchLatency; }
+
+    @Override
+    public long getItemCount() { return itemCount.sum(); }
+
+    @Override
+    public int getHeight() { return height; }
+
+    @Override
+    public long getNodeCount() { return nodeCount.sum(); }
+
+    @Override
+    public double getFillFactor() {
+        long nodes = nodeCount.sum();
+        return nodes == 0 ? 0 : (double) itemCount.sum() / (nodes * maxItems);
+    }
+
+    @Override
+    public long getAdds() { return adds.sum(); }
+
+    @Override
+    public long getDeletes() { return deletes.sum(); }
+
+    @Override
+    public long getSearches() { return searches.sum(); }
+
+    @Override
+    public long getCompares() { return compares.sum(); }
+
+    @Override
+    public long getSplits() { return splits.sum(); }
+
+    @Override
+    public long getMerges() { return merges.sum(); }
+
+    @Override
+    public long getBorrows() { return borrows.sum(); }
+
+    @Override
+    public long getAddLatencyP50() { return addLatency.getPercentile(50); }
+
+    @Override
+    public long getAddLatencyP99() { return addLatency.getPercentile(99); }
+
+    @Override
+    public long getAddLatencyP999() { return addLatency.getPercentile(99.9); }
+
+    @Override
+    public long getAddLatencyMax() { return addLatency.getMax(); }
+
+    @Override
+    public long getDeleteLatencyP50() { return deleteLatency.getPercentile(50); }
+
+    @Override
+    public long getDeleteLatencyP99() { return deleteLatency.getPercentile(99); }
+
+    @Override
+    public long getDeleteLatencyP999() { return deleteLatency.getPercentile(99.9); }
+
+    @Override
+    public long getDeleteLatencyMax() { return deleteLatency.getMax(); }
+
+    @Override
+    public long getSearchLatencyP50() { return searchLatency.getPercentile(50); }
+
+    @Override
+    public long getSearchLatencyP99() { return searchLatency.getPercentile(99); }
+
+    @Override
+    public long getSearchLatencyP999() { return searchLatency.getPercentile(99.9); }
+
+    @Override
+    public long getSearchLatencyMax() { return searchLatency.getMax(); }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{adds, deletes, searches, compares, splits, merges, borrows}) counter.reset();
+        addLatency.reset();
+        deleteLatency.reset();
+        searchLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("items %d, height %d, nodes %d, fill %.2f, adds %d, deletes %d, searches %d, compares %d, "
+                        + "splits %d, merges %d, borrows %d, add p50/p99 %d/%d ns, delete p50/p99 %d/%d ns, search p50/p99 %d/%d ns",
+                getItemCount(), getHeight(), getNodeCount(), getFillFactor(), getAdds(), getDeletes(), getSearches(),
+                getCompares(), getSplits(), getMerges(), getBorrows(), getAddLatencyP50(), getAddLatencyP99(),
+                getDeleteLatencyP50(), getDeleteLatencyP99(), getSearchLatencyP50(), getSearchLatencyP99());
+    }
+}
@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * The JMX view of {@link BTreeMetrics}. Latencies are in nanoseconds.
+ */
+public interface BTreeMetricsMBean {
+
+    long getItemCount();
+
+    int getHeight();
+
+    long getNodeCount();
+
+    /**
+     * @return the fraction of the item slots of all nodes that hold an item
+     */
+    double getFillFactor();
+
+    long getAdds();
+
+    long getDeletes();
+
+    long getSearches();
+
+    long getCompares();
+
+    long getSplits();
+
+    long getMerges();
+
+    long getBorrows();
+
+    long getAddLatencyP50();
+
+    long getAddLatencyP99();
+
+    long getAddLatencyP999();
+
+    long getAddLatencyMax();
+
+    long getDeleteLatencyP50();
+
+    long getDeleteLatencyP99();
+
+    long getDeleteLatencyP999();
+
+    long getDeleteLatencyMax();
+
+    long getSearchLatencyP50();
+
+    long getSearchLatencyP99();
+
+    long getSearchLatencyP999();
+
+    long getSearchLatencyMax();
+
+    /**
+     * Clears the operation counters and latencies, the shape of the tree is kept
+     */
+    void reset();
+}
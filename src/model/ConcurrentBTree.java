@@ -0,0 +1,421 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe B Tree using optimistic lock coupling.
+ * <br>
+ * Every node carries a version in the form of a {@link StampedLock}. Readers never take a lock: they read a node
+ * under an optimistic stamp, read the child pointer, then check that the stamp is still valid before moving on.
+ * If a writer changed the node in between, the reader restarts from the root.
+ * Writers descend the same way and only upgrade to write locks on the nodes they actually change:
+ * the leaf they insert into or delete from, and a full node together with its parent when splitting.
+ * <br>
+ * Like a B-link tree, items are kept in the leaves and internal nodes only hold separators, so every
+ * modification of an item touches a single leaf. Deletes leave underfull leaves in place instead of merging
+ * them, which keeps writers from ever latching more than two nodes at a time.
+ * <br>
+ * Unlike {@link BTree}, this is a set: adding an item equal to one already in the tree does nothing.
+ */
+public class ConcurrentBTree<T extends Comparable<? super T>> {
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    /**
+     * The root node of the tree, protected by rootLock
+     */
+    private volatile Node<T> root;
+
+    /**
+     * Version of the root pointer, acts as the parent of the root when it is split
+     */
+    private final StampedLock rootLock = new StampedLock();
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public ConcurrentBTree(int minChildren) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        this.minChildren = minChildren;
+        root = new Node<>(2 * minChildren, true);
+    }
+
+    /**
+     * Searches for an item without taking any locks
+     * @param item the item
+     * @return the item in the tree equal to the given item, or null if there is none
+     */
+    public T search(T item) {
+        while (true) {
+            long rootStamp = rootLock.tryOptimisticRead();
+            Node<T> node = root;
+            long stamp = node.lock.tryOptimisticRead();
+            // Coupled like a child: a root split before the node's version was read would leave it half the tree
+            if (stamp == 0L || !rootLock.validate(rootStamp)) continue;
+
+            boolean restart = false;
+            while (!node.isLeaf) {
+                Node<T> child = node.child(node.childIndex(item));
+                if (child == null || !node.lock.validate(stamp)) {
+                    restart = true;
+                    break;
+                }
+                long childStamp = child.lock.tryOptimisticRead();
+                // Lock coupling: the parent must still be unchanged once the child's version has been read
+                if (childStamp == 0L || !node.lock.validate(stamp)) {
+                    restart = true;
+                    break;
+                }
+                node = child;
+                stamp = childStamp;
+            }
+            if (restart) continue;
+
+            T found = node.find(item);
+            if (node.lock.validate(stamp)) return found;
+        }
+    }
+
+    /**
+     * @param item the item
+     * @return whether an item equal to the given item is in the tree
+     */
+    public boolean contains(T item) {
+        return search(item) != null;
+    }
+
+    /**
+     * Adds an item if no equal item is in the tree
+     * @param item the item
+     * @return whether the item was added
+     */
+    public boolean add(T item) {
+        while (true) {
+            int result = tryAdd(item);
+            if (result != RESTART) return result == DONE;
+        }
+    }
+
+    /**
+     * Deletes the item equal to the given item
+     * @param item the item
+     * @return whether an item was deleted
+     */
+    public boolean delete(T item) {
+        while (true) {
+            int result = tryDelete(item);
+            if (result != RESTART) return result == DONE;
+        }
+    }
+
+    private static final int RESTART = -1;
+    private static final int UNCHANGED = 0;
+    private static final int DONE = 1;
+
+    private int tryAdd(T item) {
+        long rootStamp = rootLock.tryOptimisticRead();
+        Node<T> node = root;
+        long stamp = node.lock.tryOptimisticRead();
+        if (stamp == 0L || !rootLock.validate(rootStamp)) return RESTART;
+        Node<T> parent = null;
+        long parentStamp = rootStamp;
+
+        while (true) {
+            if (node.isFull()) {
+                // Split eagerly: latch the parent (or the root pointer) and the full node, then restart
+                if (!node.lock.validate(stamp)) return RESTART;
+                splitNode(parent, parentStamp, node, stamp);
+                return RESTART;
+            }
+            if (node.isLeaf) break;
+            Node<T> child = node.child(node.childIndex(item));
+            if (child == null || !node.lock.validate(stamp)) return RESTART;
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0L || !node.lock.validate(stamp)) return RESTART;
+            parent = node;
+            parentStamp = stamp;
+            node = child;
+            stamp = childStamp;
+        }
+
+        long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0L) return RESTART;
+        try {
+            // The version was validated by the conversion, so the leaf is not full and still covers the item
+            int i = node.lowerBound(item);
+            if (i < node.numItems && node.items[i].compareTo(item) == 0) return UNCHANGED;
+            node.insert(i, item, null);
+            return DONE;
+        } finally {
+            node.lock.unlockWrite(writeStamp);
+        }
+    }
+
+    /**
+     * Splits a full node, write latching it and its parent.
+     * Does nothing if either has changed since it was read.
+     * @param parent the parent node, or null if node is the root
+     * @param parentStamp the optimistic stamp of the parent, or of the root pointer if node is the root
+     * @param node the full node
+     * @param stamp the optimistic stamp of the node
+     */
+    private void splitNode(Node<T> parent, long parentStamp, Node<T> node, long stamp) {
+        StampedLock parentLock = parent == null ? rootLock : parent.lock;
+        long parentWrite = parentLock.tryConvertToWriteLock(parentStamp);
+        if (parentWrite == 0L) return;
+        try {
+            if (parent != null && parent.isFull()) return; // The parent must be split first
+            long nodeWrite = node.lock.tryConvertToWriteLock(stamp);
+            if (nodeWrite == 0L) return;
+            try {
+                if (parent == null) {
+                    Node<T> newRoot = new Node<>(2 * minChildren, false);
+                    newRoot.neighbours[0] = node;
+                    splitChild(newRoot, 0, node);
+                    root = newRoot;
+                } else {
+                    splitChild(parent, parent.indexOfChild(node), node);
+                }
+            } finally {
+                node.lock.unlockWrite(nodeWrite);
+            }
+        } finally {
+            parentLock.unlockWrite(parentWrite);
+        }
+    }
+
+    /**
+     * Splits a full child. The caller holds the write locks of the parent and the child.
+     * The new right node is only published once filled, through the parent's write lock release.
+     */
+    private void splitChild(Node<T> parent, int i, Node<T> node) {
+        Node<T> newNode = new Node<>(2 * minChildren, node.isLeaf);
+        T separator;
+        if (node.isLeaf) {
+            int moved = node.numItems - (minChildren - 1);
+            System.arraycopy(node.items, minChildren - 1, newNode.items, 0, moved);
+            newNode.numItems = moved;
+            for (int j = minChildren - 1; j < node.numItems; j++) node.items[j] = null;
+            node.numItems = minChildren - 1;
+            separator = newNode.items[0];
+        } else {
+            System.arraycopy(node.items, minChildren, newNode.items, 0, minChildren - 1);
+            System.arraycopy(node.neighbours, minChildren, newNode.neighbours, 0, minChildren);
+            newNode.numItems = minChildren - 1;
+            separator = node.items[minChildren - 1];
+            for (int j = minChildren - 1; j < node.numItems; j++) node.items[j] = null;
+            for (int j = minChildren; j <= node.numItems; j++) node.neighbours[j] = null;
+            node.numItems = minChildren - 1;
+        }
+        parent.insert(i, separator, newNode);
+    }
+
+    private int tryDelete(T item) {
+        long rootStamp = rootLock.tryOptimisticRead();
+        Node<T> node = root;
+        long stamp = node.lock.tryOptimisticRead();
+        if (stamp == 0L || !rootLock.validate(rootStamp)) return RESTART;
+
+        while (!node.isLeaf) {
+            Node<T> child = node.child(node.childIndex(item));
+            if (child == null || !node.lock.validate(stamp)) return RESTART;
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0L || !node.lock.validate(stamp)) return RESTART;
+            node = child;
+            stamp = childStamp;
+        }
+
+        long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0L) return RESTART;
+        try {
+            int i = node.lowerBound(item);
+            if (i >= node.numItems || node.items[i].compareTo(item) != 0) return UNCHANGED;
+            node.remove(i);
+            return DONE;
+        } finally {
+            node.lock.unlockWrite(writeStamp);
+        }
+    }
+
+    /**
+     * Returns all items in ascending order.
+     * The tree is read under its read locks one node at a time, so this is only a consistent snapshot
+     * when no writers run at the same time.
+     * @return the items
+     */
+    public ArrayList<T> getItems() {
+        ArrayList<T> array = new ArrayList<>();
+        getItems(root, array);
+        return array;
+    }
+
+    private void getItems(Node<T> node, ArrayList<T> array) {
+        long stamp = node.lock.readLock();
+        try {
+            if (node.isLeaf) {
+                for (int i = 0; i < node.numItems; i++) array.add(node.items[i]);
+            } else {
+                for (int i = 0; i <= node.numItems; i++) getItems(node.neighbours[i], array);
+            }
+        } finally {
+            node.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the number of items, counted by walking the tree
+     */
+    public int size() {
+        return getItems().size();
+    }
+
+    public int getHeight() {
+        int height = 0;
+        Node<T> node = root;
+        while (!node.isLeaf) {
+            node = node.neighbours[0];
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Checks that the items are in strictly ascending order, that every subtree lies between the separators around
+     * it, that nodes are not over full and that all leaves are at the same depth.
+     * Should be called when no writers are running.
+     * @throws Exception if the tree is invalid
+     */
+    public void validate() throws Exception {
+        ArrayList<T> array = getItems();
+        for (int i = 0; i < array.size() - 1; i++) {
+            if (array.get(i).compareTo(array.get(i + 1)) >= 0) {
+                throw new Exception("Concurrent B-Tree invalid: " + array.get(i) + " not less than " + array.get(i + 1));
+            }
+        }
+        validate(root, null, null, getHeight());
+    }
+
+    private void validate(Node<T> node, T lower, T upper, int height) throws Exception {
+        if (node.numItems > 2 * minChildren - 1) throw new Exception("Concurrent B-Tree invalid: node over full");
+        if (node.isLeaf != (height == 0)) throw new Exception("Concurrent B-Tree invalid: leaves at different depths");
+        for (int i = 0; i < node.numItems; i++) {
+            if ((lower != null && node.items[i].compareTo(lower) < 0) || (upper != null && node.items[i].compareTo(upper) >= 0))
+                throw new Exception("Concurrent B-Tree invalid: " + node.items[i] + " outside of [" + lower + ", " + upper + ")");
+        }
+        if (node.isLeaf) return;
+        if (!node.isLeaf && node.numItems < 1 && node != root)
+            throw new Exception("Concurrent B-Tree invalid: internal node without separators");
+        for (int i = 0; i <= node.numItems; i++) {
+            validate(node.neighbours[i], i == 0 ? lower : node.items[i - 1], i == node.numItems ? upper : node.items[i], height - 1);
+        }
+    }
+
+    /**
+     * Node of a ConcurrentBTree.
+     * <br>
+     * Fields are only written under the node's write lock. Optimistic readers may see them half updated,
+     * so every read is bounds checked and only trusted once the node's stamp validates.
+     */
+    static class Node<T extends Comparable<? super T>> {
+        final StampedLock lock = new StampedLock();
+        int numItems = 0;
+        final T[] items;
+        final Node<T>[] neighbours;
+        final boolean isLeaf;
+
+        @SuppressWarnings("unchecked")
+        Node(int maxChildren, boolean isLeaf) {
+            this.isLeaf = isLeaf;
+            items = (T[]) new Comparable[maxChildren - 1];
+            neighbours = isLeaf ? null : new Node[maxChildren];
+        }
+
+        boolean isFull() {
+            return numItems == items.length;
+        }
+
+        /**
+         * @return the number of items read, clamped so a torn read can not go out of bounds
+         */
+        private int count() {
+            int n = numItems;
+            return n < 0 ? 0 : Math.min(n, items.length);
+        }
+
+        /**
+         * Index of the child that may hold an item: separators equal to the item route to the right.
+         * Safe to call under an optimistic stamp.
+         */
+        int childIndex(T item) {
+            int n = count();
+            int low = 0;
+            int high = n;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                T separator = items[middle];
+                if (separator == null) return 0; // torn read, the caller's validation fails
+                if (separator.compareTo(item) <= 0) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * Reads a child pointer, safe to call under an optimistic stamp
+         */
+        Node<T> child(int i) {
+            return i < neighbours.length ? neighbours[i] : null;
+        }
+
+        /**
+         * Finds an item in a leaf, safe to call under an optimistic stamp
+         */
+        T find(T item) {
+            int n = count();
+            for (int i = 0; i < n; i++) {
+                T current = items[i];
+                if (current == null) return null;
+                int comparison = current.compareTo(item);
+                if (comparison == 0) return current;
+                if (comparison > 0) return null;
+            }
+            return null;
+        }
+
+        int lowerBound(T item) {
+            int low = 0;
+            int high = numItems;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (items[middle].compareTo(item) < 0) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        int indexOfChild(Node<T> child) {
+            for (int i = 0; i <= numItems; i++) if (neighbours[i] == child) return i;
+            throw new IllegalStateException("Child not found in parent");
+        }
+
+        void insert(int index, T item, Node<T> rightChild) {
+            System.arraycopy(items, index, items, index + 1, numItems - index);
+            items[index] = item;
+            if (!isLeaf) {
+                System.arraycopy(neighbours, index + 1, neighbours, index + 2, numItems - index);
+                neighbours[index + 1] = rightChild;
+            }
+            numItems++;
+        }
+
+        void remove(int index) {
+            System.arraycopy(items, index + 1, items, index, numItems - index - 1);
+            items[--numItems] = null;
+        }
+    }
+}
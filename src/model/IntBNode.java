@@ -0,0 +1,99 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link IntBTree}, holding unboxed int keys.
+ * <br>
+ * Leaf nodes do not allocate a child array.
+ */
+public class IntBNode {
+    public int numItems = 0;
+    public int[] items;
+    public IntBNode[] neighbours;
+    public final boolean isLeaf;
+
+    public IntBNode(int maxChildren, boolean isLeaf) {
+        this.isLeaf = isLeaf;
+        items = new int[maxChildren - 1];
+        neighbours = isLeaf ? null : new IntBNode[maxChildren];
+    }
+
+    /**
+     * @param item the item
+     * @return the index of the first item greater than or equal to item
+     */
+    int lowerBound(int item) {
+        int low = 0;
+        int high = numItems;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle] < item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param item the item
+     * @return the index of the first item strictly greater than item
+     */
+    int upperBound(int item) {
+        int low = 0;
+        int high = numItems;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle] <= item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Removes the item at an index of a leaf node
+     * @param index the index
+     */
+    void removeItem(int index) {
+        System.arraycopy(items, index + 1, items, index, numItems - index - 1);
+        numItems--;
+    }
+
+    /**
+     * @return the largest item in the subtree rooted at this node
+     */
+    int max() {
+        IntBNode node = this;
+        while (!node.isLeaf) node = node.neighbours[node.numItems];
+        return node.items[node.numItems - 1];
+    }
+
+    /**
+     * @return the smallest item in the subtree rooted at this node
+     */
+    int min() {
+        IntBNode node = this;
+        while (!node.isLeaf) node = node.neighbours[0];
+        return node.items[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(50);
+        print(buffer, "", "");
+        return buffer.toString();
+    }
+
+    private void print(StringBuilder buffer, String prefix, String childrenPrefix) {
+        buffer.append(prefix);
+        buffer.append(Arrays.toString(Arrays.copyOf(items, numItems)));
+        buffer.append('\n');
+        if (isLeaf) return;
+        for (int i = 0; i <= numItems; i++) {
+            if (i != numItems) {
+                neighbours[i].print(buffer, childrenPrefix + "+--- ", childrenPrefix + "|   ");
+            } else {
+                neighbours[i].print(buffer, childrenPrefix + "L___ ", childrenPrefix + "    ");
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package model;
+
+/**
+ * Implementation of a B Tree specialised for primitive int keys
+ * <br>
+ * Keys are stored unboxed in the int[] arrays of {@link IntBNode}, so no key objects are allocated
+ * and comparisons inside a node never dereference a pointer.
+ * <br>
+ * Offers the same add/delete/search/getItems operations as {@link BTree}, and like it allows duplicate keys.
+ */
+public class IntBTree {
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    /**
+     * The root node of the tree
+     */
+    public IntBNode root;
+
+    /**
+     * The number of keys in the tree
+     */
+    private int size;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public IntBTree(int minChildren) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        this.minChildren = minChildren;
+        root = new IntBNode(2 * minChildren, true);
+    }
+
+    public int getMinChildren() { return minChildren; }
+
+    /**
+     * @return the number of keys in the tree
+     */
+    public int size() { return size; }
+
+    public int getHeight() {
+        int height = 0;
+        IntBNode node = root;
+        while (!node.isLeaf) {
+            node = node.neighbours[0];
+            height++;
+        }
+        return height;
+    }
+
+    public void add(int item) {
+        IntBNode node = root;
+        if (node.numItems == 2 * minChildren - 1) {
+            IntBNode newRootNode = new IntBNode(2 * minChildren, false);
+            newRootNode.neighbours[0] = node;
+            splitChildNode(newRootNode, 0, node);
+            root = newRootNode;
+            node = newRootNode;
+        }
+        // Descend iteratively, splitting full children before entering them.
+        while (!node.isLeaf) {
+            int i = node.upperBound(item);
+            IntBNode child = node.neighbours[i];
+            if (child.numItems == 2 * minChildren - 1) {
+                splitChildNode(node, i, child);
+                if (item >= node.items[i]) child = node.neighbours[i + 1];
+            }
+            node = child;
+        }
+        int i = node.upperBound(item);
+        System.arraycopy(node.items, i, node.items, i + 1, node.numItems - i);
+        node.items[i] = item;
+        node.numItems++;
+        size++;
+    }
+
+    /**
+     * Splits the full child node at index i of parentNode, moving its median item up into parentNode
+     * @param parentNode the given parent node
+     * @param i the index of the child in the parent node
+     * @param node the full child node
+     */
+    void splitChildNode(IntBNode parentNode, int i, IntBNode node) {
+        IntBNode newNode = new IntBNode(2 * minChildren, node.isLeaf);
+        newNode.numItems = minChildren - 1;
+        System.arraycopy(node.items, minChildren, newNode.items, 0, minChildren - 1);
+        if (!node.isLeaf) {
+            System.arraycopy(node.neighbours, minChildren, newNode.neighbours, 0, minChildren);
+            for (int j = minChildren; j <= node.numItems; j++) node.neighbours[j] = null;
+        }
+        node.numItems = minChildren - 1;
+
+        System.arraycopy(parentNode.neighbours, i + 1, parentNode.neighbours, i + 2, parentNode.numItems - i);
+        parentNode.neighbours[i + 1] = newNode;
+        System.arraycopy(parentNode.items, i, parentNode.items, i + 1, parentNode.numItems - i);
+        parentNode.items[i] = node.items[minChildren - 1];
+        parentNode.numItems++;
+    }
+
+    /**
+     * Deletes one occurrence of an item from the tree, if present.
+     * <br>
+     * Like {@link BTree#delete}, nodes on the way down are topped up to minChildren items
+     * (by borrowing from or merging with a sibling) so the deletion is done in one downward pass.
+     * @param item the item to delete
+     * @return whether an item was deleted
+     */
+    public boolean delete(int item) {
+        boolean deleted = false;
+        IntBNode node = root;
+        while (true) {
+            int i = node.lowerBound(item);
+            if (i < node.numItems && node.items[i] == item) {
+                if (node.isLeaf) {
+                    node.removeItem(i);
+                    deleted = true;
+                    break;
+                }
+                IntBNode leftChildNode = node.neighbours[i];
+                IntBNode rightChildNode = node.neighbours[i + 1];
+                if (leftChildNode.numItems >= minChildren) {
+                    // Replace with the predecessor, then delete the predecessor from the left subtree
+                    int predecessor = leftChildNode.max();
+                    node.items[i] = predecessor;
+                    item = predecessor;
+                    node = leftChildNode;
+                } else if (rightChildNode.numItems >= minChildren) {
+                    // Replace with the successor, then delete the successor from the right subtree
+                    int successor = rightChildNode.min();
+                    node.items[i] = successor;
+                    item = successor;
+                    node = rightChildNode;
+                } else {
+                    // Both children are minimal: merge them around the item and keep deleting in the merged node
+                    mergeChildNodes(node, i);
+                    node = leftChildNode;
+                }
+            } else {
+                if (node.isLeaf) break;
+                IntBNode childNode = node.neighbours[i];
+                if (childNode.numItems == minChildren - 1) {
+                    IntBNode leftChildSibling = i > 0 ? node.neighbours[i - 1] : null;
+                    IntBNode rightChildSibling = i < node.numItems ? node.neighbours[i + 1] : null;
+                    if (leftChildSibling != null && leftChildSibling.numItems >= minChildren) {
+                        borrowFromLeft(node, i);
+                    } else if (rightChildSibling != null && rightChildSibling.numItems >= minChildren) {
+                        borrowFromRight(node, i);
+                    } else if (rightChildSibling != null) {
+                        mergeChildNodes(node, i);
+                    } else {
+                        mergeChildNodes(node, i - 1);
+                        childNode = leftChildSibling;
+                    }
+                }
+                node = childNode;
+            }
+        }
+        if (root.numItems == 0 && !root.isLeaf) root = root.neighbours[0];
+        if (deleted) size--;
+        return deleted;
+    }
+
+    /**
+     * Moves the separator at index i - 1 down into child i, and the last item of child i - 1 up to replace it
+     */
+    private void borrowFromLeft(IntBNode node, int i) {
+        IntBNode childNode = node.neighbours[i];
+        IntBNode sibling = node.neighbours[i - 1];
+        System.arraycopy(childNode.items, 0, childNode.items, 1, childNode.numItems);
+        childNode.items[0] = node.items[i - 1];
+        if (!childNode.isLeaf) {
+            System.arraycopy(childNode.neighbours, 0, childNode.neighbours, 1, childNode.numItems + 1);
+            childNode.neighbours[0] = sibling.neighbours[sibling.numItems];
+            sibling.neighbours[sibling.numItems] = null;
+        }
+        childNode.numItems++;
+        node.items[i - 1] = sibling.items[sibling.numItems - 1];
+        sibling.numItems--;
+    }
+
+    /**
+     * Moves the separator at index i down into child i, and the first item of child i + 1 up to replace it
+     */
+    private void borrowFromRight(IntBNode node, int i) {
+        IntBNode childNode = node.neighbours[i];
+        IntBNode sibling = node.neighbours[i + 1];
+        childNode.items[childNode.numItems] = node.items[i];
+        if (!childNode.isLeaf) childNode.neighbours[childNode.numItems + 1] = sibling.neighbours[0];
+        childNode.numItems++;
+        node.items[i] = sibling.items[0];
+        System.arraycopy(sibling.items, 1, sibling.items, 0, sibling.numItems - 1);
+        if (!sibling.isLeaf) {
+            System.arraycopy(sibling.neighbours, 1, sibling.neighbours, 0, sibling.numItems);
+            sibling.neighbours[sibling.numItems] = null;
+        }
+        sibling.numItems--;
+    }
+
+    /**
+     * Merges child i + 1 and the separator at index i into child i
+     */
+    private void mergeChildNodes(IntBNode node, int i) {
+        IntBNode target = node.neighbours[i];
+        IntBNode source = node.neighbours[i + 1];
+        target.items[target.numItems] = node.items[i];
+        System.arraycopy(source.items, 0, target.items, target.numItems + 1, source.numItems);
+        if (!target.isLeaf)
+            System.arraycopy(source.neighbours, 0, target.neighbours, target.numItems + 1, source.numItems + 1);
+        target.numItems += source.numItems + 1;
+
+        System.arraycopy(node.items, i + 1, node.items, i, node.numItems - i - 1);
+        System.arraycopy(node.neighbours, i + 2, node.neighbours, i + 1, node.numItems - i - 1);
+        node.neighbours[node.numItems] = null;
+        node.numItems--;
+    }
+
+    /**
+     * Searches for an item in the whole tree
+     * @param item the item
+     * @return whether the item is in the tree
+     */
+    public boolean search(int item) {
+        IntBNode node = root;
+        while (true) {
+            int i = node.lowerBound(item);
+            if (i < node.numItems && node.items[i] == item) return true;
+            if (node.isLeaf) return false;
+            node = node.neighbours[i];
+        }
+    }
+
+    /**
+     * @return all items of the tree in ascending order
+     */
+    public int[] getItems() {
+        int[] array = new int[size];
+        if (size > 0) getItems(root, array, 0);
+        return array;
+    }
+
+    // Inorder walk over the tree, returns the next free index of the array.
+    private int getItems(IntBNode node, int[] array, int index) {
+        if (node.isLeaf) {
+            System.arraycopy(node.items, 0, array, index, node.numItems);
+            return index + node.numItems;
+        }
+        for (int i = 0; i < node.numItems; i++) {
+            index = getItems(node.neighbours[i], array, index);
+            array[index++] = node.items[i];
+        }
+        return getItems(node.neighbours[node.numItems], array, index);
+    }
+
+    public void validate() throws Exception {
+        int[] array = getItems();
+        for (int i = 0; i < array.length - 1; i++) {
+            if (array[i] > array[i + 1]) {
+                throw new Exception("B-Tree invalid: " + array[i] + " greater than " + array[i + 1]);
+            }
+        }
+    }
+
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package model;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A summary of a sequence of items, kept for every subtree of an augmented {@link BTree}.
+ * <br>
+ * Each item is measured, and summaries are combined with an operation that is associative, commutative and has
+ * identity() as its neutral element, e.g. sum, min or max. Adding an item folds its measure into the summaries on
+ * its path without looking at the rest of the nodes, which is why the operation must be commutative.
+ * A delete recomputes the summaries on its path from the children of each node, unless the monoid can undo
+ * a combine, see {@link #difference}.
+ *
+ * @param <T> the type of the items
+ * @param <S> the type of the summaries
+ */
+public interface Monoid<T, S> {
+
+    /**
+     * @return the summary of no items
+     */
+    S identity();
+
+    /**
+     * @param item an item
+     * @return the summary of the item alone
+     */
+    S measure(T item);
+
+    /**
+     * @param left a summary
+     * @param right another summary
+     * @return the summary of the items of both
+     */
+    S combine(S left, S right);
+
+    /**
+     * Undoes a combine, if the monoid can: difference(combine(a, b), b) equals a.
+     * @param summary a summary
+     * @param measure the measure of an item in the summary
+     * @return the summary without the item, or null if the monoid can not undo a combine, e.g. min
+     */
+    default S difference(S summary, S measure) {
+        return null;
+    }
+
+    /**
+     * @param value the value of an item
+     * @return the sum of the values, which deletes update by subtracting, so non-integer values can drift by rounding
+     */
+    static <T> Monoid<T, Double> sum(ToDoubleFunction<? super T> value) {
+        return of(0.0, value, Double::sum, (summary, measure) -> summary - measure);
+    }
+
+    /**
+     * @param value the value of an item
+     * @return the minimum of the values, positive infinity for no items
+     */
+    static <T> Monoid<T, Double> min(ToDoubleFunction<? super T> value) {
+        return of(Double.POSITIVE_INFINITY, value, Math::min, null);
+    }
+
+    /**
+     * @param value the value of an item
+     * @return the maximum of the values, negative infinity for no items
+     */
+    static <T> Monoid<T, Double> max(ToDoubleFunction<? super T> value) {
+        return of(Double.NEGATIVE_INFINITY, value, Math::max, null);
+    }
+
+    private static <T> Monoid<T, Double> of(double identity, ToDoubleFunction<? super T> value,
+                                            DoubleBinaryOperator operator, DoubleBinaryOperator inverse) {
+        return new Monoid<T, Double>() {
+            @Override
+            public Double identity() { return identity; }
+            @Override
+            public Double measure(T item) { return value.applyAsDouble(item); }
+            @Override
+            public Double combine(Double left, Double right) { return operator.applyAsDouble(left, right); }
+            @Override
+            public Double difference(Double summary, Double measure) {
+                return inverse == null ? null : inverse.applyAsDouble(summary, measure);
+            }
+        };
+    }
+}
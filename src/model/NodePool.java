@@ -0,0 +1,108 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Nodes dropped by one {@link BTree}, kept to be reused by its later splits, see {@link BTree#enableNodePool(int)}.
+ * <br>
+ * Merges and root collapses drop a node, splits and root splits create one, so a tree that stays about the same
+ * size under adds and deletes allocates no nodes once the pool is warm. Only nodes of the tree's current epoch are
+ * released: any other node may still be part of a snapshot.
+ * A released node is cleared so that the pool does not keep items alive.
+ * <br>
+ * Leaves and internal nodes are kept apart, since a node can not change between the two, and at most
+ * {@code capacity} of each are kept; further nodes are left to the garbage collector.
+ * The pool belongs to a single tree, which is modified by one thread at a time, so it is not synchronized.
+ */
+public class NodePool {
+
+    private final BNode[] leaves;
+    private final BNode[] internalNodes;
+    private int leafCount;
+    private int internalCount;
+
+    private long reused;
+    private long released;
+    private long discarded;
+
+    /**
+     * Constructor
+     * @param capacity the number of leaves and the number of internal nodes to keep at most
+     */
+    NodePool(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        leaves = new BNode[capacity];
+        internalNodes = new BNode[capacity];
+    }
+
+    /**
+     * @param isLeaf whether a leaf is wanted
+     * @return a cleared node of that kind, or null if there is none
+     */
+    BNode take(boolean isLeaf) {
+        BNode node;
+        if (isLeaf) {
+            if (leafCount == 0) return null;
+            node = leaves[--leafCount];
+            leaves[leafCount] = null;
+        } else {
+            if (internalCount == 0) return null;
+            node = internalNodes[--internalCount];
+            internalNodes[internalCount] = null;
+        }
+        reused++;
+        return node;
+    }
+
+    /**
+     * Clears a node that is no longer part of any tree and keeps it, if there is room
+     * @param node the node
+     */
+    void release(BNode node) {
+        if ((node.isLeaf ? leafCount : internalCount) == leaves.length) {
+            discarded++;
+            return;
+        }
+        Arrays.fill(node.items, null);
+        if (!node.isLeaf) Arrays.fill(node.neighbours, null);
+        node.numItems = 0;
+        // No tree has epoch 0, so a stray reference to the node would copy it rather than change it
+        node.epoch = 0;
+        node.size = 0;
+        node.summary = null;
+        if (node.isLeaf) leaves[leafCount++] = node;
+        else internalNodes[internalCount++] = node;
+        released++;
+    }
+
+    /**
+     * @return the number of leaves and the number of internal nodes kept at most
+     */
+    public int getCapacity() { return leaves.length; }
+
+    /**
+     * @return the number of nodes in the pool
+     */
+    public int getPooled() { return leafCount + internalCount; }
+
+    /**
+     * @return the number of nodes taken from the pool instead of allocated
+     */
+    public long getReused() { return reused; }
+
+    /**
+     * @return the number of nodes put in the pool
+     */
+    public long getReleased() { return released; }
+
+    /**
+     * @return the number of dropped nodes that did not fit in the pool
+     */
+    public long getDiscarded() { return discarded; }
+
+    @Override
+    public String toString() {
+        return String.format("pooled %d of %d + %d, reused %d, released %d, discarded %d",
+                getPooled(), leaves.length, leaves.length, reused, released, discarded);
+    }
+}
@@ -0,0 +1,194 @@
+package model;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Builds a {@link BTree} from unsorted input with the threads of a fork-join pool:
+ * <ol>
+ *     <li>the file is read at once and cut into chunks at line ends, which are parsed in parallel</li>
+ *     <li>the items are sorted with {@link Arrays#parallelSort}</li>
+ *     <li>duplicates are dropped if asked, each task compacting a range of the sorted items</li>
+ *     <li>the tree is bulk loaded with the pool, each task building a contiguous range of the nodes of a level</li>
+ * </ol>
+ * Lines end at "\n" or "\r\n", like {@link java.io.BufferedReader#readLine}, and are decoded as UTF-8.
+ * <br>
+ * Arrays.parallelSort sizes its tasks by the parallelism of the common pool, and sorts on one thread if that is 1,
+ * whatever the pool it runs in.
+ */
+public final class ParallelTreeBuilder {
+
+    /**
+     * The number of chunks per thread, so that threads which finish early can take more
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelTreeBuilder() {}
+
+    /**
+     * Builds a tree of the lines of a file
+     * @param file the file, of at most 2 GB
+     * @param parse converts a line to an item
+     * @param newArray creates an array of items, such as {@code Integer[]::new}
+     * @param minChildren the minimum number of children of the tree
+     * @param distinct whether to keep only one of equal items
+     * @param pool the pool to run in
+     * @return the tree
+     * @throws IOException if the file can not be read
+     */
+    public static <T extends Comparable<? super T>> BTree<T> fromFile(Path file, Function<String, T> parse, IntFunction<T[]> newArray,
+                                                                      int minChildren, boolean distinct, ForkJoinPool pool) throws IOException {
+        return fromArray(parseLines(file, parse, newArray, pool), minChildren, distinct, pool);
+    }
+
+    /**
+     * Parses the lines of a file in parallel
+     * @param file the file, of at most 2 GB
+     * @param parse converts a line to an item, in any thread
+     * @param newArray creates an array of items, such as {@code Integer[]::new}
+     * @param pool the pool to run in
+     * @return the items in the order of the file
+     * @throws IOException if the file can not be read
+     */
+    public static <T extends Comparable<? super T>> T[] parseLines(Path file, Function<String, T> parse, IntFunction<T[]> newArray,
+                                                                   ForkJoinPool pool) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int numChunks = Math.max(1, Math.min(bytes.length / 4096, pool.getParallelism() * CHUNKS_PER_THREAD));
+        // Chunk c is [starts[c], starts[c + 1]), every start but the first is just after a line end
+        int[] starts = new int[numChunks + 1];
+        starts[numChunks] = bytes.length;
+        for (int c = 1; c < numChunks; c++) {
+            int start = Math.max(starts[c - 1], (int) ((long) bytes.length * c / numChunks));
+            while (start < bytes.length && start > 0 && bytes[start - 1] != '\n') start++;
+            starts[c] = start;
+        }
+
+        List<Callable<Object[]>> tasks = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            int from = starts[c];
+            int to = starts[c + 1];
+            tasks.add(() -> {
+                ArrayList<T> items = new ArrayList<>();
+                int line = from;
+                for (int i = from; i < to; i++) {
+                    if (bytes[i] != '\n') continue;
+                    int end = i > line && bytes[i - 1] == '\r' ? i - 1 : i;
+                    items.add(parse.apply(new String(bytes, line, end - line, StandardCharsets.UTF_8)));
+                    line = i + 1;
+                }
+                // The last line of the file may have no line end
+                if (line < to) items.add(parse.apply(new String(bytes, line, to - line, StandardCharsets.UTF_8)));
+                return items.toArray();
+            });
+        }
+        List<Object[]> chunks = invokeAll(pool, tasks);
+        int length = 0;
+        for (Object[] chunk : chunks) length += chunk.length;
+        T[] items = newArray.apply(length);
+        int offset = 0;
+        for (Object[] chunk : chunks) {
+            System.arraycopy(chunk, 0, items, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return items;
+    }
+
+    /**
+     * Builds a tree of unsorted items
+     * @param items the items, which are sorted in place
+     * @param minChildren the minimum number of children of the tree
+     * @param distinct whether to keep only one of equal items
+     * @param pool the pool to run in
+     * @return the tree
+     */
+    public static <T extends Comparable<? super T>> BTree<T> fromArray(T[] items, int minChildren, boolean distinct, ForkJoinPool pool) {
+        // Run in the pool, so that the tasks of the sort are forked into it
+        pool.submit(() -> Arrays.parallelSort(items)).join();
+        T[] sorted = items;
+        int length = items.length;
+        if (distinct) {
+            @SuppressWarnings("unchecked")
+            T[] out = (T[]) Array.newInstance(items.getClass().getComponentType(), items.length);
+            length = distinct(items, out, pool);
+            sorted = out;
+        }
+        BTree<T> tree = new BTree<>(minChildren);
+        tree.bulkLoad(sorted, length, BTree.DEFAULT_FILL_FACTOR, pool);
+        return tree;
+    }
+
+    /**
+     * Copies the first of each run of equal items, in two passes over ranges: one counting the items each range keeps,
+     * then one copying them to where the ranges before leave off
+     * @param sorted the items in ascending order
+     * @param out where the distinct items go
+     * @param pool the pool to run in
+     * @return the number of distinct items
+     */
+    private static <T extends Comparable<? super T>> int distinct(T[] sorted, T[] out, ForkJoinPool pool) {
+        int numRanges = Math.max(1, Math.min(sorted.length / 4096, pool.getParallelism() * CHUNKS_PER_THREAD));
+        List<Callable<Object>> counts = new ArrayList<>(numRanges);
+        int[] kept = new int[numRanges + 1];
+        for (int r = 0; r < numRanges; r++) {
+            int range = r;
+            int from = (int) ((long) sorted.length * r / numRanges);
+            int to = (int) ((long) sorted.length * (r + 1) / numRanges);
+            counts.add(() -> {
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    if (i == 0 || sorted[i - 1].compareTo(sorted[i]) != 0) count++;
+                }
+                kept[range + 1] = count;
+                return null;
+            });
+        }
+        invokeAll(pool, counts);
+        for (int r = 0; r < numRanges; r++) kept[r + 1] += kept[r];
+
+        List<Callable<Object>> copies = new ArrayList<>(numRanges);
+        for (int r = 0; r < numRanges; r++) {
+            int offset = kept[r];
+            int from = (int) ((long) sorted.length * r / numRanges);
+            int to = (int) ((long) sorted.length * (r + 1) / numRanges);
+            copies.add(() -> {
+                int k = offset;
+                for (int i = from; i < to; i++) {
+                    if (i == 0 || sorted[i - 1].compareTo(sorted[i]) != 0) out[k++] = sorted[i];
+                }
+                return null;
+            });
+        }
+        invokeAll(pool, copies);
+        return kept[numRanges];
+    }
+
+    /**
+     * Runs tasks in a pool, rethrowing the first exception a task threw
+     */
+    private static <V> List<V> invokeAll(ForkJoinPool pool, List<Callable<V>> tasks) {
+        List<V> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<V> future : pool.invokeAll(tasks)) results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
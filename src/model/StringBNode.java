@@ -0,0 +1,257 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Node of a {@link StringBTree}, holding its keys front-coded in a single byte array.
+ * <br>
+ * Each key is stored as the length of the prefix it shares with the previous key in the node, the length of the
+ * rest, and the rest of its UTF-8 bytes; lengths are varints, one byte below 128. The first key of a node has
+ * no previous key, so it is stored whole. Sorted keys tend to share long prefixes (file lines, names, ISO dates),
+ * which front coding stores once per node instead of once per key, and the node is one array instead of a String,
+ * its char array and a reference per key.
+ * <br>
+ * Keys are compared as unsigned UTF-8 bytes, which is code point order. That is the order of
+ * {@link String#compareTo} except between characters above U+E000 and supplementary characters.
+ * <br>
+ * Leaf nodes do not allocate a child array.
+ */
+public class StringBNode {
+    public int numItems = 0;
+
+    /**
+     * The front-coded keys, followed by unused space
+     */
+    byte[] keys;
+
+    /**
+     * The number of bytes of keys in use
+     */
+    int used = 0;
+
+    public StringBNode[] neighbours;
+    public final boolean isLeaf;
+
+    public StringBNode(int maxChildren, boolean isLeaf) {
+        this.isLeaf = isLeaf;
+        keys = new byte[4 * maxChildren];
+        neighbours = isLeaf ? null : new StringBNode[maxChildren];
+    }
+
+    /**
+     * The front-coded scan behind every search. It never decodes a key: it keeps the length of the prefix the probe
+     * shares with the previous key, and a key whose shared prefix with the previous key is longer or shorter than
+     * that is smaller or greater than the probe without looking at its bytes. Only keys that share exactly as
+     * much with the previous key as the probe does are compared, from that position on.
+     * @param probe the UTF-8 bytes of the probe
+     * @param upper whether keys equal to the probe are passed over
+     * @return the index of the first key equal to the probe, if it is not passed over and there is one,
+     * otherwise (-(index of the first key greater than the probe, or greater than or equal to it) - 1),
+     * as in {@link Arrays#binarySearch(int[], int)}
+     */
+    int scan(byte[] probe, boolean upper) {
+        int matched = 0;
+        int offset = 0;
+        for (int i = 0; i < numItems; i++) {
+            int prefix = readVarint(offset);
+            offset = skipVarint(offset);
+            int suffix = readVarint(offset);
+            offset = skipVarint(offset);
+            if (prefix < matched) return -i - 1;
+            if (prefix == matched) {
+                int compared = Math.min(suffix, probe.length - matched);
+                int j = Arrays.mismatch(keys, offset, offset + compared, probe, matched, matched + compared);
+                if (j < 0) j = compared;
+                if (matched + j == probe.length) {
+                    if (j < suffix) return -i - 1;
+                    if (!upper) return i;
+                } else if (j < suffix && (keys[offset + j] & 0xff) > (probe[matched + j] & 0xff)) {
+                    return -i - 1;
+                }
+                matched += j;
+            }
+            offset += suffix;
+        }
+        return -numItems - 1;
+    }
+
+    /**
+     * @param probe the UTF-8 bytes of the probe
+     * @return the index of the first key greater than or equal to the probe, numItems if there is none
+     */
+    int lowerBound(byte[] probe) {
+        int i = scan(probe, false);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * @param probe the UTF-8 bytes of the probe
+     * @return the index of the first key strictly greater than the probe, numItems if there is none
+     */
+    int upperBound(byte[] probe) {
+        return -scan(probe, true) - 1;
+    }
+
+    /**
+     * @param index the index of a key
+     * @return the UTF-8 bytes of the key
+     */
+    byte[] key(int index) {
+        return keys(index, index + 1)[0];
+    }
+
+    /**
+     * Decodes a range of keys, which has to walk all keys before it
+     * @param from the index of the first key
+     * @param to the index after the last key
+     * @return the UTF-8 bytes of the keys
+     */
+    byte[][] keys(int from, int to) {
+        byte[][] decoded = new byte[to - from][];
+        // The key decoded last, whose prefix the next key extends
+        byte[] current = new byte[32];
+        int offset = 0;
+        for (int i = 0; i < to; i++) {
+            int prefix = readVarint(offset);
+            offset = skipVarint(offset);
+            int suffix = readVarint(offset);
+            offset = skipVarint(offset);
+            if (current.length < prefix + suffix) current = Arrays.copyOf(current, 2 * (prefix + suffix));
+            System.arraycopy(keys, offset, current, prefix, suffix);
+            if (i >= from) decoded[i - from] = Arrays.copyOf(current, prefix + suffix);
+            offset += suffix;
+        }
+        return decoded;
+    }
+
+    /**
+     * @param index the index of a key, or numItems
+     * @return the offset in keys at which the key starts, used if index is numItems
+     */
+    private int offsetOf(int index) {
+        int offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset = skipVarint(offset);
+            int suffix = readVarint(offset);
+            offset = skipVarint(offset) + suffix;
+        }
+        return offset;
+    }
+
+    /**
+     * Replaces a range of keys with other keys, which must keep the node sorted.
+     * The key after the range is encoded again, as the key before it changes.
+     * @param from the index of the first key replaced
+     * @param to the index after the last key replaced
+     * @param replacement the UTF-8 bytes of the new keys
+     */
+    void replace(int from, int to, byte[]... replacement) {
+        byte[][] around = keys(Math.max(0, from - 1), Math.min(numItems, to + 1));
+        byte[] previous = from > 0 ? around[0] : new byte[0];
+        byte[] next = to < numItems ? around[around.length - 1] : null;
+        int start = offsetOf(from);
+        int end = offsetOf(next != null ? to + 1 : to);
+
+        byte[] segment = new byte[16];
+        int length = 0;
+        for (int k = 0; k <= replacement.length; k++) {
+            byte[] key = k < replacement.length ? replacement[k] : next;
+            if (key == null) break;
+            // The length of the shorter key if one starts with the other, -1 if they are equal
+            int prefix = Arrays.mismatch(previous, key);
+            if (prefix < 0) prefix = key.length;
+            int suffix = key.length - prefix;
+            if (segment.length < length + suffix + 10) segment = Arrays.copyOf(segment, 2 * (length + suffix + 10));
+            length = writeVarint(segment, length, prefix);
+            length = writeVarint(segment, length, suffix);
+            System.arraycopy(key, prefix, segment, length, suffix);
+            length += suffix;
+            previous = key;
+        }
+
+        int newUsed = used - (end - start) + length;
+        if (newUsed > keys.length) keys = Arrays.copyOf(keys, Math.max(newUsed, keys.length + keys.length / 8));
+        System.arraycopy(keys, end, keys, start + length, used - end);
+        System.arraycopy(segment, 0, keys, start, length);
+        used = newUsed;
+        numItems += replacement.length - (to - from);
+    }
+
+    /**
+     * Drops the keys from an index on, which needs no key to be encoded again.
+     * The array shrinks to the kept keys, as a split would otherwise leave half of it unused.
+     * @param index the number of keys to keep
+     */
+    void truncate(int index) {
+        used = offsetOf(index);
+        numItems = index;
+        keys = Arrays.copyOf(keys, used);
+    }
+
+    /**
+     * @return the UTF-8 bytes of the largest key in the subtree rooted at this node
+     */
+    byte[] max() {
+        StringBNode node = this;
+        while (!node.isLeaf) node = node.neighbours[node.numItems];
+        return node.key(node.numItems - 1);
+    }
+
+    /**
+     * @return the UTF-8 bytes of the smallest key in the subtree rooted at this node
+     */
+    byte[] min() {
+        StringBNode node = this;
+        while (!node.isLeaf) node = node.neighbours[0];
+        return node.key(0);
+    }
+
+    private int readVarint(int offset) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = keys[offset++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private int skipVarint(int offset) {
+        while (keys[offset++] < 0) ;
+        return offset;
+    }
+
+    private static int writeVarint(byte[] array, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            array[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        array[offset++] = (byte) value;
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(50);
+        print(buffer, "", "");
+        return buffer.toString();
+    }
+
+    private void print(StringBuilder buffer, String prefix, String childrenPrefix) {
+        buffer.append(prefix).append('[');
+        byte[][] decoded = keys(0, numItems);
+        for (int i = 0; i < numItems; i++) {
+            if (i > 0) buffer.append(", ");
+            buffer.append(new String(decoded[i], StandardCharsets.UTF_8));
+        }
+        buffer.append("]\n");
+        if (isLeaf) return;
+        for (int i = 0; i <= numItems; i++) {
+            if (i != numItems) {
+                neighbours[i].print(buffer, childrenPrefix + "+--- ", childrenPrefix + "|   ");
+            } else {
+                neighbours[i].print(buffer, childrenPrefix + "L___ ", childrenPrefix + "    ");
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implementation of a B Tree specialised for String keys
+ * <br>
+ * Keys are stored front-coded in one byte array per node, see {@link StringBNode}, so a tree of text lines holds
+ * no String objects and stores the prefix a run of keys shares once per node. A search encodes the probe to UTF-8
+ * once and compares it to the stored bytes, without decoding a key or building a String.
+ * <br>
+ * Keys are ordered by code point, as UTF-8 bytes compare, rather than by {@link String#compareTo}; the two only
+ * differ between characters above U+E000 and supplementary characters.
+ * <br>
+ * Keys must be valid UTF-16: a String with an unpaired surrogate has no UTF-8 form, and is refused with an
+ * {@link IllegalArgumentException} rather than stored as a replacement character that other keys would equal.
+ * <br>
+ * Offers the same add/delete/search/getItems operations as {@link BTree}, and like it allows duplicate keys.
+ */
+public class StringBTree {
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    /**
+     * The root node of the tree
+     */
+    public StringBNode root;
+
+    /**
+     * The number of keys in the tree
+     */
+    private int size;
+
+    /**
+     * Encodes keys to UTF-8, reporting unpaired surrogates instead of replacing them
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public StringBTree(int minChildren) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        this.minChildren = minChildren;
+        root = new StringBNode(2 * minChildren, true);
+    }
+
+    public int getMinChildren() { return minChildren; }
+
+    /**
+     * @return the number of keys in the tree
+     */
+    public int size() { return size; }
+
+    public int getHeight() {
+        int height = 0;
+        StringBNode node = root;
+        while (!node.isLeaf) {
+            node = node.neighbours[0];
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * @param item the item
+     * @return the UTF-8 bytes of the item
+     * @throws IllegalArgumentException if the item has an unpaired surrogate
+     */
+    private byte[] utf8(String item) {
+        try {
+            ByteBuffer buffer = encoder.encode(CharBuffer.wrap(item));
+            byte[] key = new byte[buffer.remaining()];
+            buffer.get(key);
+            return key;
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Key is not valid UTF-16: " + item, e);
+        }
+    }
+
+    /**
+     * Adds an item, after any equal ones
+     * @param item the item
+     * @throws IllegalArgumentException if the item has an unpaired surrogate
+     */
+    public void add(String item) {
+        byte[] key = utf8(item);
+        StringBNode node = root;
+        if (node.numItems == 2 * minChildren - 1) {
+            StringBNode newRootNode = new StringBNode(2 * minChildren, false);
+            newRootNode.neighbours[0] = node;
+            splitChildNode(newRootNode, 0, node);
+            root = newRootNode;
+            node = newRootNode;
+        }
+        // Descend iteratively, splitting full children before entering them.
+        while (!node.isLeaf) {
+            int i = node.upperBound(key);
+            StringBNode child = node.neighbours[i];
+            if (child.numItems == 2 * minChildren - 1) {
+                byte[] median = splitChildNode(node, i, child);
+                if (Arrays.compareUnsigned(key, median) >= 0) child = node.neighbours[i + 1];
+            }
+            node = child;
+        }
+        int i = node.upperBound(key);
+        node.replace(i, i, key);
+        size++;
+    }
+
+    /**
+     * Splits the full child node at index i of parentNode, moving its median item up into parentNode
+     * @param parentNode the given parent node
+     * @param i the index of the child in the parent node
+     * @param node the full child node
+     * @return the median item
+     */
+    byte[] splitChildNode(StringBNode parentNode, int i, StringBNode node) {
+        byte[][] moved = node.keys(minChildren - 1, node.numItems);
+        StringBNode newNode = new StringBNode(2 * minChildren, node.isLeaf);
+        newNode.replace(0, 0, Arrays.copyOfRange(moved, 1, moved.length));
+        if (!node.isLeaf) {
+            System.arraycopy(node.neighbours, minChildren, newNode.neighbours, 0, minChildren);
+            for (int j = minChildren; j <= node.numItems; j++) node.neighbours[j] = null;
+        }
+        node.truncate(minChildren - 1);
+
+        System.arraycopy(parentNode.neighbours, i + 1, parentNode.neighbours, i + 2, parentNode.numItems - i);
+        parentNode.neighbours[i + 1] = newNode;
+        parentNode.replace(i, i, moved[0]);
+        return moved[0];
+    }
+
+    /**
+     * Deletes one occurrence of an item from the tree, if present.
+     * <br>
+     * Like {@link BTree#delete}, nodes on the way down are topped up to minChildren items
+     * (by borrowing from or merging with a sibling) so the deletion is done in one downward pass.
+     * @param item the item to delete
+     * @return whether an item was deleted
+     * @throws IllegalArgumentException if the item has an unpaired surrogate
+     */
+    public boolean delete(String item) {
+        byte[] key = utf8(item);
+        boolean deleted = false;
+        StringBNode node = root;
+        while (true) {
+            int i = node.scan(key, false);
+            if (i >= 0) {
+                if (node.isLeaf) {
+                    node.replace(i, i + 1);
+                    deleted = true;
+                    break;
+                }
+                StringBNode leftChildNode = node.neighbours[i];
+                StringBNode rightChildNode = node.neighbours[i + 1];
+                if (leftChildNode.numItems >= minChildren) {
+                    // Replace with the predecessor, then delete the predecessor from the left subtree
+                    key = leftChildNode.max();
+                    node.replace(i, i + 1, key);
+                    node = leftChildNode;
+                } else if (rightChildNode.numItems >= minChildren) {
+                    // Replace with the successor, then delete the successor from the right subtree
+                    key = rightChildNode.min();
+                    node.replace(i, i + 1, key);
+                    node = rightChildNode;
+                } else {
+                    // Both children are minimal: merge them around the item and keep deleting in the merged node
+                    mergeChildNodes(node, i);
+                    node = leftChildNode;
+                }
+            } else {
+                if (node.isLeaf) break;
+                i = -i - 1;
+                StringBNode childNode = node.neighbours[i];
+                if (childNode.numItems == minChildren - 1) {
+                    StringBNode leftChildSibling = i > 0 ? node.neighbours[i - 1] : null;
+                    StringBNode rightChildSibling = i < node.numItems ? node.neighbours[i + 1] : null;
+                    if (leftChildSibling != null && leftChildSibling.numItems >= minChildren) {
+                        borrowFromLeft(node, i);
+                    } else if (rightChildSibling != null && rightChildSibling.numItems >= minChildren) {
+                        borrowFromRight(node, i);
+                    } else if (rightChildSibling != null) {
+                        mergeChildNodes(node, i);
+                    } else {
+                        mergeChildNodes(node, i - 1);
+                        childNode = leftChildSibling;
+                    }
+                }
+                node = childNode;
+            }
+        }
+        if (root.numItems == 0 && !root.isLeaf) root = root.neighbours[0];
+        if (deleted) size--;
+        return deleted;
+    }
+
+    /**
+     * Moves the separator at index i - 1 down into child i, and the last item of child i - 1 up to replace it
+     */
+    private void borrowFromLeft(StringBNode node, int i) {
+        StringBNode childNode = node.neighbours[i];
+        StringBNode sibling = node.neighbours[i - 1];
+        if (!childNode.isLeaf) {
+            System.arraycopy(childNode.neighbours, 0, childNode.neighbours, 1, childNode.numItems + 1);
+            childNode.neighbours[0] = sibling.neighbours[sibling.numItems];
+            sibling.neighbours[sibling.numItems] = null;
+        }
+        childNode.replace(0, 0, node.key(i - 1));
+        node.replace(i - 1, i, sibling.key(sibling.numItems - 1));
+        sibling.truncate(sibling.numItems - 1);
+    }
+
+    /**
+     * Moves the separator at index i down into child i, and the first item of child i + 1 up to replace it
+     */
+    private void borrowFromRight(StringBNode node, int i) {
+        StringBNode childNode = node.neighbours[i];
+        StringBNode sibling = node.neighbours[i + 1];
+        if (!childNode.isLeaf) childNode.neighbours[childNode.numItems + 1] = sibling.neighbours[0];
+        childNode.replace(childNode.numItems, childNode.numItems, node.key(i));
+        node.replace(i, i + 1, sibling.key(0));
+        if (!sibling.isLeaf) {
+            System.arraycopy(sibling.neighbours, 1, sibling.neighbours, 0, sibling.numItems);
+            sibling.neighbours[sibling.numItems] = null;
+        }
+        sibling.replace(0, 1);
+    }
+
+    /**
+     * Merges child i + 1 and the separator at index i into child i
+     */
+    private void mergeChildNodes(StringBNode node, int i) {
+        StringBNode target = node.neighbours[i];
+        StringBNode source = node.neighbours[i + 1];
+        if (!target.isLeaf)
+            System.arraycopy(source.neighbours, 0, target.neighbours, target.numItems + 1, source.numItems + 1);
+        byte[][] merged = new byte[source.numItems + 1][];
+        merged[0] = node.key(i);
+        System.arraycopy(source.keys(0, source.numItems), 0, merged, 1, source.numItems);
+        target.replace(target.numItems, target.numItems, merged);
+
+        System.arraycopy(node.neighbours, i + 2, node.neighbours, i + 1, node.numItems - i - 1);
+        node.neighbours[node.numItems] = null;
+        node.replace(i, i + 1);
+    }
+
+    /**
+     * Searches for an item in the whole tree
+     * @param item the item
+     * @return whether the item is in the tree
+     * @throws IllegalArgumentException if the item has an unpaired surrogate
+     */
+    public boolean search(String item) {
+        byte[] key = utf8(item);
+        StringBNode node = root;
+        while (true) {
+            int i = node.scan(key, false);
+            if (i >= 0) return true;
+            if (node.isLeaf) return false;
+            node = node.neighbours[-i - 1];
+        }
+    }
+
+    /**
+     * @return all items of the tree in ascending order
+     */
+    public String[] getItems() {
+        List<byte[]> keys = new ArrayList<>(size);
+        getKeys(root, keys);
+        String[] items = new String[keys.size()];
+        for (int i = 0; i < items.length; i++) items[i] = new String(keys.get(i), StandardCharsets.UTF_8);
+        return items;
+    }
+
+    // Inorder walk over the tree, decoding each node once.
+    private static void getKeys(StringBNode node, List<byte[]> keys) {
+        byte[][] decoded = node.keys(0, node.numItems);
+        if (node.isLeaf) {
+            keys.addAll(Arrays.asList(decoded));
+            return;
+        }
+        for (int i = 0; i < node.numItems; i++) {
+            getKeys(node.neighbours[i], keys);
+            keys.add(decoded[i]);
+        }
+        getKeys(node.neighbours[node.numItems], keys);
+    }
+
+    public void validate() throws Exception {
+        List<byte[]> keys = new ArrayList<>(size);
+        getKeys(root, keys);
+        if (keys.size() != size) throw new Exception("B-Tree invalid: " + keys.size() + " keys, expected " + size);
+        for (int i = 0; i < keys.size() - 1; i++) {
+            if (Arrays.compareUnsigned(keys.get(i), keys.get(i + 1)) > 0) {
+                throw new Exception("B-Tree invalid: " + new String(keys.get(i), StandardCharsets.UTF_8)
+                        + " greater than " + new String(keys.get(i + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.Monoid;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Cost of keeping subtree sizes and {@link Monoid} summaries in {@link BTree}, and what they buy.
+ * <br>
+ * Adds and deletes on a plain tree, a tree with sizes only, and trees that also keep a sum (subtracted on delete)
+ * or a min (recomputed from the children on delete). Then rank, select, countRange and aggregate against answering
+ * the same question with an iterator, which is what a tree without sizes has to do.
+ * <br>
+ * Usage: {@code java model.benchmarks.AugmentedBTreeBenchmark [size] [fanouts] [changes]}
+ */
+public class AugmentedBTreeBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{3, 10, 50};
+        int changes = Math.min(size, args.length > 2 ? Integer.parseInt(args[2]) : 100_000);
+
+        // Even keys are loaded, distinct odd keys are added and deleted by the benchmark
+        Integer[] loaded = new Integer[size];
+        for (int i = 0; i < size; i++) loaded[i] = 2 * i;
+        int[] order = KeyDistribution.shuffled(size, 8);
+        Integer[] added = new Integer[changes];
+        for (int i = 0; i < changes; i++) added[i] = 2 * order[i] + 1;
+
+        String[] names = {"plain", "sizes", "sum", "min"};
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (int minChildren : fanouts) {
+            String suffix = "[n=" + size + ",m=" + minChildren + "]";
+            for (String name : names) {
+                BTree<Integer> tree = create(name, minChildren);
+                System.out.println(benchmark.run("add." + name + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() { load(tree, loaded); }
+                    @Override
+                    public int operations() { return changes; }
+                    @Override
+                    public Object op(int i) {
+                        tree.add(added[i]);
+                        return tree;
+                    }
+                }));
+                System.out.println(benchmark.run("delete." + name + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() {
+                        load(tree, loaded);
+                        for (Integer item : added) tree.add(item);
+                    }
+                    @Override
+                    public int operations() { return changes; }
+                    @Override
+                    public Object op(int i) {
+                        tree.delete(added[i]);
+                        return tree;
+                    }
+                }));
+            }
+
+            // Queries over ranges of about a tenth of the keys
+            BTree<Integer> sum = create("sum", minChildren);
+            load(sum, loaded);
+            int queries = 1_000;
+            int[] starts = KeyDistribution.RANDOM.indices(queries, size - size / 10, 9);
+            int span = 2 * (size / 10);
+            System.out.println(benchmark.run("rank" + suffix, trial(queries, i -> sum.rank(2 * starts[i]))));
+            System.out.println(benchmark.run("select" + suffix, trial(queries, i -> sum.select(starts[i]))));
+            System.out.println(benchmark.run("countRange" + suffix, trial(queries,
+                    i -> sum.countRange(2 * starts[i], 2 * starts[i] + span))));
+            System.out.println(benchmark.run("aggregate" + suffix, trial(queries,
+                    i -> sum.<Double>aggregate(2 * starts[i], 2 * starts[i] + span))));
+            System.out.println(benchmark.run("iterate.aggregate" + suffix, trial(queries / 100,
+                    i -> iterateSum(sum, 2 * starts[i], 2 * starts[i] + span))));
+        }
+    }
+
+    private static BTree<Integer> create(String name, int minChildren) {
+        switch (name) {
+            case "plain": return new BTree<>(minChildren);
+            case "sizes": return new BTree<>(minChildren, null);
+            case "sum": return new BTree<>(minChildren, Monoid.<Integer>sum(i -> i));
+            default: return new BTree<>(minChildren, Monoid.<Integer>min(i -> i));
+        }
+    }
+
+    private interface Query {
+        Object run(int i);
+    }
+
+    private static Benchmark.Trial trial(int operations, Query query) {
+        return new Benchmark.Trial() {
+            @Override
+            public int operations() { return operations; }
+            @Override
+            public Object op(int i) { return query.run(i); }
+        };
+    }
+
+    /**
+     * Counts and sums a range with an iterator, as a tree without augmentation would
+     */
+    private static double iterateSum(BTree<Integer> tree, int from, int to) {
+        double total = 0;
+        Iterator<Integer> iterator = tree.iterator(from);
+        while (iterator.hasNext()) {
+            int item = iterator.next();
+            if (item >= to) break;
+            total += item;
+        }
+        return total;
+    }
+
+    private static void load(BTree<Integer> tree, Integer[] sorted) {
+        tree.bulkLoad(Arrays.asList(sorted).iterator(), BTree.DEFAULT_FILL_FACTOR);
+    }
+}
@@ -0,0 +1,116 @@
+package model.benchmarks;
+
+import model.BEpsilonTree;
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link BEpsilonTree} against {@link BTree}: adds of random keys into an empty tree, then searches for keys that
+ * are in the tree (hits) and keys between them (misses), in random order.
+ * <br>
+ * The trees hold the keys with even indices; misses use the odd indices. One add iteration builds a tree of
+ * {@code size} keys from scratch, so its rate includes every flush and split on the way. The B-epsilon tree is
+ * searched with its last messages still buffered, as it would be during ingestion.
+ * <br>
+ * Usage: {@code java model.benchmarks.BEpsilonTreeBenchmark [size] [INTEGER,STRING,EMAIL] [minChildren] [B-epsilon minChildren] [nodeSizes]}
+ */
+public class BEpsilonTreeBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        KeyType[] types = args.length > 1 ? BTreeBenchmark.parseEnums(KeyType.class, args[1])
+                : new KeyType[]{KeyType.INTEGER, KeyType.EMAIL};
+        int minChildren = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int epsilonChildren = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int[] nodeSizes = args.length > 4 ? BTreeBenchmark.parseInts(args[4]) : new int[]{256, BEpsilonTree.DEFAULT_NODE_SIZE};
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        List<String> table = new ArrayList<>();
+        for (KeyType type : types) compare(benchmark, type, size, minChildren, epsilonChildren, nodeSizes, table);
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-32s %12s %12s %12s", "tree", "add/s", "hit/s", "miss/s"));
+        for (String line : table) System.out.println(line);
+    }
+
+    private static <T extends Comparable<? super T>> void compare(Benchmark benchmark, KeyType type, int size, int minChildren,
+                                                                 int epsilonChildren, int[] nodeSizes, List<String> table) {
+        int[] order = KeyDistribution.shuffled(size, 21);
+        int[] hitIndices = new int[size];
+        int[] missIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            hitIndices[i] = 2 * order[i];
+            missIndices[i] = 2 * order[(i + size / 2) % size] + 1;
+        }
+        T[] keys = type.keys(hitIndices);
+        T[] hits = BTreeBenchmark.pick(keys, KeyDistribution.shuffled(size, 22));
+        T[] misses = type.keys(missIndices);
+
+        Benchmark.printHeader();
+        String suffix = "[" + type + ",n=" + size + ",m=" + minChildren + "]";
+        Benchmark.Result add = benchmark.run("BTree.add" + suffix, new Benchmark.Trial() {
+            private BTree<T> tree;
+            @Override
+            public void setup() { tree = new BTree<>(minChildren); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) {
+                tree.add(keys[i]);
+                return tree.root;
+            }
+        });
+        BTree<T> tree = new BTree<>(minChildren);
+        for (T key : keys) tree.add(key);
+        Benchmark.Result hit = benchmark.run("BTree.search.hit" + suffix, trial(size, i -> tree.search(hits[i])));
+        Benchmark.Result miss = benchmark.run("BTree.search.miss" + suffix, trial(size, i -> tree.search(misses[i])));
+        System.out.println(add);
+        System.out.println(hit);
+        System.out.println(miss);
+        table.add(row("BTree" + suffix, add, hit, miss, add));
+
+        for (int nodeSize : nodeSizes) {
+            String epsilonSuffix = "[" + type + ",n=" + size + ",m=" + epsilonChildren + ",B=" + nodeSize + "]";
+            Benchmark.Result epsilonAdd = benchmark.run("BEpsilonTree.add" + epsilonSuffix, new Benchmark.Trial() {
+                private BEpsilonTree<T> epsilonTree;
+                @Override
+                public void setup() { epsilonTree = new BEpsilonTree<>(epsilonChildren, nodeSize); }
+                @Override
+                public int operations() { return size; }
+                @Override
+                public Object op(int i) {
+                    epsilonTree.add(keys[i]);
+                    return epsilonTree.root;
+                }
+            });
+            BEpsilonTree<T> epsilonTree = new BEpsilonTree<>(epsilonChildren, nodeSize);
+            for (T key : keys) epsilonTree.add(key);
+            Benchmark.Result epsilonHit = benchmark.run("BEpsilonTree.search.hit" + epsilonSuffix, trial(size, i -> epsilonTree.search(hits[i])));
+            Benchmark.Result epsilonMiss = benchmark.run("BEpsilonTree.search.miss" + epsilonSuffix, trial(size, i -> epsilonTree.search(misses[i])));
+            System.out.println(epsilonAdd);
+            System.out.println(epsilonHit);
+            System.out.println(epsilonMiss);
+            table.add(row("BEpsilonTree" + epsilonSuffix, epsilonAdd, epsilonHit, epsilonMiss, add));
+        }
+    }
+
+    private static String row(String name, Benchmark.Result add, Benchmark.Result hit, Benchmark.Result miss, Benchmark.Result baseline) {
+        return String.format(Locale.ROOT, "%-32s %12.0f %12.0f %12.0f  (add %.2fx)", name, add.opsPerSecond,
+                hit.opsPerSecond, miss.opsPerSecond, add.opsPerSecond / baseline.opsPerSecond);
+    }
+
+    private interface Query {
+        Object run(int i);
+    }
+
+    private static Benchmark.Trial trial(int operations, Query query) {
+        return new Benchmark.Trial() {
+            @Override
+            public int operations() { return operations; }
+            @Override
+            public Object op(int i) { return query.run(i); }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package model.benchmarks;
+
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the hot paths of {@link BTree}: add, delete, search, search2 and getItems.
+ * <br>
+ * Sweeps over minChildren, key types (Integer, String, Email) and key distributions (sequential, random, Zipf),
+ * reporting ops/s, latency percentiles, bytes allocated per operation and GC activity.
+ * <br>
+ * Usage: {@code java model.benchmarks.BTreeBenchmark [size] [minChildren,...] [INTEGER,STRING,EMAIL] [SEQUENTIAL,RANDOM,ZIPF]}
+ * <br>
+ * Iteration counts can be changed with {@code -Dbench.warmup=N -Dbench.iterations=N}
+ */
+public class BTreeBenchmark {
+
+    private static final long SEED = 5132;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int[] fanouts = args.length > 1 ? parseInts(args[1]) : new int[]{3, 4, 6, 8, 10, 12, 15};
+        KeyType[] types = args.length > 2 ? parseEnums(KeyType.class, args[2]) : KeyType.values();
+        KeyDistribution[] distributions = args.length > 3
+                ? parseEnums(KeyDistribution.class, args[3]) : KeyDistribution.values();
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (KeyType type : types) {
+            for (KeyDistribution distribution : distributions) {
+                for (int minChildren : fanouts) {
+                    for (Benchmark.Result result : run(benchmark, type, distribution, minChildren, size))
+                        System.out.println(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs all operations for one combination of parameters
+     * @param benchmark the benchmark runner
+     * @param type the key type
+     * @param distribution the key distribution
+     * @param minChildren the minChildren of the trees
+     * @param size the number of distinct keys, as well as the number of operations per iteration
+     * @return the results
+     */
+    static <T extends Comparable<? super T>> List<Benchmark.Result> run(Benchmark benchmark, KeyType type,
+                                                                      KeyDistribution distribution,
+                                                                      int minChildren, int size) {
+        String suffix = String.format("[%s,%s,m=%d]", type, distribution, minChildren);
+
+        // Canonical key objects: queries reuse these so that equal keys are also identical objects
+        T[] pool = type.keys(sequence(size));
+        T[] insertOrder = pick(pool, KeyDistribution.shuffled(size, SEED));
+        T[] workload = pick(pool, distribution.indices(size, size, SEED + 1));
+
+        List<Benchmark.Result> results = new ArrayList<>();
+
+        results.add(benchmark.run("add" + suffix, new Benchmark.Trial() {
+            BTree<T> tree;
+            @Override
+            public void setup() { tree = new BTree<>(minChildren); }
+            @Override
+            public int operations() { return workload.length; }
+            @Override
+            public Object op(int i) {
+                tree.add(workload[i]);
+                return null;
+            }
+        }));
+
+        results.add(benchmark.run("delete" + suffix, new Benchmark.Trial() {
+            BTree<T> tree;
+            @Override
+            public void setup() { tree = build(minChildren, insertOrder); }
+            @Override
+            public int operations() { return workload.length; }
+            @Override
+            public Object op(int i) {
+                tree.delete(workload[i]);
+                return null;
+            }
+        }));
+
+        BTree<T> tree = build(minChildren, insertOrder);
+        results.add(benchmark.run("search" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return workload.length; }
+            @Override
+            public Object op(int i) { return tree.search(workload[i]); }
+        }));
+
+        results.add(benchmark.run("search2" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return workload.length; }
+            @Override
+            public Object op(int i) { return tree.search2(workload[i]); }
+        }));
+
+        results.add(benchmark.run("getItems" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) { return tree.getItems(tree.root).size(); }
+        }));
+
+        return results;
+    }
+
+    /**
+     * Builds a tree by adding the items in the given order
+     * @param minChildren the minimum number of children
+     * @param items the items
+     * @return the tree
+     */
+    static <T extends Comparable<? super T>> BTree<T> build(int minChildren, T[] items) {
+        BTree<T> tree = new BTree<>(minChildren);
+        for (T item : items) tree.add(item);
+        return tree;
+    }
+
+    static int[] sequence(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) indices[i] = i;
+        return indices;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T[] pick(T[] pool, int[] indices) {
+        T[] picked = (T[]) new Comparable[indices.length];
+        for (int i = 0; i < indices.length; i++) picked[i] = pool[indices[i]];
+        return picked;
+    }
+
+    static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E extends Enum<E>> E[] parseEnums(Class<E> type, String list) {
+        String[] parts = list.split(",");
+        E[] values = (E[]) java.lang.reflect.Array.newInstance(type, parts.length);
+        for (int i = 0; i < parts.length; i++) values[i] = Enum.valueOf(type, parts[i].trim().toUpperCase());
+        return values;
+    }
+}
@@ -0,0 +1,75 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.BTreeMetrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Overhead of {@link BTreeMetrics}: adds, searches and deletes on the same keys with metrics disabled and enabled.
+ * <br>
+ * With metrics every operation reads the clock twice, records a latency and adds to a few counters.
+ * The metrics gathered by the enabled runs are printed at the end.
+ * <br>
+ * Usage: {@code java model.benchmarks.BTreeMetricsBenchmark [size] [fanouts]}
+ */
+public class BTreeMetricsBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{3, 10, 50};
+
+        Integer[] keys = new Integer[size];
+        int[] order = KeyDistribution.shuffled(size, 10);
+        for (int i = 0; i < size; i++) keys[i] = order[i];
+        Integer[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (int minChildren : fanouts) {
+            BTree<Integer> tree = new BTree<>(minChildren);
+            for (boolean enabled : new boolean[]{false, true}) {
+                String suffix = (enabled ? ".metrics" : "") + "[n=" + size + ",m=" + minChildren + "]";
+                System.out.println(benchmark.run("add" + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() {
+                        tree.bulkLoad(Collections.emptyIterator(), 1);
+                        if (enabled) tree.enableMetrics();
+                    }
+                    @Override
+                    public int operations() { return size; }
+                    @Override
+                    public Object op(int i) {
+                        tree.add(keys[i]);
+                        return tree;
+                    }
+                }));
+                System.out.println(benchmark.run("search" + suffix, new Benchmark.Trial() {
+                    @Override
+                    public int operations() { return size; }
+                    @Override
+                    public Object op(int i) { return tree.search(keys[i]); }
+                }));
+                System.out.println(benchmark.run("delete" + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() {
+                        tree.bulkLoad(Arrays.asList(sorted).iterator(), BTree.DEFAULT_FILL_FACTOR);
+                    }
+                    @Override
+                    public int operations() {
+                        // Deleting nearly all keys runs into a known delete bug of small nodes
+                        return size / 2;
+                    }
+                    @Override
+                    public Object op(int i) {
+                        tree.delete(keys[i]);
+                        return tree;
+                    }
+                }));
+            }
+            System.out.println("    " + tree.getMetrics());
+        }
+    }
+}
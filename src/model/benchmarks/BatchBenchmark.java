@@ -0,0 +1,88 @@
+package model.benchmarks;
+
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link BTree#addAll} and {@link BTree#deleteAll} against calling {@link BTree#add} and {@link BTree#delete}
+ * for each item of the batch, over a range of batch sizes.
+ * <br>
+ * The tree starts with the even keys below 2 * size. Each iteration adds (or deletes) {@code volume} random odd
+ * keys, split into batches, so every batch size does the same work on a tree of the same size; one operation is
+ * one batch. The tree is rebuilt with a bulk load before each iteration.
+ * <br>
+ * Usage: {@code java model.benchmarks.BatchBenchmark [size] [batch sizes] [minChildren] [volume]}
+ */
+public class BatchBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] batchSizes = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{10, 100, 1000, 10_000, 100_000, 1_000_000};
+        int minChildren = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int volume = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+
+        Integer[] base = new Integer[size];
+        for (int i = 0; i < size; i++) base[i] = 2 * i;
+        int[] order = KeyDistribution.shuffled(Math.max(size, volume), 20);
+        Integer[] keys = new Integer[volume];
+        for (int i = 0; i < volume; i++) keys[i] = 2 * order[i] + 1;
+        Integer[] all = new Integer[size + volume];
+        System.arraycopy(base, 0, all, 0, size);
+        System.arraycopy(keys, 0, all, size, volume);
+        Arrays.sort(all);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        List<String> curve = new ArrayList<>();
+        Benchmark.printHeader();
+        for (int batchSize : batchSizes) {
+            List<List<Integer>> batches = new ArrayList<>();
+            for (int from = 0; from + batchSize <= volume; from += batchSize)
+                batches.add(Arrays.asList(keys).subList(from, from + batchSize));
+            String suffix = "[n=" + size + ",batch=" + batchSize + ",m=" + minChildren + "]";
+            Benchmark.Result add = benchmark.run("add" + suffix, trial(base, minChildren, batches, true, false));
+            Benchmark.Result addAll = benchmark.run("addAll" + suffix, trial(base, minChildren, batches, true, true));
+            Benchmark.Result delete = benchmark.run("delete" + suffix, trial(all, minChildren, batches, false, false));
+            Benchmark.Result deleteAll = benchmark.run("deleteAll" + suffix, trial(all, minChildren, batches, false, true));
+            System.out.println(add);
+            System.out.println(addAll);
+            System.out.println(delete);
+            System.out.println(deleteAll);
+            curve.add(String.format(Locale.ROOT, "%9d %12.0f %12.0f %7.2fx %12.0f %12.0f %7.2fx", batchSize,
+                    add.opsPerSecond * batchSize, addAll.opsPerSecond * batchSize, addAll.opsPerSecond / add.opsPerSecond,
+                    delete.opsPerSecond * batchSize, deleteAll.opsPerSecond * batchSize, deleteAll.opsPerSecond / delete.opsPerSecond));
+        }
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%9s %12s %12s %8s %12s %12s %8s",
+                "batch", "add/s", "addAll/s", "speedup", "delete/s", "deleteAll/s", "speedup"));
+        for (String line : curve) System.out.println(line);
+    }
+
+    /**
+     * A trial where one operation adds or deletes one batch, on a tree bulk loaded from the given keys
+     */
+    private static Benchmark.Trial trial(Integer[] sorted, int minChildren, List<List<Integer>> batches, boolean add, boolean batched) {
+        return new Benchmark.Trial() {
+            private BTree<Integer> tree;
+            @Override
+            public void setup() {
+                tree = new BTree<>(minChildren);
+                tree.bulkLoad(Arrays.asList(sorted).iterator(), BTree.DEFAULT_FILL_FACTOR);
+            }
+            @Override
+            public int operations() { return batches.size(); }
+            @Override
+            public Object op(int i) {
+                List<Integer> batch = batches.get(i);
+                if (batched && add) tree.addAll(batch);
+                else if (batched) tree.deleteAll(batch);
+                else if (add) for (Integer item : batch) tree.add(item);
+                else for (Integer item : batch) tree.delete(item);
+                return tree.root;
+            }
+        };
+    }
+}
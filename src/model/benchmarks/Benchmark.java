@@ -0,0 +1,217 @@
+package model.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Small benchmark harness used by the benchmark classes in this package.
+ * <br>
+ * Each benchmark runs a number of warmup iterations (results discarded) followed by measured iterations.
+ * Every iteration calls {@link Trial#setup()} untimed, then times each operation individually so that
+ * throughput, latency percentiles, allocation per operation and GC activity can all be reported.
+ * <br>
+ * <em>The project is built without a dependency manager, so this plays the role JMH would normally play
+ * (warmup, dead-code elimination guard, percentiles and a gc profiler).</em>
+ */
+public class Benchmark {
+
+    /**
+     * A benchmark case: untimed setup before each iteration, then {@code operations()} timed calls to op().
+     */
+    public interface Trial {
+        /**
+         * Prepares state for one iteration, e.g. builds a fresh tree. Not timed.
+         */
+        default void setup() {}
+
+        /**
+         * @return the number of operations in one iteration
+         */
+        int operations();
+
+        /**
+         * Runs a single operation
+         * @param i the index of the operation within the iteration
+         * @return any value derived from the operation, consumed to avoid dead-code elimination
+         */
+        Object op(int i);
+    }
+
+    /**
+     * Consumes values so the JIT can not remove the benchmarked work.
+     */
+    private static volatile int sink;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measureIterations;
+
+    /**
+     * Constructor
+     * @param warmupIterations the number of iterations run before measuring
+     * @param measureIterations the number of measured iterations
+     */
+    public Benchmark(int warmupIterations, int measureIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+    }
+
+    /**
+     * Creates a benchmark with the iteration counts read from the system properties
+     * {@code bench.warmup} and {@code bench.iterations} (defaults 3 and 5).
+     * @return the benchmark
+     */
+    public static Benchmark fromSystemProperties() {
+        return new Benchmark(Integer.getInteger("bench.warmup", 3), Integer.getInteger("bench.iterations", 5));
+    }
+
+    /**
+     * Runs a trial and returns the measured result
+     * @param name the name of the benchmark, printed in the results
+     * @param trial the trial
+     * @return the result
+     */
+    public Result run(String name, Trial trial) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(trial, null);
+        }
+
+        int ops = trial.operations();
+        long[] latencies = new long[ops * measureIterations];
+        long totalNanos = 0;
+        long allocatedBytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            trial.setup();
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            timeOperations(trial, latencies, i * ops);
+            totalNanos += System.nanoTime() - start;
+            allocatedBytes += allocatedBytes() - allocatedBefore;
+            gcCount += gcCount() - gcCountBefore;
+            gcMillis += gcMillis() - gcMillisBefore;
+        }
+        Arrays.sort(latencies);
+        return new Result(name, latencies, totalNanos, allocatedBytes, gcCount, gcMillis);
+    }
+
+    private void iterate(Trial trial, long[] latencies) {
+        trial.setup();
+        timeOperations(trial, latencies, 0);
+    }
+
+    private static void timeOperations(Trial trial, long[] latencies, int offset) {
+        int ops = trial.operations();
+        int hash = 0;
+        for (int j = 0; j < ops; j++) {
+            long opStart = System.nanoTime();
+            Object value = trial.op(j);
+            long opEnd = System.nanoTime();
+            if (latencies != null) latencies[offset + j] = opEnd - opStart;
+            if (value != null) hash += value.hashCode();
+        }
+        sink += hash;
+    }
+
+    private static long allocatedBytes() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, bean.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, bean.getCollectionTime());
+        return millis;
+    }
+
+    /**
+     * Returns the heap in use after requesting garbage collection a few times.
+     * Used to measure the retained size of data structures.
+     * @return the number of bytes of heap in use
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Prints the column headers matching {@link Result#toString()}
+     */
+    public static void printHeader() {
+        System.out.println(String.format("%-48s %14s %10s %10s %10s %10s %12s %8s %8s",
+                "benchmark", "ops/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "B/op", "gc.count", "gc.ms"));
+    }
+
+    /**
+     * Prints all results in a table
+     * @param results the results
+     */
+    public static void print(List<Result> results) {
+        printHeader();
+        for (Result result : results)
+            System.out.println(result);
+    }
+
+    /**
+     * The measurements of a single benchmark run
+     */
+    public static class Result {
+        public final String name;
+        public final double opsPerSecond;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+        public final double bytesPerOp;
+        public final long gcCount;
+        public final long gcMillis;
+
+        Result(String name, long[] sortedLatencies, long totalNanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.name = name;
+            int ops = sortedLatencies.length;
+            this.opsPerSecond = ops == 0 || totalNanos == 0 ? 0 : ops * 1e9 / totalNanos;
+            this.p50 = percentile(sortedLatencies, 0.5);
+            this.p90 = percentile(sortedLatencies, 0.9);
+            this.p99 = percentile(sortedLatencies, 0.99);
+            this.p999 = percentile(sortedLatencies, 0.999);
+            this.bytesPerOp = ops == 0 ? 0 : (double) allocatedBytes / ops;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-48s %14.1f %10d %10d %10d %10d %12.1f %8d %8d",
+                    name, opsPerSecond, p50, p90, p99, p999, bytesPerOp, gcCount, gcMillis);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package model.benchmarks;
+
+import data.Email;
+import model.BTree;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares building a tree with one {@link BTree#add} per item against sorting and {@link BTree#bulkLoad}.
+ * <br>
+ * Uses sorted and random Integer keys, as well as the rows of emails.csv.
+ * <br>
+ * Usage: {@code java model.benchmarks.BulkLoadBenchmark [size] [minChildren]}
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int minChildren = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) sorted[i] = i;
+        Integer[] random = new Integer[size];
+        int[] permutation = KeyDistribution.shuffled(size, 5132);
+        for (int i = 0; i < size; i++) random[i] = sorted[permutation[i]];
+
+        ArrayList<Email> rows = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader("src/data/emails.csv"))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] entry = line.split(",");
+                rows.add(new Email(entry[0], entry[1], entry[2], entry[3]));
+            }
+        }
+        Email[] emails = rows.toArray(new Email[0]);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        System.out.println(benchmark.run("add[sorted Integer,n=" + size + "]", build(minChildren, sorted, false)));
+        System.out.println(benchmark.run("bulkLoad[sorted Integer,n=" + size + "]", build(minChildren, sorted, true)));
+        System.out.println(benchmark.run("add[random Integer,n=" + size + "]", build(minChildren, random, false)));
+        System.out.println(benchmark.run("sort+bulkLoad[random Integer,n=" + size + "]", build(minChildren, random, true)));
+        System.out.println(benchmark.run("add[emails.csv]", build(minChildren, emails, false)));
+        System.out.println(benchmark.run("sort+bulkLoad[emails.csv]", build(minChildren, emails, true)));
+    }
+
+    /**
+     * A trial where one operation builds a whole tree
+     */
+    static <T extends Comparable<? super T>> Benchmark.Trial build(int minChildren, T[] items, boolean bulk) {
+        return new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) {
+                BTree<T> tree = new BTree<>(minChildren);
+                if (bulk) {
+                    T[] copy = items.clone();
+                    Arrays.sort(copy);
+                    tree.bulkLoad(Arrays.asList(copy).iterator(), BTree.DEFAULT_FILL_FACTOR);
+                } else {
+                    for (T item : items) tree.add(item);
+                }
+                return tree.root;
+            }
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.ConcurrentBTree;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Scalability of {@link ConcurrentBTree} against {@link BTree} behind a global lock (plain and read-write),
+ * from 1 to N threads on mixed read/write workloads.
+ * <br>
+ * The tree is prefilled with the even keys. Each operation is a search of a random prefilled key, or a write:
+ * alternately adding a fresh odd key owned by the thread and deleting the one it added before.
+ * Writers therefore spread over the whole tree, and the tree size stays stable.
+ * <br>
+ * The per-operation harness in {@link Benchmark} is single threaded, so this measures total throughput of all threads
+ * over a fixed number of operations per thread, taking the best of a few runs.
+ * <br>
+ * Usage: {@code java model.benchmarks.ConcurrentBTreeBenchmark [size] [max threads] [write percentages] [minChildren]}
+ */
+public class ConcurrentBTreeBenchmark {
+
+    /**
+     * The operations a benchmarked tree has to support
+     */
+    interface Target {
+        boolean search(int key);
+        void add(int key);
+        void delete(int key);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int[] writePercents = args.length > 2 ? BTreeBenchmark.parseInts(args[2]) : new int[]{5, 20, 50};
+        int minChildren = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int opsPerThread = Integer.getInteger("bench.ops", 500_000);
+        int runs = Integer.getInteger("bench.iterations", 5);
+
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%-40s %8s %8s %14s", "benchmark", "threads", "write %", "ops/s"));
+        for (int writePercent : writePercents) {
+            for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(2 * threads, maxThreads)) {
+                report("ConcurrentBTree[n=" + size + "]", threads, writePercent,
+                        best(runs, () -> concurrentTree(size, minChildren), threads, writePercent, size, opsPerThread));
+                report("BTree+synchronized[n=" + size + "]", threads, writePercent,
+                        best(runs, () -> synchronizedTree(size, minChildren), threads, writePercent, size, opsPerThread));
+                report("BTree+ReadWriteLock[n=" + size + "]", threads, writePercent,
+                        best(runs, () -> readWriteLockedTree(size, minChildren), threads, writePercent, size, opsPerThread));
+            }
+        }
+    }
+
+    private static void report(String name, int threads, int writePercent, double opsPerSecond) {
+        System.out.println(String.format("%-40s %8d %8d %14.1f", name, threads, writePercent, opsPerSecond));
+    }
+
+    interface Factory {
+        Target create();
+    }
+
+    private static double best(int runs, Factory factory, int threads, int writePercent, int size, int opsPerThread) throws Exception {
+        double best = 0;
+        for (int run = 0; run < runs; run++) {
+            best = Math.max(best, measure(factory.create(), threads, writePercent, size, opsPerThread));
+        }
+        return best;
+    }
+
+    /**
+     * Runs the workload on all threads at once and returns the total operations per second
+     */
+    private static double measure(Target target, int threads, int writePercent, int size, int opsPerThread) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        Thread[] workers = new Thread[threads];
+        int[] sink = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                int[] searches = new int[4096];
+                for (int i = 0; i < searches.length; i++) searches[i] = 2 * random.nextInt(size);
+                // Odd keys spread over the key range, disjoint between threads
+                int stride = Math.max(1, size / opsPerThread) * threads;
+                int next = 0;
+                boolean pending = false;
+                int found = 0;
+                try {
+                    barrier.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (random.nextInt(100) >= writePercent) {
+                            if (target.search(searches[i & (searches.length - 1)])) found++;
+                        } else if (!pending) {
+                            target.add(2 * (next * stride + id) + 1);
+                            pending = true;
+                        } else {
+                            target.delete(2 * (next * stride + id) + 1);
+                            next++;
+                            pending = false;
+                        }
+                    }
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                sink[id] = found;
+            });
+            workers[t].start();
+        }
+        barrier.await();
+        long start = System.nanoTime();
+        barrier.await();
+        long elapsed = System.nanoTime() - start;
+        for (Thread worker : workers) worker.join();
+        return (double) threads * opsPerThread * 1e9 / elapsed;
+    }
+
+    private static Target concurrentTree(int size, int minChildren) {
+        ConcurrentBTree<Integer> tree = new ConcurrentBTree<>(minChildren);
+        for (int key : KeyDistribution.shuffled(size, 6)) tree.add(2 * key);
+        return new Target() {
+            @Override
+            public boolean search(int key) { return tree.search(key) != null; }
+            @Override
+            public void add(int key) { tree.add(key); }
+            @Override
+            public void delete(int key) { tree.delete(key); }
+        };
+    }
+
+    private static BTree<Integer> prefilledBTree(int size, int minChildren) {
+        BTree<Integer> tree = new BTree<>(minChildren);
+        for (int key : KeyDistribution.shuffled(size, 6)) tree.add(2 * key);
+        return tree;
+    }
+
+    private static Target synchronizedTree(int size, int minChildren) {
+        BTree<Integer> tree = prefilledBTree(size, minChildren);
+        return new Target() {
+            @Override
+            public synchronized boolean search(int key) { return tree.search2(key) != null; }
+            @Override
+            public synchronized void add(int key) { tree.add(key); }
+            @Override
+            public synchronized void delete(int key) { tree.delete(key); }
+        };
+    }
+
+    private static Target readWriteLockedTree(int size, int minChildren) {
+        BTree<Integer> tree = prefilledBTree(size, minChildren);
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        return new Target() {
+            @Override
+            public boolean search(int key) {
+                lock.readLock().lock();
+                try {
+                    return tree.search2(key) != null;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            @Override
+            public void add(int key) {
+                lock.writeLock().lock();
+                try {
+                    tree.add(key);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            @Override
+            public void delete(int key) {
+                lock.writeLock().lock();
+                try {
+                    tree.delete(key);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.BTreeMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Skewed duplicate keys in {@link BTree}, where each row is an item and equal keys spread over many nodes,
+ * against {@link BTreeMap}, where each key holds a posting list of its rows.
+ * <br>
+ * Rows get Zipf-distributed keys, so a few keys have most of the rows, like CPDS entries compared by one column.
+ * Reports build time, retained heap per row, and the time to fetch and to count all rows of a key.
+ * <br>
+ * Usage: {@code java model.benchmarks.DuplicateKeyBenchmark [rows] [distinct keys] [minChildren]}
+ */
+public class DuplicateKeyBenchmark {
+
+    /**
+     * A row compared by key only, like {@code data.Entry}
+     */
+    static final class Row implements Comparable<Row> {
+        final int key;
+        final int id;
+
+        Row(int key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Row other) {
+            return Integer.compare(key, other.key);
+        }
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int minChildren = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int[] rowKeys = KeyDistribution.ZIPF.indices(rows, keys, 14);
+        int[] queries = KeyDistribution.ZIPF.indices(20_000, keys, 15);
+        Row[] probes = new Row[keys];
+        for (int key = 0; key < keys; key++) probes[key] = new Row(key, -1);
+
+        long before = Benchmark.usedHeap();
+        long start = System.nanoTime();
+        BTree<Row> tree = new BTree<>(minChildren);
+        for (int i = 0; i < rows; i++) tree.add(new Row(rowKeys[i], i));
+        long treeMillis = (System.nanoTime() - start) / 1_000_000;
+        long treeBytes = Benchmark.usedHeap() - before;
+
+        before = Benchmark.usedHeap();
+        start = System.nanoTime();
+        BTreeMap<Integer, Row> map = new BTreeMap<>(minChildren);
+        for (int i = 0; i < rows; i++) map.put(rowKeys[i], new Row(rowKeys[i], i));
+        long mapMillis = (System.nanoTime() - start) / 1_000_000;
+        long mapBytes = Benchmark.usedHeap() - before;
+
+        String suffix = "[rows=" + rows + ",keys=" + keys + ",m=" + minChildren + "]";
+        System.out.println(String.format("build BTree%s: %d ms, %.1f B/row, height %d", suffix, treeMillis, (double) treeBytes / rows, tree.getHeight()));
+        System.out.println(String.format("build BTreeMap%s: %d ms, %.1f B/row, height %d", suffix, mapMillis, (double) mapBytes / rows, map.getHeight()));
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        System.out.println(benchmark.run("BTree.scanEqual" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries.length; }
+            @Override
+            public Object op(int i) { return scanEqual(tree, probes[queries[i]]); }
+        }));
+        System.out.println(benchmark.run("BTreeMap.getAll" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries.length; }
+            @Override
+            public Object op(int i) { return map.getAll(queries[i]); }
+        }));
+        System.out.println(benchmark.run("BTree.countEqual" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries.length; }
+            @Override
+            public Object op(int i) { return scanEqual(tree, probes[queries[i]]).size(); }
+        }));
+        System.out.println(benchmark.run("BTreeMap.count" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries.length; }
+            @Override
+            public Object op(int i) { return map.count(queries[i]); }
+        }));
+    }
+
+    /**
+     * The best a plain BTree can do: seek to the first equal item and walk the equal run
+     */
+    static List<Row> scanEqual(BTree<Row> tree, Row probe) {
+        List<Row> rows = new ArrayList<>();
+        Iterator<Row> iterator = tree.iterator(probe);
+        while (iterator.hasNext()) {
+            Row row = iterator.next();
+            if (row.compareTo(probe) != 0) break;
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,74 @@
+package model.benchmarks;
+
+import model.storage.Codec;
+import model.storage.DurableBTree;
+import model.storage.WriteAheadLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CyclicBarrier;
+import java.util.stream.Stream;
+
+/**
+ * Add throughput of {@link DurableBTree} at different group commit windows and numbers of writer threads.
+ * <br>
+ * Every add waits for its fsync, so a single writer is bound by the fsync latency of the device, and throughput
+ * only grows with threads when their records share fsyncs. A wider window gathers more records per fsync at the cost
+ * of latency per add. Records per fsync are printed next to the throughput.
+ * Like {@link ConcurrentBTreeBenchmark}, this measures total throughput over a fixed number of adds per thread.
+ * <br>
+ * Usage: {@code java model.benchmarks.DurableBTreeBenchmark [windows in microseconds] [thread counts] [adds per thread]}
+ */
+public class DurableBTreeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] windowsMicros = args.length > 0 ? BTreeBenchmark.parseInts(args[0]) : new int[]{0, 100, 1000, 5000};
+        int[] threadCounts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{1, 4, 16, 64};
+        int addsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        System.out.println(String.format("%-30s %8s %10s %12s %14s", "benchmark", "threads", "window us", "ops/s", "records/fsync"));
+        for (int window : windowsMicros) {
+            for (int threads : threadCounts) {
+                Path directory = Files.createTempDirectory("durable-btree");
+                try (DurableBTree<Integer> tree = new DurableBTree<>(directory, 16, Codec.INTEGER, window * 1000L, 100_000)) {
+                    double opsPerSecond = measure(tree, threads, addsPerThread);
+                    WriteAheadLog log = tree.getLog();
+                    System.out.println(String.format("%-30s %8d %10d %12.1f %14.2f", "DurableBTree.add", threads, window,
+                            opsPerSecond, (double) log.getRecords() / Math.max(1, log.getSyncs())));
+                } finally {
+                    try (Stream<Path> files = Files.list(directory)) {
+                        for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+                    }
+                    Files.delete(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds distinct keys from all threads at once and returns the total adds per second
+     */
+    private static double measure(DurableBTree<Integer> tree, int threads, int addsPerThread) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < addsPerThread; i++) tree.add(i * threads + id);
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers[t].start();
+        }
+        barrier.await();
+        long start = System.nanoTime();
+        barrier.await();
+        long elapsed = System.nanoTime() - start;
+        for (Thread worker : workers) worker.join();
+        return (double) threads * addsPerThread * 1e9 / elapsed;
+    }
+}
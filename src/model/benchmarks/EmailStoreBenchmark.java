@@ -0,0 +1,81 @@
+package model.benchmarks;
+
+import data.Email;
+import data.EmailStore;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Query shapes on {@link EmailStore} with no indexes (a scan), one index on date, and all indexes.
+ * <br>
+ * Emails are spread over three years, with Zipf-distributed senders (a few senders send most mail) and uniform headers.
+ * Shapes: all mail from a sender, one week, one week from a sender, a sender and a header.
+ * The plan chosen for each shape is printed before it runs.
+ * <br>
+ * Usage: {@code java model.benchmarks.EmailStoreBenchmark [emails] [senders]}
+ */
+public class EmailStoreBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int senders = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int days = 3 * 365;
+        int headers = 1_000;
+        LocalDate start = LocalDate.of(2021, 1, 1);
+
+        int[] senderIndices = KeyDistribution.ZIPF.indices(size, senders, 16);
+        Random random = new Random(17);
+        Email[] emails = new Email[size];
+        for (int i = 0; i < size; i++) {
+            emails[i] = new Email(start.plusDays((long) i * days / size).toString(), "sender" + senderIndices[i],
+                    "header" + random.nextInt(headers), "content " + i);
+        }
+
+        // Queries cycle through random parameters, senders drawn like the emails so popular senders are queried more
+        int queries = 256;
+        int[] querySenders = KeyDistribution.ZIPF.indices(queries, senders, 18);
+        LocalDate[] queryWeeks = new LocalDate[queries];
+        String[] queryHeaders = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            queryWeeks[i] = start.plusDays(random.nextInt(days - 7));
+            queryHeaders[i] = "header" + random.nextInt(headers);
+        }
+        String[] shapes = {"sender", "week", "week+sender", "sender+header"};
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        EnumSet<?>[] configurations = {
+                EnumSet.noneOf(EmailStore.Field.class), EnumSet.of(EmailStore.Field.DATE), EnumSet.allOf(EmailStore.Field.class)};
+        String[] names = {"none", "date", "all"};
+        for (int c = 0; c < configurations.length; c++) {
+            @SuppressWarnings("unchecked")
+            EmailStore store = new EmailStore((EnumSet<EmailStore.Field>) configurations[c], 8);
+            for (Email email : emails) store.insert(email);
+            // A scan is slow, so it runs fewer queries per iteration
+            int operations = store.getIndexedFields().isEmpty() ? 16 : queries;
+            for (String shape : shapes) {
+                String name = "query." + shape + "[indexes=" + names[c] + ",n=" + size + "]";
+                System.out.println("    plan " + name + ": " + store.explain(query(shape, querySenders[0], queryWeeks[0], queryHeaders[0])));
+                System.out.println(benchmark.run(name, new Benchmark.Trial() {
+                    @Override
+                    public int operations() { return operations; }
+                    @Override
+                    public Object op(int i) {
+                        return store.query(query(shape, querySenders[i], queryWeeks[i], queryHeaders[i])).size();
+                    }
+                }));
+            }
+        }
+    }
+
+    private static EmailStore.Query query(String shape, int sender, LocalDate week, String header) {
+        switch (shape) {
+            case "sender": return new EmailStore.Query().sender("sender" + sender);
+            case "week": return new EmailStore.Query().dateBetween(week, week.plusDays(6));
+            case "week+sender": return new EmailStore.Query().dateBetween(week, week.plusDays(6)).sender("sender" + sender);
+            default: return new EmailStore.Query().sender("sender" + sender).header(header);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package model.benchmarks;
+
+import data.Email;
+import data.EmailStore;
+import data.InvertedIndex;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text queries on {@link InvertedIndex} against a brute-force scan of all emails.
+ * <br>
+ * Dates and senders come from the rows of emails.csv, repeated up to the requested number of emails.
+ * Its headers and contents are all "random" and "nothing", so the text is generated instead: Zipf-distributed words
+ * of a vocabulary of syllable strings, where words sharing a prefix behave like related words.
+ * Reports build time, posting list bytes against the raw text, and latency of term, AND, OR and prefix queries.
+ * The scan matches terms with a precompiled word-boundary regex per term, which is cheaper than tokenizing.
+ * <br>
+ * Usage: {@code java model.benchmarks.InvertedIndexBenchmark [emails] [vocabulary] [csv]}
+ */
+public class InvertedIndexBenchmark {
+
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "su", "ta", "ri", "po", "de", "gu",
+            "ba", "ho", "ji", "fe", "wa", "zo", "yu", "ce", "vi", "xo"};
+
+    /**
+     * @return a word for a vocabulary rank, one syllable per base-20 digit, so lower ranks get shorter words
+     */
+    static String word(int rank) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.append(SYLLABLES[rank % SYLLABLES.length]);
+            rank /= SYLLABLES.length;
+        } while (rank > 0);
+        return builder.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int vocabulary = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        String csv = args.length > 2 ? args[2] : "src/data/emails.csv";
+
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            String line;
+            while ((line = reader.readLine()) != null) rows.add(line.split(","));
+        }
+
+        String[] words = new String[vocabulary];
+        Email[] emails = generate(rows, size, words);
+        long textChars = 0;
+        for (Email email : emails) textChars += email.toString().length();
+
+        long before = Benchmark.usedHeap();
+        long start = System.nanoTime();
+        EmailStore store = new EmailStore(EnumSet.noneOf(EmailStore.Field.class), 8, true);
+        for (Email email : emails) store.insert(email);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long indexBytes = Benchmark.usedHeap() - before - 4L * size; // minus the record array of the store
+        InvertedIndex index = store.getTextIndex();
+        System.out.println(String.format(Locale.ROOT,
+                "build[n=%d]: %d ms, %d terms, %d postings, %d posting bytes (%.2f B/posting), %d B heap in total, %d chars of emails",
+                size, millis, index.getTermCount(), index.getPostingCount(), index.getPostingBytes(),
+                (double) index.getPostingBytes() / index.getPostingCount(), indexBytes, textChars));
+
+        // Common, middling and rare words, and prefixes that match a few or many words
+        String common = words[0];
+        String middle = words[200];
+        String rare = words[vocabulary - 1 - vocabulary / 20];
+        String[][] queries = {
+                {"term", rare}, {"term", common}, {"and", common, middle}, {"and", middle, rare},
+                {"or", middle, rare}, {"prefix", middle.substring(0, 4)}, {"prefix", common.substring(0, 2)}};
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (String[] query : queries) {
+            String name = String.join(" ", query) + "[n=" + size + "]";
+            System.out.println(benchmark.run("index." + name, new Benchmark.Trial() {
+                @Override
+                public int operations() { return 50; }
+                @Override
+                public Object op(int i) { return run(index, query).length; }
+            }));
+            System.out.println(benchmark.run("scan." + name, new Benchmark.Trial() {
+                Pattern[] patterns;
+                @Override
+                public void setup() {
+                    patterns = new Pattern[query.length - 1];
+                    for (int i = 1; i < query.length; i++) {
+                        String suffix = query[0].equals("prefix") ? "\\w*" : "";
+                        patterns[i - 1] = Pattern.compile("\\b" + Pattern.quote(query[i]) + suffix + "\\b");
+                    }
+                }
+                @Override
+                public int operations() { return 1; }
+                @Override
+                public Object op(int i) { return scan(emails, patterns, query[0].equals("and")); }
+            }));
+        }
+    }
+
+    /**
+     * Generates the emails
+     * @param rows the rows of emails.csv, for dates and senders
+     * @param size the number of emails
+     * @param words filled with the vocabulary, most frequent word first
+     * @return the emails
+     */
+    private static Email[] generate(List<String[]> rows, int size, String[] words) {
+        int vocabulary = words.length;
+        int wordsPerEmail = 40;
+        int[] indices = KeyDistribution.ZIPF.indices(size * wordsPerEmail, vocabulary, 19);
+        int[] counts = new int[vocabulary];
+        for (int index : indices) counts[index]++;
+        Integer[] byFrequency = new Integer[vocabulary];
+        for (int i = 0; i < vocabulary; i++) byFrequency[i] = i;
+        Arrays.sort(byFrequency, (a, b) -> Integer.compare(counts[b], counts[a]));
+        String[] vocabularyWords = new String[vocabulary];
+        for (int i = 0; i < vocabulary; i++) vocabularyWords[i] = word(i);
+        for (int i = 0; i < vocabulary; i++) words[i] = vocabularyWords[byFrequency[i]];
+
+        Email[] emails = new Email[size];
+        for (int i = 0, w = 0; i < size; i++) {
+            StringBuilder header = new StringBuilder();
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 5; j++) header.append(vocabularyWords[indices[w++]]).append(' ');
+            for (int j = 5; j < wordsPerEmail; j++) content.append(vocabularyWords[indices[w++]]).append(j % 8 == 7 ? ". " : " ");
+            String[] row = rows.get(i % rows.size());
+            emails[i] = new Email(row[0], row[1], header.toString(), content.toString());
+        }
+        return emails;
+    }
+
+    private static int[] run(InvertedIndex index, String[] query) {
+        switch (query[0]) {
+            case "term": return index.term(query[1]);
+            case "and": return index.and(query[1], query[2]);
+            case "or": return index.or(query[1], query[2]);
+            default: return index.prefix(query[1]);
+        }
+    }
+
+    private static int scan(Email[] emails, Pattern[] patterns, boolean all) {
+        int found = 0;
+        for (Email email : emails) {
+            String text = email.toString();
+            boolean matches = all;
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(text).find() != all) {
+                    matches = !all;
+                    break;
+                }
+            }
+            if (matches) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,99 @@
+package model.benchmarks;
+
+import model.BTree;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares ordered traversal of a {@link BTree} through getItems against the lazy iterator and spliterator:
+ * full scans, first element latency, seeking, and parallel stream scaling over thread counts.
+ * <br>
+ * Usage: {@code java model.benchmarks.IteratorBenchmark [size] [minChildren]}
+ */
+public class IteratorBenchmark {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int minChildren = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        Integer[] keys = new Integer[size];
+        int[] order = KeyDistribution.shuffled(size, 5132);
+        for (int i = 0; i < size; i++) keys[i] = order[i];
+        BTree<Integer> tree = BTreeBenchmark.build(minChildren, keys);
+        int[] seeks = KeyDistribution.RANDOM.indices(10_000, size, 5133);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        String suffix = "[n=" + size + ",m=" + minChildren + "]";
+        System.out.println(benchmark.run("scan.getItems" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) {
+                long sum = 0;
+                for (Integer item : tree.getItems(tree.root)) sum += item;
+                return sum;
+            }
+        }));
+        System.out.println(benchmark.run("scan.iterator" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) {
+                long sum = 0;
+                for (Integer item : tree) sum += item;
+                return sum;
+            }
+        }));
+        System.out.println(benchmark.run("scan.stream" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) { return tree.stream().mapToLong(Integer::longValue).sum(); }
+        }));
+        System.out.println(benchmark.run("first.getItems" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 5; }
+            @Override
+            public Object op(int i) { return tree.getItems(tree.root).get(0); }
+        }));
+        System.out.println(benchmark.run("first.iterator" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return seeks.length; }
+            @Override
+            public Object op(int i) { return tree.iterator().next(); }
+        }));
+        System.out.println(benchmark.run("seek+10.iterator" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return seeks.length; }
+            @Override
+            public Object op(int i) {
+                Iterator<Integer> iterator = tree.iterator(seeks[i]);
+                long sum = 0;
+                for (int k = 0; k < 10 && iterator.hasNext(); k++) sum += iterator.next();
+                return sum;
+            }
+        }));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            System.out.println(benchmark.run("scan.parallelStream[threads=" + threads + "]" + suffix, new Benchmark.Trial() {
+                @Override
+                public int operations() { return 5; }
+                @Override
+                public Object op(int i) {
+                    try {
+                        return pool.submit(() -> tree.parallelStream().mapToLong(Integer::longValue).sum()).get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+            pool.shutdown();
+            if (threads < cores && threads * 2 > cores) threads = cores / 2;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package model.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Key distributions used by the benchmarks.
+ * <br>
+ * Each distribution produces an array of key indices in [0, range), which are then mapped to the actual
+ * key type (see {@link KeyType}), so all key types see exactly the same access pattern.
+ */
+public enum KeyDistribution {
+    /**
+     * Ascending indices 0, 1, 2, ...
+     */
+    SEQUENTIAL,
+    /**
+     * Uniformly random indices
+     */
+    RANDOM,
+    /**
+     * Zipf-skewed indices (exponent 0.99) where a few hot keys are drawn most of the time.
+     * Hot keys are scattered over the key range rather than clustered at the start.
+     */
+    ZIPF;
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * Generates key indices
+     * @param count the number of indices to generate
+     * @param range the exclusive upper bound of the indices
+     * @param seed the random seed
+     * @return the indices
+     */
+    public int[] indices(int count, int range, long seed) {
+        int[] indices = new int[count];
+        Random random = new Random(seed);
+        switch (this) {
+            case SEQUENTIAL:
+                for (int i = 0; i < count; i++) indices[i] = i % range;
+                break;
+            case RANDOM:
+                for (int i = 0; i < count; i++) indices[i] = random.nextInt(range);
+                break;
+            case ZIPF:
+                double[] cumulative = zipfCumulative(range);
+                int[] permutation = permutation(range, random);
+                for (int i = 0; i < count; i++) {
+                    int rank = lowerBound(cumulative, random.nextDouble());
+                    indices[i] = permutation[rank];
+                }
+                break;
+        }
+        return indices;
+    }
+
+    /**
+     * Generates a random permutation of 0..range-1, useful for inserting every key once in random order.
+     * @param range the number of indices
+     * @param seed the random seed
+     * @return the permutation
+     */
+    public static int[] shuffled(int range, long seed) {
+        return permutation(range, new Random(seed));
+    }
+
+    private static int[] permutation(int range, Random random) {
+        int[] permutation = new int[range];
+        for (int i = 0; i < range; i++) permutation[i] = i;
+        for (int i = range - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = temp;
+        }
+        return permutation;
+    }
+
+    private static double[] zipfCumulative(int range) {
+        double[] cumulative = new double[range];
+        double sum = 0;
+        for (int i = 0; i < range; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < range; i++) cumulative[i] /= sum;
+        return cumulative;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,58 @@
+package model.benchmarks;
+
+import data.Email;
+
+import java.time.LocalDate;
+
+/**
+ * Key types used by the benchmarks.
+ * <br>
+ * Every type maps a key index to a key so that ascending indices give ascending keys.
+ */
+public enum KeyType {
+    INTEGER {
+        @Override
+        public Comparable<?> key(int index) {
+            return index;
+        }
+    },
+    STRING {
+        @Override
+        public Comparable<?> key(int index) {
+            // Zero padded so that the string order matches the index order
+            StringBuilder builder = new StringBuilder("key");
+            String digits = Integer.toString(index);
+            for (int i = digits.length(); i < 10; i++) builder.append('0');
+            return builder.append(digits).toString();
+        }
+    },
+    EMAIL {
+        @Override
+        public Comparable<?> key(int index) {
+            // Same shape as emails.csv: one email per sender A-Z per day
+            return new Email(START_DATE.plusDays(index / 26).toString(), String.valueOf((char) ('A' + index % 26)),
+                    "random", "nothing");
+        }
+    };
+
+    private static final LocalDate START_DATE = LocalDate.of(2021, 1, 1);
+
+    /**
+     * Creates the key for an index
+     * @param index the index
+     * @return the key
+     */
+    public abstract Comparable<?> key(int index);
+
+    /**
+     * Creates the keys for an array of indices
+     * @param indices the indices
+     * @return an array of keys, with keys for equal indices being equal but distinct objects
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Comparable<? super T>> T[] keys(int[] indices) {
+        T[] keys = (T[]) new Comparable[indices.length];
+        for (int i = 0; i < indices.length; i++) keys[i] = (T) key(indices[i]);
+        return keys;
+    }
+}
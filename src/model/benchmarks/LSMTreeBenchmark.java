@@ -0,0 +1,115 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.storage.BufferPool;
+import model.storage.Codec;
+import model.storage.LSMTree;
+import model.storage.PagedBTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Ingest and search throughput of {@link LSMTree} against the in-place trees: {@link PagedBTree} on disk with a
+ * small buffer pool, and {@link BTree} in memory as the upper bound.
+ * <br>
+ * Each tree ingests {@code size} random keys once, timed from the first add until everything is on disk (flush or
+ * close), then is searched for random keys it holds. The LSM tree's write, read and space amplification and the
+ * paged tree's pool metrics are printed with the results. Files go through the OS page cache, so disk reads cost a
+ * system call rather than a seek, which favours the paged tree's random writes.
+ * <br>
+ * Usage: {@code java model.benchmarks.LSMTreeBenchmark [size] [pool pages] [memtable size]}
+ */
+public class LSMTreeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int memtableSize = args.length > 2 ? Integer.parseInt(args[2]) : LSMTree.DEFAULT_MEMTABLE_SIZE;
+
+        int[] order = KeyDistribution.shuffled(size, 30);
+        Long[] keys = new Long[size];
+        for (int i = 0; i < size; i++) keys[i] = (long) order[i];
+        int operations = Math.min(size, 200_000);
+        int[] queries = KeyDistribution.RANDOM.indices(operations, size, 31);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Path directory = Files.createTempDirectory("lsm-tree");
+        try {
+            // The trees on disk go first, so that the heap holds no other tree while they ingest
+            Path file = directory.resolve("paged.db");
+            long start = System.nanoTime();
+            try (PagedBTree tree = new PagedBTree(file, PagedBTree.DEFAULT_PAGE_SIZE, poolPages)) {
+                for (Long key : keys) tree.add(key);
+                tree.flush();
+                BufferPool pool = tree.getBufferPool();
+                printIngest("PagedBTree[pool=" + poolPages + "]", size, start, String.format(Locale.ROOT, "%d MB written, %s",
+                        pool.getWrites() * pool.getPageSize() >> 20, pool));
+            }
+
+            Path lsmDirectory = directory.resolve("lsm");
+            start = System.nanoTime();
+            try (LSMTree<Long> tree = new LSMTree<>(lsmDirectory, 16, Codec.LONG, memtableSize, LSMTree.DEFAULT_FANOUT)) {
+                for (Long key : keys) tree.add(key);
+                tree.flush();
+                printIngest("LSMTree[memtable=" + memtableSize + "]", size, start, String.format(Locale.ROOT,
+                        "%d MB written, %d runs of %d MB, write amplification %.2f", tree.getBytesWritten() >> 20,
+                        tree.getRunCount(), tree.getDiskBytes() >> 20, tree.getWriteAmplification()));
+            }
+
+            start = System.nanoTime();
+            BTree<Long> memoryTree = new BTree<>(16);
+            for (Long key : keys) memoryTree.add(key);
+            printIngest("BTree", size, start, "");
+
+            Benchmark.printHeader();
+            System.out.println(benchmark.run("BTree.search[n=" + size + "]", new Benchmark.Trial() {
+                @Override
+                public int operations() { return operations; }
+                @Override
+                public Object op(int i) { return memoryTree.search(keys[queries[i]]); }
+            }));
+            try (PagedBTree tree = new PagedBTree(file, PagedBTree.DEFAULT_PAGE_SIZE, poolPages)) {
+                System.out.println(benchmark.run("PagedBTree.search[n=" + size + ",pool=" + poolPages + "]", new Benchmark.Trial() {
+                    @Override
+                    public void setup() { tree.getBufferPool().resetMetrics(); }
+                    @Override
+                    public int operations() { return operations; }
+                    @Override
+                    public Object op(int i) { return tree.search(keys[queries[i]]); }
+                }));
+                System.out.println("    last iteration: " + tree.getBufferPool());
+            }
+            try (LSMTree<Long> tree = new LSMTree<>(lsmDirectory, 16, Codec.LONG, memtableSize, LSMTree.DEFAULT_FANOUT)) {
+                System.out.println(benchmark.run("LSMTree.search[n=" + size + "]", new Benchmark.Trial() {
+                    @Override
+                    public void setup() { tree.resetMetrics(); }
+                    @Override
+                    public int operations() { return operations; }
+                    @Override
+                    public Object op(int i) {
+                        try {
+                            return tree.search(keys[queries[i]]);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }));
+                System.out.println(String.format(Locale.ROOT, "    last iteration: read amplification %.2f blocks/search, space amplification %.2f",
+                        tree.getReadAmplification(), tree.getSpaceAmplification()));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) Files.delete(path);
+            }
+        }
+    }
+
+    private static void printIngest(String name, int size, long start, String stats) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-36s %12.0f adds/s  %s", "ingest." + name, size / seconds, stats));
+    }
+}
@@ -0,0 +1,57 @@
+package model.benchmarks;
+
+import model.BNode;
+import model.BTree;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Heap used by the nodes of {@link BTree}, per key, excluding the keys themselves.
+ * <br>
+ * Trees are built by bulk loading at the default fill factor and by adding keys in random order, which leaves nodes
+ * about 70% full. The keys are allocated before measuring, so the numbers are the cost of the node layout alone:
+ * per node the object header and fields, the item array and, for internal nodes, the child array.
+ * <br>
+ * Usage: {@code java -Xmx3g model.benchmarks.NodeLayoutBenchmark [sizes] [fanouts]}
+ */
+public class NodeLayoutBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? BTreeBenchmark.parseInts(args[0]) : new int[]{1_000_000, 10_000_000};
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{3, 16, 50};
+
+        for (int size : sizes) {
+            Integer[] sorted = new Integer[size];
+            for (int i = 0; i < size; i++) sorted[i] = i;
+            int[] order = KeyDistribution.shuffled(size, 11);
+            for (int minChildren : fanouts) {
+                for (boolean bulk : new boolean[]{true, false}) {
+                    long before = Benchmark.usedHeap();
+                    BTree<Integer> tree = new BTree<>(minChildren);
+                    if (bulk) tree.bulkLoad(Arrays.asList(sorted).iterator(), BTree.DEFAULT_FILL_FACTOR);
+                    else for (int i : order) tree.add(sorted[i]);
+                    long bytes = Benchmark.usedHeap() - before;
+                    long[] nodes = new long[2];
+                    count(tree.root, nodes);
+                    System.out.println(String.format(Locale.ROOT,
+                            "%-44s %8.2f B/key, %d leaves, %d internal nodes, %.1f keys/leaf",
+                            (bulk ? "bulkLoad" : "add") + "[n=" + size + ",m=" + minChildren + "]",
+                            (double) bytes / size, nodes[0], nodes[1], (double) size / nodes[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts leaves in nodes[0] and internal nodes in nodes[1]
+     */
+    private static void count(BNode<?> node, long[] nodes) {
+        if (node.isLeaf) {
+            nodes[0]++;
+            return;
+        }
+        nodes[1]++;
+        for (int i = 0; i <= node.numItems; i++) count(node.neighbours[i], nodes);
+    }
+}
@@ -0,0 +1,53 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.NodePool;
+
+/**
+ * Allocation of {@link BTree} at a constant size, with and without a {@link NodePool}.
+ * <br>
+ * Each operation adds a new key and deletes the oldest key still in the tree, so keys land and leave at random
+ * positions while the size stays the same, and splits are balanced by merges once the tree has settled.
+ * Keys are boxed beforehand, so the B/op column counts only what the tree allocates.
+ * The tree is built once and churned across all iterations, warmup included.
+ * <br>
+ * Usage: {@code java model.benchmarks.NodePoolBenchmark [size] [fanouts] [changes] [capacity]}
+ */
+public class NodePoolBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{3, 16, 50};
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        int iterations = Integer.getInteger("bench.warmup", 3) + Integer.getInteger("bench.iterations", 5);
+        int[] order = KeyDistribution.shuffled(size + iterations * changes, 12);
+        Integer[] keys = new Integer[order.length];
+        for (int i = 0; i < order.length; i++) keys[i] = order[i];
+
+        Benchmark.printHeader();
+        for (int minChildren : fanouts) {
+            for (boolean pooled : new boolean[]{false, true}) {
+                BTree<Integer> tree = new BTree<>(minChildren);
+                for (int i = 0; i < size; i++) tree.add(keys[i]);
+                NodePool pool = pooled ? tree.enableNodePool(capacity) : null;
+                String name = "churn." + (pooled ? "pool" : "plain") + "[n=" + size + ",m=" + minChildren + "]";
+                System.out.println(benchmark.run(name, new Benchmark.Trial() {
+                    private int next = 0;
+                    @Override
+                    public int operations() { return changes; }
+                    @Override
+                    public Object op(int i) {
+                        tree.add(keys[size + next]);
+                        tree.delete(keys[next]);
+                        next++;
+                        return tree;
+                    }
+                }));
+                if (pool != null) System.out.println("  " + pool);
+            }
+        }
+    }
+}
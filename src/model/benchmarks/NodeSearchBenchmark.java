@@ -0,0 +1,216 @@
+package model.benchmarks;
+
+import model.BNode;
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares per search and time per search of the in-node search of {@link BTree}, against the linear scan it replaced.
+ * <br>
+ * The linear baseline walks the same tree with the old loop: scan each node from the left until an item is not smaller.
+ * Compares are counted by wrapping the keys in {@link CountedKey}, times are measured separately on Integer, String
+ * and Email keys, so the count does not get in the way.
+ * Up to BNode.LINEAR_SEARCH_THRESHOLD items per node both walks scan, and the counts and times should match.
+ * Above it, binary search needs about log2(2 * minChildren) + 1 compares per level instead of up to 2 * minChildren.
+ * <br>
+ * The threshold itself is chosen by the node rows: a scan and a binary search of the same lower bound, in nodes of
+ * 2 * minChildren - 1 items for each minChildren given. Each query goes to a random node of many, so the items are
+ * mostly not in cache, as on the way down a large tree.
+ * <br>
+ * Usage: {@code java model.benchmarks.NodeSearchBenchmark [size] [minChildren,...] [node minChildren,...]}
+ * <br>
+ * Iteration counts can be changed with {@code -Dbench.warmup=N -Dbench.iterations=N}
+ */
+public class NodeSearchBenchmark {
+
+    /**
+     * An int key that counts its compareTo calls
+     */
+    static final class CountedKey implements Comparable<CountedKey> {
+        static long compares;
+        final int value;
+
+        CountedKey(int value) { this.value = value; }
+
+        @Override
+        public int compareTo(CountedKey other) {
+            compares++;
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{2, 8, 15, 17, 32};
+        int[] nodeFanouts = args.length > 2 ? BTreeBenchmark.parseInts(args[2]) : new int[]{2, 3, 4, 5, 6, 8, 10, 12, 15};
+        int[] insertOrder = KeyDistribution.shuffled(size, 12);
+        int[] queries = KeyDistribution.RANDOM.indices(size, 2 * size, 13);
+
+        System.out.println(String.format("%-40s %14s", "compares", "per op"));
+        for (int minChildren : fanouts) {
+            String suffix = "[n=" + size + ",m=" + minChildren + "]";
+            BTree<CountedKey> tree = new BTree<>(minChildren);
+            CountedKey.compares = 0;
+            for (int key : insertOrder) tree.add(new CountedKey(2 * key));
+            System.out.println(String.format("%-40s %14.2f", "add" + suffix, (double) CountedKey.compares / size));
+
+            CountedKey[] keys = new CountedKey[queries.length];
+            for (int i = 0; i < queries.length; i++) keys[i] = new CountedKey(queries[i]);
+            CountedKey.compares = 0;
+            for (CountedKey key : keys) linearSearch(tree.root, key);
+            System.out.println(String.format("%-40s %14.2f", "linearSearch" + suffix, (double) CountedKey.compares / keys.length));
+            CountedKey.compares = 0;
+            for (CountedKey key : keys) tree.search(key);
+            System.out.println(String.format("%-40s %14.2f", "search" + suffix, (double) CountedKey.compares / keys.length));
+        }
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (KeyType type : new KeyType[]{KeyType.INTEGER, KeyType.STRING, KeyType.EMAIL}) {
+            for (int minChildren : nodeFanouts) {
+                for (Benchmark.Result result : timeNode(benchmark, type, 2 * minChildren - 1, queries))
+                    System.out.println(result);
+            }
+        }
+        for (KeyType type : new KeyType[]{KeyType.INTEGER, KeyType.STRING, KeyType.EMAIL}) {
+            for (int minChildren : fanouts) {
+                for (Benchmark.Result result : time(benchmark, type, minChildren, insertOrder, queries))
+                    System.out.println(result);
+            }
+        }
+    }
+
+    /**
+     * Times the linear baseline, search and add for one key type and minChildren
+     */
+    static <T extends Comparable<? super T>> List<Benchmark.Result> time(Benchmark benchmark, KeyType type, int minChildren,
+                                                                       int[] insertOrder, int[] queries) {
+        String suffix = String.format("[%s,n=%d,m=%d]", type, insertOrder.length, minChildren);
+        // Queries are separate objects from the items, so equality is never decided by identity
+        T[] items = type.keys(evens(insertOrder));
+        T[] keys = type.keys(queries);
+        BTree<T> tree = BTreeBenchmark.build(minChildren, items);
+
+        List<Benchmark.Result> results = new ArrayList<>();
+        results.add(benchmark.run("linearSearch" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return keys.length; }
+            @Override
+            public Object op(int i) { return linearSearch(tree.root, keys[i]); }
+        }));
+        results.add(benchmark.run("search" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return keys.length; }
+            @Override
+            public Object op(int i) { return tree.search(keys[i]); }
+        }));
+        results.add(benchmark.run("add" + suffix, new Benchmark.Trial() {
+            BTree<T> target;
+            @Override
+            public void setup() { target = new BTree<>(minChildren); }
+            @Override
+            public int operations() { return items.length; }
+            @Override
+            public Object op(int i) {
+                target.add(items[i]);
+                return null;
+            }
+        }));
+        return results;
+    }
+
+    /**
+     * The number of nodes the node rows search, enough that they do not fit in the caches
+     */
+    private static final int NODES = 1 << 15;
+
+    /**
+     * Times a scan against a binary search for the lower bound in full nodes of one key type
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<? super T>> List<Benchmark.Result> timeNode(Benchmark benchmark, KeyType type, int numItems,
+                                                                           int[] queries) {
+        String suffix = String.format("[%s,items=%d]", type, numItems);
+        // Node n holds the even keys of [2 * n * numItems, 2 * (n + 1) * numItems), queries hit and miss them equally
+        T[][] nodes = (T[][]) new Comparable[NODES][];
+        int[] indices = new int[numItems];
+        for (int n = 0; n < NODES; n++) {
+            for (int j = 0; j < numItems; j++) indices[j] = 2 * (n * numItems + j);
+            nodes[n] = type.keys(indices);
+        }
+        int[] queryNodes = new int[queries.length];
+        int[] keyIndices = new int[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            queryNodes[i] = queries[i] % NODES;
+            keyIndices[i] = 2 * queryNodes[i] * numItems + queries[i] / NODES % (2 * numItems);
+        }
+        T[] keys = type.keys(keyIndices);
+
+        List<Benchmark.Result> results = new ArrayList<>();
+        results.add(benchmark.run("nodeScan" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return keys.length; }
+            @Override
+            public Object op(int i) { return scan(nodes[queryNodes[i]], keys[i]); }
+        }));
+        results.add(benchmark.run("nodeBinarySearch" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return keys.length; }
+            @Override
+            public Object op(int i) { return binarySearch(nodes[queryNodes[i]], keys[i]); }
+        }));
+        return results;
+    }
+
+    /**
+     * The scan of BNode.lowerBound
+     */
+    static <T extends Comparable<? super T>> int scan(T[] items, T item) {
+        int low = 0;
+        while (low < items.length && items[low].compareTo(item) < 0) low++;
+        return low;
+    }
+
+    /**
+     * The binary search of BNode.lowerBound
+     */
+    static <T extends Comparable<? super T>> int binarySearch(T[] items, T item) {
+        int low = 0;
+        int high = items.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (items[middle].compareTo(item) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int[] evens(int[] indices) {
+        int[] evens = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) evens[i] = 2 * indices[i];
+        return evens;
+    }
+
+    /**
+     * The search loop before the shared in-node search: a linear scan of each node on the way down
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<? super T>> T linearSearch(BNode node, T item) {
+        while (node != null) {
+            int i = 0;
+            while (i < node.numItems && item.compareTo((T) node.items[i]) > 0) {
+                i++;
+            }
+            if (i < node.numItems && item.compareTo((T) node.items[i]) == 0) {
+                return (T) node.items[i];
+            }
+            if (node.isLeaf) {
+                return null;
+            }
+            node = node.neighbours[i];
+        }
+        return null;
+    }
+}
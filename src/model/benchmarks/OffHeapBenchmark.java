@@ -0,0 +1,145 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.LongBTree;
+import model.storage.OffHeapLongBTree;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares garbage collection cost with a large tree on the heap ({@code BTree<Long>}, {@link LongBTree})
+ * and off the heap ({@link OffHeapLongBTree}).
+ * <br>
+ * For each tree this reports the heap and direct memory it holds, the time of a full collection with the tree live,
+ * and a mixed workload of searches, adds and deletes that also allocates short-lived garbage, as an application would.
+ * Collections in the workload show up in gc.count/gc.ms and the tail latencies (p99.9).
+ * <br>
+ * For clean numbers run one tree per JVM, e.g. with {@code -Xmx4g}.
+ * <br>
+ * Usage: {@code java model.benchmarks.OffHeapBenchmark [size] [trees: btree,long,offheap] [minChildren]}
+ */
+public class OffHeapBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        String[] trees = args.length > 1 ? args[1].split(",") : new String[]{"offheap", "long", "btree"};
+        int minChildren = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        // Even keys are loaded in random order, odd keys are added and deleted by the workload
+        int[] order = KeyDistribution.shuffled(size, 8);
+        int[] queries = KeyDistribution.RANDOM.indices(1_000_000, size, 9);
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        ArrayList<String> memory = new ArrayList<>();
+        ArrayList<Benchmark.Result> results = new ArrayList<>();
+        for (String name : trees) {
+            // The tree is only reachable inside measure, so it is collected before the next one is built
+            results.add(measure(benchmark, name, minChildren, order, queries, memory));
+        }
+        for (String line : memory) System.out.println(line);
+        System.out.println();
+        Benchmark.print(results);
+    }
+
+    private static Benchmark.Result measure(Benchmark benchmark, String name, int minChildren, int[] order, int[] queries,
+                                            ArrayList<String> memory) {
+        int size = order.length;
+        long heapBefore = Benchmark.usedHeap();
+        long directBefore = directMemory();
+        Target tree = create(name, minChildren);
+        long start = System.nanoTime();
+        for (int key : order) tree.add(2L * key);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        long heap = Benchmark.usedHeap() - heapBefore;
+        long direct = directMemory() - directBefore;
+
+        long fullGcNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long gcStart = System.nanoTime();
+            System.gc();
+            fullGcNanos = Math.min(fullGcNanos, System.nanoTime() - gcStart);
+        }
+        memory.add(String.format("%-24s build %6d ms  heap %8.2f B/key  off-heap %8.2f B/key  full gc %6.1f ms",
+                name + "[n=" + size + "]", buildMillis, (double) heap / size, (double) direct / size, fullGcNanos / 1e6));
+
+        return benchmark.run(name + ".mixed[n=" + size + "]", new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries.length; }
+            @Override
+            public Object op(int i) {
+                long key = 2L * queries[i];
+                // Short-lived garbage, like the strings and records an application makes per request
+                Object garbage = new byte[64 + (i & 63)];
+                switch (i & 3) {
+                    case 0:
+                        tree.add(key + 1);
+                        return garbage;
+                    case 1:
+                        tree.delete(2L * queries[i - 1] + 1);
+                        return garbage;
+                    default:
+                        return tree.search(key) ? garbage : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * The operations a benchmarked tree has to support
+     */
+    interface Target {
+        void add(long key);
+        void delete(long key);
+        boolean search(long key);
+    }
+
+    private static Target create(String name, int minChildren) {
+        switch (name) {
+            case "btree": {
+                BTree<Long> tree = new BTree<>(minChildren);
+                return new Target() {
+                    @Override
+                    public void add(long key) { tree.add(key); }
+                    @Override
+                    public void delete(long key) { tree.delete(key); }
+                    @Override
+                    public boolean search(long key) { return tree.search2(key) != null; }
+                };
+            }
+            case "long": {
+                LongBTree tree = new LongBTree(minChildren);
+                return new Target() {
+                    @Override
+                    public void add(long key) { tree.add(key); }
+                    @Override
+                    public void delete(long key) { tree.delete(key); }
+                    @Override
+                    public boolean search(long key) { return tree.search(key); }
+                };
+            }
+            case "offheap": {
+                OffHeapLongBTree tree = new OffHeapLongBTree(minChildren);
+                return new Target() {
+                    @Override
+                    public void add(long key) { tree.add(key); }
+                    @Override
+                    public void delete(long key) { tree.delete(key); }
+                    @Override
+                    public boolean search(long key) { return tree.search(key); }
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown tree " + name + ", expected one of " + Arrays.asList("btree", "long", "offheap"));
+        }
+    }
+
+    private static long directMemory() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct")) used += pool.getMemoryUsed();
+        return used;
+    }
+}
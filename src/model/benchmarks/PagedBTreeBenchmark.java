@@ -0,0 +1,73 @@
+package model.benchmarks;
+
+import model.LongBTree;
+import model.storage.BufferPool;
+import model.storage.PagedBTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Search throughput of {@link PagedBTree} at different buffer pool sizes, against {@link LongBTree} in memory.
+ * <br>
+ * The tree is built and closed once, then reopened with each pool size and searched with uniform and Zipf distributed
+ * keys. The pool metrics (hit rate, page reads and writes, evictions) are printed after each run.
+ * With the whole tree in the pool, the paged tree should come close to the in-memory tree.
+ * Reads hit the OS page cache, so misses here cost a system call rather than a disk seek.
+ * <br>
+ * Usage: {@code java model.benchmarks.PagedBTreeBenchmark [size] [pool pages] [page size]}
+ */
+public class PagedBTreeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int[] poolSizes = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{16, 256, 4096, 65536};
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : PagedBTree.DEFAULT_PAGE_SIZE;
+
+        int[] keys = KeyDistribution.shuffled(size, 10);
+        int operations = 1_000_000;
+        Path file = Files.createTempFile("paged-btree", ".db");
+        try {
+            Files.delete(file);
+            long start = System.nanoTime();
+            String buildStats;
+            try (PagedBTree tree = new PagedBTree(file, pageSize, 4096)) {
+                for (int key : keys) tree.add(key);
+                buildStats = "height " + tree.getHeight() + ", " + tree.getBufferPool();
+            }
+            System.out.println(String.format("build[n=%d,page=%d,pool=4096]: %d ms, %d pages, %s", size, pageSize,
+                    (System.nanoTime() - start) / 1_000_000, Files.size(file) / pageSize, buildStats));
+            LongBTree memoryTree = PrimitiveBTreeBenchmark.buildLong(PagedBTree.maxMinChildren(pageSize), keys);
+
+            Benchmark benchmark = Benchmark.fromSystemProperties();
+            Benchmark.printHeader();
+            for (KeyDistribution distribution : new KeyDistribution[]{KeyDistribution.RANDOM, KeyDistribution.ZIPF}) {
+                int[] queries = distribution.indices(operations, size, 11);
+                String suffix = "." + distribution.name().toLowerCase() + "[n=" + size + "]";
+                System.out.println(benchmark.run("LongBTree.search" + suffix, new Benchmark.Trial() {
+                    @Override
+                    public int operations() { return operations; }
+                    @Override
+                    public Object op(int i) { return memoryTree.search(queries[i]); }
+                }));
+                for (int poolSize : poolSizes) {
+                    try (PagedBTree tree = new PagedBTree(file, pageSize, poolSize)) {
+                        BufferPool pool = tree.getBufferPool();
+                        System.out.println(benchmark.run("PagedBTree.search" + suffix + "[pool=" + poolSize + "]", new Benchmark.Trial() {
+                            @Override
+                            public void setup() { pool.resetMetrics(); }
+                            @Override
+                            public int operations() { return operations; }
+                            @Override
+                            public Object op(int i) { return tree.search(queries[i]); }
+                        }));
+                        System.out.println("    last iteration: " + pool);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
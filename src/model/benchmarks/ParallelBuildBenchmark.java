@@ -0,0 +1,107 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.ParallelTreeBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scaling of {@link ParallelTreeBuilder} with the number of threads, building a tree from a file of unsorted integers
+ * one per line, as the integer tree factory does.
+ * <br>
+ * Each thread count runs in its own fork-join pool and is timed in three parts: parsing the file, sorting the items
+ * and building the tree, and building the tree from items that are already sorted. The sequential row is the
+ * single threaded pipeline the factories used before: read lines, sort a list and bulk load it. Every time is the
+ * best of a few runs, as one build is long enough not to need a warmed harness.
+ * <br>
+ * {@link Arrays#parallelSort} sorts on one thread when the common pool has a parallelism of 1, as on a machine with
+ * one or two cores, so only parsing and building scale there.
+ * <br>
+ * Usage: {@code java model.benchmarks.ParallelBuildBenchmark [size] [thread counts] [runs]}
+ */
+public class ParallelBuildBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threads = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : powersOfTwo(cores);
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path file = Files.createTempFile("parallel-build", ".txt");
+        try {
+            int[] order = KeyDistribution.shuffled(size, 24);
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                for (int key : order) {
+                    writer.write(Integer.toString(key));
+                    writer.newLine();
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "%d unsorted keys, %d MB, %d cores, common pool parallelism %d",
+                    size, Files.size(file) >> 20, cores, ForkJoinPool.getCommonPoolParallelism()));
+            System.out.println(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10s %9s", "threads", "parse ms",
+                    "sort+build", "build ms", "total ms", "speedup"));
+
+            double sequential = Double.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                ArrayList<Integer> items = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(file)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) items.add(Integer.parseInt(line));
+                }
+                items.sort(null);
+                BTree<Integer> tree = new BTree<>(3);
+                tree.bulkLoad(items.iterator(), BTree.DEFAULT_FILL_FACTOR);
+                sequential = Math.min(sequential, (System.nanoTime() - start) / 1e6);
+            }
+            System.out.println(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10.0f", "sequential", "", "", "", sequential));
+
+            double single = 0;
+            for (int numThreads : threads) {
+                ForkJoinPool pool = new ForkJoinPool(numThreads);
+                try {
+                    double parse = Double.MAX_VALUE;
+                    double sortBuild = Double.MAX_VALUE;
+                    double build = Double.MAX_VALUE;
+                    for (int run = 0; run < runs; run++) {
+                        long start = System.nanoTime();
+                        Integer[] items = ParallelTreeBuilder.parseLines(file, Integer::valueOf, Integer[]::new, pool);
+                        long parsed = System.nanoTime();
+                        ParallelTreeBuilder.fromArray(items, 3, false, pool);
+                        long built = System.nanoTime();
+                        parse = Math.min(parse, (parsed - start) / 1e6);
+                        sortBuild = Math.min(sortBuild, (built - parsed) / 1e6);
+
+                        // items is sorted now
+                        start = System.nanoTime();
+                        new BTree<Integer>(3).bulkLoad(items, items.length, BTree.DEFAULT_FILL_FACTOR, pool);
+                        build = Math.min(build, (System.nanoTime() - start) / 1e6);
+                    }
+                    double total = parse + sortBuild;
+                    if (single == 0) single = total;
+                    System.out.println(String.format(Locale.ROOT, "%-12d %10.0f %12.0f %10.0f %10.0f %8.2fx", numThreads,
+                            parse, sortBuild, build, total, single / total));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static int[] powersOfTwo(int cores) {
+        ArrayList<Integer> counts = new ArrayList<>();
+        for (int count = 1; count < cores; count *= 2) counts.add(count);
+        counts.add(cores);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,89 @@
+package model.benchmarks;
+
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Cost of path copying in {@link BTree}: adds and deletes with and without a {@link BTree#snapshot()} before each,
+ * reporting time and allocated bytes per operation (B/op).
+ * <br>
+ * Also measures the heap retained per change when every version is kept, as an undo history would,
+ * next to the expected O(height * maxChildren) bound of one copied node per level.
+ * <br>
+ * Usage: {@code java model.benchmarks.PersistentBTreeBenchmark [size] [fanouts] [history length]}
+ */
+public class PersistentBTreeBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] fanouts = args.length > 1 ? BTreeBenchmark.parseInts(args[1]) : new int[]{3, 10, 50};
+        int history = Math.min(size, args.length > 2 ? Integer.parseInt(args[2]) : 10_000);
+
+        // Even keys are loaded, distinct odd keys are added and deleted by the benchmark
+        Integer[] loaded = new Integer[size];
+        for (int i = 0; i < size; i++) loaded[i] = 2 * i;
+        int[] order = KeyDistribution.shuffled(size, 7);
+        Integer[] changes = new Integer[history];
+        for (int i = 0; i < history; i++) changes[i] = 2 * order[i] + 1;
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (int minChildren : fanouts) {
+            String suffix = "[n=" + size + ",m=" + minChildren + "]";
+            BTree<Integer> tree = new BTree<>(minChildren);
+            for (boolean snapshots : new boolean[]{false, true}) {
+                String name = snapshots ? "+snapshot" : "";
+                System.out.println(benchmark.run("BTree.add" + name + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() { load(tree, loaded); }
+                    @Override
+                    public int operations() { return history; }
+                    @Override
+                    public Object op(int i) {
+                        BTree<Integer> snapshot = snapshots ? tree.snapshot() : null;
+                        tree.add(changes[i]);
+                        return snapshot;
+                    }
+                }));
+                System.out.println(benchmark.run("BTree.delete" + name + suffix, new Benchmark.Trial() {
+                    @Override
+                    public void setup() {
+                        load(tree, loaded);
+                        for (Integer change : changes) tree.add(change);
+                    }
+                    @Override
+                    public int operations() { return history; }
+                    @Override
+                    public Object op(int i) {
+                        BTree<Integer> snapshot = snapshots ? tree.snapshot() : null;
+                        tree.delete(changes[i]);
+                        return snapshot;
+                    }
+                }));
+            }
+
+            // Retained heap of a full history of versions, against the tree alone
+            load(tree, loaded);
+            long before = Benchmark.usedHeap();
+            ArrayList<BTree<Integer>> versions = new ArrayList<>(history);
+            for (Integer change : changes) {
+                versions.add(tree.snapshot());
+                tree.add(change);
+            }
+            long retained = Benchmark.usedHeap() - before;
+            // Per node: header and fields and the items array, and for internal nodes the child array
+            long leafBytes = 40 + (16 + 4L * (2 * minChildren - 1));
+            long nodeBytes = leafBytes + (16 + 4L * 2 * minChildren);
+            System.out.println(String.format("%-48s %12.1f B/change retained, height %d x node %d B + leaf %d B = %d B",
+                    "BTree.history" + suffix, (double) retained / history, tree.getHeight(), nodeBytes, leafBytes,
+                    tree.getHeight() * nodeBytes + leafBytes));
+            if (versions.size() != history) throw new AssertionError();
+        }
+    }
+
+    private static void load(BTree<Integer> tree, Integer[] sorted) {
+        tree.bulkLoad(Arrays.asList(sorted).iterator(), BTree.DEFAULT_FILL_FACTOR);
+    }
+}
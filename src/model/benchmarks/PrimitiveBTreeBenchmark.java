@@ -0,0 +1,148 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.IntBTree;
+import model.LongBTree;
+
+/**
+ * Compares {@link IntBTree} and {@link LongBTree} against a boxed {@code BTree<Integer>}:
+ * retained heap per key, and add/search/delete throughput on random keys.
+ * <br>
+ * Usage: {@code java model.benchmarks.PrimitiveBTreeBenchmark [size] [minChildren]}
+ */
+public class PrimitiveBTreeBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int minChildren = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        int[] keys = KeyDistribution.shuffled(size, 5132);
+        Integer[] boxedKeys = new Integer[size];
+        for (int i = 0; i < size; i++) boxedKeys[i] = keys[i];
+        int[] queries = KeyDistribution.RANDOM.indices(size, size, 5133);
+
+        System.out.println("Retained heap with " + size + " keys, minChildren=" + minChildren);
+        long before = Benchmark.usedHeap();
+        BTree<Integer> boxed = BTreeBenchmark.build(minChildren, boxedKeys);
+        long boxedBytes = Benchmark.usedHeap() - before;
+        // Boxed Integers are referenced by keys array too, so count their 16 bytes each as part of the tree
+        System.out.printf("BTree<Integer>  %8.2f bytes/key (including %d bytes per boxed Integer)%n",
+                (double) boxedBytes / size + 16, 16);
+        boxed = null;
+
+        before = Benchmark.usedHeap();
+        IntBTree intTree = buildInt(minChildren, keys);
+        System.out.printf("IntBTree        %8.2f bytes/key%n", (double) (Benchmark.usedHeap() - before) / size);
+        intTree = null;
+
+        before = Benchmark.usedHeap();
+        LongBTree longTree = buildLong(minChildren, keys);
+        System.out.printf("LongBTree       %8.2f bytes/key%n", (double) (Benchmark.usedHeap() - before) / size);
+        longTree = null;
+        System.out.println();
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        System.out.println(benchmark.run("BTree<Integer>.add", new Benchmark.Trial() {
+            BTree<Integer> tree;
+            @Override
+            public void setup() { tree = new BTree<>(minChildren); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) {
+                tree.add(boxedKeys[i]);
+                return null;
+            }
+        }));
+        System.out.println(benchmark.run("IntBTree.add", new Benchmark.Trial() {
+            IntBTree tree;
+            @Override
+            public void setup() { tree = new IntBTree(minChildren); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) {
+                tree.add(keys[i]);
+                return null;
+            }
+        }));
+        System.out.println(benchmark.run("LongBTree.add", new Benchmark.Trial() {
+            LongBTree tree;
+            @Override
+            public void setup() { tree = new LongBTree(minChildren); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) {
+                tree.add(keys[i]);
+                return null;
+            }
+        }));
+
+        BTree<Integer> searchBoxed = BTreeBenchmark.build(minChildren, boxedKeys);
+        IntBTree searchInt = buildInt(minChildren, keys);
+        LongBTree searchLong = buildLong(minChildren, keys);
+        System.out.println(benchmark.run("BTree<Integer>.search2", new Benchmark.Trial() {
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) { return searchBoxed.search2(boxedKeys[queries[i]]); }
+        }));
+        System.out.println(benchmark.run("IntBTree.search", new Benchmark.Trial() {
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) { return searchInt.search(queries[i]) ? Boolean.TRUE : null; }
+        }));
+        System.out.println(benchmark.run("LongBTree.search", new Benchmark.Trial() {
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) { return searchLong.search(queries[i]) ? Boolean.TRUE : null; }
+        }));
+
+        System.out.println(benchmark.run("BTree<Integer>.delete", new Benchmark.Trial() {
+            BTree<Integer> tree;
+            @Override
+            public void setup() { tree = BTreeBenchmark.build(minChildren, boxedKeys); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) {
+                tree.delete(boxedKeys[queries[i]]);
+                return null;
+            }
+        }));
+        System.out.println(benchmark.run("IntBTree.delete", new Benchmark.Trial() {
+            IntBTree tree;
+            @Override
+            public void setup() { tree = buildInt(minChildren, keys); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) { return tree.delete(queries[i]) ? Boolean.TRUE : null; }
+        }));
+        System.out.println(benchmark.run("LongBTree.delete", new Benchmark.Trial() {
+            LongBTree tree;
+            @Override
+            public void setup() { tree = buildLong(minChildren, keys); }
+            @Override
+            public int operations() { return size; }
+            @Override
+            public Object op(int i) { return tree.delete(queries[i]) ? Boolean.TRUE : null; }
+        }));
+    }
+
+    static IntBTree buildInt(int minChildren, int[] keys) {
+        IntBTree tree = new IntBTree(minChildren);
+        for (int key : keys) tree.add(key);
+        return tree;
+    }
+
+    static LongBTree buildLong(int minChildren, int[] keys) {
+        LongBTree tree = new LongBTree(minChildren);
+        for (int key : keys) tree.add(key);
+        return tree;
+    }
+}
@@ -0,0 +1,101 @@
+package model.benchmarks;
+
+import data.Email;
+import model.BPlusTree;
+import model.BTree;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Compares "emails between date A and date B" on {@link BTree} (getItems then filter, the only ordered traversal)
+ * against {@link BPlusTree#range}, on data shaped like emails.csv: one email per sender A-Z per day.
+ * <br>
+ * Also compares the cost of building both trees.
+ * <br>
+ * Usage: {@code java model.benchmarks.RangeScanBenchmark [size] [minChildren] [days per query]}
+ */
+public class RangeScanBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2021, 1, 1);
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int minChildren = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        int[] order = KeyDistribution.shuffled(size, 5132);
+        Email[] emails = new Email[size];
+        for (int i = 0; i < size; i++) emails[i] = (Email) KeyType.EMAIL.key(order[i]);
+        int totalDays = size / 26;
+
+        // Query bounds: the empty sender sorts before every sender, U+FFFF after every sender
+        Random random = new Random(5133);
+        int queries = 1000;
+        Email[] from = new Email[queries];
+        Email[] to = new Email[queries];
+        for (int i = 0; i < queries; i++) {
+            LocalDate start = START_DATE.plusDays(random.nextInt(Math.max(1, totalDays - days)));
+            from[i] = new Email(start.toString(), "");
+            to[i] = new Email(start.plusDays(days - 1).toString(), "\uffff");
+        }
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+
+        System.out.println(benchmark.run("BTree.add[n=" + size + "]", new Benchmark.Trial() {
+            @Override
+            public int operations() { return 1; }
+            @Override
+            public Object op(int i) { return BTreeBenchmark.build(minChildren, emails).root; }
+        }));
+        System.out.println(benchmark.run("BPlusTree.add[n=" + size + "]", new Benchmark.Trial() {
+            @Override
+            public int operations() { return 1; }
+            @Override
+            public Object op(int i) { return build(minChildren, emails).root; }
+        }));
+
+        BTree<Email> bTree = BTreeBenchmark.build(minChildren, emails);
+        BPlusTree<Email> bPlusTree = build(minChildren, emails);
+        String suffix = "[n=" + size + ",days=" + days + "]";
+        System.out.println(benchmark.run("BTree.getItems+filter" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return 10; }
+            @Override
+            public Object op(int i) {
+                int count = 0;
+                for (Email email : bTree.getItems(bTree.root)) {
+                    if (email.compareTo(from[i]) >= 0 && email.compareTo(to[i]) <= 0) count++;
+                }
+                return count;
+            }
+        }));
+        System.out.println(benchmark.run("BPlusTree.range" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries; }
+            @Override
+            public Object op(int i) {
+                int count = 0;
+                for (Email email : bPlusTree.range(from[i], to[i])) count++;
+                return count;
+            }
+        }));
+        System.out.println(benchmark.run("BPlusTree.descendingRange" + suffix, new Benchmark.Trial() {
+            @Override
+            public int operations() { return queries; }
+            @Override
+            public Object op(int i) {
+                int count = 0;
+                for (Email email : bPlusTree.descendingRange(from[i], to[i])) count++;
+                return count;
+            }
+        }));
+    }
+
+    static <T extends Comparable<? super T>> BPlusTree<T> build(int minChildren, T[] items) {
+        BPlusTree<T> tree = new BPlusTree<>(minChildren);
+        for (T item : items) tree.add(item);
+        return tree;
+    }
+}
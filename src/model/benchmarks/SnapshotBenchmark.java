@@ -0,0 +1,135 @@
+package model.benchmarks;
+
+import data.Email;
+import data.EmailTester;
+import data.Entry;
+import model.BTree;
+import model.graphics.EntryTreeItemFactory;
+import model.storage.BTreeSnapshot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Startup cost of building the dataset trees by parsing their CSV files, as {@link EntryTreeItemFactory} and
+ * {@link EmailTester} do, against loading them from a {@link BTreeSnapshot}.
+ * <br>
+ * The cold numbers are what a user waits for: each load runs in a fresh JVM, which times it from the start of main,
+ * so class loading and interpreted code are included, and the whole process is timed as well. The warm numbers run
+ * the same loads over and over in this JVM, once the JIT has compiled them.
+ * <br>
+ * Usage, from the project root: {@code java model.benchmarks.SnapshotBenchmark [cold runs]}
+ */
+public class SnapshotBenchmark {
+
+    private static final Path CPDS = Path.of("src/data/CPDS_1960-2019_Update_2021.csv");
+    private static final Path EMAILS = Path.of("src/data/emails.csv");
+
+    private enum Dataset {
+        CPDS, EMAILS
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals("child")) {
+            long start = System.nanoTime();
+            BTree<?> tree = load(Dataset.valueOf(args[1]), args[2].equals("snapshot"), Path.of(args[3]));
+            long nanos = System.nanoTime() - start;
+            System.out.println(nanos + " " + tree.getItems(tree.root).size());
+            return;
+        }
+        int coldRuns = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        Path directory = Files.createTempDirectory("btree-snapshot");
+        try {
+            Benchmark benchmark = Benchmark.fromSystemProperties();
+            List<String> table = new ArrayList<>();
+            for (Dataset dataset : Dataset.values()) {
+                Path csv = dataset == Dataset.CPDS ? CPDS : EMAILS;
+                Path snapshot = directory.resolve(dataset + ".btree");
+                if (dataset == Dataset.CPDS) BTreeSnapshot.save(parseCpds(), snapshot, Entry.CODEC);
+                else BTreeSnapshot.save(EmailTester.readEmails(EMAILS.toString()), snapshot, Email.CODEC);
+
+                Benchmark.printHeader();
+                double[][] results = new double[2][];
+                for (int mode = 0; mode < 2; mode++) {
+                    boolean fromSnapshot = mode == 1;
+                    double[] cold = cold(dataset, fromSnapshot, snapshot, coldRuns);
+                    Benchmark.Result warm = benchmark.run((fromSnapshot ? "snapshot." : "parse.") + dataset, new Benchmark.Trial() {
+                        @Override
+                        public int operations() { return 1; }
+                        @Override
+                        public Object op(int i) { return load(dataset, fromSnapshot, snapshot).root; }
+                    });
+                    System.out.println(warm);
+                    results[mode] = new double[]{cold[0], cold[1], 1000 / warm.opsPerSecond};
+                }
+                table.add(String.format(Locale.ROOT, "%-8s %9d %9d %12.1f %12.1f %12.1f %12.1f %10.2f %10.2f",
+                        dataset, Files.size(csv) >> 10, Files.size(snapshot) >> 10, results[0][0], results[1][0],
+                        results[0][1], results[1][1], results[0][2], results[1][2]));
+            }
+            System.out.println();
+            System.out.println(String.format(Locale.ROOT, "%-8s %9s %9s %12s %12s %12s %12s %10s %10s", "dataset",
+                    "csv KB", "snap KB", "cold parse", "cold snap", "proc parse", "proc snap", "warm parse", "warm snap"));
+            for (String line : table) System.out.println(line);
+            System.out.println("(milliseconds, cold and process times are medians of " + coldRuns + " fresh JVMs)");
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Builds a dataset tree the way its application code does, or loads it from a snapshot
+     */
+    private static BTree<?> load(Dataset dataset, boolean fromSnapshot, Path snapshot) {
+        try {
+            if (dataset == Dataset.CPDS) return fromSnapshot ? BTreeSnapshot.load(snapshot, Entry.CODEC) : parseCpds();
+            return fromSnapshot ? BTreeSnapshot.load(snapshot, Email.CODEC) : EmailTester.readEmails(EMAILS.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BTree<Entry> parseCpds() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(CPDS)) {
+            return new EntryTreeItemFactory().readTree(3, reader);
+        }
+    }
+
+    /**
+     * Runs loads in fresh JVMs
+     * @return the median milliseconds of the load itself and of the whole process
+     */
+    private static double[] cold(Dataset dataset, boolean fromSnapshot, Path snapshot, int runs) throws Exception {
+        double[] loads = new double[runs];
+        double[] processes = new double[runs];
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    SnapshotBenchmark.class.getName(), "child", dataset.name(), fromSnapshot ? "snapshot" : "parse",
+                    snapshot.toString()).redirectErrorStream(true).start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                output = reader.readLine();
+            }
+            if (process.waitFor() != 0 || output == null) throw new IllegalStateException("Child failed: " + output);
+            processes[i] = (System.nanoTime() - start) / 1e6;
+            loads[i] = Long.parseLong(output.split(" ")[0]) / 1e6;
+        }
+        Arrays.sort(loads);
+        Arrays.sort(processes);
+        return new double[]{loads[runs / 2], processes[runs / 2]};
+    }
+}
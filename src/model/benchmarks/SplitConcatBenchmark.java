@@ -0,0 +1,66 @@
+package model.benchmarks;
+
+import model.BTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BTree#split} and {@link BTree#concat} against rebuilding the two trees from their items, as archiving did
+ * before: one operation splits a tree at a random key and joins the halves back.
+ * <br>
+ * Splitting and joining touch O(log n) nodes of trees without metrics, as here, so their rate should barely drop as the tree grows, while a rebuild
+ * (getItems, then a bulk load of each half) is O(n).
+ * <br>
+ * Usage: {@code java model.benchmarks.SplitConcatBenchmark [sizes] [minChildren]}
+ */
+public class SplitConcatBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? BTreeBenchmark.parseInts(args[0]) : new int[]{10_000, 100_000, 1_000_000};
+        int minChildren = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        Benchmark.printHeader();
+        for (int size : sizes) {
+            int[] order = KeyDistribution.shuffled(size, 25);
+            Integer[] keys = new Integer[size];
+            for (int i = 0; i < size; i++) keys[i] = order[i];
+            int[] splits = KeyDistribution.RANDOM.indices(1000, size, 26);
+            BTree<Integer> start = new BTree<>(minChildren);
+            for (Integer key : keys) start.add(key);
+            String suffix = "[n=" + size + ",m=" + minChildren + "]";
+
+            System.out.println(benchmark.run("split+concat" + suffix, new Benchmark.Trial() {
+                private BTree<Integer> tree;
+                @Override
+                public void setup() { tree = start.snapshot(); }
+                @Override
+                public int operations() { return splits.length; }
+                @Override
+                public Object op(int i) {
+                    BTree<Integer> right = tree.split(keys[splits[i]]);
+                    tree = BTree.concat(tree, right);
+                    return tree.root;
+                }
+            }));
+            System.out.println(benchmark.run("rebuild" + suffix, new Benchmark.Trial() {
+                @Override
+                public int operations() { return 10; }
+                @Override
+                public Object op(int i) {
+                    Integer key = keys[splits[i]];
+                    List<Integer> items = start.getItems(start.root);
+                    List<Integer> less = new ArrayList<>();
+                    List<Integer> rest = new ArrayList<>();
+                    for (Integer item : items) (item < key ? less : rest).add(item);
+                    BTree<Integer> left = new BTree<>(minChildren);
+                    left.bulkLoad(less.iterator(), BTree.DEFAULT_FILL_FACTOR);
+                    BTree<Integer> right = new BTree<>(minChildren);
+                    right.bulkLoad(rest.iterator(), BTree.DEFAULT_FILL_FACTOR);
+                    return right.root;
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package model.benchmarks;
+
+import model.BTree;
+import model.StringBTree;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Front-coded {@link StringBTree} against {@link BTree}{@code <String>} on the text files the GUI loads,
+ * one key per line as {@code StringTreeItemFactory} reads them.
+ * <br>
+ * Memory is the heap a tree retains besides the lines it was built from, so for BTree it includes a copy of every
+ * String. Enough trees are built to fill about 50 MB, so that a small file is not lost in the noise of measuring
+ * the heap. Both trees are built by adding the lines in random order, so their nodes are equally full.
+ * Lookups search every line (hits) and every line with a character appended (misses), in random order.
+ * <br>
+ * Each file is also loaded {@code copies} times, with "1,", "2,", ... in front of every line,
+ * for a larger tree whose neighbouring keys share as much as in the file.
+ * <br>
+ * Usage: {@code java model.benchmarks.StringBTreeBenchmark [fanouts] [copies] [files...]}
+ */
+public class StringBTreeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int[] fanouts = args.length > 0 ? BTreeBenchmark.parseInts(args[0]) : new int[]{3, 16};
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String[] files = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length)
+                : new String[]{"src/data/emails.csv", "src/data/CPDS_1960-2019_Update_2021.csv"};
+
+        Benchmark benchmark = Benchmark.fromSystemProperties();
+        for (String file : files) {
+            String name = file.substring(file.lastIndexOf('/') + 1);
+            for (int times : copies > 1 ? new int[]{1, copies} : new int[]{1}) {
+                for (int minChildren : fanouts) {
+                    String suffix = "[" + name + (times > 1 ? "x" + times : "") + ",m=" + minChildren + "]";
+                    compare(benchmark, file, times, minChildren, suffix);
+                }
+            }
+        }
+    }
+
+    private static void compare(Benchmark benchmark, String file, int times, int minChildren, String suffix) throws IOException {
+        List<String> lines = readLines(file, times);
+        List<String> order = shuffled(lines);
+        long chars = 0;
+        for (String line : lines) chars += line.length();
+        int replicas = (int) Math.max(1, 50_000_000 / (2 * chars + 100L * lines.size()));
+
+        List<BTree<String>> trees = new ArrayList<>();
+        long before = Benchmark.usedHeap();
+        for (int k = 0; k < replicas; k++) {
+            BTree<String> tree = new BTree<>(minChildren);
+            for (String line : order) tree.add(new String(line.toCharArray()));
+            trees.add(tree);
+        }
+        double treeBytes = (double) (Benchmark.usedHeap() - before) / replicas;
+
+        List<StringBTree> stringTrees = new ArrayList<>();
+        before = Benchmark.usedHeap();
+        for (int k = 0; k < replicas; k++) {
+            StringBTree stringTree = new StringBTree(minChildren);
+            for (String line : order) stringTree.add(line);
+            stringTrees.add(stringTree);
+        }
+        double stringTreeBytes = (double) (Benchmark.usedHeap() - before) / replicas;
+
+        System.out.println(String.format(Locale.ROOT, "%-48s %d lines, %.1f chars/line: BTree %.1f B/line, StringBTree %.1f B/line (%+.0f%%)",
+                "memory" + suffix, lines.size(), (double) chars / lines.size(), treeBytes / lines.size(),
+                stringTreeBytes / lines.size(), 100.0 * stringTreeBytes / treeBytes - 100));
+
+        BTree<String> tree = trees.get(0);
+        StringBTree stringTree = stringTrees.get(0);
+        trees.clear();
+        stringTrees.clear();
+        String[] hits = order.toArray(new String[0]);
+        String[] misses = new String[hits.length];
+        for (int i = 0; i < hits.length; i++) misses[i] = hits[i] + "~";
+        Benchmark.printHeader();
+        System.out.println(benchmark.run("BTree.search.hit" + suffix, trial(hits.length, i -> tree.search(hits[i]))));
+        System.out.println(benchmark.run("StringBTree.search.hit" + suffix, trial(hits.length, i -> stringTree.search(hits[i]))));
+        System.out.println(benchmark.run("BTree.search.miss" + suffix, trial(misses.length, i -> tree.search(misses[i]))));
+        System.out.println(benchmark.run("StringBTree.search.miss" + suffix, trial(misses.length, i -> stringTree.search(misses[i]))));
+    }
+
+    private interface Query {
+        Object run(int i);
+    }
+
+    private static Benchmark.Trial trial(int operations, Query query) {
+        return new Benchmark.Trial() {
+            @Override
+            public int operations() { return operations; }
+            @Override
+            public Object op(int i) { return query.run(i); }
+        };
+    }
+
+    private static List<String> readLines(String file, int times) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (times == 1) lines.add(line);
+                else for (int k = 1; k <= times; k++) lines.add(k + "," + line);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> shuffled(List<String> lines) {
+        int[] order = KeyDistribution.shuffled(lines.size(), 13);
+        List<String> shuffled = new ArrayList<>(lines.size());
+        for (int i : order) shuffled.add(lines.get(i));
+        return shuffled;
+    }
+}
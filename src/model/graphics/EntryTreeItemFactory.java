@@ -2,11 +2,15 @@ package model.graphics;
 
 import data.Entry;
 import model.BTree;
+import model.storage.BTreeSnapshot;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
 
 /**
  * Factory class that creates items and B Trees
@@ -39,22 +43,53 @@ public class EntryTreeItemFactory implements TreeItemFactory<Entry> {
         return true;
     }
 
+    /**
+     * Creates a tree of the entries of a CSV resource, from its snapshot if one was saved before
+     * @param minChildren the minimum number of children
+     * @param filename the resource, the CPDS dataset if null
+     * @return the tree
+     */
     public BTree<Entry> createFromFileTree(int minChildren, String filename){
         // mainly intended to instantiate a tree based on CPDS dataset
-        if (filename == null) filename = "data/CPDS_1960-2019_Update_2021.csv";
+        String resource = filename != null ? filename : "data/CPDS_1960-2019_Update_2021.csv";
+        URL url = getClass().getClassLoader().getResource(resource);
+        // readFileTree reports the missing resource
+        if (url == null) return readFileTree(minChildren, resource);
+        return BTreeSnapshot.cached(url, "Entry-m" + minChildren, Entry.CODEC, () -> readFileTree(minChildren, resource));
+    }
+
+    /**
+     * Creates a tree of the entries of a CSV resource by parsing it
+     * @param minChildren the minimum number of children
+     * @param filename the resource
+     * @return the tree
+     * @throws IllegalArgumentException if there is no such resource
+     */
+    public BTree<Entry> readFileTree(int minChildren, String filename){
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(filename)) {
+            if (in == null) throw new IllegalArgumentException("No resource " + filename);
+            return readTree(minChildren, new BufferedReader(new InputStreamReader(in)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Creates a tree of the entries of CSV text in the CPDS format by parsing it
+     * @param minChildren the minimum number of children
+     * @param br the text, with a header line
+     * @return the tree
+     */
+    public BTree<Entry> readTree(int minChildren, BufferedReader br){
         BTree<Entry> tree = createEmptyTree(minChildren);
+        ArrayList<Entry> entries = new ArrayList<>();
 
         String line = "";
         String splitBy = ",";
         try
         {
-            System.out.println(getClass().getClassLoader().getResourceAsStream(filename));
-            BufferedReader br = new BufferedReader(
-                    new InputStreamReader(getClass().getClassLoader().getResourceAsStream(filename)));
             // read headers
             br.readLine();
-            int i = 0;
             while ((line = br.readLine()) != null)   //returns a Boolean value
             {
                 String[] entry = line.split(splitBy);    // use comma as separator
@@ -64,7 +99,7 @@ public class EntryTreeItemFactory implements TreeItemFactory<Entry> {
 
                 // parse only valid entries, it is fine if we drop a few records
                 if (!year.isEmpty() && !country.isEmpty() && !gov_left1.isEmpty()) {
-                    tree.add(new Entry(Integer.parseInt(year), country, Float.parseFloat(gov_left1)));
+                    entries.add(new Entry(Integer.parseInt(year), country, Float.parseFloat(gov_left1)));
                 }
             }
         }
@@ -73,6 +108,9 @@ public class EntryTreeItemFactory implements TreeItemFactory<Entry> {
             e.printStackTrace();
         }
 
+        // The file is ordered by country and year, so sort by gov_left1 and build the tree bottom-up
+        entries.sort(null);
+        tree.bulkLoad(entries.iterator(), BTree.DEFAULT_FILL_FACTOR);
         return tree;
     }
 
@@ -1,10 +1,17 @@
 package model.graphics;
 
 import model.BTree;
+import model.IntBTree;
+import model.ParallelTreeBuilder;
+import model.storage.BTreeSnapshot;
+import model.storage.Codec;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Factory class that creates items and B Trees
@@ -37,11 +44,45 @@ public class IntegerTreeItemFactory implements TreeItemFactory<Integer> {
      * @return tree
      */
     public BTree<Integer> createTreeFromFile(String fileName) {
-        BTree<Integer> tree = createEmptyTree(3);
+        try {
+            return BTreeSnapshot.cached(Path.of(fileName).toUri().toURL(), "Integer-m3", Codec.INTEGER,
+                    () -> readTreeFromFile(fileName));
+        } catch (MalformedURLException e) {
+            return readTreeFromFile(fileName);
+        }
+    }
 
+    private BTree<Integer> readTreeFromFile(String fileName) {
+        // Lines are parsed, sorted and built into nodes in parallel, which is linear work for sorted files
         try {
+            return ParallelTreeBuilder.fromFile(Path.of(fileName), Integer::valueOf, Integer[]::new, 3, false, ForkJoinPool.commonPool());
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return createEmptyTree(3);
+        }
+    }
+
+    /**
+     * Create an empty primitive int B Tree, which stores keys unboxed.
+     * Used for large numeric data sets that do not need to be displayed.
+     *
+     * @param minChildren the minimum number of children
+     * @return a new empty primitive B Tree
+     */
+    public IntBTree createEmptyPrimitiveTree(int minChildren) {
+        return new IntBTree(minChildren);
+    }
+
+    /**
+     * Reads a file with integers separated by newline characters and returns a primitive int tree.
+     * @param fileName the name of the file
+     * @return tree
+     */
+    public IntBTree createPrimitiveTreeFromFile(String fileName) {
+        IntBTree tree = createEmptyPrimitiveTree(3);
+
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
             String line = "";
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
             while ((line = br.readLine()) != null) {
                 tree.add(Integer.parseInt(line));
             }
@@ -50,6 +91,4 @@ public class IntegerTreeItemFactory implements TreeItemFactory<Integer> {
         }
         return tree;
     }
-
-
 }
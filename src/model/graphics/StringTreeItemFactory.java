@@ -1,10 +1,14 @@
 package model.graphics;
 
 import model.BTree;
+import model.ParallelTreeBuilder;
+import model.storage.BTreeSnapshot;
+import model.storage.Codec;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 public class StringTreeItemFactory implements TreeItemFactory<String> {
     @Override
@@ -28,17 +32,21 @@ public class StringTreeItemFactory implements TreeItemFactory<String> {
      * @return tree
      */
     public BTree<String> createTreeFromFile(String fileName) {
-        BTree<String> tree = createEmptyTree(3);
+        try {
+            return BTreeSnapshot.cached(Path.of(fileName).toUri().toURL(), "String-m3", Codec.STRING,
+                    () -> readTreeFromFile(fileName));
+        } catch (MalformedURLException e) {
+            return readTreeFromFile(fileName);
+        }
+    }
 
+    private BTree<String> readTreeFromFile(String fileName) {
+        // Lines are parsed, sorted and built into nodes in parallel, which is linear work for sorted files
         try {
-            String line = "";
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
-            while ((line = br.readLine()) != null) {
-                tree.add(line);
-            }
+            return ParallelTreeBuilder.fromFile(Path.of(fileName), line -> line, String[]::new, 3, false, ForkJoinPool.commonPool());
         } catch (IOException | NumberFormatException e) {
             e.printStackTrace();
+            return createEmptyTree(3);
         }
-        return tree;
     }
 }
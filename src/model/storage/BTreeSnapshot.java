@@ -0,0 +1,164 @@
+package model.storage;
+
+import model.BTree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves a {@link BTree} to a compact binary file and loads it back, much faster than building it from text again.
+ * <br>
+ * The nodes are written as they are, see {@link BTree#writeTo}, so loading memory-maps the file and fills new nodes
+ * in one sequential pass, without comparing items. The fanout and shape of the tree are kept.
+ * <br>
+ * File layout:
+ * <pre>
+ * | magic (int) | version (int) | tree, see BTree#writeTo | crc32 of everything before it (int) |
+ * </pre>
+ * A snapshot is written to a temporary file and renamed, so a file with the name is always complete. It is not
+ * forced to disk: a snapshot is a copy of data kept elsewhere, and a damaged one fails its checksum when loaded.
+ */
+public final class BTreeSnapshot {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Where {@link #cached} keeps its snapshots, the system property {@code btree.snapshot.dir} if set
+     */
+    public static final Path CACHE_DIRECTORY = Path.of(System.getProperty("btree.snapshot.dir",
+            Path.of(System.getProperty("java.io.tmpdir"), "btree-snapshots").toString()));
+
+    private static final int MAGIC = 0x42545353;
+    private static final int HEADER_BYTES = 8;
+    private static final int CRC_BYTES = 4;
+
+    private BTreeSnapshot() {}
+
+    /**
+     * Saves a tree, replacing the file if it exists
+     * @param tree the tree
+     * @param file the file
+     * @param codec converts items to bytes
+     * @throws IOException if the file can not be written
+     */
+    public static <T extends Comparable<? super T>> void save(BTree<T> tree, Path file, Codec<? super T> codec) throws IOException {
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (CheckedOutputStream checked = new CheckedOutputStream(Files.newOutputStream(tmp), new CRC32())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                tree.writeTo(out, codec);
+                out.flush();
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Loads a tree saved by {@link #save}, which is not augmented even if the one saved was.
+     * Files are memory-mapped, so they are limited to 2 GB.
+     * @param file the file
+     * @param codec converts bytes to items
+     * @return the tree
+     * @throws IOException if the file can not be read, is not a snapshot of this version or is damaged
+     */
+    public static <T extends Comparable<? super T>> BTree<T> load(Path file, Codec<T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CRC_BYTES || size > Integer.MAX_VALUE) throw new IOException("Not a snapshot: " + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) throw new IOException("Not a snapshot: " + file);
+            int version = buffer.getInt(4);
+            if (version != VERSION) throw new IOException("Snapshot version " + version + " is not supported: " + file);
+
+            ByteBuffer body = buffer.slice(0, (int) size - CRC_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (buffer.getInt((int) size - CRC_BYTES) != (int) crc.getValue()) throw new IOException("Damaged snapshot: " + file);
+
+            ByteBufferInput in = new ByteBufferInput(body.position(HEADER_BYTES));
+            BTree<T> tree = BTree.readFrom(in, codec);
+            if (in.remaining() != 0) throw new IOException("Damaged snapshot: " + file);
+            return tree;
+        }
+    }
+
+    /**
+     * Loads the tree of a source from its snapshot in {@link #CACHE_DIRECTORY}, or builds it and saves a snapshot for
+     * next time. The snapshot is named after the source, its size and modification time, so a changed source gets a
+     * new one. Failing to read or write the cache only costs the build.
+     * @param source the file or resource the tree is built from
+     * @param variant tells apart trees built differently from the same source, such as their type and minChildren
+     * @param codec converts items to and from bytes
+     * @param build builds the tree from the source
+     * @return the tree
+     */
+    public static <T extends Comparable<? super T>> BTree<T> cached(URL source, String variant, Codec<T> codec, Supplier<BTree<T>> build) {
+        Path snapshot;
+        try {
+            snapshot = cachePath(source, variant);
+        } catch (IOException e) {
+            return build.get();
+        }
+        if (Files.exists(snapshot)) {
+            try {
+                return load(snapshot, codec);
+            } catch (IOException e) {
+                // Damaged or of an older version, so it is built and saved again
+            }
+        }
+        BTree<T> tree = build.get();
+        try {
+            Files.createDirectories(CACHE_DIRECTORY);
+            save(tree, snapshot, codec);
+        } catch (IOException e) {
+            // Loads build the tree again
+        }
+        return tree;
+    }
+
+    private static Path cachePath(URL source, String variant) throws IOException {
+        long length;
+        long modified;
+        if (source.getProtocol().equals("file")) {
+            Path file;
+            try {
+                file = Path.of(source.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Not a file path: " + source, e);
+            }
+            length = Files.size(file);
+            modified = Files.getLastModifiedTime(file).toMillis();
+        } else {
+            // Reading the header fields connects, e.g. opens the jar of a resource, which closing the stream releases
+            URLConnection connection = source.openConnection();
+            length = connection.getContentLengthLong();
+            modified = connection.getLastModified();
+            connection.getInputStream().close();
+        }
+        if (length < 0) throw new IOException("Unknown length: " + source);
+        String path = source.getPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return CACHE_DIRECTORY.resolve(String.format("%s-%s-%08x-%d-%d.btree", name, variant, source.toString().hashCode(),
+                length, modified).replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
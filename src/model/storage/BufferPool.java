@@ -0,0 +1,269 @@
+package model.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of fixed-size pages of a file.
+ * <br>
+ * Callers {@link #pin(int)} a page to use its buffer and {@link #unpin(int, boolean)} it when done, saying whether
+ * they changed it. Pinned pages are never evicted. When a page is needed and every frame is taken, the CLOCK
+ * algorithm picks an unpinned victim: a hand sweeps the frames, giving every recently used page a second chance,
+ * and a dirty victim is written back before its frame is reused.
+ * <br>
+ * Hits, misses, page reads, page writes and evictions are counted, see {@link #getHitRate()}.
+ * <br>
+ * Not thread safe, like the trees that use it.
+ */
+public class BufferPool implements Closeable {
+
+    private static final int NO_PAGE = -1;
+
+    private final FileChannel channel;
+    private final int pageSize;
+
+    private final ByteBuffer[] frames;
+    private final int[] framePages;
+    private final int[] pinCounts;
+    private final boolean[] dirty;
+    private final boolean[] referenced;
+
+    /**
+     * Maps page ids to their frames, NO_PAGE for pages not in the pool.
+     * Page ids are dense, so an array indexed by page id replaces a hash map and its boxed keys.
+     */
+    private int[] pageTable;
+
+    /**
+     * The position of the CLOCK hand
+     */
+    private int hand = 0;
+
+    /**
+     * The number of pages in the file, including allocated pages not yet written
+     */
+    private int numPages;
+
+    private long hits;
+    private long misses;
+    private long reads;
+    private long writes;
+    private long evictions;
+
+    /**
+     * Constructor
+     * @param channel the file, opened for reading and writing
+     * @param pageSize the size of a page in bytes, a multiple of 8
+     * @param capacity the number of pages the pool holds
+     * @throws IOException if the size of the file can not be read
+     */
+    public BufferPool(FileChannel channel, int pageSize, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        if (pageSize < 8 || pageSize % 8 != 0) throw new IllegalArgumentException("Page size must be a multiple of 8: " + pageSize);
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new ByteBuffer[capacity];
+        this.framePages = new int[capacity];
+        this.pinCounts = new int[capacity];
+        this.dirty = new boolean[capacity];
+        this.referenced = new boolean[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = ByteBuffer.allocateDirect(pageSize).order(ByteOrder.LITTLE_ENDIAN);
+            framePages[i] = NO_PAGE;
+        }
+        this.numPages = (int) (channel.size() / pageSize);
+        this.pageTable = new int[Math.max(16, numPages)];
+        Arrays.fill(pageTable, NO_PAGE);
+    }
+
+    /**
+     * Pins a page, reading it from the file if it is not in the pool
+     * @param pageId the page id
+     * @return the buffer of the page, valid until the page is unpinned. Use absolute gets and puts only.
+     * @throws IllegalStateException if every page in the pool is pinned
+     * @throws UncheckedIOException if the file can not be read or written
+     */
+    public ByteBuffer pin(int pageId) {
+        if (pageId < 0 || pageId >= numPages) throw new IllegalArgumentException("No page " + pageId);
+        int frame = pageTable[pageId];
+        if (frame != NO_PAGE) {
+            hits++;
+            pinCounts[frame]++;
+            referenced[frame] = true;
+            return frames[frame];
+        }
+        misses++;
+        int victim = evict();
+        ByteBuffer buffer = frames[victim];
+        buffer.clear();
+        try {
+            long position = (long) pageId * pageSize;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    // Allocated pages past the end of the file read as zeroes
+                    while (buffer.hasRemaining()) buffer.put((byte) 0);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        reads++;
+        install(victim, pageId, false);
+        return buffer;
+    }
+
+    /**
+     * Unpins a page
+     * @param pageId the page id
+     * @param isDirty whether the caller changed the page
+     */
+    public void unpin(int pageId, boolean isDirty) {
+        int frame = pageId >= 0 && pageId < numPages ? pageTable[pageId] : NO_PAGE;
+        if (frame == NO_PAGE || pinCounts[frame] == 0) throw new IllegalStateException("Page " + pageId + " is not pinned");
+        pinCounts[frame]--;
+        dirty[frame] |= isDirty;
+    }
+
+    /**
+     * Adds a zeroed page at the end of the file and pins it. The page is written back when evicted or flushed.
+     * @return the page id
+     */
+    public int allocatePage() {
+        int victim = evict();
+        int pageId = numPages++;
+        if (pageId == pageTable.length) {
+            int oldLength = pageTable.length;
+            pageTable = Arrays.copyOf(pageTable, 2 * oldLength);
+            Arrays.fill(pageTable, oldLength, pageTable.length, NO_PAGE);
+        }
+        ByteBuffer buffer = frames[victim];
+        buffer.clear();
+        while (buffer.hasRemaining()) buffer.putLong(0L);
+        install(victim, pageId, true);
+        return pageId;
+    }
+
+    /**
+     * Returns the buffer of a page the caller already pinned, without pinning it again
+     * @param pageId the page id
+     * @return the buffer
+     */
+    public ByteBuffer pinned(int pageId) {
+        int frame = pageId >= 0 && pageId < numPages ? pageTable[pageId] : NO_PAGE;
+        if (frame == NO_PAGE || pinCounts[frame] == 0) throw new IllegalStateException("Page " + pageId + " is not pinned");
+        return frames[frame];
+    }
+
+    private void install(int frame, int pageId, boolean isDirty) {
+        framePages[frame] = pageId;
+        pinCounts[frame] = 1;
+        dirty[frame] = isDirty;
+        referenced[frame] = true;
+        pageTable[pageId] = frame;
+    }
+
+    /**
+     * Frees a frame with the CLOCK algorithm, writing its page back if dirty
+     * @return the frame
+     */
+    private int evict() {
+        // Two full sweeps clear every reference bit, so a third finds a victim unless all frames are pinned
+        for (int step = 0; step < 3 * frames.length; step++) {
+            int frame = hand;
+            hand = (hand + 1) % frames.length;
+            if (framePages[frame] == NO_PAGE) return frame;
+            if (pinCounts[frame] > 0) continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            if (dirty[frame]) write(frame);
+            pageTable[framePages[frame]] = NO_PAGE;
+            framePages[frame] = NO_PAGE;
+            evictions++;
+            return frame;
+        }
+        throw new IllegalStateException("All " + frames.length + " pages in the buffer pool are pinned");
+    }
+
+    private void write(int frame) {
+        ByteBuffer buffer = frames[frame].duplicate();
+        buffer.clear();
+        try {
+            long position = (long) framePages[frame] * pageSize;
+            while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dirty[frame] = false;
+        writes++;
+    }
+
+    /**
+     * Writes every dirty page back to the file
+     * @param force whether to also force the file to the storage device
+     */
+    public void flush(boolean force) {
+        for (int frame = 0; frame < frames.length; frame++) {
+            if (framePages[frame] != NO_PAGE && dirty[frame]) write(frame);
+        }
+        if (force) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the pool and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        flush(true);
+        channel.close();
+    }
+
+    public int getPageSize() { return pageSize; }
+
+    public int getCapacity() { return frames.length; }
+
+    public int getNumPages() { return numPages; }
+
+    public long getHits() { return hits; }
+
+    public long getMisses() { return misses; }
+
+    public long getReads() { return reads; }
+
+    public long getWrites() { return writes; }
+
+    public long getEvictions() { return evictions; }
+
+    /**
+     * @return the fraction of pins that found their page in the pool
+     */
+    public double getHitRate() {
+        long pins = hits + misses;
+        return pins == 0 ? 0 : (double) hits / pins;
+    }
+
+    /**
+     * Sets all counters back to zero
+     */
+    public void resetMetrics() {
+        hits = misses = reads = writes = evictions = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hit rate %.4f, hits %d, misses %d, reads %d, writes %d, evictions %d",
+                getHitRate(), hits, misses, reads, writes, evictions);
+    }
+}
@@ -0,0 +1,93 @@
+package model.storage;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the primitives of {@link DataInput} straight from a buffer, such as a memory-mapped file, in the big-endian
+ * order of {@link java.io.DataOutput}. Unlike a {@link DataInputStream} over the bytes, reading an int is one access
+ * to the buffer rather than four calls to a stream.
+ */
+final class ByteBufferInput implements DataInput {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the number of bytes left
+     */
+    int remaining() {
+        return buffer.remaining();
+    }
+
+    private ByteBuffer require(int bytes) throws EOFException {
+        if (buffer.remaining() < bytes) throw new EOFException("Needs " + bytes + " bytes, " + buffer.remaining() + " left");
+        return buffer;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        require(len).get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException { return require(1).get() != 0; }
+
+    @Override
+    public byte readByte() throws IOException { return require(1).get(); }
+
+    @Override
+    public int readUnsignedByte() throws IOException { return require(1).get() & 0xff; }
+
+    @Override
+    public short readShort() throws IOException { return require(2).getShort(); }
+
+    @Override
+    public int readUnsignedShort() throws IOException { return require(2).getShort() & 0xffff; }
+
+    @Override
+    public char readChar() throws IOException { return require(2).getChar(); }
+
+    @Override
+    public int readInt() throws IOException { return require(4).getInt(); }
+
+    @Override
+    public long readLong() throws IOException { return require(8).getLong(); }
+
+    @Override
+    public float readFloat() throws IOException { return require(4).getFloat(); }
+
+    @Override
+    public double readDouble() throws IOException { return require(8).getDouble(); }
+
+    /**
+     * Not supported, as nothing written by a codec is read as a line
+     */
+    @Override
+    public String readLine() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
@@ -0,0 +1,54 @@
+package model.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts items to and from bytes, so that trees of any item type can be written to files.
+ * <br>
+ * Codecs for the basic types are provided here, codecs for the record types live next to them in the data package.
+ * @param <T> the type of the items
+ */
+public interface Codec<T> {
+
+    /**
+     * Writes an item
+     * @param item the item
+     * @param out the output
+     * @throws IOException if the output can not be written
+     */
+    void write(T item, DataOutput out) throws IOException;
+
+    /**
+     * Reads an item written by {@link #write}
+     * @param in the input
+     * @return the item
+     * @throws IOException if the input can not be read
+     */
+    T read(DataInput in) throws IOException;
+
+    Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public void write(Integer item, DataOutput out) throws IOException { out.writeInt(item); }
+        @Override
+        public Integer read(DataInput in) throws IOException { return in.readInt(); }
+    };
+
+    Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public void write(Long item, DataOutput out) throws IOException { out.writeLong(item); }
+        @Override
+        public Long read(DataInput in) throws IOException { return in.readLong(); }
+    };
+
+    /**
+     * Strings as modified UTF-8, limited to 65535 bytes per string
+     */
+    Codec<String> STRING = new Codec<String>() {
+        @Override
+        public void write(String item, DataOutput out) throws IOException { out.writeUTF(item); }
+        @Override
+        public String read(DataInput in) throws IOException { return in.readUTF(); }
+    };
+}
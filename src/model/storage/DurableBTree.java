@@ -0,0 +1,293 @@
+package model.storage;
+
+import model.BTree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A {@link BTree} in memory that survives crashes, by logging every add and delete to a {@link WriteAheadLog}.
+ * <br>
+ * Changes are logged and applied under one lock, then the caller waits for the log outside the lock, so concurrent
+ * callers share fsyncs (group commit). Once add or delete returns, the change survives a crash.
+ * Searches see changes as soon as they are applied, possibly before they are durable.
+ * <br>
+ * Every so many records a checkpoint writes a snapshot of the tree to a file and deletes the log segments it covers,
+ * so recovery only loads the checkpoint and replays the tail of the log.
+ * The snapshot is taken in O(1) under the lock (see {@link BTree#snapshot()}) and written out in the background
+ * while the tree keeps changing.
+ * <br>
+ * Directory layout:
+ * <pre>
+ * checkpoint                 | magic | lsn | count | items... | crc32 |
+ * wal-00000000000000000001.log, wal-...   log segments, see WriteAheadLog
+ * </pre>
+ * @param <T> the type of the items
+ */
+public class DurableBTree<T extends Comparable<? super T>> implements Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+
+    private static final int CHECKPOINT_MAGIC = 0x42434b50;
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String CHECKPOINT_TMP = "checkpoint.tmp";
+
+    private final Path directory;
+    private final Codec<T> codec;
+    private final BTree<T> tree;
+    private final WriteAheadLog log;
+
+    /**
+     * The number of records after which a checkpoint is started, 0 for none
+     */
+    private final long checkpointInterval;
+    private final ExecutorService checkpointer;
+    private final AtomicBoolean checkpointRunning = new AtomicBoolean();
+    private final Object checkpointLock = new Object();
+    private volatile long checkpointLsn;
+    private volatile IOException checkpointFailure;
+
+    /**
+     * Opens the tree in a directory, recovering its contents from the checkpoint and log if they exist
+     * @param directory the directory of the checkpoint and log files, created if missing
+     * @param minChildren the minimum number of children a node can have
+     * @param codec converts items to bytes
+     * @param groupCommitNanos how long the log waits for more records before an fsync, see {@link WriteAheadLog}
+     * @param checkpointInterval the number of records after which a checkpoint is taken in the background, 0 for none
+     * @throws IOException if the files can not be read, or are damaged other than at the end of the log
+     */
+    public DurableBTree(Path directory, int minChildren, Codec<T> codec, long groupCommitNanos, long checkpointInterval) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        this.tree = new BTree<>(minChildren);
+        this.checkpointInterval = checkpointInterval;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_TMP));
+
+        checkpointLsn = loadCheckpoint();
+        long lastLsn = WriteAheadLog.replay(directory, checkpointLsn, (lsn, type, payload) -> {
+            T item = codec.read(payload);
+            if (type == ADD) tree.add(item);
+            else if (type == DELETE) {
+                if (contains(item)) tree.delete(item);
+            } else throw new IOException("Unknown record type " + type + " at LSN " + lsn);
+        });
+        this.log = new WriteAheadLog(directory, lastLsn, groupCommitNanos);
+        if (checkpointInterval > 0) {
+            checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "btree-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * Bulk loads the tree from the checkpoint file
+     * @return the LSN of the checkpoint, 0 if there is none
+     */
+    private long loadCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT);
+        if (!Files.exists(path)) return 0;
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path))) {
+            CheckedInputStream checked = new CheckedInputStream(file, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException("Not a checkpoint: " + path);
+            long lsn = in.readLong();
+            long count = in.readLong();
+            ArrayList<T> items = new ArrayList<>();
+            for (long i = 0; i < count; i++) items.add(codec.read(in));
+            int expected = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(file).readInt() != expected) throw new IOException("Damaged checkpoint: " + path);
+            tree.bulkLoad(items.iterator(), BTree.DEFAULT_FILL_FACTOR);
+            return lsn;
+        }
+    }
+
+    /**
+     * Adds an item, returning once the add is durable
+     * @param item the item
+     * @throws IOException if the log can not be written
+     */
+    public void add(T item) throws IOException {
+        byte[] payload = encode(item);
+        long lsn;
+        synchronized (tree) {
+            lsn = log.append(ADD, payload);
+            tree.add(item);
+        }
+        commit(lsn);
+    }
+
+    /**
+     * Deletes an item, returning once the delete is durable
+     * @param item the item
+     * @return whether the item was in the tree
+     * @throws IOException if the log can not be written
+     */
+    public boolean delete(T item) throws IOException {
+        byte[] payload = encode(item);
+        long lsn;
+        synchronized (tree) {
+            if (!contains(item)) return false;
+            lsn = log.append(DELETE, payload);
+            tree.delete(item);
+        }
+        commit(lsn);
+        return true;
+    }
+
+    private byte[] encode(T item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(item, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Waits for a record to be durable and starts a checkpoint if enough records were logged since the last one
+     */
+    private void commit(long lsn) throws IOException {
+        log.sync(lsn);
+        if (checkpointFailure != null) throw new IOException("Checkpoint failed", checkpointFailure);
+        if (checkpointer != null && lsn - checkpointLsn >= checkpointInterval && checkpointRunning.compareAndSet(false, true)) {
+            checkpointer.execute(() -> {
+                try {
+                    checkpoint();
+                } catch (IOException e) {
+                    checkpointFailure = e;
+                } finally {
+                    checkpointRunning.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a checkpoint of the tree and deletes the log segments it covers.
+     * Only the snapshot and log rotation hold the lock, writing the file does not block changes.
+     * @throws IOException if the checkpoint can not be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            BTree<T> snapshot;
+            long lsn;
+            synchronized (tree) {
+                snapshot = tree.snapshot();
+                lsn = log.rotate();
+            }
+            if (lsn == checkpointLsn) {
+                log.deleteSegmentsUpTo(lsn);
+                return;
+            }
+
+            Path tmp = directory.resolve(CHECKPOINT_TMP);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                ArrayList<T> items = snapshot.getItems(snapshot.root);
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeLong(lsn);
+                out.writeLong(items.size());
+                for (T item : items) codec.write(item, out);
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+                channel.force(true);
+            }
+            // The rename replaces the old checkpoint in one step, so a crash leaves either the old or the new one
+            Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            WriteAheadLog.forceDirectory(directory);
+            checkpointLsn = lsn;
+            log.deleteSegmentsUpTo(lsn);
+        }
+    }
+
+    /**
+     * Searches for an item
+     * @param item the item
+     * @return the equal item in the tree, or null
+     */
+    public T search(T item) {
+        synchronized (tree) {
+            Iterator<T> iterator = tree.iterator(item);
+            if (iterator.hasNext()) {
+                T found = iterator.next();
+                if (found.compareTo(item) == 0) return found;
+            }
+            return null;
+        }
+    }
+
+    public boolean contains(T item) { return search(item) != null; }
+
+    /**
+     * @return the items in ascending order
+     */
+    public ArrayList<T> getItems() {
+        synchronized (tree) {
+            return tree.getItems(tree.root);
+        }
+    }
+
+    public void validate() throws Exception {
+        synchronized (tree) {
+            tree.validate();
+        }
+    }
+
+    /**
+     * @return the log, e.g. for its metrics
+     */
+    public WriteAheadLog getLog() { return log; }
+
+    /**
+     * @return the LSN of the last checkpoint, 0 if none
+     */
+    public long getCheckpointLsn() { return checkpointLsn; }
+
+    /**
+     * Waits for a running checkpoint and closes the log. Everything added or deleted before is durable.
+     */
+    @Override
+    public void close() throws IOException {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (tree) {
+            return tree.toString();
+        }
+    }
+}
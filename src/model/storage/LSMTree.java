@@ -0,0 +1,587 @@
+package model.storage;
+
+import model.BTree;
+import model.storage.SortedRun.Record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * A log-structured merge tree: a {@link BTree} in memory takes the adds and deletes, and is written out to immutable
+ * {@link SortedRun} files when it is full, so that the items can outgrow the heap and every write to disk is
+ * sequential.
+ * <br>
+ * Unlike BTree, an item is stored once: adding an item equal to one already there replaces it, and a delete leaves
+ * a tombstone that hides older copies until compaction drops them. Reads look at the memtable, then at the frozen
+ * memtables waiting to be flushed, then at the runs from newest to oldest, and the first record found for an item
+ * wins. Scans merge all of them with a k-way merge.
+ * <br>
+ * A full memtable is frozen and a background thread flushes it, in order, to a new run. The same thread then merges
+ * runs by size (size-tiered compaction): runs fall into tiers of {@code fanout} times the size of the tier below,
+ * and {@code fanout} runs of one tier that are next to each other in age are merged into one run of the next.
+ * Adds wait while two frozen memtables are still being flushed.
+ * <br>
+ * The amplification metrics are write amplification (bytes written to runs by flushes and compactions over bytes
+ * flushed), read amplification (run blocks read per search) and space amplification (run bytes over the bytes of
+ * the live records in them).
+ * <br>
+ * Directory layout:
+ * <pre>
+ * run-{minSeq}-{maxSeq}.sst   sorted runs, see SortedRun
+ * </pre>
+ * <em>The memtable is only written out by {@link #flush()} and {@link #close()}, so a crash loses the changes in it;
+ * log them first, as {@link DurableBTree} does, to keep them.</em>
+ * @param <T> the type of the items
+ */
+public class LSMTree<T extends Comparable<? super T>> implements Closeable {
+
+    public static final int DEFAULT_MEMTABLE_SIZE = 100_000;
+    public static final int DEFAULT_FANOUT = 4;
+
+    /**
+     * The size of the runs in the lowest tier
+     */
+    private static final long TIER_BASE_BYTES = 1 << 20;
+
+    /**
+     * Adds wait while this many memtables are frozen
+     */
+    private static final int MAX_FROZEN = 2;
+
+    private final Path directory;
+    private final Codec<T> codec;
+    private final int minChildren;
+    private final int memtableSize;
+    private final int fanout;
+
+    private final Object lock = new Object();
+    private BTree<Record<T>> memtable;
+    private int memtableCount = 0;
+
+    /**
+     * The version of the last write, which orders the records of equal items in a memtable
+     */
+    private long version = 0;
+
+    /**
+     * Memtables waiting to be flushed, newest first
+     */
+    private final ArrayList<BTree<Record<T>>> frozen = new ArrayList<>();
+
+    /**
+     * The runs, newest first
+     */
+    private final ArrayList<SortedRun<T>> runs = new ArrayList<>();
+    private long lastSeq;
+
+    private final ExecutorService compactor;
+    private volatile IOException failure;
+
+    private final LongAdder flushedBytes = new LongAdder();
+    private final LongAdder compactedBytes = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder blockReads = new LongAdder();
+
+    /**
+     * Opens the tree in a directory with the default memtable size and fanout
+     * @param directory the directory of the runs, created if missing
+     * @param minChildren the minimum number of children a node of the memtable can have
+     * @param codec converts items to bytes
+     * @throws IOException if the runs can not be read
+     */
+    public LSMTree(Path directory, int minChildren, Codec<T> codec) throws IOException {
+        this(directory, minChildren, codec, DEFAULT_MEMTABLE_SIZE, DEFAULT_FANOUT);
+    }
+
+    /**
+     * Opens the tree in a directory, with the runs already there
+     * @param directory the directory of the runs, created if missing
+     * @param minChildren the minimum number of children a node of the memtable can have
+     * @param codec converts items to bytes
+     * @param memtableSize the number of items after which the memtable is flushed
+     * @param fanout the number of runs merged at once, and the ratio between the sizes of tiers
+     * @throws IOException if the runs can not be read
+     */
+    public LSMTree(Path directory, int minChildren, Codec<T> codec, int memtableSize, int fanout) throws IOException {
+        if (memtableSize < 1) throw new IllegalArgumentException("memtableSize must be positive");
+        if (fanout < 2) throw new IllegalArgumentException("fanout must be at least 2");
+        this.directory = directory;
+        this.codec = codec;
+        this.minChildren = minChildren;
+        this.memtableSize = memtableSize;
+        this.fanout = fanout;
+        this.memtable = new BTree<>(minChildren);
+        Files.createDirectories(directory);
+        openRuns();
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the runs in the directory. A crash during a compaction can leave its inputs next to its output,
+     * which covers their sequence numbers, so those are deleted.
+     */
+    private void openRuns() throws IOException {
+        ArrayList<Path> paths = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(SortedRun.PREFIX)) continue;
+                if (name.endsWith(SortedRun.TMP_SUFFIX)) Files.delete(file);
+                else if (name.endsWith(SortedRun.SUFFIX)) paths.add(file);
+            }
+        }
+        for (Path path : paths) runs.add(SortedRun.open(path, codec));
+        runs.sort(Comparator.comparingLong((SortedRun<T> run) -> run.maxSeq).reversed()
+                .thenComparingLong(run -> run.minSeq));
+        for (int i = runs.size() - 1; i > 0; i--) {
+            SortedRun<T> run = runs.get(i);
+            for (int j = 0; j < i; j++) {
+                SortedRun<T> other = runs.get(j);
+                if (other.minSeq <= run.minSeq && run.maxSeq <= other.maxSeq) {
+                    runs.remove(i);
+                    run.release();
+                    break;
+                }
+            }
+        }
+        if (!runs.isEmpty()) lastSeq = runs.get(0).maxSeq;
+    }
+
+    /**
+     * Adds an item, replacing an equal item if there is one
+     * @param item the item
+     * @throws IOException if flushing or compaction in the background failed
+     */
+    public void add(T item) throws IOException {
+        write(item, false);
+    }
+
+    /**
+     * Deletes the item equal to an item, if there is one
+     * @param item the item
+     * @throws IOException if flushing or compaction in the background failed
+     */
+    public void delete(T item) throws IOException {
+        write(item, true);
+    }
+
+    private void write(T item, boolean tombstone) throws IOException {
+        checkFailure();
+        synchronized (lock) {
+            while (frozen.size() >= MAX_FROZEN && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            checkFailure();
+            // Older records of the item stay in the memtable, behind this one, until the flush skips them
+            memtable.add(new Record<>(item, tombstone, ++version));
+            if (++memtableCount >= memtableSize) freeze();
+        }
+    }
+
+    /**
+     * Freezes the memtable and hands it to the background thread. Called with the lock held.
+     */
+    private void freeze() {
+        frozen.add(0, memtable);
+        memtable = new BTree<>(minChildren);
+        memtableCount = 0;
+        compactor.execute(() -> {
+            try {
+                flushOldest();
+                compact();
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException ? (IOException) e
+                        : e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : new IOException(e);
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) throw new IOException("Flush or compaction failed", failure);
+    }
+
+    /**
+     * Writes the oldest frozen memtable to a new run. The memtable stays readable until the run replaces it.
+     */
+    private void flushOldest() throws IOException {
+        BTree<Record<T>> table;
+        long seq;
+        synchronized (lock) {
+            table = frozen.get(frozen.size() - 1);
+            seq = ++lastSeq;
+        }
+        SortedRun<T> run = SortedRun.write(directory, table.iterator(), false, seq, seq, codec);
+        synchronized (lock) {
+            if (run != null) runs.add(0, run);
+            frozen.remove(frozen.size() - 1);
+            lock.notifyAll();
+        }
+        if (run != null) flushedBytes.add(run.bytes);
+    }
+
+    /**
+     * @return the tier of a run: 0 below TIER_BASE_BYTES, then one more for every factor of fanout
+     */
+    private int tier(SortedRun<T> run) {
+        int tier = 0;
+        for (long size = TIER_BASE_BYTES; run.bytes >= size && tier < 62; size *= fanout) tier++;
+        return tier;
+    }
+
+    /**
+     * Merges runs until no fanout runs next to each other in age are in the same tier
+     */
+    private void compact() throws IOException {
+        while (true) {
+            List<SortedRun<T>> window = null;
+            boolean oldest = false;
+            synchronized (lock) {
+                for (int from = 0; from + fanout <= runs.size() && window == null; from++) {
+                    int tier = tier(runs.get(from));
+                    int to = from + 1;
+                    while (to < from + fanout && tier(runs.get(to)) == tier) to++;
+                    if (to == from + fanout) {
+                        window = new ArrayList<>(runs.subList(from, to));
+                        oldest = to == runs.size();
+                    }
+                }
+            }
+            if (window == null) return;
+
+            List<Iterator<Record<T>>> sources = new ArrayList<>();
+            for (SortedRun<T> run : window) sources.add(run.iterator());
+            // Nothing is older than the oldest run, so its tombstones have nothing left to delete
+            SortedRun<T> merged = SortedRun.write(directory, new MergeIterator<>(sources), oldest,
+                    window.get(window.size() - 1).minSeq, window.get(0).maxSeq, codec);
+            synchronized (lock) {
+                int from = runs.indexOf(window.get(0));
+                runs.subList(from, from + window.size()).clear();
+                if (merged != null) runs.add(from, merged);
+            }
+            if (merged != null) compactedBytes.add(merged.bytes);
+            for (SortedRun<T> run : window) run.release();
+        }
+    }
+
+    /**
+     * Searches for an item
+     * @param item the item
+     * @return the equal item in the tree, or null
+     * @throws IOException if a run can not be read
+     */
+    public T search(T item) throws IOException {
+        checkFailure();
+        searches.increment();
+        List<SortedRun<T>> current;
+        synchronized (lock) {
+            Record<T> found = newest(memtable, item);
+            for (int i = 0; found == null && i < frozen.size(); i++) found = newest(frozen.get(i), item);
+            if (found != null) return found.tombstone ? null : found.item;
+            current = retainRuns();
+        }
+        try {
+            for (SortedRun<T> run : current) {
+                int block = run.blockOf(item);
+                if (block < 0) continue;
+                blockReads.increment();
+                Record<T> found = run.find(block, item);
+                if (found != null) return found.tombstone ? null : found.item;
+            }
+            return null;
+        } finally {
+            for (SortedRun<T> run : current) run.release();
+        }
+    }
+
+    public boolean contains(T item) throws IOException { return search(item) != null; }
+
+    /**
+     * @return the newest record of an item in a memtable, or null
+     */
+    private static <T extends Comparable<? super T>> Record<T> newest(BTree<Record<T>> table, T item) {
+        // Sorts before every record of the item
+        Iterator<Record<T>> iterator = table.iterator(new Record<>(item, false, Long.MAX_VALUE));
+        if (!iterator.hasNext()) return null;
+        Record<T> found = iterator.next();
+        return found.item.compareTo(item) == 0 ? found : null;
+    }
+
+    /**
+     * @return the current runs, which are kept until released. Called with the lock held.
+     */
+    private List<SortedRun<T>> retainRuns() {
+        List<SortedRun<T>> current = new ArrayList<>(runs);
+        for (SortedRun<T> run : current) run.retain();
+        return current;
+    }
+
+    /**
+     * Returns an iterator over the items in ascending order, as they were when it was created.
+     * The runs it reads are kept until it is exhausted, so it should be read to the end.
+     * @return the iterator
+     */
+    public Iterator<T> iterator() {
+        List<Iterator<Record<T>>> sources = new ArrayList<>();
+        List<SortedRun<T>> current;
+        synchronized (lock) {
+            // The snapshot is O(1), and later changes to the memtable copy the nodes they touch
+            sources.add(memtable.snapshot().iterator());
+            for (BTree<Record<T>> table : frozen) sources.add(table.iterator());
+            current = retainRuns();
+        }
+        for (SortedRun<T> run : current) sources.add(run.iterator());
+        MergeIterator<T> merged = new MergeIterator<>(sources);
+        return new Iterator<T>() {
+            private T next;
+            private boolean released;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !released) {
+                    if (!merged.hasNext()) {
+                        released = true;
+                        for (SortedRun<T> run : current) run.release();
+                        break;
+                    }
+                    Record<T> record = merged.next();
+                    if (!record.tombstone) next = record.item;
+                }
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T item = next;
+                next = null;
+                return item;
+            }
+        };
+    }
+
+    /**
+     * @return the items in ascending order
+     */
+    public ArrayList<T> getItems() {
+        ArrayList<T> items = new ArrayList<>();
+        for (Iterator<T> iterator = iterator(); iterator.hasNext(); ) items.add(iterator.next());
+        return items;
+    }
+
+    /**
+     * Merges sorted iterators of records, of which the first is the newest, into one with the newest record per item
+     */
+    private static final class MergeIterator<T extends Comparable<? super T>> implements Iterator<Record<T>> {
+
+        /**
+         * The next record of a source
+         */
+        private static final class Head<T extends Comparable<? super T>> {
+            Record<T> record;
+            final int source;
+
+            Head(Record<T> record, int source) {
+                this.record = record;
+                this.source = source;
+            }
+        }
+
+        private final List<Iterator<Record<T>>> sources;
+        private final PriorityQueue<Head<T>> heads;
+
+        MergeIterator(List<Iterator<Record<T>>> sources) {
+            this.sources = sources;
+            // Equal items come out newest first, by source and then by record
+            heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int compared = a.record.item.compareTo(b.record.item);
+                return compared != 0 ? compared : Integer.compare(a.source, b.source);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).hasNext()) heads.add(new Head<>(sources.get(i).next(), i));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Record<T> next() {
+            if (heads.isEmpty()) throw new NoSuchElementException();
+            Head<T> head = heads.poll();
+            Record<T> record = head.record;
+            advance(head);
+            // Older records of the same item are shadowed
+            while (!heads.isEmpty() && heads.peek().record.item.compareTo(record.item) == 0) advance(heads.poll());
+            return record;
+        }
+
+        private void advance(Head<T> head) {
+            Iterator<Record<T>> source = sources.get(head.source);
+            if (!source.hasNext()) return;
+            head.record = source.next();
+            heads.add(head);
+        }
+    }
+
+    /**
+     * Freezes the memtable if it has any items, and waits until every frozen memtable is flushed and compacted
+     * @throws IOException if flushing or compaction failed
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            if (memtableCount > 0) freeze();
+        }
+        Future<?> done = compactor.submit(() -> { });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * @return the number of runs
+     */
+    public int getRunCount() {
+        synchronized (lock) {
+            return runs.size();
+        }
+    }
+
+    /**
+     * @return the total size of the runs in bytes
+     */
+    public long getDiskBytes() {
+        synchronized (lock) {
+            long bytes = 0;
+            for (SortedRun<T> run : runs) bytes += run.bytes;
+            return bytes;
+        }
+    }
+
+    /**
+     * @return the number of bytes written to runs by flushes and compactions
+     */
+    public long getBytesWritten() {
+        return flushedBytes.sum() + compactedBytes.sum();
+    }
+
+    /**
+     * @return bytes written to runs by flushes and compactions over bytes written by flushes, 0 before the first flush
+     */
+    public double getWriteAmplification() {
+        long flushed = flushedBytes.sum();
+        return flushed == 0 ? 0 : (double) (flushed + compactedBytes.sum()) / flushed;
+    }
+
+    /**
+     * @return the average number of run blocks read per search
+     */
+    public double getReadAmplification() {
+        long count = searches.sum();
+        return count == 0 ? 0 : (double) blockReads.sum() / count;
+    }
+
+    /**
+     * Merges all runs to find the bytes of their live records, which a single run without shadowed records or
+     * tombstones would take, in O(n)
+     * @return the total size of the runs over the size of their live records
+     * @throws IOException if a run can not be read
+     */
+    public double getSpaceAmplification() throws IOException {
+        List<SortedRun<T>> current;
+        synchronized (lock) {
+            current = retainRuns();
+        }
+        try {
+            List<Iterator<Record<T>>> sources = new ArrayList<>();
+            long bytes = 0;
+            for (SortedRun<T> run : current) {
+                sources.add(run.iterator());
+                bytes += run.bytes;
+            }
+            long live = 0;
+            for (MergeIterator<T> merged = new MergeIterator<>(sources); merged.hasNext(); ) {
+                Record<T> record = merged.next();
+                if (!record.tombstone) live += SortedRun.encodedSize(record, codec);
+            }
+            return live == 0 ? 0 : (double) bytes / live;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (SortedRun<T> run : current) run.release();
+        }
+    }
+
+    /**
+     * Resets the counters behind the write and read amplification
+     */
+    public void resetMetrics() {
+        flushedBytes.reset();
+        compactedBytes.reset();
+        searches.reset();
+        blockReads.reset();
+    }
+
+    /**
+     * Flushes the memtable, waits for compaction and closes the runs
+     * @throws IOException if flushing or compaction failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (lock) {
+                for (SortedRun<T> run : runs) run.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format("memtable %d, frozen %d, runs %s", memtableCount, frozen.size(), runs);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package model.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Off-heap storage for fixed-size slots, used to hold the nodes of {@link OffHeapLongBTree}.
+ * <br>
+ * Slots live in direct {@link ByteBuffer} chunks allocated as the arena grows, and are addressed by an int slot id
+ * instead of an object reference, so the garbage collector sees a handful of chunk objects however many slots exist.
+ * Released slots are chained into a free list through their first 4 bytes and reused before the arena grows.
+ * <br>
+ * <em>Direct buffers stand in for {@code MemorySegment}, which is not final in the JDK this project targets.
+ * Chunk memory is returned to the OS when the arena becomes unreachable.</em>
+ */
+public class NodeArena {
+
+    /**
+     * Slot id meaning "no slot"
+     */
+    public static final int NIL = -1;
+
+    /**
+     * Target size of a chunk in bytes
+     */
+    private static final int CHUNK_BYTES = 1 << 26;
+
+    private final int slotSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * The next slot id that has never been allocated
+     */
+    private int nextSlot = 0;
+
+    /**
+     * The first slot of the free list, or NIL
+     */
+    private int freeHead = NIL;
+
+    private int freeSlots = 0;
+
+    /**
+     * Constructor
+     * @param slotSize the size of each slot in bytes, at least 4
+     */
+    public NodeArena(int slotSize) {
+        if (slotSize < 4) throw new IllegalArgumentException("Slots must be at least 4 bytes: " + slotSize);
+        this.slotSize = slotSize;
+        // Power of two slots per chunk, so slot ids split into chunk and index with a shift and a mask
+        int slotsPerChunk = Integer.highestOneBit(Math.max(1, CHUNK_BYTES / slotSize));
+        this.chunkShift = Integer.numberOfTrailingZeros(slotsPerChunk);
+        this.chunkMask = slotsPerChunk - 1;
+    }
+
+    /**
+     * Allocates a slot, reusing a released one if possible. The contents of the slot are undefined.
+     * @return the slot id
+     */
+    public int allocate() {
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = getInt(slot, 0);
+            freeSlots--;
+            return slot;
+        }
+        if (nextSlot == Integer.MAX_VALUE) throw new IllegalStateException("Arena is full");
+        int slot = nextSlot++;
+        if ((slot >>> chunkShift) == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect((chunkMask + 1) * slotSize).order(ByteOrder.nativeOrder()));
+        }
+        return slot;
+    }
+
+    /**
+     * Returns a slot to the free list
+     * @param slot the slot id
+     */
+    public void release(int slot) {
+        putInt(slot, 0, freeHead);
+        freeHead = slot;
+        freeSlots++;
+    }
+
+    /**
+     * Releases every slot at once, keeping the chunks for reuse
+     */
+    public void clear() {
+        nextSlot = 0;
+        freeHead = NIL;
+        freeSlots = 0;
+    }
+
+    public int getInt(int slot, int offset) {
+        return chunks.get(slot >>> chunkShift).getInt(position(slot, offset));
+    }
+
+    public void putInt(int slot, int offset, int value) {
+        chunks.get(slot >>> chunkShift).putInt(position(slot, offset), value);
+    }
+
+    public long getLong(int slot, int offset) {
+        return chunks.get(slot >>> chunkShift).getLong(position(slot, offset));
+    }
+
+    public void putLong(int slot, int offset, long value) {
+        chunks.get(slot >>> chunkShift).putLong(position(slot, offset), value);
+    }
+
+    private int position(int slot, int offset) {
+        return (slot & chunkMask) * slotSize + offset;
+    }
+
+    /**
+     * @return the size of each slot in bytes
+     */
+    public int getSlotSize() { return slotSize; }
+
+    /**
+     * @return the number of slots in use
+     */
+    public int usedSlots() { return nextSlot - freeSlots; }
+
+    /**
+     * @return the number of off-heap bytes reserved by the chunks
+     */
+    public long reservedBytes() {
+        return (long) chunks.size() * (chunkMask + 1) * slotSize;
+    }
+}
@@ -0,0 +1,454 @@
+package model.storage;
+
+import model.BTree;
+import model.LongBTree;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Implementation of a B Tree for long keys whose nodes live off the Java heap
+ * <br>
+ * Every node is a fixed-size slot in a {@link NodeArena}, and child pointers are slot ids, so a tree of any size
+ * is a few objects to the garbage collector and adds nothing to GC marking or pause times.
+ * Int keys are stored widened to long, and a date with a record ID can be packed into one key with
+ * {@link #packDateAndId(LocalDate, int)}.
+ * <br>
+ * Offers the same add/delete/search/getItems operations as {@link BTree}, and like it allows duplicate keys.
+ * The algorithms are those of {@link LongBTree}, with node fields read from and written to the slots.
+ * <br>
+ * Slot layout:
+ * <pre>
+ * | numItems (int) | isLeaf (int) | items (long x maxChildren - 1) | neighbours (int slot x maxChildren) |
+ * </pre>
+ * Leaf slots have the same size as internal slots so that any free slot can be reused for either.
+ */
+public class OffHeapLongBTree {
+
+    private static final int NUM_ITEMS = 0;
+    private static final int IS_LEAF = 4;
+    private static final int ITEMS = 8;
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    private final int maxItems;
+
+    /**
+     * Offset of the neighbours within a slot
+     */
+    private final int neighboursOffset;
+
+    private final NodeArena arena;
+
+    /**
+     * The slot of the root node
+     */
+    private int root;
+
+    /**
+     * The number of keys in the tree
+     */
+    private long size;
+
+    /**
+     * Constructor
+     * @param minChildren the minimum number of children a node can have
+     */
+    public OffHeapLongBTree(int minChildren) {
+        if (minChildren < 2) throw new IllegalArgumentException("minChildren must be at least 2");
+        this.minChildren = minChildren;
+        this.maxItems = 2 * minChildren - 1;
+        this.neighboursOffset = ITEMS + 8 * maxItems;
+        this.arena = new NodeArena(neighboursOffset + 4 * (maxItems + 1));
+        root = newNode(true);
+    }
+
+    /**
+     * Packs a date and a record ID into one key that sorts by date, then by ID.
+     * @param date the date
+     * @param id the record ID, compared as unsigned
+     * @return the key
+     */
+    public static long packDateAndId(LocalDate date, int id) {
+        return (date.toEpochDay() << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key a key made by {@link #packDateAndId(LocalDate, int)}
+     * @return the date of the key
+     */
+    public static LocalDate unpackDate(long key) {
+        return LocalDate.ofEpochDay(key >> 32);
+    }
+
+    /**
+     * @param key a key made by {@link #packDateAndId(LocalDate, int)}
+     * @return the record ID of the key
+     */
+    public static int unpackId(long key) {
+        return (int) key;
+    }
+
+    public int getMinChildren() { return minChildren; }
+
+    /**
+     * @return the number of keys in the tree
+     */
+    public long size() { return size; }
+
+    /**
+     * @return the arena holding the nodes, for memory statistics
+     */
+    public NodeArena getArena() { return arena; }
+
+    public int getHeight() {
+        int height = 0;
+        int node = root;
+        while (!isLeaf(node)) {
+            node = child(node, 0);
+            height++;
+        }
+        return height;
+    }
+
+    // Slot accessors
+
+    private int newNode(boolean isLeaf) {
+        int node = arena.allocate();
+        arena.putInt(node, NUM_ITEMS, 0);
+        arena.putInt(node, IS_LEAF, isLeaf ? 1 : 0);
+        return node;
+    }
+
+    private int numItems(int node) { return arena.getInt(node, NUM_ITEMS); }
+
+    private void setNumItems(int node, int numItems) { arena.putInt(node, NUM_ITEMS, numItems); }
+
+    private boolean isLeaf(int node) { return arena.getInt(node, IS_LEAF) != 0; }
+
+    private long item(int node, int i) { return arena.getLong(node, ITEMS + 8 * i); }
+
+    private void setItem(int node, int i, long item) { arena.putLong(node, ITEMS + 8 * i, item); }
+
+    private int child(int node, int i) { return arena.getInt(node, neighboursOffset + 4 * i); }
+
+    private void setChild(int node, int i, int child) { arena.putInt(node, neighboursOffset + 4 * i, child); }
+
+    /**
+     * Copies count items between (possibly the same) nodes, in the direction that is safe for overlapping ranges
+     */
+    private void copyItems(int from, int fromIndex, int to, int toIndex, int count) {
+        if (from == to && fromIndex < toIndex) {
+            for (int k = count - 1; k >= 0; k--) setItem(to, toIndex + k, item(from, fromIndex + k));
+        } else {
+            for (int k = 0; k < count; k++) setItem(to, toIndex + k, item(from, fromIndex + k));
+        }
+    }
+
+    /**
+     * Copies count child pointers between (possibly the same) nodes, like copyItems
+     */
+    private void copyChildren(int from, int fromIndex, int to, int toIndex, int count) {
+        if (from == to && fromIndex < toIndex) {
+            for (int k = count - 1; k >= 0; k--) setChild(to, toIndex + k, child(from, fromIndex + k));
+        } else {
+            for (int k = 0; k < count; k++) setChild(to, toIndex + k, child(from, fromIndex + k));
+        }
+    }
+
+    /**
+     * @return the index of the first item of the node greater than or equal to item
+     */
+    private int lowerBound(int node, long item) {
+        int low = 0;
+        int high = numItems(node);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (item(node, middle) < item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first item of the node strictly greater than item
+     */
+    private int upperBound(int node, long item) {
+        int low = 0;
+        int high = numItems(node);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (item(node, middle) <= item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Operations
+
+    public void add(long item) {
+        int node = root;
+        if (numItems(node) == maxItems) {
+            int newRootNode = newNode(false);
+            setChild(newRootNode, 0, node);
+            splitChildNode(newRootNode, 0, node);
+            root = newRootNode;
+            node = newRootNode;
+        }
+        // Descend iteratively, splitting full children before entering them.
+        while (!isLeaf(node)) {
+            int i = upperBound(node, item);
+            int child = child(node, i);
+            if (numItems(child) == maxItems) {
+                splitChildNode(node, i, child);
+                if (item >= item(node, i)) child = child(node, i + 1);
+            }
+            node = child;
+        }
+        int i = upperBound(node, item);
+        int numItems = numItems(node);
+        copyItems(node, i, node, i + 1, numItems - i);
+        setItem(node, i, item);
+        setNumItems(node, numItems + 1);
+        size++;
+    }
+
+    /**
+     * Splits the full child node at index i of parentNode, moving its median item up into parentNode
+     */
+    private void splitChildNode(int parentNode, int i, int node) {
+        boolean leaf = isLeaf(node);
+        int newNode = newNode(leaf);
+        setNumItems(newNode, minChildren - 1);
+        copyItems(node, minChildren, newNode, 0, minChildren - 1);
+        if (!leaf) copyChildren(node, minChildren, newNode, 0, minChildren);
+        setNumItems(node, minChildren - 1);
+
+        int parentItems = numItems(parentNode);
+        copyChildren(parentNode, i + 1, parentNode, i + 2, parentItems - i);
+        setChild(parentNode, i + 1, newNode);
+        copyItems(parentNode, i, parentNode, i + 1, parentItems - i);
+        setItem(parentNode, i, item(node, minChildren - 1));
+        setNumItems(parentNode, parentItems + 1);
+    }
+
+    /**
+     * Deletes one occurrence of an item from the tree, if present.
+     * <br>
+     * Like {@link LongBTree#delete}, nodes on the way down are topped up to minChildren items
+     * so the deletion is done in one downward pass. Slots of merged nodes go back to the arena's free list.
+     * @param item the item to delete
+     * @return whether an item was deleted
+     */
+    public boolean delete(long item) {
+        boolean deleted = false;
+        int node = root;
+        while (true) {
+            int i = lowerBound(node, item);
+            int numItems = numItems(node);
+            if (i < numItems && item(node, i) == item) {
+                if (isLeaf(node)) {
+                    copyItems(node, i + 1, node, i, numItems - i - 1);
+                    setNumItems(node, numItems - 1);
+                    deleted = true;
+                    break;
+                }
+                int leftChildNode = child(node, i);
+                int rightChildNode = child(node, i + 1);
+                if (numItems(leftChildNode) >= minChildren) {
+                    // Replace with the predecessor, then delete the predecessor from the left subtree
+                    long predecessor = max(leftChildNode);
+                    setItem(node, i, predecessor);
+                    item = predecessor;
+                    node = leftChildNode;
+                } else if (numItems(rightChildNode) >= minChildren) {
+                    // Replace with the successor, then delete the successor from the right subtree
+                    long successor = min(rightChildNode);
+                    setItem(node, i, successor);
+                    item = successor;
+                    node = rightChildNode;
+                } else {
+                    // Both children are minimal: merge them around the item and keep deleting in the merged node
+                    mergeChildNodes(node, i);
+                    node = leftChildNode;
+                }
+            } else {
+                if (isLeaf(node)) break;
+                int childNode = child(node, i);
+                if (numItems(childNode) == minChildren - 1) {
+                    int leftChildSibling = i > 0 ? child(node, i - 1) : NodeArena.NIL;
+                    int rightChildSibling = i < numItems ? child(node, i + 1) : NodeArena.NIL;
+                    if (leftChildSibling != NodeArena.NIL && numItems(leftChildSibling) >= minChildren) {
+                        borrowFromLeft(node, i);
+                    } else if (rightChildSibling != NodeArena.NIL && numItems(rightChildSibling) >= minChildren) {
+                        borrowFromRight(node, i);
+                    } else if (rightChildSibling != NodeArena.NIL) {
+                        mergeChildNodes(node, i);
+                    } else {
+                        mergeChildNodes(node, i - 1);
+                        childNode = leftChildSibling;
+                    }
+                }
+                node = childNode;
+            }
+        }
+        if (numItems(root) == 0 && !isLeaf(root)) {
+            int oldRoot = root;
+            root = child(root, 0);
+            arena.release(oldRoot);
+        }
+        if (deleted) size--;
+        return deleted;
+    }
+
+    private long max(int node) {
+        while (!isLeaf(node)) node = child(node, numItems(node));
+        return item(node, numItems(node) - 1);
+    }
+
+    private long min(int node) {
+        while (!isLeaf(node)) node = child(node, 0);
+        return item(node, 0);
+    }
+
+    /**
+     * Moves the separator at index i - 1 down into child i, and the last item of child i - 1 up to replace it
+     */
+    private void borrowFromLeft(int node, int i) {
+        int childNode = child(node, i);
+        int sibling = child(node, i - 1);
+        int childItems = numItems(childNode);
+        int siblingItems = numItems(sibling);
+        copyItems(childNode, 0, childNode, 1, childItems);
+        setItem(childNode, 0, item(node, i - 1));
+        if (!isLeaf(childNode)) {
+            copyChildren(childNode, 0, childNode, 1, childItems + 1);
+            setChild(childNode, 0, child(sibling, siblingItems));
+        }
+        setNumItems(childNode, childItems + 1);
+        setItem(node, i - 1, item(sibling, siblingItems - 1));
+        setNumItems(sibling, siblingItems - 1);
+    }
+
+    /**
+     * Moves the separator at index i down into child i, and the first item of child i + 1 up to replace it
+     */
+    private void borrowFromRight(int node, int i) {
+        int childNode = child(node, i);
+        int sibling = child(node, i + 1);
+        int childItems = numItems(childNode);
+        int siblingItems = numItems(sibling);
+        setItem(childNode, childItems, item(node, i));
+        if (!isLeaf(childNode)) setChild(childNode, childItems + 1, child(sibling, 0));
+        setNumItems(childNode, childItems + 1);
+        setItem(node, i, item(sibling, 0));
+        copyItems(sibling, 1, sibling, 0, siblingItems - 1);
+        if (!isLeaf(sibling)) copyChildren(sibling, 1, sibling, 0, siblingItems);
+        setNumItems(sibling, siblingItems - 1);
+    }
+
+    /**
+     * Merges child i + 1 and the separator at index i into child i, releasing the slot of child i + 1
+     */
+    private void mergeChildNodes(int node, int i) {
+        int target = child(node, i);
+        int source = child(node, i + 1);
+        int targetItems = numItems(target);
+        int sourceItems = numItems(source);
+        setItem(target, targetItems, item(node, i));
+        copyItems(source, 0, target, targetItems + 1, sourceItems);
+        if (!isLeaf(target)) copyChildren(source, 0, target, targetItems + 1, sourceItems + 1);
+        setNumItems(target, targetItems + sourceItems + 1);
+
+        int numItems = numItems(node);
+        copyItems(node, i + 1, node, i, numItems - i - 1);
+        copyChildren(node, i + 2, node, i + 1, numItems - i - 1);
+        setNumItems(node, numItems - 1);
+        arena.release(source);
+    }
+
+    /**
+     * Searches for an item in the whole tree
+     * @param item the item
+     * @return whether the item is in the tree
+     */
+    public boolean search(long item) {
+        int node = root;
+        while (true) {
+            int i = lowerBound(node, item);
+            if (i < numItems(node) && item(node, i) == item) return true;
+            if (isLeaf(node)) return false;
+            node = child(node, i);
+        }
+    }
+
+    /**
+     * @return all items of the tree in ascending order
+     * @throws IllegalStateException if the tree has more items than fit in an array
+     */
+    public long[] getItems() {
+        if (size > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many items for an array: " + size);
+        long[] array = new long[(int) size];
+        if (size > 0) getItems(root, array, 0);
+        return array;
+    }
+
+    // Inorder walk over the tree, returns the next free index of the array.
+    private int getItems(int node, long[] array, int index) {
+        int numItems = numItems(node);
+        if (isLeaf(node)) {
+            for (int i = 0; i < numItems; i++) array[index++] = item(node, i);
+            return index;
+        }
+        for (int i = 0; i < numItems; i++) {
+            index = getItems(child(node, i), array, index);
+            array[index++] = item(node, i);
+        }
+        return getItems(child(node, numItems), array, index);
+    }
+
+    /**
+     * Removes all items, keeping the arena's memory for reuse
+     */
+    public void clear() {
+        arena.clear();
+        size = 0;
+        root = newNode(true);
+    }
+
+    public void validate() throws Exception {
+        long[] array = getItems();
+        for (int i = 0; i < array.length - 1; i++) {
+            if (array[i] > array[i + 1]) {
+                throw new Exception("B-Tree invalid: " + array[i] + " greater than " + array[i + 1]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(50);
+        print(root, buffer, "", "");
+        return buffer.toString();
+    }
+
+    private void print(int node, StringBuilder buffer, String prefix, String childrenPrefix) {
+        int numItems = numItems(node);
+        long[] items = new long[numItems];
+        for (int i = 0; i < numItems; i++) items[i] = item(node, i);
+        buffer.append(prefix);
+        buffer.append(Arrays.toString(items));
+        buffer.append('\n');
+        if (isLeaf(node)) return;
+        for (int i = 0; i <= numItems; i++) {
+            if (i != numItems) {
+                print(child(node, i), buffer, childrenPrefix + "+--- ", childrenPrefix + "|   ");
+            } else {
+                print(child(node, i), buffer, childrenPrefix + "L___ ", childrenPrefix + "    ");
+            }
+        }
+    }
+}
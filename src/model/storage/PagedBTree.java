@@ -0,0 +1,635 @@
+package model.storage;
+
+import model.LongBTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Implementation of a B Tree for long keys stored in a file
+ * <br>
+ * Every node is a fixed-size page of the file, and child pointers are page ids. Pages are read and written through a
+ * {@link BufferPool}, so the tree can be far larger than the heap, and a working set that fits in the pool is served
+ * from memory. Reopening the file gives back the tree as it was when it was last closed or flushed.
+ * <br>
+ * Offers the same add/delete/search/getItems operations as {@link LongBTree}, with the same algorithms,
+ * and allows duplicate keys. Pages of merged nodes are kept on a free list and reused.
+ * <br>
+ * File layout, all pages the same size:
+ * <pre>
+ * page 0:  | magic (long) | pageSize (int) | minChildren (int) | root (int) | freeHead (int) | size (long) |
+ * page n:  | numItems (int) | isLeaf (int) | items (long x maxChildren - 1) | neighbours (int page x maxChildren) |
+ * </pre>
+ * <em>Changes are only durable once {@link #flush()} or {@link #close()} returns, and a crash in between can leave
+ * the file inconsistent.</em>
+ */
+public class PagedBTree implements Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final long MAGIC = 0x4254524545504731L;
+    private static final int META_PAGE = 0;
+    private static final int NO_PAGE = -1;
+
+    private static final int NUM_ITEMS = 0;
+    private static final int IS_LEAF = 4;
+    private static final int ITEMS = 8;
+
+    /**
+     * The minimum number of children a node in the tree should have
+     */
+    private final int minChildren;
+
+    private final int maxItems;
+
+    /**
+     * Offset of the neighbours within a page
+     */
+    private final int neighboursOffset;
+
+    private final BufferPool pool;
+
+    /**
+     * The page of the root node
+     */
+    private int root;
+
+    /**
+     * The first page of the free list, or NO_PAGE
+     */
+    private int freeHead = NO_PAGE;
+
+    /**
+     * The number of keys in the tree
+     */
+    private long size;
+
+    /**
+     * Opens the tree in a file, or creates it with the largest nodes that fit in a page
+     * @param file the file
+     * @param pageSize the size of a page in bytes, used when creating the file
+     * @param poolPages the number of pages the buffer pool holds, at least 4
+     * @throws IOException if the file can not be opened or is not a tree with this page size
+     */
+    public PagedBTree(Path file, int pageSize, int poolPages) throws IOException {
+        this(file, pageSize, poolPages, maxMinChildren(pageSize));
+    }
+
+    /**
+     * Opens the tree in a file, or creates it
+     * @param file the file
+     * @param pageSize the size of a page in bytes, used when creating the file
+     * @param poolPages the number of pages the buffer pool holds, at least 4
+     * @param minChildren the minimum number of children of a node, used when creating the file
+     * @throws IOException if the file can not be opened or is not a tree with this page size
+     */
+    public PagedBTree(Path file, int pageSize, int poolPages, int minChildren) throws IOException {
+        // Deletes pin up to 4 pages at once: a node, its child and both siblings of the child
+        if (poolPages < 4) throw new IllegalArgumentException("The buffer pool needs at least 4 pages: " + poolPages);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            pool = new BufferPool(channel, pageSize, poolPages);
+            if (pool.getNumPages() == 0) {
+                if (minChildren < 2 || minChildren > maxMinChildren(pageSize))
+                    throw new IllegalArgumentException("minChildren must be between 2 and " + maxMinChildren(pageSize) + ": " + minChildren);
+                this.minChildren = minChildren;
+                pool.allocatePage();
+                pool.unpin(META_PAGE, true);
+                root = newNode(true);
+                pool.unpin(root, true);
+                writeMeta();
+            } else {
+                ByteBuffer meta = pool.pin(META_PAGE);
+                if (meta.getLong(0) != MAGIC) throw new IOException(file + " is not a paged B-Tree");
+                if (meta.getInt(8) != pageSize) throw new IOException(file + " has page size " + meta.getInt(8) + ", not " + pageSize);
+                this.minChildren = meta.getInt(12);
+                root = meta.getInt(16);
+                freeHead = meta.getInt(20);
+                size = meta.getLong(24);
+                pool.unpin(META_PAGE, false);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.maxItems = 2 * this.minChildren - 1;
+        this.neighboursOffset = ITEMS + 8 * maxItems;
+    }
+
+    /**
+     * @param pageSize the size of a page in bytes
+     * @return the largest minimum number of children whose nodes fit in a page
+     */
+    public static int maxMinChildren(int pageSize) {
+        // 8 header bytes + 8 per item + 4 per child: 8 + 8 * (2m - 1) + 4 * 2m = 24m
+        return pageSize / 24;
+    }
+
+    private void writeMeta() {
+        ByteBuffer meta = pool.pin(META_PAGE);
+        meta.putLong(0, MAGIC);
+        meta.putInt(8, pool.getPageSize());
+        meta.putInt(12, minChildren);
+        meta.putInt(16, root);
+        meta.putInt(20, freeHead);
+        meta.putLong(24, size);
+        pool.unpin(META_PAGE, true);
+    }
+
+    /**
+     * Writes all changes to the file and forces them to the storage device
+     */
+    public void flush() {
+        writeMeta();
+        pool.flush(true);
+    }
+
+    /**
+     * Flushes the tree and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        writeMeta();
+        pool.close();
+    }
+
+    public int getMinChildren() { return minChildren; }
+
+    /**
+     * @return the number of keys in the tree
+     */
+    public long size() { return size; }
+
+    /**
+     * @return the buffer pool, for its metrics
+     */
+    public BufferPool getBufferPool() { return pool; }
+
+    public int getHeight() {
+        int height = 0;
+        int node = root;
+        ByteBuffer page = pool.pin(node);
+        while (!isLeaf(page)) {
+            int child = child(page, 0);
+            pool.unpin(node, false);
+            node = child;
+            page = pool.pin(node);
+            height++;
+        }
+        pool.unpin(node, false);
+        return height;
+    }
+
+    // Page accessors
+
+    /**
+     * Allocates a node, reusing a page of the free list if possible. The page is left pinned.
+     */
+    private int newNode(boolean isLeaf) {
+        int node;
+        ByteBuffer page;
+        if (freeHead != NO_PAGE) {
+            node = freeHead;
+            page = pool.pin(node);
+            freeHead = page.getInt(0);
+        } else {
+            node = pool.allocatePage();
+            page = pool.pinned(node);
+        }
+        page.putInt(NUM_ITEMS, 0);
+        page.putInt(IS_LEAF, isLeaf ? 1 : 0);
+        return node;
+    }
+
+    /**
+     * Adds the page of a pinned node to the free list and unpins it
+     */
+    private void freeNode(int node, ByteBuffer page) {
+        page.putInt(0, freeHead);
+        freeHead = node;
+        pool.unpin(node, true);
+    }
+
+    private static int numItems(ByteBuffer page) { return page.getInt(NUM_ITEMS); }
+
+    private static void setNumItems(ByteBuffer page, int numItems) { page.putInt(NUM_ITEMS, numItems); }
+
+    private static boolean isLeaf(ByteBuffer page) { return page.getInt(IS_LEAF) != 0; }
+
+    private static long item(ByteBuffer page, int i) { return page.getLong(ITEMS + 8 * i); }
+
+    private static void setItem(ByteBuffer page, int i, long item) { page.putLong(ITEMS + 8 * i, item); }
+
+    private int child(ByteBuffer page, int i) { return page.getInt(neighboursOffset + 4 * i); }
+
+    private void setChild(ByteBuffer page, int i, int child) { page.putInt(neighboursOffset + 4 * i, child); }
+
+    /**
+     * Copies count items between (possibly the same) pages, in the direction that is safe for overlapping ranges
+     */
+    private static void copyItems(ByteBuffer from, int fromIndex, ByteBuffer to, int toIndex, int count) {
+        if (from == to && fromIndex < toIndex) {
+            for (int k = count - 1; k >= 0; k--) setItem(to, toIndex + k, item(from, fromIndex + k));
+        } else {
+            for (int k = 0; k < count; k++) setItem(to, toIndex + k, item(from, fromIndex + k));
+        }
+    }
+
+    /**
+     * Copies count child pointers between (possibly the same) pages, like copyItems
+     */
+    private void copyChildren(ByteBuffer from, int fromIndex, ByteBuffer to, int toIndex, int count) {
+        if (from == to && fromIndex < toIndex) {
+            for (int k = count - 1; k >= 0; k--) setChild(to, toIndex + k, child(from, fromIndex + k));
+        } else {
+            for (int k = 0; k < count; k++) setChild(to, toIndex + k, child(from, fromIndex + k));
+        }
+    }
+
+    private static int lowerBound(ByteBuffer page, long item) {
+        int low = 0;
+        int high = numItems(page);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (item(page, middle) < item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int upperBound(ByteBuffer page, long item) {
+        int low = 0;
+        int high = numItems(page);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (item(page, middle) <= item) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Operations
+
+    public void add(long item) {
+        int node = root;
+        ByteBuffer page = pool.pin(node);
+        boolean dirty = false;
+        if (numItems(page) == maxItems) {
+            int newRootNode = newNode(false);
+            ByteBuffer newRootPage = pool.pinned(newRootNode);
+            setChild(newRootPage, 0, node);
+            splitChildNode(newRootPage, 0, node, page);
+            pool.unpin(node, true);
+            root = newRootNode;
+            node = newRootNode;
+            page = newRootPage;
+            dirty = true;
+        }
+        // Descend iteratively, splitting full children before entering them. Only the parent and child are pinned.
+        while (!isLeaf(page)) {
+            int i = upperBound(page, item);
+            int child = child(page, i);
+            ByteBuffer childPage = pool.pin(child);
+            boolean childDirty = false;
+            if (numItems(childPage) == maxItems) {
+                splitChildNode(page, i, child, childPage);
+                dirty = true;
+                childDirty = true;
+                if (item >= item(page, i)) {
+                    pool.unpin(child, true);
+                    child = child(page, i + 1);
+                    childPage = pool.pin(child);
+                }
+            }
+            pool.unpin(node, dirty);
+            node = child;
+            page = childPage;
+            dirty = childDirty;
+        }
+        int i = upperBound(page, item);
+        int numItems = numItems(page);
+        copyItems(page, i, page, i + 1, numItems - i);
+        setItem(page, i, item);
+        setNumItems(page, numItems + 1);
+        pool.unpin(node, true);
+        size++;
+    }
+
+    /**
+     * Splits the full, pinned child node at index i of the pinned parent page,
+     * moving its median item up into the parent. The new right node is unpinned, the caller unpins the others.
+     */
+    private void splitChildNode(ByteBuffer parentPage, int i, int node, ByteBuffer page) {
+        boolean leaf = isLeaf(page);
+        int newNode = newNode(leaf);
+        ByteBuffer newPage = pool.pinned(newNode);
+        setNumItems(newPage, minChildren - 1);
+        copyItems(page, minChildren, newPage, 0, minChildren - 1);
+        if (!leaf) copyChildren(page, minChildren, newPage, 0, minChildren);
+        setNumItems(page, minChildren - 1);
+
+        int parentItems = numItems(parentPage);
+        copyChildren(parentPage, i + 1, parentPage, i + 2, parentItems - i);
+        setChild(parentPage, i + 1, newNode);
+        copyItems(parentPage, i, parentPage, i + 1, parentItems - i);
+        setItem(parentPage, i, item(page, minChildren - 1));
+        setNumItems(parentPage, parentItems + 1);
+        pool.unpin(newNode, true);
+    }
+
+    /**
+     * Deletes one occurrence of an item from the tree, if present.
+     * <br>
+     * Like {@link LongBTree#delete}, nodes on the way down are topped up to minChildren items
+     * so the deletion is done in one downward pass, with at most four pages pinned.
+     * @param item the item to delete
+     * @return whether an item was deleted
+     */
+    public boolean delete(long item) {
+        boolean deleted = false;
+        int node = root;
+        ByteBuffer page = pool.pin(node);
+        boolean dirty = false;
+        while (true) {
+            int i = lowerBound(page, item);
+            int numItems = numItems(page);
+            if (i < numItems && item(page, i) == item) {
+                if (isLeaf(page)) {
+                    copyItems(page, i + 1, page, i, numItems - i - 1);
+                    setNumItems(page, numItems - 1);
+                    dirty = true;
+                    deleted = true;
+                    break;
+                }
+                int leftChildNode = child(page, i);
+                int rightChildNode = child(page, i + 1);
+                ByteBuffer leftPage = pool.pin(leftChildNode);
+                if (numItems(leftPage) >= minChildren) {
+                    // Replace with the predecessor, then delete the predecessor from the left subtree
+                    long predecessor = max(leftPage);
+                    setItem(page, i, predecessor);
+                    item = predecessor;
+                    pool.unpin(node, true);
+                    node = leftChildNode;
+                    page = leftPage;
+                    dirty = false;
+                    continue;
+                }
+                ByteBuffer rightPage = pool.pin(rightChildNode);
+                if (numItems(rightPage) >= minChildren) {
+                    // Replace with the successor, then delete the successor from the right subtree
+                    long successor = min(rightPage);
+                    setItem(page, i, successor);
+                    item = successor;
+                    pool.unpin(leftChildNode, false);
+                    pool.unpin(node, true);
+                    node = rightChildNode;
+                    page = rightPage;
+                } else {
+                    // Both children are minimal: merge them around the item and keep deleting in the merged node
+                    mergeChildNodes(page, i, leftPage, rightChildNode, rightPage);
+                    pool.unpin(node, true);
+                    node = leftChildNode;
+                    page = leftPage;
+                    dirty = true;
+                    continue;
+                }
+                dirty = false;
+            } else {
+                if (isLeaf(page)) break;
+                int childNode = child(page, i);
+                ByteBuffer childPage = pool.pin(childNode);
+                boolean childDirty = false;
+                if (numItems(childPage) == minChildren - 1) {
+                    childDirty = true;
+                    dirty = true;
+                    int leftChildSibling = i > 0 ? child(page, i - 1) : NO_PAGE;
+                    int rightChildSibling = i < numItems ? child(page, i + 1) : NO_PAGE;
+                    ByteBuffer leftPage = leftChildSibling != NO_PAGE ? pool.pin(leftChildSibling) : null;
+                    if (leftPage != null && numItems(leftPage) >= minChildren) {
+                        borrowFromLeft(page, i, childPage, leftPage);
+                        pool.unpin(leftChildSibling, true);
+                    } else {
+                        ByteBuffer rightPage = rightChildSibling != NO_PAGE ? pool.pin(rightChildSibling) : null;
+                        if (rightPage != null && numItems(rightPage) >= minChildren) {
+                            borrowFromRight(page, i, childPage, rightPage);
+                            pool.unpin(rightChildSibling, true);
+                        } else if (rightPage != null) {
+                            mergeChildNodes(page, i, childPage, rightChildSibling, rightPage);
+                        } else {
+                            mergeChildNodes(page, i - 1, leftPage, childNode, childPage);
+                            childNode = leftChildSibling;
+                            childPage = leftPage;
+                            leftPage = null;
+                        }
+                        if (leftPage != null) pool.unpin(leftChildSibling, false);
+                    }
+                }
+                pool.unpin(node, dirty);
+                node = childNode;
+                page = childPage;
+                dirty = childDirty;
+            }
+        }
+        pool.unpin(node, dirty);
+
+        ByteBuffer rootPage = pool.pin(root);
+        if (numItems(rootPage) == 0 && !isLeaf(rootPage)) {
+            int oldRoot = root;
+            root = child(rootPage, 0);
+            freeNode(oldRoot, rootPage);
+        } else {
+            pool.unpin(root, false);
+        }
+        if (deleted) size--;
+        return deleted;
+    }
+
+    /**
+     * @return the largest item in the subtree of a pinned page, pinning one more page at a time on the way down
+     */
+    private long max(ByteBuffer page) {
+        if (isLeaf(page)) return item(page, numItems(page) - 1);
+        int node = child(page, numItems(page));
+        page = pool.pin(node);
+        while (!isLeaf(page)) {
+            int child = child(page, numItems(page));
+            pool.unpin(node, false);
+            node = child;
+            page = pool.pin(node);
+        }
+        long max = item(page, numItems(page) - 1);
+        pool.unpin(node, false);
+        return max;
+    }
+
+    /**
+     * @return the smallest item in the subtree of a pinned page, pinning one more page at a time on the way down
+     */
+    private long min(ByteBuffer page) {
+        if (isLeaf(page)) return item(page, 0);
+        int node = child(page, 0);
+        page = pool.pin(node);
+        while (!isLeaf(page)) {
+            int child = child(page, 0);
+            pool.unpin(node, false);
+            node = child;
+            page = pool.pin(node);
+        }
+        long min = item(page, 0);
+        pool.unpin(node, false);
+        return min;
+    }
+
+    /**
+     * Moves the separator at index i - 1 down into child i, and the last item of child i - 1 up to replace it
+     */
+    private void borrowFromLeft(ByteBuffer page, int i, ByteBuffer childPage, ByteBuffer sibling) {
+        int childItems = numItems(childPage);
+        int siblingItems = numItems(sibling);
+        copyItems(childPage, 0, childPage, 1, childItems);
+        setItem(childPage, 0, item(page, i - 1));
+        if (!isLeaf(childPage)) {
+            copyChildren(childPage, 0, childPage, 1, childItems + 1);
+            setChild(childPage, 0, child(sibling, siblingItems));
+        }
+        setNumItems(childPage, childItems + 1);
+        setItem(page, i - 1, item(sibling, siblingItems - 1));
+        setNumItems(sibling, siblingItems - 1);
+    }
+
+    /**
+     * Moves the separator at index i down into child i, and the first item of child i + 1 up to replace it
+     */
+    private void borrowFromRight(ByteBuffer page, int i, ByteBuffer childPage, ByteBuffer sibling) {
+        int childItems = numItems(childPage);
+        int siblingItems = numItems(sibling);
+        setItem(childPage, childItems, item(page, i));
+        if (!isLeaf(childPage)) setChild(childPage, childItems + 1, child(sibling, 0));
+        setNumItems(childPage, childItems + 1);
+        setItem(page, i, item(sibling, 0));
+        copyItems(sibling, 1, sibling, 0, siblingItems - 1);
+        if (!isLeaf(sibling)) copyChildren(sibling, 1, sibling, 0, siblingItems);
+        setNumItems(sibling, siblingItems - 1);
+    }
+
+    /**
+     * Merges child i + 1 (source) and the separator at index i into child i (target), then frees and unpins source
+     */
+    private void mergeChildNodes(ByteBuffer page, int i, ByteBuffer target, int source, ByteBuffer sourcePage) {
+        int targetItems = numItems(target);
+        int sourceItems = numItems(sourcePage);
+        setItem(target, targetItems, item(page, i));
+        copyItems(sourcePage, 0, target, targetItems + 1, sourceItems);
+        if (!isLeaf(target)) copyChildren(sourcePage, 0, target, targetItems + 1, sourceItems + 1);
+        setNumItems(target, targetItems + sourceItems + 1);
+
+        int numItems = numItems(page);
+        copyItems(page, i + 1, page, i, numItems - i - 1);
+        copyChildren(page, i + 2, page, i + 1, numItems - i - 1);
+        setNumItems(page, numItems - 1);
+        freeNode(source, sourcePage);
+    }
+
+    /**
+     * Searches for an item in the whole tree
+     * @param item the item
+     * @return whether the item is in the tree
+     */
+    public boolean search(long item) {
+        int node = root;
+        ByteBuffer page = pool.pin(node);
+        while (true) {
+            int i = lowerBound(page, item);
+            if (i < numItems(page) && item(page, i) == item) {
+                pool.unpin(node, false);
+                return true;
+            }
+            if (isLeaf(page)) {
+                pool.unpin(node, false);
+                return false;
+            }
+            int child = child(page, i);
+            pool.unpin(node, false);
+            node = child;
+            page = pool.pin(node);
+        }
+    }
+
+    /**
+     * @return all items of the tree in ascending order
+     * @throws IllegalStateException if the tree has more items than fit in an array
+     */
+    public long[] getItems() {
+        if (size > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many items for an array: " + size);
+        long[] array = new long[(int) size];
+        getItems(root, array, 0);
+        return array;
+    }
+
+    // Inorder walk over the tree, returns the next free index of the array.
+    // Internal pages are copied out and unpinned before descending, so only one page is pinned at a time.
+    private int getItems(int node, long[] array, int index) {
+        ByteBuffer page = pool.pin(node);
+        int numItems = numItems(page);
+        if (isLeaf(page)) {
+            for (int i = 0; i < numItems; i++) array[index++] = item(page, i);
+            pool.unpin(node, false);
+            return index;
+        }
+        long[] items = new long[numItems];
+        int[] children = new int[numItems + 1];
+        for (int i = 0; i < numItems; i++) items[i] = item(page, i);
+        for (int i = 0; i <= numItems; i++) children[i] = child(page, i);
+        pool.unpin(node, false);
+        for (int i = 0; i < numItems; i++) {
+            index = getItems(children[i], array, index);
+            array[index++] = items[i];
+        }
+        return getItems(children[numItems], array, index);
+    }
+
+    public void validate() throws Exception {
+        long[] array = getItems();
+        for (int i = 0; i < array.length - 1; i++) {
+            if (array[i] > array[i + 1]) {
+                throw new Exception("B-Tree invalid: " + array[i] + " greater than " + array[i + 1]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(50);
+        print(root, buffer, "", "");
+        return buffer.toString();
+    }
+
+    private void print(int node, StringBuilder buffer, String prefix, String childrenPrefix) {
+        ByteBuffer page = pool.pin(node);
+        int numItems = numItems(page);
+        long[] items = new long[numItems];
+        int[] children = new int[numItems + 1];
+        for (int i = 0; i < numItems; i++) items[i] = item(page, i);
+        boolean leaf = isLeaf(page);
+        if (!leaf) for (int i = 0; i <= numItems; i++) children[i] = child(page, i);
+        pool.unpin(node, false);
+
+        buffer.append(prefix);
+        buffer.append(Arrays.toString(items));
+        buffer.append('\n');
+        if (leaf) return;
+        for (int i = 0; i <= numItems; i++) {
+            if (i != numItems) {
+                print(children[i], buffer, childrenPrefix + "+--- ", childrenPrefix + "|   ");
+            } else {
+                print(children[i], buffer, childrenPrefix + "L___ ", childrenPrefix + "    ");
+            }
+        }
+    }
+}
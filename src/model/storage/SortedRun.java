@@ -0,0 +1,367 @@
+package model.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable sorted run of an {@link LSMTree}: a file of records in ascending order of their items, at most one
+ * per item, split into blocks of about {@link #BLOCK_SIZE} bytes.
+ * <br>
+ * The sparse index, the first item and offset of every block, is read into memory when the run is opened, so a point
+ * lookup reads one block and a scan reads the blocks in order. Blocks are small, as a lookup decodes its block one
+ * record at a time up to the item, which costs more than reading it. A run covers the memtables flushed with sequence
+ * numbers minSeq to maxSeq; a run with a higher maxSeq holds newer records.
+ * <br>
+ * File layout:
+ * <pre>
+ * blocks   | tombstone (byte) | item | ...            records, about BLOCK_SIZE bytes per block
+ * index    | numBlocks (int) | first item | offset (long) | ...
+ * trailer  | indexOffset (long) | count (long) | minSeq (long) | maxSeq (long) | magic (int) |
+ * </pre>
+ * A run is written to a temporary file, forced and then renamed, so a crash never leaves part of a run behind.
+ * @param <T> the type of the items
+ */
+final class SortedRun<T extends Comparable<? super T>> {
+
+    static final int BLOCK_SIZE = 1024;
+
+    static final String PREFIX = "run-";
+    static final String SUFFIX = ".sst";
+    static final String TMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4c534d52;
+    private static final int TRAILER_BYTES = 36;
+
+    /**
+     * An item, or a tombstone that deletes the items equal to it in older runs and memtables.
+     * <br>
+     * Records of equal items are ordered newest first by version, which counts the writes to the tree, so a memtable
+     * can take every write as a plain add and still find the newest. Records in runs do not need it and have 0.
+     */
+    static final class Record<T extends Comparable<? super T>> implements Comparable<Record<T>> {
+        final T item;
+        final boolean tombstone;
+        final long version;
+
+        Record(T item, boolean tombstone, long version) {
+            this.item = item;
+            this.tombstone = tombstone;
+            this.version = version;
+        }
+
+        Record(T item, boolean tombstone) {
+            this(item, tombstone, 0);
+        }
+
+        @Override
+        public int compareTo(Record<T> other) {
+            int compared = item.compareTo(other.item);
+            return compared != 0 ? compared : Long.compare(other.version, version);
+        }
+
+        @Override
+        public String toString() {
+            return tombstone ? "-" + item : item.toString();
+        }
+    }
+
+    final Path path;
+    final long minSeq;
+    final long maxSeq;
+    final long count;
+
+    /**
+     * The size of the file
+     */
+    final long bytes;
+
+    private final Codec<T> codec;
+    private final FileChannel channel;
+
+    /**
+     * The first item of every block
+     */
+    private final T[] firstItems;
+
+    /**
+     * The offset of every block, followed by the offset of the index where the last block ends
+     */
+    private final long[] offsets;
+
+    /**
+     * One for the tree while the run is current, and one per reader using it. The file is deleted once the run is
+     * no longer current and the last reader is done.
+     */
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private SortedRun(Path path, Codec<T> codec, FileChannel channel, long minSeq, long maxSeq, long count, long bytes,
+                      T[] firstItems, long[] offsets) {
+        this.path = path;
+        this.codec = codec;
+        this.channel = channel;
+        this.minSeq = minSeq;
+        this.maxSeq = maxSeq;
+        this.count = count;
+        this.bytes = bytes;
+        this.firstItems = firstItems;
+        this.offsets = offsets;
+    }
+
+    static Path path(Path directory, long minSeq, long maxSeq) {
+        return directory.resolve(String.format("%s%020d-%020d%s", PREFIX, minSeq, maxSeq, SUFFIX));
+    }
+
+    /**
+     * Opens a run, reading its index
+     * @param path the file of the run
+     * @param codec converts items to bytes
+     * @return the run
+     * @throws IOException if the file can not be read or is not a run
+     */
+    static <T extends Comparable<? super T>> SortedRun<T> open(Path path, Codec<T> codec) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) throw new IOException("Not a sorted run: " + path);
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            long count = trailer.getLong();
+            long minSeq = trailer.getLong();
+            long maxSeq = trailer.getLong();
+            if (trailer.getInt() != MAGIC || indexOffset < 0 || indexOffset > size - TRAILER_BYTES)
+                throw new IOException("Not a sorted run: " + path);
+
+            DataInputStream in = stream(read(channel, indexOffset, (int) (size - TRAILER_BYTES - indexOffset)));
+            int numBlocks = in.readInt();
+            T[] firstItems = (T[]) new Comparable[numBlocks];
+            long[] offsets = new long[numBlocks + 1];
+            for (int i = 0; i < numBlocks; i++) {
+                firstItems[i] = codec.read(in);
+                offsets[i] = in.readLong();
+            }
+            offsets[numBlocks] = indexOffset;
+            return new SortedRun<>(path, codec, channel, minSeq, maxSeq, count, size, firstItems, offsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes records to a new run
+     * @param directory the directory of the run
+     * @param records the records in ascending order, of which only the first per item is written
+     * @param dropTombstones whether tombstones are left out, when no older records remain for them to delete
+     * @param minSeq the sequence number of the oldest memtable the records come from
+     * @param maxSeq the sequence number of the newest memtable the records come from
+     * @param codec converts items to bytes
+     * @return the run, or null if no records were written
+     * @throws IOException if the file can not be written
+     */
+    static <T extends Comparable<? super T>> SortedRun<T> write(Path directory, Iterator<Record<T>> records, boolean dropTombstones,
+                                                               long minSeq, long maxSeq, Codec<T> codec) throws IOException {
+        Path path = path(directory, minSeq, maxSeq);
+        Path tmp = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            ByteArrayOutputStream block = new ByteArrayOutputStream(2 * BLOCK_SIZE);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            ArrayList<T> firstItems = new ArrayList<>();
+            ArrayList<Long> offsets = new ArrayList<>();
+            long offset = 0;
+            T last = null;
+            while (records.hasNext()) {
+                Record<T> record = records.next();
+                if (last != null && last.compareTo(record.item) == 0) continue;
+                last = record.item;
+                if (record.tombstone && dropTombstones) continue;
+                if (block.size() == 0) {
+                    firstItems.add(record.item);
+                    offsets.add(offset);
+                }
+                blockOut.writeBoolean(record.tombstone);
+                codec.write(record.item, blockOut);
+                count++;
+                if (block.size() >= BLOCK_SIZE) {
+                    offset += block.size();
+                    block.writeTo(out);
+                    block.reset();
+                }
+            }
+            // An empty run is not written, its file is deleted once the channel is closed
+            if (count > 0) {
+                offset += block.size();
+                block.writeTo(out);
+
+                out.writeInt(firstItems.size());
+                for (int i = 0; i < firstItems.size(); i++) {
+                    codec.write(firstItems.get(i), out);
+                    out.writeLong(offsets.get(i));
+                }
+                out.writeLong(offset);
+                out.writeLong(count);
+                out.writeLong(minSeq);
+                out.writeLong(maxSeq);
+                out.writeInt(MAGIC);
+                out.flush();
+                channel.force(true);
+            }
+        }
+        if (count == 0) {
+            Files.delete(tmp);
+            return null;
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.forceDirectory(directory);
+        return open(path, codec);
+    }
+
+    /**
+     * @param item an item
+     * @return the index of the only block that can hold the item, -1 if it is before the first block
+     */
+    int blockOf(T item) {
+        int lo = 0;
+        int hi = firstItems.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstItems[mid].compareTo(item) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Reads a block and looks for the record of an item in it
+     * @param block the block, see {@link #blockOf}
+     * @param item the item
+     * @return the record of the item, or null if the run has none
+     * @throws IOException if the file can not be read
+     */
+    Record<T> find(int block, T item) throws IOException {
+        DataInputStream in = readBlock(block);
+        while (in.available() > 0) {
+            boolean tombstone = in.readBoolean();
+            T found = codec.read(in);
+            int compared = found.compareTo(item);
+            if (compared == 0) return new Record<>(found, tombstone);
+            if (compared > 0) return null;
+        }
+        return null;
+    }
+
+    /**
+     * @return the records in ascending order, read one block at a time
+     */
+    Iterator<Record<T>> iterator() {
+        return new Iterator<Record<T>>() {
+            private int block = 0;
+            private DataInputStream in;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (in == null || in.available() == 0) {
+                        if (block == firstItems.length) return false;
+                        in = readBlock(block++);
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public Record<T> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                try {
+                    boolean tombstone = in.readBoolean();
+                    return new Record<>(codec.read(in), tombstone);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private DataInputStream readBlock(int block) throws IOException {
+        return stream(read(channel, offsets[block], (int) (offsets[block + 1] - offsets[block])));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Sorted run ends early");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static DataInputStream stream(ByteBuffer buffer) {
+        return new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), buffer.remaining()));
+    }
+
+    /**
+     * Counts the bytes a record takes in a block
+     * @param record the record
+     * @param codec converts items to bytes
+     * @return the number of bytes
+     */
+    static <T extends Comparable<? super T>> long encodedSize(Record<T> record, Codec<T> codec) throws IOException {
+        long[] size = {1};
+        codec.write(record.item, new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) { size[0]++; }
+            @Override
+            public void write(byte[] b, int off, int len) { size[0] += len; }
+        }));
+        return size[0];
+    }
+
+    void retain() {
+        refs.incrementAndGet();
+    }
+
+    /**
+     * Drops a reference to the run, deleting its file after the last one
+     */
+    void release() {
+        if (refs.decrementAndGet() > 0) return;
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // The file is no longer needed, and a leftover one is dropped when the directory is opened again
+        }
+    }
+
+    /**
+     * Closes the file without deleting it
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + " (" + count + " records, " + bytes + " bytes)";
+    }
+}
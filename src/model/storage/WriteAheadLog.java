@@ -0,0 +1,366 @@
+package model.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records with group commit.
+ * <br>
+ * {@link #append} only copies a record into memory and gives it the next log sequence number (LSN).
+ * A background thread writes the appended records to the current segment file and fsyncs it, and
+ * {@link #sync(long)} waits until a record is durable. All records appended while one fsync runs, or within the
+ * group commit window after the first of them, share the next fsync, so concurrent writers pay for one fsync together
+ * and no writer waits more than about one window plus two fsyncs.
+ * <br>
+ * The log is split into segment files named after their first LSN. {@link #rotate()} starts a new segment, so that
+ * older segments can be deleted once a checkpoint covers them.
+ * <br>
+ * Record layout:
+ * <pre>
+ * | length (int) | crc32 of the rest (int) | lsn (long) | type (byte) | payload (length - 9 bytes) |
+ * </pre>
+ * A crash can leave a torn record at the end of the last segment, which {@link #replay} detects by its length
+ * or checksum and cuts off.
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * Receives the records of the log during replay
+     */
+    public interface RecordHandler {
+        void accept(long lsn, byte type, DataInput payload) throws IOException;
+    }
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Flush early once this many bytes are waiting, instead of waiting for the window to pass
+     */
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final long groupCommitNanos;
+    private final Thread flusher;
+
+    private FileChannel channel;
+
+    /**
+     * Records appended but not yet handed to the flusher
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+
+    private long firstPendingNanos;
+    private long appendedLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    private long syncs;
+    private long records;
+    private long bytes;
+
+    /**
+     * Opens the log, starting a new segment.
+     * Any existing segments must have been replayed first, see {@link #replay}.
+     * @param directory the directory of the segment files
+     * @param lastLsn the LSN of the last record already in the log or a checkpoint, 0 if none
+     * @param groupCommitNanos how long to wait for more records before an fsync, 0 to fsync as soon as possible
+     * @throws IOException if the segment can not be created
+     */
+    public WriteAheadLog(Path directory, long lastLsn, long groupCommitNanos) throws IOException {
+        if (groupCommitNanos < 0) throw new IllegalArgumentException("Negative group commit window: " + groupCommitNanos);
+        this.directory = directory;
+        this.groupCommitNanos = groupCommitNanos;
+        this.appendedLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        Files.createDirectories(directory);
+        this.channel = openSegment(lastLsn + 1);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(directory, firstLsn),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Make the new file itself durable
+        forceDirectory(directory);
+        return segment;
+    }
+
+    private static Path segmentPath(Path directory, long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Appends a record. The record is durable once {@link #sync(long)} returns for its LSN.
+     * @param type the type of the record, meaning is up to the caller
+     * @param payload the contents of the record
+     * @return the LSN of the record
+     * @throws IOException if the log is closed or a write failed
+     */
+    public synchronized long append(byte type, byte[] payload) throws IOException {
+        if (closed) throw new IOException("Log is closed");
+        if (failure != null) throw new IOException("Log write failed", failure);
+        long lsn = ++appendedLsn;
+        crc.reset();
+        byte[] lsnBytes = ByteBuffer.allocate(8).putLong(lsn).array();
+        crc.update(lsnBytes);
+        crc.update(type);
+        crc.update(payload);
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(9 + payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(lsnBytes);
+        out.writeByte(type);
+        out.write(payload);
+        if (pending.size() == HEADER_BYTES + 9 + payload.length) {
+            firstPendingNanos = System.nanoTime();
+            notifyAll();
+        } else if (pending.size() >= MAX_BATCH_BYTES) {
+            notifyAll();
+        }
+        return lsn;
+    }
+
+    /**
+     * Waits until every record up to an LSN is durable
+     * @param lsn the LSN
+     * @throws IOException if writing the log failed
+     */
+    public synchronized void sync(long lsn) throws IOException {
+        boolean interrupted = false;
+        while (durableLsn < lsn) {
+            if (failure != null) throw new IOException("Log write failed", failure);
+            if (lsn > appendedLsn) throw new IllegalArgumentException("LSN " + lsn + " was never appended");
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long target;
+            FileChannel segment;
+            synchronized (this) {
+                try {
+                    while (pending.size() == 0 && !closed) wait();
+                    if (pending.size() == 0) return;
+                    // Group commit: gather more records until the window after the first one has passed
+                    long deadline = firstPendingNanos + groupCommitNanos;
+                    long remaining;
+                    while (!closed && pending.size() < MAX_BATCH_BYTES && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Only close interrupts the flusher, write what is pending first
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                target = appendedLsn;
+                segment = channel;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) segment.write(buffer);
+                segment.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                records += target - durableLsn;
+                bytes += batch.size();
+                syncs++;
+                durableLsn = target;
+                batch.reset();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable and starts a new segment for the following records.
+     * The caller must stop appending until this returns.
+     * @return the LSN of the last record in the older segments
+     * @throws IOException if writing the log or creating the segment failed
+     */
+    public long rotate() throws IOException {
+        long lsn;
+        synchronized (this) {
+            lsn = appendedLsn;
+        }
+        sync(lsn);
+        FileChannel old;
+        synchronized (this) {
+            if (appendedLsn != lsn) throw new IllegalStateException("Records were appended during rotate");
+            old = channel;
+            channel = openSegment(lsn + 1);
+        }
+        old.close();
+        return lsn;
+    }
+
+    /**
+     * Deletes the segments whose records all have an LSN up to a given one, e.g. because a checkpoint holds them.
+     * The current segment is never deleted.
+     * @param lsn the LSN
+     * @throws IOException if a segment can not be deleted
+     */
+    public void deleteSegmentsUpTo(long lsn) throws IOException {
+        ArrayList<Long> firstLsns = segments(directory);
+        for (int i = 0; i + 1 < firstLsns.size(); i++) {
+            long lastLsnOfSegment = firstLsns.get(i + 1) - 1;
+            if (lastLsnOfSegment <= lsn) Files.delete(segmentPath(directory, firstLsns.get(i)));
+        }
+    }
+
+    /**
+     * @param directory the directory of the log
+     * @return the first LSNs of all segments, in order
+     */
+    private static ArrayList<Long> segments(Path directory) throws IOException {
+        ArrayList<Long> firstLsns = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return firstLsns;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> firstLsns.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        firstLsns.sort(null);
+        return firstLsns;
+    }
+
+    /**
+     * Reads all records of the log in order. A torn record at the end of the last segment is cut off the file.
+     * @param directory the directory of the log
+     * @param afterLsn records up to this LSN are skipped, e.g. because a checkpoint holds them
+     * @param handler receives the records
+     * @return the LSN of the last record in the log, or afterLsn if it is greater
+     * @throws IOException if a segment can not be read, or a record before the last segment is damaged
+     */
+    public static long replay(Path directory, long afterLsn, RecordHandler handler) throws IOException {
+        long lastLsn = afterLsn;
+        ArrayList<Long> firstLsns = segments(directory);
+        for (int i = 0; i < firstLsns.size(); i++) {
+            Path path = segmentPath(directory, firstLsns.get(i));
+            byte[] contents = Files.readAllBytes(path);
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            CRC32 crc = new CRC32();
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                boolean valid = buffer.remaining() >= HEADER_BYTES + 9;
+                int length = 0;
+                if (valid) {
+                    length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    valid = length >= 9 && length <= buffer.remaining();
+                    if (valid) {
+                        crc.reset();
+                        crc.update(contents, buffer.position(), length);
+                        valid = (int) crc.getValue() == checksum;
+                    }
+                }
+                if (!valid) {
+                    if (i != firstLsns.size() - 1) throw new IOException("Damaged record in " + path + " at byte " + start);
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(start);
+                        channel.force(false);
+                    }
+                    break;
+                }
+                long lsn = buffer.getLong();
+                byte type = buffer.get();
+                int payloadStart = buffer.position();
+                buffer.position(payloadStart + length - 9);
+                if (lsn <= afterLsn) continue;
+                handler.accept(lsn, type, new DataInputStream(new ByteArrayInputStream(contents, payloadStart, length - 9)));
+                lastLsn = lsn;
+            }
+        }
+        return lastLsn;
+    }
+
+    static void forceDirectory(Path directory) {
+        // Not every platform can open a directory to force it, in which case its entries are only as durable as the OS makes them
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Ignored, see above
+        }
+    }
+
+    /**
+     * @return the LSN of the last appended record
+     */
+    public synchronized long getLastLsn() { return appendedLsn; }
+
+    /**
+     * @return the LSN of the last durable record
+     */
+    public synchronized long getDurableLsn() { return durableLsn; }
+
+    /**
+     * @return the number of fsyncs done
+     */
+    public synchronized long getSyncs() { return syncs; }
+
+    /**
+     * @return the number of records made durable
+     */
+    public synchronized long getRecords() { return records; }
+
+    /**
+     * @return the number of bytes made durable
+     */
+    public synchronized long getBytes() { return bytes; }
+
+    /**
+     * Makes all appended records durable and closes the log
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (this) {
+            if (failure != null) throw new IOException("Log write failed", failure);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package model.tests;
+
+import model.BEpsilonTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class BEpsilonTreeTester {
+
+    public static void main(String[] args) throws Exception {
+        int[][] shapes = {{2, 4}, {2, 7}, {3, 8}, {4, 16}, {8, 64}};
+        for (int[] shape : shapes) {
+            testAgainstSortedMap(shape[0], shape[1]);
+        }
+        testEqualItems();
+        System.out.println("All B-epsilon tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates, and deletes of missing items) to a B-epsilon tree
+     * and a reference multiset, checking searches against it while messages are still buffered
+     */
+    public static void testAgainstSortedMap(int minChildren, int nodeSize) throws Exception {
+        Random random = new Random(31L * minChildren + nodeSize);
+        BEpsilonTree<Integer> tree = new BEpsilonTree<>(minChildren, nodeSize);
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        int range = 2000;
+        for (int j = 0; j < 20; ++j) {
+            // Grow during the first half and shrink during the second
+            int adds = j < 10 ? 900 : 300;
+            int deletes = j < 10 ? 500 : 900;
+            for (int i = 0; i < adds + deletes; ++i) {
+                int key = random.nextInt(range);
+                if (random.nextInt(adds + deletes) < adds) {
+                    tree.add(key);
+                    counts.merge(key, 1, Integer::sum);
+                } else {
+                    tree.delete(key);
+                    counts.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+                }
+            }
+            check(tree, counts, range);
+        }
+        for (int key = 0; key < range; ++key) {
+            for (int count = counts.getOrDefault(key, 0); count > 0; --count) tree.delete(key);
+        }
+        counts.clear();
+        check(tree, counts, range);
+    }
+
+    /**
+     * Many equal items, more than fit in a leaf, which can never be split between leaves
+     */
+    public static void testEqualItems() throws Exception {
+        BEpsilonTree<Integer> tree = new BEpsilonTree<>(2, 8);
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < 100; ++i) {
+            int key = i % 10 == 0 ? i : 50;
+            tree.add(key);
+            counts.merge(key, 1, Integer::sum);
+        }
+        check(tree, counts, 100);
+        for (int i = 0; i < 99; ++i) {
+            tree.delete(50);
+            counts.computeIfPresent(50, (k, count) -> count == 1 ? null : count - 1);
+            if (i % 10 == 0) check(tree, counts, 100);
+        }
+        check(tree, counts, 100);
+    }
+
+    private static void check(BEpsilonTree<Integer> tree, TreeMap<Integer, Integer> counts, int range) throws Exception {
+        tree.validate();
+        List<Integer> expected = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            for (int i = 0; i < entry.getValue(); ++i) expected.add(entry.getKey());
+        }
+        List<Integer> items = tree.getItems();
+        if (!items.equals(expected)) throw new AssertionError("Expected " + expected + " got " + items);
+        for (int key = -1; key <= range; ++key) {
+            Integer found = tree.search(key);
+            if (counts.containsKey(key) ? found == null || found != key : found != null)
+                throw new AssertionError("search(" + key + ") returned " + found);
+        }
+    }
+}
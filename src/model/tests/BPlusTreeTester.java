@@ -0,0 +1,65 @@
+package model.tests;
+
+import model.BPlusTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BPlusTreeTester {
+    public static void main(String[] args) {
+        for (int minChildren = 2; minChildren <= 15; ++minChildren) {
+            testAgainstSortedList(minChildren);
+        }
+        System.out.println("All B+ Tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates) to a B+ tree and a sorted list,
+     * then compares their items and range scans in both directions
+     */
+    public static void testAgainstSortedList(int minChildren) {
+        BPlusTree<Integer> tree = new BPlusTree<>(minChildren);
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(minChildren);
+        for (int j = 0; j < 20; ++j) {
+            for (int i = 0; i < 400; ++i) {
+                int item = random.nextInt(1000);
+                tree.add(item);
+                int index = Collections.binarySearch(expected, item);
+                expected.add(index < 0 ? -index - 1 : index, item);
+            }
+            for (int i = 0; i < 350; ++i) {
+                Integer item = random.nextInt(1000);
+                if (tree.delete(item) != expected.remove(item))
+                    throw new AssertionError("delete(" + item + ") disagrees with the reference");
+            }
+            try {
+                tree.validate();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            if (!tree.getItems().equals(expected)) throw new AssertionError("Items differ");
+
+            for (int i = 0; i < 50; ++i) {
+                int from = random.nextInt(1100) - 50;
+                int to = from + random.nextInt(200);
+                List<Integer> inRange = new ArrayList<>();
+                for (Integer item : expected) if (item >= from && item <= to) inRange.add(item);
+                List<Integer> actual = new ArrayList<>();
+                for (Integer item : tree.range(from, to)) actual.add(item);
+                if (!actual.equals(inRange)) throw new AssertionError("range(" + from + ", " + to + ") = " + actual);
+                actual.clear();
+                for (Integer item : tree.descendingRange(from, to)) actual.add(item);
+                Collections.reverse(actual);
+                if (!actual.equals(inRange)) throw new AssertionError("descendingRange(" + from + ", " + to + ") = " + actual);
+                boolean found = tree.search(from) != null;
+                if (found != expected.contains(from)) throw new AssertionError("search(" + from + ") failed");
+            }
+        }
+        List<Integer> all = new ArrayList<>();
+        for (Integer item : tree.range(null, null)) all.add(item);
+        if (!all.equals(expected)) throw new AssertionError("Unbounded range differs");
+    }
+}
@@ -0,0 +1,88 @@
+package model.tests;
+
+import data.Email;
+import model.BTreeMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class BTreeMapTester {
+    public static void main(String[] args) throws Exception {
+        for (int minChildren = 2; minChildren <= 20; minChildren += 3) {
+            testAgainstTreeMap(minChildren);
+        }
+        testEqualEmails();
+        System.out.println("All B-Tree map tests passed");
+    }
+
+    /**
+     * Random puts and removes with heavily skewed keys, checked against a TreeMap of lists
+     */
+    public static void testAgainstTreeMap(int minChildren) throws Exception {
+        BTreeMap<Integer, Integer> map = new BTreeMap<>(minChildren);
+        TreeMap<Integer, List<Integer>> reference = new TreeMap<>();
+        Random random = new Random(minChildren);
+        for (int round = 0; round < 20; ++round) {
+            for (int i = 0; i < 1000; ++i) {
+                // Cubing skews keys towards 0, so a few keys get hundreds of values
+                int key = (int) (Math.pow(random.nextDouble(), 3) * 500);
+                int value = random.nextInt(50);
+                map.put(key, value);
+                reference.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+            }
+            for (int i = 0; i < 900; ++i) {
+                int key = random.nextInt(500);
+                Integer value = random.nextInt(50);
+                List<Integer> values = reference.get(key);
+                boolean expected = values != null && values.remove(value);
+                if (values != null && values.isEmpty()) reference.remove(key);
+                if (map.removeValue(key, value) != expected) throw new AssertionError("removeValue(" + key + ", " + value + ") failed");
+            }
+            int key = random.nextInt(20);
+            List<Integer> removed = reference.remove(key);
+            if (map.removeAll(key) != (removed == null ? 0 : removed.size())) throw new AssertionError("removeAll(" + key + ") failed");
+            check(map, reference);
+        }
+    }
+
+    private static void check(BTreeMap<Integer, Integer> map, TreeMap<Integer, List<Integer>> reference) throws Exception {
+        map.validate();
+        if (map.keyCount() != reference.size()) throw new AssertionError("keyCount is " + map.keyCount() + ", expected " + reference.size());
+        if (!map.keys().equals(new ArrayList<>(reference.keySet()))) throw new AssertionError("Keys differ");
+        List<Integer> all = new ArrayList<>();
+        for (int key = -1; key <= 500; ++key) {
+            List<Integer> expected = reference.getOrDefault(key, List.of());
+            if (!map.getAll(key).equals(expected)) throw new AssertionError("getAll(" + key + ") is " + map.getAll(key) + ", expected " + expected);
+            if (map.count(key) != expected.size()) throw new AssertionError("count(" + key + ") failed");
+            if (map.containsKey(key) == expected.isEmpty()) throw new AssertionError("containsKey(" + key + ") failed");
+            all.addAll(expected);
+        }
+        if (map.size() != all.size()) throw new AssertionError("size is " + map.size() + ", expected " + all.size());
+        if (!map.getRange(null, null).equals(all)) throw new AssertionError("Full range differs");
+        List<Integer> expectedRange = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : reference.subMap(10, 100).entrySet()) expectedRange.addAll(entry.getValue());
+        if (!map.getRange(10, 100).equals(expectedRange)) throw new AssertionError("Range [10, 100) differs");
+    }
+
+    /**
+     * Emails with the same date and sender compare equal, but are kept and removed as separate values
+     */
+    public static void testEqualEmails() {
+        BTreeMap<Email, Email> map = new BTreeMap<>(3);
+        List<Email> emails = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            Email email = new Email("2021-08-0" + (1 + i % 3), "Seen Ga Poh", "Header " + i, "Content " + i);
+            emails.add(email);
+            map.put(email, email);
+        }
+        Email first = emails.get(0);
+        if (map.count(first) != 17 || map.keyCount() != 3) throw new AssertionError("Equal emails were not grouped");
+        if (!map.removeValue(first, emails.get(3)) || map.removeValue(first, emails.get(3)))
+            throw new AssertionError("removeValue removed the wrong email");
+        List<Email> rest = map.getAll(first);
+        if (rest.size() != 16 || rest.contains(emails.get(3)) || rest.get(0) != first) throw new AssertionError("getAll after removeValue failed");
+    }
+}
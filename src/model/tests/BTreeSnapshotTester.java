@@ -0,0 +1,158 @@
+package model.tests;
+
+import data.Email;
+import data.Entry;
+import model.BNode;
+import model.BTree;
+import model.storage.BTreeSnapshot;
+import model.storage.Codec;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class BTreeSnapshotTester {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("btree-snapshot");
+        try {
+            testRoundTrip(directory);
+            testDamaged(directory);
+            testCached(directory);
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.println("All B-Tree snapshot tests passed");
+    }
+
+    /**
+     * Trees of every item type, built by adds and deletes so that their nodes are unevenly filled, load with the
+     * same nodes and items
+     */
+    public static void testRoundTrip(Path directory) throws Exception {
+        Random random = new Random(23);
+        for (int minChildren : new int[]{2, 3, 16}) {
+            for (int size : new int[]{0, 1, 100, 20000}) {
+                BTree<Integer> integers = new BTree<>(minChildren);
+                BTree<String> strings = new BTree<>(minChildren);
+                BTree<Entry> entries = new BTree<>(minChildren);
+                BTree<Email> emails = new BTree<>(minChildren);
+                for (int i = 0; i < size; ++i) {
+                    int key = random.nextInt(size);
+                    integers.add(key);
+                    strings.add("key \u00e9\u4e2d " + key);
+                    entries.add(new Entry(1960 + key % 60, "Country " + key, key / 7f));
+                    LocalDate date = LocalDate.of(2021, 1, 1).plusDays(key);
+                    emails.add(key % 3 == 0 ? new Email(date.toString(), "Sender " + key)
+                            : new Email(date.toString(), "Sender " + key, "Header " + key, key % 3 == 1 ? "" : "Content, " + key));
+                }
+                for (int i = 0; i < size / 3; ++i) integers.delete(random.nextInt(size));
+                roundTrip(directory, integers, Codec.INTEGER);
+                roundTrip(directory, strings, Codec.STRING);
+                roundTrip(directory, entries, Entry.CODEC);
+                roundTrip(directory, emails, Email.CODEC);
+            }
+        }
+    }
+
+    private static <T extends Comparable<? super T>> void roundTrip(Path directory, BTree<T> tree, Codec<T> codec) throws Exception {
+        Path file = directory.resolve("tree.btree");
+        BTreeSnapshot.save(tree, file, codec);
+        BTree<T> loaded = BTreeSnapshot.load(file, codec);
+        loaded.validate();
+        if (loaded.getHeight() != tree.getHeight()) throw new AssertionError("Height " + loaded.getHeight() + " != " + tree.getHeight());
+        checkSame(tree.root, loaded.root);
+        // The loaded tree is a normal tree
+        if (!tree.getItems(tree.root).isEmpty()) {
+            T first = tree.getItems(tree.root).get(0);
+            loaded.delete(first);
+            loaded.add(first);
+            loaded.validate();
+        }
+    }
+
+    private static void checkSame(BNode expected, BNode actual) {
+        if (expected.isLeaf != actual.isLeaf || expected.numItems != actual.numItems || expected.items.length != actual.items.length)
+            throw new AssertionError("Different nodes: " + expected + " and " + actual);
+        for (int i = 0; i < expected.numItems; i++) {
+            if (!expected.items[i].toString().equals(actual.items[i].toString()) || expected.items[i].compareTo(actual.items[i]) != 0)
+                throw new AssertionError("Different items: " + expected.items[i] + " and " + actual.items[i]);
+        }
+        if (!expected.isLeaf) {
+            for (int i = 0; i <= expected.numItems; i++) checkSame(expected.neighbours[i], actual.neighbours[i]);
+        }
+    }
+
+    /**
+     * A changed byte anywhere, a cut off file and a file of another version are refused
+     */
+    public static void testDamaged(Path directory) throws Exception {
+        BTree<Integer> tree = new BTree<>(3);
+        for (int i = 0; i < 1000; ++i) tree.add(i);
+        Path file = directory.resolve("damaged.btree");
+        BTreeSnapshot.save(tree, file, Codec.INTEGER);
+        byte[] bytes = Files.readAllBytes(file);
+        for (int position : new int[]{0, 5, 9, bytes.length / 2, bytes.length - 1}) {
+            byte[] damaged = bytes.clone();
+            damaged[position] ^= 0x10;
+            Files.write(file, damaged);
+            expectRefused(file);
+        }
+        Files.write(file, bytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(bytes.length - 7);
+        }
+        expectRefused(file);
+        Files.write(file, new byte[0]);
+        expectRefused(file);
+    }
+
+    private static void expectRefused(Path file) {
+        try {
+            BTreeSnapshot.load(file, Codec.INTEGER);
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError("Loaded a damaged snapshot");
+    }
+
+    /**
+     * The cache builds a tree once per source and variant, and again once the source changes
+     */
+    public static void testCached(Path directory) throws Exception {
+        Path source = directory.resolve("source.txt");
+        Files.writeString(source, "1\n2\n3\n");
+        AtomicInteger builds = new AtomicInteger();
+        String variant = "Integer-m3-" + System.nanoTime();
+        for (int i = 0; i < 3; ++i) {
+            BTree<Integer> tree = BTreeSnapshot.cached(source.toUri().toURL(), variant, Codec.INTEGER, () -> {
+                builds.incrementAndGet();
+                BTree<Integer> built = new BTree<>(3);
+                for (int key = 0; key < 100; ++key) built.add(key);
+                return built;
+            });
+            if (tree.getItems(tree.root).size() != 100) throw new AssertionError("Cached tree has " + tree.getItems(tree.root).size() + " items");
+        }
+        if (builds.get() != 1) throw new AssertionError("Built " + builds.get() + " times");
+        Files.writeString(source, "1\n2\n3\n4\n");
+        BTreeSnapshot.cached(source.toUri().toURL(), variant, Codec.INTEGER, () -> {
+            builds.incrementAndGet();
+            return new BTree<>(3);
+        });
+        if (builds.get() != 2) throw new AssertionError("Changed source was not built again");
+        try (Stream<Path> files = Files.list(BTreeSnapshot.CACHE_DIRECTORY)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().contains(variant)) Files.delete(file);
+            }
+        }
+    }
+}
@@ -1,8 +1,28 @@
 package model.tests;
 
+import model.BNode;
 import model.BTree;
+import model.BTreeMetrics;
+import model.Monoid;
+import model.NodePool;
+import model.ParallelTreeBuilder;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 public class BTreeTester {
     public static void main(String[] args) {
@@ -11,6 +31,16 @@ public class BTreeTester {
         //testcase1();
         //testcase2();
         testcase3();
+        testBulkLoad();
+        testParallelBuild();
+        testIterators();
+        testSnapshots();
+        testSearch();
+        testAugmentation();
+        testMetrics();
+        testNodePool();
+        testBatches();
+        testSplitConcat();
     }
     public static boolean testBasicInsertion() {
         BTree<Integer> tree = new BTree<>(3);
@@ -80,4 +110,580 @@ public class BTreeTester {
         try{tree.validate();} catch(Exception e){e.printStackTrace();}
         System.out.println(tree);
     }
+
+    public static void testBulkLoad(){
+        Random random = new Random(5132);
+        for(int j=2;j<=15;++j) {
+            for (int n : new int[]{0, 1, 2, 2 * j - 1, 2 * j, 100, 1000, 12345}) {
+                for (double fillFactor : new double[]{0.01, 0.5, BTree.DEFAULT_FILL_FACTOR, 1}) {
+                    ArrayList<Integer> items = new ArrayList<>();
+                    for (int i = 0; i < n; ++i) items.add(random.nextInt(n / 2 + 1));
+                    items.sort(null);
+
+                    BTree<Integer> tree = new BTree<>(j);
+                    tree.bulkLoad(items.iterator(), fillFactor);
+                    if (!tree.getItems(tree.root).equals(items))
+                        throw new AssertionError("Bulk loaded items differ for minChildren=" + j + ", n=" + n);
+                    checkStructure(tree.root, j, true, tree.getHeight());
+
+                    // The bulk loaded tree must keep working with the normal operations
+                    if (j < 3) continue;
+                    tree = new BTree<>(j);
+                    ArrayList<Integer> evens = new ArrayList<>();
+                    for (int i = 0; i < n; ++i) evens.add(2 * i);
+                    tree.bulkLoad(evens.iterator(), fillFactor);
+                    for (int i = 0; i < 100; ++i) tree.add(2 * i + 1);
+                    for (int i = 0; i < 100; ++i) tree.delete(random.nextInt(2 * n + 2));
+                    try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+                }
+            }
+        }
+        System.out.println("Bulk load test passed");
+    }
+
+    public static void testParallelBuild(){
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(5133);
+        try {
+            // Levels built in parallel give the same tree as a sequential bulk load
+            for (int j : new int[]{2, 3, 16}) {
+                for (int n : new int[]{0, 1, 1000, 200000}) {
+                    Integer[] items = new Integer[n];
+                    for (int i = 0; i < n; ++i) items[i] = random.nextInt(n / 2 + 1);
+                    Arrays.sort(items);
+                    BTree<Integer> sequential = new BTree<>(j);
+                    sequential.bulkLoad(Arrays.asList(items).iterator(), BTree.DEFAULT_FILL_FACTOR);
+                    BTree<Integer> parallel = new BTree<>(j);
+                    parallel.bulkLoad(items, n, BTree.DEFAULT_FILL_FACTOR, pool);
+                    if (!parallel.toString().equals(sequential.toString()))
+                        throw new AssertionError("Parallel bulk load differs for minChildren=" + j + ", n=" + n);
+                    checkStructure(parallel.root, j, true, parallel.getHeight());
+                }
+            }
+            Integer[] unsorted = new Integer[100000];
+            for (int i = 0; i < unsorted.length; ++i) unsorted[i] = i;
+            unsorted[77777] = -1;
+            try {
+                new BTree<Integer>(3).bulkLoad(unsorted, unsorted.length, BTree.DEFAULT_FILL_FACTOR, pool);
+                throw new AssertionError("Unsorted items were bulk loaded");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+
+            // Files with both line ends and no line end at the end, with and without duplicates
+            Path file = Files.createTempFile("parallel-build", ".txt");
+            try {
+                StringBuilder text = new StringBuilder();
+                ArrayList<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < 300000; ++i) {
+                    int key = random.nextInt(100000) - 50000;
+                    expected.add(key);
+                    text.append(key).append(i % 3 == 0 ? "\r\n" : "\n");
+                }
+                text.append(12345);
+                expected.add(12345);
+                Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+                expected.sort(null);
+
+                BTree<Integer> tree = ParallelTreeBuilder.fromFile(file, Integer::valueOf, Integer[]::new, 3, false, pool);
+                if (!tree.getItems(tree.root).equals(expected)) throw new AssertionError("Parallel build from file differs");
+                tree.validate();
+                tree = ParallelTreeBuilder.fromFile(file, Integer::valueOf, Integer[]::new, 3, true, pool);
+                if (!tree.getItems(tree.root).equals(new ArrayList<>(new TreeSet<>(expected))))
+                    throw new AssertionError("Distinct parallel build from file differs");
+                tree.validate();
+            } finally {
+                Files.delete(file);
+            }
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("Parallel build test passed");
+    }
+
+    public static void testIterators(){
+        Random random = new Random(5132);
+        // 40 gives nodes above BNode.LINEAR_SEARCH_THRESHOLD, whose seeks binary search
+        for (int j : new int[]{2, 3, 4, 5, 6, 7, 8, 40}) {
+            for (int n : new int[]{0, 1, 5, 100, 5000}) {
+                BTree<Integer> tree = new BTree<>(j);
+                for (int i = 0; i < n; ++i) tree.add(random.nextInt(n / 2 + 1));
+                List<Integer> expected = tree.getItems(tree.root);
+
+                List<Integer> actual = new ArrayList<>();
+                for (Integer item : tree) actual.add(item);
+                if (!actual.equals(expected)) throw new AssertionError("iterator differs for n=" + n);
+
+                actual.clear();
+                for (Iterator<Integer> it = tree.descendingIterator(); it.hasNext(); ) actual.add(it.next());
+                Collections.reverse(actual);
+                if (!actual.equals(expected)) throw new AssertionError("descendingIterator differs for n=" + n);
+
+                for (int k = 0; k < 20; ++k) {
+                    int from = random.nextInt(n / 2 + 3) - 1;
+                    actual.clear();
+                    for (Iterator<Integer> it = tree.iterator(from); it.hasNext(); ) actual.add(it.next());
+                    List<Integer> tail = expected.stream().filter(x -> x >= from).collect(Collectors.toList());
+                    if (!actual.equals(tail)) throw new AssertionError("iterator(" + from + ") differs");
+                    actual.clear();
+                    for (Iterator<Integer> it = tree.descendingIterator(from); it.hasNext(); ) actual.add(it.next());
+                    Collections.reverse(actual);
+                    List<Integer> head = expected.stream().filter(x -> x <= from).collect(Collectors.toList());
+                    if (!actual.equals(head)) throw new AssertionError("descendingIterator(" + from + ") differs");
+                }
+
+                if (!tree.parallelStream().collect(Collectors.toList()).equals(expected))
+                    throw new AssertionError("parallel stream differs for n=" + n);
+
+                // Split repeatedly, then mix tryAdvance and forEachRemaining on the parts
+                List<Spliterator<Integer>> parts = new ArrayList<>();
+                parts.add(tree.spliterator());
+                for (int k = 0; k < 6; ++k) {
+                    List<Spliterator<Integer>> next = new ArrayList<>();
+                    for (Spliterator<Integer> part : parts) {
+                        Spliterator<Integer> prefix = part.trySplit();
+                        if (prefix != null) next.add(prefix);
+                        next.add(part);
+                    }
+                    parts = next;
+                }
+                actual.clear();
+                for (Spliterator<Integer> part : parts) {
+                    part.tryAdvance(actual::add);
+                    part.forEachRemaining(actual::add);
+                }
+                if (!actual.equals(expected)) throw new AssertionError("spliterator parts differ for n=" + n);
+            }
+        }
+        System.out.println("Iterator test passed");
+    }
+
+    /**
+     * Takes a snapshot after every change and checks that no later change, undo or redo shows in an older snapshot
+     */
+    public static void testSnapshots(){
+        Random random = new Random(5133);
+        for(int j=3;j<=8;++j) {
+            BTree<Integer> tree = new BTree<>(j);
+            List<Integer> present = new ArrayList<>();
+            List<BTree<Integer>> snapshots = new ArrayList<>();
+            List<List<Integer>> expected = new ArrayList<>();
+            for (int i = 0; i < 3000; ++i) {
+                // Distinct items, deletes are limited to items in the tree
+                if (present.isEmpty() || random.nextInt(3) != 0) {
+                    int item = i;
+                    tree.add(item);
+                    present.add(item);
+                } else {
+                    tree.delete(present.remove(random.nextInt(present.size())));
+                }
+                if (i % 7 == 0) {
+                    snapshots.add(tree.snapshot());
+                    expected.add(tree.getItems(tree.root));
+                }
+            }
+            for (int k = 0; k < snapshots.size(); ++k) {
+                BTree<Integer> snapshot = snapshots.get(k);
+                if (!snapshot.getItems(snapshot.root).equals(expected.get(k)))
+                    throw new AssertionError("Snapshot " + k + " changed for minChildren=" + j);
+            }
+
+            // Restoring then changing must leave the snapshot untouched, and changing the snapshot must leave the tree
+            int k = snapshots.size() / 2;
+            tree.restore(snapshots.get(k));
+            for (int i = 0; i < 200; ++i) tree.add(-i);
+            for (Integer item : expected.get(k).subList(0, expected.get(k).size() / 2)) tree.delete(item);
+            snapshots.get(k).add(-1000000);
+            if (!snapshots.get(k).getItems(snapshots.get(k).root).subList(1, expected.get(k).size() + 1).equals(expected.get(k)))
+                throw new AssertionError("Restored snapshot changed for minChildren=" + j);
+            List<Integer> restored = new ArrayList<>();
+            for (int i = 199; i >= 0; --i) restored.add(-i);
+            restored.addAll(expected.get(k).subList(expected.get(k).size() / 2, expected.get(k).size()));
+            if (!tree.getItems(tree.root).equals(restored)) throw new AssertionError("Changes after restore are wrong for minChildren=" + j);
+            try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+            for (int i = 0; i < snapshots.size(); ++i) {
+                if (i == k) continue;
+                if (!snapshots.get(i).getItems(snapshots.get(i).root).equals(expected.get(i)))
+                    throw new AssertionError("Snapshot " + i + " changed after restore for minChildren=" + j);
+            }
+        }
+        System.out.println("Snapshot test passed");
+    }
+
+    /**
+     * Searches with keys that are equal to but not the same objects as the items, in nodes small enough to be
+     * scanned and large enough to be binary searched, with duplicates
+     */
+    public static void testSearch(){
+        Random random = new Random(5134);
+        for(int j : new int[]{2, 3, 5, 8, 15, 32}) {
+            BTree<String> tree = new BTree<>(j);
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < 5000; ++i) {
+                String item = Integer.toString(random.nextInt(4000));
+                tree.add(item);
+                items.add(item);
+            }
+            Collections.sort(items);
+            if (!tree.getItems(tree.root).equals(items)) throw new AssertionError("Adds are wrong for minChildren=" + j);
+            for (int i = 0; i < 4500; ++i) {
+                String key = new String(Integer.toString(i));
+                boolean expected = Collections.binarySearch(items, key) >= 0;
+                String found = tree.search(key);
+                if (expected != (found != null) || (found != null && !found.equals(key)) || expected != (tree.search2(key) != null))
+                    throw new AssertionError("search(" + key + ") failed for minChildren=" + j);
+            }
+        }
+        System.out.println("Search test passed");
+    }
+
+    /**
+     * Adds and deletes random distinct items in augmented trees, with snapshots in between, and checks rank, select,
+     * countRange and aggregate (sum or min) against a sorted list
+     */
+    public static void testAugmentation(){
+        Random random = new Random(5135);
+        List<Monoid<Integer, Double>> monoids = new ArrayList<>();
+        monoids.add(Monoid.sum(i -> i));
+        monoids.add(Monoid.min(i -> i));
+        monoids.add(null);
+        // minChildren 2 is left out, deletes there can already lose items without augmentation
+        for(int j : new int[]{3, 5, 20}) {
+            for (Monoid<Integer, Double> monoid : monoids) {
+                BTree<Integer> tree = new BTree<>(j, monoid);
+                List<Integer> items = new ArrayList<>();
+                for (int i = 0; i < 2000; i += 2) items.add(i);
+                tree.bulkLoad(items.iterator(), BTree.DEFAULT_FILL_FACTOR);
+                BTree<Integer> snapshot = null;
+                List<Integer> snapshotItems = null;
+                for (int round = 0; round < 3000; ++round) {
+                    if (items.isEmpty() || random.nextInt(5) < 3) {
+                        int item = random.nextInt(100000);
+                        int index = Collections.binarySearch(items, item);
+                        if (index >= 0) continue;
+                        items.add(-index - 1, item);
+                        tree.add(item);
+                    } else {
+                        tree.delete(items.remove(random.nextInt(items.size())));
+                    }
+                    if (round % 500 == 0) {
+                        snapshot = tree.snapshot();
+                        snapshotItems = new ArrayList<>(items);
+                    }
+                    if (round % 50 == 0) {
+                        checkAugmentation(tree, items, monoid, random, j);
+                        checkAugmentation(snapshot, snapshotItems, monoid, random, j);
+                    }
+                }
+                try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+            }
+        }
+        try {
+            new BTree<Integer>(3).rank(1);
+            throw new AssertionError("rank on a tree that is not augmented");
+        } catch (UnsupportedOperationException expected) {
+            // Sizes are only kept by augmented trees
+        }
+        System.out.println("Augmentation test passed");
+    }
+
+    static void checkAugmentation(BTree<Integer> tree, List<Integer> items, Monoid<Integer, Double> monoid, Random random, int j) {
+        if (tree.size() != items.size()) throw new AssertionError("size() is " + tree.size() + " for minChildren=" + j);
+        for (int k = 0; k < 20; ++k) {
+            int a = random.nextInt(100002) - 1;
+            int b = a + random.nextInt(20000);
+            // The first index of a among duplicates, which binarySearch does not promise
+            int index = Collections.binarySearch(items, a);
+            int rank = index >= 0 ? index : -index - 1;
+            while (rank > 0 && items.get(rank - 1) == a) rank--;
+            if (tree.rank(a) != rank) throw new AssertionError("rank(" + a + ") is " + tree.rank(a) + " for minChildren=" + j);
+            if (!items.isEmpty()) {
+                int position = random.nextInt(items.size());
+                if (!tree.select(position).equals(items.get(position)))
+                    throw new AssertionError("select(" + position + ") is " + tree.select(position) + " for minChildren=" + j);
+            }
+            double expected = monoid == null ? 0 : monoid.identity();
+            int count = 0;
+            for (Integer item : items) {
+                if (item < a || item >= b) continue;
+                count++;
+                if (monoid != null) expected = monoid.combine(expected, monoid.measure(item));
+            }
+            if (tree.countRange(a, b) != count) throw new AssertionError("countRange(" + a + ", " + b + ") for minChildren=" + j);
+            if (monoid != null && (double) tree.aggregate(a, b) != expected)
+                throw new AssertionError("aggregate(" + a + ", " + b + ") is " + tree.aggregate(a, b) + ", expected " + expected + " for minChildren=" + j);
+        }
+        if (monoid != null) {
+            double expected = monoid.identity();
+            for (Integer item : items) expected = monoid.combine(expected, monoid.measure(item));
+            if ((double) tree.aggregate(null, null) != expected) throw new AssertionError("aggregate of all items for minChildren=" + j);
+        }
+        try {
+            tree.select(items.size());
+            throw new AssertionError("select past the end for minChildren=" + j);
+        } catch (IndexOutOfBoundsException expected) {
+            // Positions are from 0 to size() - 1
+        }
+    }
+
+    /**
+     * Checks the shape kept by the metrics against walking the tree, through adds, deletes, a bulk load and a restore,
+     * and reads the counters over JMX
+     */
+    public static void testMetrics(){
+        Random random = new Random(5136);
+        BTree<Integer> tree = new BTree<>(3);
+        for (int i = 0; i < 100; ++i) tree.add(i);
+        BTreeMetrics metrics = tree.enableMetrics();
+        checkShape(tree, metrics, 100);
+        List<Integer> present = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) present.add(i);
+        BTree<Integer> snapshot = null;
+        for (int i = 100; i < 5000; ++i) {
+            if (random.nextInt(3) != 0) {
+                tree.add(i);
+                present.add(i);
+            } else {
+                tree.delete(present.remove(random.nextInt(present.size())));
+            }
+            if (i == 2000) snapshot = tree.snapshot();
+            tree.search(random.nextInt(5000));
+        }
+        tree.delete(-1);
+        checkShape(tree, metrics, present.size());
+        if (metrics.getAdds() + metrics.getDeletes() != 4901 || metrics.getSearches() != 4900)
+            throw new AssertionError("Operations were not counted: " + metrics);
+        if (metrics.getSplits() == 0 || metrics.getMerges() == 0 || metrics.getBorrows() == 0 || metrics.getCompares() == 0)
+            throw new AssertionError("Structural changes were not counted: " + metrics);
+        long sampled = metrics.getAddHistogram().getCount() + metrics.getDeleteHistogram().getCount() + metrics.getSearchHistogram().getCount();
+        if (sampled != 9801 / BTreeMetrics.SAMPLE_INTERVAL || metrics.getSearchLatencyP50() > metrics.getSearchLatencyMax())
+            throw new AssertionError("Latencies were not recorded: " + metrics);
+        tree.restore(snapshot);
+        checkShape(tree, metrics, tree.getItems(tree.root).size());
+        tree.bulkLoad(present.stream().sorted().iterator(), BTree.DEFAULT_FILL_FACTOR);
+        checkShape(tree, metrics, present.size());
+
+        try {
+            metrics.register("BTreeTester");
+            ObjectName name = metrics.getObjectName();
+            long adds = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Adds");
+            if (adds != metrics.getAdds()) throw new AssertionError("JMX shows " + adds + " adds");
+            ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+            if (metrics.getAdds() != 0 || metrics.getItemCount() != present.size()) throw new AssertionError("Reset over JMX failed");
+            metrics.unregister();
+        } catch (JMException e) {
+            throw new AssertionError(e);
+        }
+        tree.disableMetrics();
+        tree.add(-1);
+        if (tree.getMetrics() != null || metrics.getAdds() != 0) throw new AssertionError("Disabled metrics still counted");
+        System.out.println("Metrics test passed");
+    }
+
+    /**
+     * Churns a tree with a node pool at a constant size, shrinks and regrows it, and checks that reused nodes
+     * carry nothing over and that snapshots keep their nodes
+     */
+    public static void testNodePool(){
+        Random random = new Random(5137);
+        Monoid<Integer, Double> monoid = Monoid.min(i -> i);
+        for(int j : new int[]{3, 5, 20}) {
+            BTree<Integer> tree = new BTree<>(j, monoid);
+            NodePool pool = tree.enableNodePool(8);
+            List<Integer> fresh = new ArrayList<>();
+            for (int i = 0; i < 100000; ++i) fresh.add(i);
+            Collections.shuffle(fresh, random);
+            List<Integer> present = new ArrayList<>();
+            List<BTree<Integer>> snapshots = new ArrayList<>();
+            List<List<Integer>> expected = new ArrayList<>();
+            for (int i = 0; i < 2000; ++i) {
+                tree.add(fresh.get(i));
+                present.add(fresh.get(i));
+            }
+            for (int i = 2000; i < 20000; ++i) {
+                tree.add(fresh.get(i));
+                present.add(fresh.get(i));
+                tree.delete(present.remove(random.nextInt(present.size())));
+                if (i % 1000 == 0) {
+                    snapshots.add(tree.snapshot());
+                    expected.add(tree.getItems(tree.root));
+                }
+            }
+            // Collapse the root down to a few items, then split it again
+            while (present.size() > 5) tree.delete(present.remove(random.nextInt(present.size())));
+            for (int i = 20000; i < 22000; ++i) {
+                tree.add(fresh.get(i));
+                present.add(fresh.get(i));
+            }
+            try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+            Collections.sort(present);
+            if (!tree.getItems(tree.root).equals(present)) throw new AssertionError("Items are wrong for minChildren=" + j);
+            checkAugmentation(tree, present, monoid, random, j);
+            for (int k = 0; k < snapshots.size(); ++k) {
+                if (!snapshots.get(k).getItems(snapshots.get(k).root).equals(expected.get(k)))
+                    throw new AssertionError("Snapshot " + k + " changed for minChildren=" + j);
+            }
+            if (pool.getReused() == 0 || pool.getDiscarded() == 0 || pool.getPooled() > 2 * pool.getCapacity())
+                throw new AssertionError("Pool was not used as expected: " + pool);
+            tree.disableNodePool();
+            if (tree.getNodePool() != null) throw new AssertionError("Pool was not disabled");
+        }
+        System.out.println("Node pool test passed");
+    }
+
+    /**
+     * Applies random batches with duplicates, some of them missing from the tree, with addAll and deleteAll and
+     * checks the items, node sizes, augmentation, metrics and snapshots against a sorted list
+     */
+    public static void testBatches(){
+        Random random = new Random(5138);
+        Monoid<Integer, Double> monoid = Monoid.sum(i -> i);
+        for(int j : new int[]{3, 4, 7, 16}) {
+            BTree<Integer> tree = new BTree<>(j, monoid);
+            BTreeMetrics metrics = tree.enableMetrics();
+            tree.enableNodePool(16);
+            List<Integer> present = new ArrayList<>();
+            BTree<Integer> snapshot = null;
+            List<Integer> snapshotItems = null;
+            for (int round = 0; round < 300; ++round) {
+                // Mostly small batches, sometimes one larger than the tree
+                int size = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(200);
+                int range = random.nextBoolean() ? 2000 : 100000;
+                List<Integer> batch = new ArrayList<>();
+                if (random.nextInt(5) < 3 || present.isEmpty()) {
+                    for (int i = 0; i < size; ++i) batch.add(random.nextInt(range));
+                    tree.addAll(batch);
+                    present.addAll(batch);
+                    Collections.sort(present);
+                } else {
+                    for (int i = 0; i < size; ++i) {
+                        batch.add(random.nextInt(4) == 0 ? random.nextInt(range) : present.get(random.nextInt(present.size())));
+                    }
+                    tree.deleteAll(batch);
+                    for (Integer item : batch) present.remove(item);
+                }
+                if (round % 10 == 0) {
+                    int item = random.nextInt(range);
+                    tree.add(item);
+                    int index = Collections.binarySearch(present, item);
+                    present.add(index >= 0 ? index : -index - 1, item);
+                }
+                if (round % 30 == 0) {
+                    snapshot = tree.snapshot();
+                    snapshotItems = new ArrayList<>(present);
+                }
+                if (!tree.getItems(tree.root).equals(present)) throw new AssertionError("Items are wrong for minChildren=" + j);
+                checkStructure(tree.root, j, true, tree.getHeight());
+                checkShape(tree, metrics, present.size());
+                if (round % 20 == 0) checkAugmentation(tree, present, monoid, random, j);
+            }
+            if (!snapshot.getItems(snapshot.root).equals(snapshotItems)) throw new AssertionError("Snapshot changed for minChildren=" + j);
+            tree.deleteAll(new ArrayList<>(present));
+            if (tree.size() != 0 || !tree.root.isLeaf) throw new AssertionError("Tree is not empty for minChildren=" + j);
+            checkShape(tree, metrics, 0);
+        }
+        System.out.println("Batch test passed");
+    }
+
+    static void checkShape(BTree<Integer> tree, BTreeMetrics metrics, int items) {
+        try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+        int[] nodes = {0};
+        countNodes(tree.root, nodes);
+        if (metrics.getItemCount() != items || tree.size() != items || metrics.getNodeCount() != nodes[0]
+                || metrics.getHeight() != tree.getHeight(tree.root))
+            throw new AssertionError("Shape is " + metrics + ", expected " + items + " items, " + nodes[0] + " nodes");
+    }
+
+    static void countNodes(BNode<?> node, int[] nodes) {
+        nodes[0]++;
+        if (!node.isLeaf) {
+            for (int i = 0; i <= node.numItems; i++) countNodes(node.neighbours[i], nodes);
+        }
+    }
+
+    /**
+     * Checks the number of items in every node and that all leaves are at the same depth
+     */
+    static void checkStructure(BNode<?> node, int minChildren, boolean isRoot, int height) {
+        if (node.numItems > 2 * minChildren - 1 || (!isRoot && node.numItems < minChildren - 1))
+            throw new AssertionError("Node has " + node.numItems + " items: " + node);
+        if (node.isLeaf) {
+            if (height != 0) throw new AssertionError("Leaves are not at the same depth");
+            return;
+        }
+        for (int i = 0; i <= node.numItems; i++)
+            checkStructure(node.neighbours[i], minChildren, false, height - 1);
+    }
+
+    /**
+     * Splits random trees, plain and augmented, at random keys and joins the halves back, checking the items in
+     * order (the very objects, as equal items keep their order), the structure and the augmentation of every tree
+     */
+    public static void testSplitConcat(){
+        Random random = new Random(5136);
+        for (int j : new int[]{2, 3, 5, 16}) {
+            for (int n : new int[]{0, 1, 2, 50, 3000}) {
+                for (boolean augmented : new boolean[]{false, true}) {
+                    for (int round = 0; round < 10; ++round) {
+                        Monoid<Integer, Double> monoid = augmented ? Monoid.sum(i -> i) : null;
+                        BTree<Integer> tree = augmented ? new BTree<>(j, monoid) : new BTree<>(j);
+                        for (int i = 0; i < n; ++i) tree.add(Integer.valueOf(1000 + random.nextInt(n / 2 + 1)));
+                        List<Integer> items = tree.getItems(tree.root);
+                        BTree<Integer> snapshot = tree.snapshot();
+
+                        int key = 999 + random.nextInt(n / 2 + 3);
+                        int index = 0;
+                        while (index < items.size() && items.get(index) < key) index++;
+                        BTree<Integer> right = tree.split(key);
+                        checkSameItems(tree, items.subList(0, index), j, monoid, random);
+                        checkSameItems(right, items.subList(index, items.size()), j, monoid, random);
+                        checkSameItems(snapshot, items, j, monoid, random);
+
+                        BTree<Integer> joined = BTree.concat(tree, right);
+                        checkSameItems(joined, items, j, monoid, random);
+                        // The trees share nodes, but changes to one do not show in the others
+                        joined.add(key);
+                        tree.add(key - 1);
+                        right.add(key);
+                        checkSameItems(snapshot, items, j, monoid, random);
+                        if (joined.getItems(joined.root).size() != items.size() + 1 || tree.getItems(tree.root).size() != index + 1)
+                            throw new AssertionError("Joined trees changed each other");
+                        try{joined.validate(); tree.validate(); right.validate();} catch(Exception e){throw new AssertionError(e);}
+                    }
+                }
+            }
+
+            // Trees of very different heights, either way round
+            BTree<Integer> small = new BTree<>(j);
+            BTree<Integer> large = new BTree<>(j);
+            for (int i = 0; i < 3; ++i) small.add(i);
+            for (int i = 3; i < 20000; ++i) large.add(i);
+            List<Integer> items = small.getItems(small.root);
+            items.addAll(large.getItems(large.root));
+            checkSameItems(BTree.concat(small, large), items, j, null, random);
+            small = large.split(19997);
+            items = new ArrayList<>(items.subList(3, 20000));
+            checkSameItems(BTree.concat(large, small), items, j, null, random);
+            try {
+                BTree.concat(small, large);
+                throw new AssertionError("Overlapping trees were joined");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        System.out.println("Split and concat test passed");
+    }
+
+    private static void checkSameItems(BTree<Integer> tree, List<Integer> expected, int j, Monoid<Integer, Double> monoid, Random random) {
+        List<Integer> actual = tree.getItems(tree.root);
+        if (actual.size() != expected.size()) throw new AssertionError("Expected " + expected + " got " + actual);
+        for (int i = 0; i < actual.size(); ++i) {
+            if (actual.get(i) != expected.get(i)) throw new AssertionError("Expected " + expected + " got " + actual);
+        }
+        checkStructure(tree.root, j, true, tree.getHeight());
+        try{tree.validate();} catch(Exception e){throw new AssertionError(e);}
+        if (tree.isAugmented()) checkAugmentation(tree, expected, monoid, random, j);
+    }
 }
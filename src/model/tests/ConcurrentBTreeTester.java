@@ -0,0 +1,156 @@
+package model.tests;
+
+import model.BTree;
+import model.ConcurrentBTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentBTreeTester {
+    public static void main(String[] args) throws Exception {
+        testSingleThreaded();
+        for (int minChildren = 2; minChildren <= 8; minChildren += 3) {
+            testDisjointWriters(minChildren, 4);
+            testMixedWorkload(minChildren, 4);
+        }
+        System.out.println("All Concurrent B-Tree tests passed");
+    }
+
+    /**
+     * Compares add, delete and search with a sequential reference
+     */
+    public static void testSingleThreaded() throws Exception {
+        ConcurrentBTree<Integer> tree = new ConcurrentBTree<>(3);
+        boolean[] present = new boolean[1000];
+        Random random = new Random(6);
+        for (int i = 0; i < 20000; ++i) {
+            int item = random.nextInt(present.length);
+            if (random.nextBoolean()) {
+                if (tree.add(item) == present[item]) throw new AssertionError("add(" + item + ") disagrees with the reference");
+                present[item] = true;
+            } else {
+                if (tree.delete(item) != present[item]) throw new AssertionError("delete(" + item + ") disagrees with the reference");
+                present[item] = false;
+            }
+            if (tree.contains(item) != present[item]) throw new AssertionError("search(" + item + ") failed");
+        }
+        tree.validate();
+        BTree<Integer> reference = new BTree<>(3);
+        for (int i = 0; i < present.length; ++i) {
+            if (present[i]) reference.add(i);
+        }
+        checkSameItems(tree, reference);
+    }
+
+    /**
+     * Each thread adds its own keys while also searching for keys it knows are present, then deletes half of them.
+     * Every thread's keys must be found while it owns them, and exactly the kept keys remain at the end.
+     */
+    public static void testDisjointWriters(int minChildren, int threads) throws Exception {
+        ConcurrentBTree<Integer> tree = new ConcurrentBTree<>(minChildren);
+        int perThread = 20000;
+        List<Throwable> failures = new ArrayList<>();
+        runThreads(threads, failures, id -> {
+            Random random = new Random(id);
+            // Keys interleave across threads so they contend on the same leaves
+            for (int i = 0; i < perThread; ++i) {
+                int key = i * threads + id;
+                if (!tree.add(key)) throw new AssertionError("add(" + key + ") reported a duplicate");
+                int known = random.nextInt(i + 1) * threads + id;
+                if (!tree.contains(known)) throw new AssertionError("search(" + known + ") missed an added key");
+            }
+        });
+        if (!failures.isEmpty()) throw new AssertionError(failures.get(0));
+        tree.validate();
+
+        runThreads(threads, failures, id -> {
+            for (int i = 0; i < perThread; i += 2) {
+                int key = i * threads + id;
+                if (!tree.delete(key)) throw new AssertionError("delete(" + key + ") missed an added key");
+                if (tree.contains(key)) throw new AssertionError("search(" + key + ") found a deleted key");
+            }
+        });
+        if (!failures.isEmpty()) throw new AssertionError(failures.get(0));
+
+        tree.validate();
+        ArrayList<Integer> items = tree.getItems();
+        if (items.size() != threads * perThread / 2) throw new AssertionError("Expected " + threads * perThread / 2 + " items, found " + items.size());
+        for (Integer item : items) {
+            if ((item / threads) % 2 == 0) throw new AssertionError("Deleted item " + item + " is still present");
+        }
+        BTree<Integer> reference = new BTree<>(minChildren);
+        for (int key = 0; key < threads * perThread; ++key) {
+            if ((key / threads) % 2 == 1) reference.add(key);
+        }
+        checkSameItems(tree, reference);
+    }
+
+    /**
+     * Threads race to add and delete the same small key range. Each thread counts its successful adds and deletes
+     * per key, and the final contents must agree with those counts.
+     */
+    public static void testMixedWorkload(int minChildren, int threads) throws Exception {
+        ConcurrentBTree<Integer> tree = new ConcurrentBTree<>(minChildren);
+        int range = 2000;
+        AtomicInteger[] balance = new AtomicInteger[range];
+        for (int i = 0; i < range; ++i) balance[i] = new AtomicInteger();
+        List<Throwable> failures = new ArrayList<>();
+        runThreads(threads, failures, id -> {
+            Random random = new Random(100 + id);
+            for (int i = 0; i < 50000; ++i) {
+                int key = random.nextInt(range);
+                int op = random.nextInt(10);
+                if (op < 4) {
+                    if (tree.add(key)) balance[key].incrementAndGet();
+                } else if (op < 6) {
+                    if (tree.delete(key)) balance[key].decrementAndGet();
+                } else {
+                    Integer found = tree.search(key);
+                    if (found != null && found != key) throw new AssertionError("search(" + key + ") returned " + found);
+                }
+            }
+        });
+        if (!failures.isEmpty()) throw new AssertionError(failures.get(0));
+
+        tree.validate();
+        BTree<Integer> reference = new BTree<>(minChildren);
+        for (int i = 0; i < range; ++i) {
+            int count = balance[i].get();
+            if (count != 0 && count != 1) throw new AssertionError("Key " + i + " added " + count + " more times than deleted");
+            if (tree.contains(i) != (count == 1)) throw new AssertionError("Key " + i + " presence disagrees with the add/delete counts");
+            if (count == 1) reference.add(i);
+        }
+        checkSameItems(tree, reference);
+    }
+
+    interface Worker {
+        void run(int id) throws Exception;
+    }
+
+    private static void runThreads(int threads, List<Throwable> failures, Worker worker) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    worker.run(id);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread thread : workers) thread.join();
+    }
+
+    /**
+     * Compares the in-order items with those of a {@link BTree} built by adding the expected keys
+     */
+    private static void checkSameItems(ConcurrentBTree<Integer> tree, BTree<Integer> reference) {
+        if (!reference.getItems(reference.root).equals(tree.getItems())) throw new AssertionError("BTree disagrees with the Concurrent B-Tree");
+    }
+}
@@ -0,0 +1,190 @@
+package model.tests;
+
+import model.storage.Codec;
+import model.storage.DurableBTree;
+import model.storage.WriteAheadLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Crash tests for {@link DurableBTree}.
+ * <br>
+ * The crash test runs this class again as a child JVM that adds and deletes keys from several threads and prints
+ * an acknowledgement once each change is durable. The parent kills the child after a number of acknowledgements,
+ * recovers the tree and checks that every acknowledged change survived.
+ */
+public class DurableBTreeTester {
+
+    private static final int WRITERS = 4;
+    private static final long GROUP_COMMIT_NANOS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("child")) {
+            runChild(Path.of(args[1]));
+            return;
+        }
+        Path directory = Files.createTempDirectory("durable-btree");
+        try {
+            testReopen(directory.resolve("reopen"));
+            testTornTail(directory.resolve("torn"));
+            testCrashes(directory.resolve("crash"), 5);
+        } finally {
+            deleteRecursively(directory);
+        }
+        System.out.println("All durable B-Tree tests passed");
+    }
+
+    /**
+     * Closing and reopening gives back the same tree, with and without a checkpoint in between
+     */
+    public static void testReopen(Path directory) throws Exception {
+        List<Integer> expected = new ArrayList<>();
+        try (DurableBTree<Integer> tree = new DurableBTree<>(directory, 3, Codec.INTEGER, 0, 0)) {
+            for (int i = 0; i < 1000; ++i) tree.add(i * 7 % 1000);
+            for (int i = 0; i < 1000; i += 3) {
+                if (!tree.delete(i)) throw new AssertionError("delete(" + i + ") found nothing");
+            }
+            if (tree.delete(0)) throw new AssertionError("delete(0) deleted twice");
+            tree.checkpoint();
+            for (int i = 1000; i < 1500; ++i) tree.add(i);
+            expected.addAll(tree.getItems());
+        }
+        try (DurableBTree<Integer> tree = new DurableBTree<>(directory, 3, Codec.INTEGER, 0, 0)) {
+            if (!tree.getItems().equals(expected)) throw new AssertionError("Reopened tree differs");
+            if (tree.getCheckpointLsn() == 0) throw new AssertionError("Checkpoint was not loaded");
+            tree.validate();
+            tree.checkpoint();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            if (files.filter(path -> path.getFileName().toString().startsWith("wal-")).count() != 1)
+                throw new AssertionError("Checkpoint did not delete old log segments");
+        }
+        try (DurableBTree<Integer> tree = new DurableBTree<>(directory, 3, Codec.INTEGER, 0, 0)) {
+            if (!tree.getItems().equals(expected)) throw new AssertionError("Tree differs after second checkpoint");
+        }
+    }
+
+    /**
+     * A record cut off in the middle of the last segment is dropped on recovery, and the records before it are kept
+     */
+    public static void testTornTail(Path directory) throws Exception {
+        try (DurableBTree<String> tree = new DurableBTree<>(directory, 2, Codec.STRING, 0, 0)) {
+            for (int i = 0; i < 100; ++i) tree.add("key" + i);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("wal-")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (DurableBTree<String> tree = new DurableBTree<>(directory, 2, Codec.STRING, 0, 0)) {
+            List<String> items = tree.getItems();
+            if (items.size() != 99 || tree.contains("key99")) throw new AssertionError("Torn record was not dropped: " + items.size());
+            tree.add("after");
+        }
+        try (DurableBTree<String> tree = new DurableBTree<>(directory, 2, Codec.STRING, 0, 0)) {
+            if (tree.getItems().size() != 100 || !tree.contains("after")) throw new AssertionError("Add after recovery was lost");
+        }
+    }
+
+    /**
+     * Kills a child JVM in the middle of its writes, several times over the same directory, and checks each recovery
+     */
+    public static void testCrashes(Path directory, int rounds) throws Exception {
+        HashSet<Integer> added = new HashSet<>();
+        HashSet<Integer> deleted = new HashSet<>();
+        for (int round = 0; round < rounds; ++round) {
+            Process child = new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"),
+                    DurableBTreeTester.class.getName(), "child", directory.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            int acks = 0;
+            int target = 2000 + 1500 * round;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                String line;
+                while (acks < target && (line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts.length != 2) continue;
+                    int key = Integer.parseInt(parts[1]);
+                    if (parts[0].equals("A")) added.add(key);
+                    else if (parts[0].equals("D")) deleted.add(key);
+                    acks++;
+                }
+                child.destroyForcibly();
+                child.waitFor();
+            }
+            if (acks < target) throw new AssertionError("Child exited early after " + acks + " acknowledgements");
+            // Adds and deletes that were durable but not acknowledged (or not read yet) may be present either way
+
+            try (DurableBTree<Integer> tree = new DurableBTree<>(directory, 3, Codec.INTEGER, 0, 0)) {
+                tree.validate();
+                if (tree.getCheckpointLsn() == 0) throw new AssertionError("Round " + round + ": child took no checkpoint");
+                HashSet<Integer> present = new HashSet<>(tree.getItems());
+                if (present.size() != tree.getItems().size()) throw new AssertionError("Recovered tree has duplicates");
+                for (int key : added) {
+                    // A delete that was not acknowledged may or may not have survived
+                    if (!deleted.contains(key) && !present.contains(key) && key % 3 != 0)
+                        throw new AssertionError("Round " + round + ": acknowledged add of " + key + " was lost");
+                }
+                for (int key : deleted) {
+                    if (present.contains(key)) throw new AssertionError("Round " + round + ": acknowledged delete of " + key + " was lost");
+                }
+            }
+        }
+    }
+
+    /**
+     * Child mode: recovers the tree and keeps adding new keys from several threads until killed.
+     * Writer w adds the keys with key % WRITERS == w and deletes every key divisible by 3 right after adding it.
+     */
+    private static void runChild(Path directory) throws Exception {
+        DurableBTree<Integer> tree = new DurableBTree<>(directory, 3, Codec.INTEGER, GROUP_COMMIT_NANOS, 500);
+        WriteAheadLog log = tree.getLog();
+        // Start after every key of earlier rounds, whether acknowledged or not
+        int start = (int) (log.getLastLsn() + 1) * 2 * WRITERS;
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; ++w) {
+            int writer = w;
+            writers[w] = new Thread(() -> {
+                try {
+                    for (int key = start + writer; ; key += WRITERS) {
+                        tree.add(key);
+                        System.out.println("A " + key);
+                        if (key % 3 == 0) {
+                            tree.delete(key);
+                            System.out.println("D " + key);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread writer : writers) writer.join();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : (Iterable<Path>) files::iterator) deleteRecursively(file);
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,127 @@
+package model.tests;
+
+import model.storage.Codec;
+import model.storage.LSMTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+public class LSMTreeTester {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("lsm-tree");
+        try {
+            testAgainstSortedSet(directory.resolve("small"), 50, 2);
+            testAgainstSortedSet(directory.resolve("wide"), 300, 4);
+            testLeftoverRuns(directory.resolve("leftover"));
+        } finally {
+            deleteRecursively(directory);
+        }
+        System.out.println("All LSM tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes to an LSM tree and a reference set, with a small memtable so that
+     * items end up spread over the memtable, frozen memtables and runs of several tiers. Reopens the tree on the way.
+     */
+    public static void testAgainstSortedSet(Path directory, int memtableSize, int fanout) throws IOException {
+        Random random = new Random(memtableSize);
+        TreeSet<Integer> expected = new TreeSet<>();
+        int range = 5000;
+        LSMTree<Integer> tree = new LSMTree<>(directory, 3, Codec.INTEGER, memtableSize, fanout);
+        for (int j = 0; j < 20; ++j) {
+            for (int i = 0; i < 2000; ++i) {
+                int key = random.nextInt(range);
+                if (random.nextInt(3) > 0) {
+                    tree.add(key);
+                    expected.add(key);
+                } else {
+                    tree.delete(key);
+                    expected.remove(key);
+                }
+            }
+            check(tree, expected, range);
+            if (j % 5 == 4) {
+                tree.close();
+                tree = new LSMTree<>(directory, 3, Codec.INTEGER, memtableSize, fanout);
+                check(tree, expected, range);
+            }
+        }
+        tree.flush();
+        if (tree.getRunCount() == 0 || tree.getWriteAmplification() < 1 || tree.getSpaceAmplification() < 1)
+            throw new AssertionError("Unexpected metrics: " + tree);
+        for (int key : new ArrayList<>(expected)) tree.delete(key);
+        expected.clear();
+        check(tree, expected, range);
+        tree.close();
+    }
+
+    /**
+     * A crash after a compaction wrote its run but before it deleted its inputs leaves runs whose sequence numbers
+     * the new run covers, which reopening drops
+     */
+    public static void testLeftoverRuns(Path directory) throws IOException {
+        TreeSet<Integer> expected = new TreeSet<>();
+        LSMTree<Integer> tree = new LSMTree<>(directory, 3, Codec.INTEGER, 100, 2);
+        for (int i = 0; i < 1000; ++i) {
+            tree.add(i);
+            expected.add(i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            tree.delete(i);
+            expected.remove(i);
+        }
+        tree.close();
+        Path merged;
+        try (Stream<Path> files = Files.list(directory)) {
+            merged = files.filter(file -> !file.getFileName().toString().matches("run-0*(\\d+)-0*\\1\\.sst"))
+                    .findFirst().orElseThrow(() -> new AssertionError("No merged run"));
+        }
+        // An older copy of the items, as if it were an input of the merged run, and a half written run
+        String name = merged.getFileName().toString();
+        long minSeq = Long.parseLong(name.substring(4, 24));
+        Files.copy(merged, directory.resolve(String.format("run-%020d-%020d.sst", minSeq, minSeq)));
+        Files.write(directory.resolve("run-00000000000000000999-00000000000000000999.sst.tmp"), new byte[10]);
+
+        tree = new LSMTree<>(directory, 3, Codec.INTEGER, 100, 2);
+        check(tree, expected, 1000);
+        tree.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            if (files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp") || file.getFileName().toString().equals(
+                    String.format("run-%020d-%020d.sst", minSeq, minSeq)) && !file.equals(merged)))
+                throw new AssertionError("Leftover runs were not deleted");
+        }
+    }
+
+    private static void check(LSMTree<Integer> tree, TreeSet<Integer> expected, int range) throws IOException {
+        ArrayList<Integer> items = tree.getItems();
+        if (!items.equals(new ArrayList<>(expected))) throw new AssertionError("Expected " + expected + " got " + items);
+        for (int key = -1; key <= range; ++key) {
+            Integer found = tree.search(key);
+            if (expected.contains(key) ? found == null || found != key : found != null)
+                throw new AssertionError("search(" + key + ") returned " + found);
+        }
+        // An iterator sees the tree as it was when it was created
+        Iterator<Integer> iterator = tree.iterator();
+        tree.add(range + 1);
+        tree.delete(range + 1);
+        ArrayList<Integer> iterated = new ArrayList<>();
+        iterator.forEachRemaining(iterated::add);
+        if (!iterated.equals(items)) throw new AssertionError("Iterator changed under it");
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : (Iterable<Path>) files::iterator) deleteRecursively(file);
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
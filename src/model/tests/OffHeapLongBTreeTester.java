@@ -0,0 +1,84 @@
+package model.tests;
+
+import model.LongBTree;
+import model.storage.OffHeapLongBTree;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+public class OffHeapLongBTreeTester {
+    public static void main(String[] args) {
+        for (int minChildren = 2; minChildren <= 15; ++minChildren) {
+            testAgainstLongBTree(minChildren);
+        }
+        testFreeList();
+        testPackedKeys();
+        System.out.println("All off-heap B-Tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates) to an OffHeapLongBTree and a LongBTree
+     */
+    public static void testAgainstLongBTree(int minChildren) {
+        OffHeapLongBTree tree = new OffHeapLongBTree(minChildren);
+        LongBTree reference = new LongBTree(minChildren);
+        Random random = new Random(minChildren);
+        for (int j = 0; j < 20; ++j) {
+            for (int i = 0; i < 500; ++i) {
+                long key = random.nextInt(2000) - 1000L;
+                tree.add(key);
+                reference.add(key);
+            }
+            for (int i = 0; i < 450; ++i) {
+                long key = random.nextInt(2000) - 1000L;
+                if (tree.delete(key) != reference.delete(key)) throw new AssertionError("delete(" + key + ") disagrees with LongBTree");
+            }
+            try {
+                tree.validate();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            if (!Arrays.equals(tree.getItems(), reference.getItems())) throw new AssertionError("Items differ from LongBTree");
+            if (tree.size() != reference.size()) throw new AssertionError("Size differs from LongBTree");
+            for (int i = 0; i < 100; ++i) {
+                long key = random.nextInt(2200) - 1100L;
+                if (tree.search(key) != reference.search(key)) throw new AssertionError("search(" + key + ") failed");
+            }
+        }
+    }
+
+    /**
+     * Deleting everything must hand every node but the root back to the free list, and adding again must reuse them
+     */
+    public static void testFreeList() {
+        OffHeapLongBTree tree = new OffHeapLongBTree(3);
+        for (long i = 0; i < 10000; ++i) tree.add(i);
+        int peak = tree.getArena().usedSlots();
+        for (long i = 0; i < 10000; ++i) {
+            if (!tree.delete(i)) throw new AssertionError("delete(" + i + ") missed");
+        }
+        if (tree.size() != 0 || tree.getArena().usedSlots() != 1)
+            throw new AssertionError("Expected only the root slot in use, found " + tree.getArena().usedSlots());
+        long reserved = tree.getArena().reservedBytes();
+        for (long i = 0; i < 10000; ++i) tree.add(i);
+        if (tree.getArena().usedSlots() != peak || tree.getArena().reservedBytes() != reserved)
+            throw new AssertionError("Slots were not reused");
+    }
+
+    public static void testPackedKeys() {
+        OffHeapLongBTree tree = new OffHeapLongBTree(4);
+        LocalDate date = LocalDate.of(2021, 3, 1);
+        tree.add(OffHeapLongBTree.packDateAndId(date, 7));
+        tree.add(OffHeapLongBTree.packDateAndId(date.minusDays(1), Integer.MAX_VALUE));
+        tree.add(OffHeapLongBTree.packDateAndId(date, -1));
+        tree.add(OffHeapLongBTree.packDateAndId(LocalDate.of(1969, 12, 31), 1));
+        long[] items = tree.getItems();
+        if (!OffHeapLongBTree.unpackDate(items[0]).equals(LocalDate.of(1969, 12, 31)) || OffHeapLongBTree.unpackId(items[0]) != 1)
+            throw new AssertionError("Dates before the epoch must sort first");
+        if (OffHeapLongBTree.unpackId(items[1]) != Integer.MAX_VALUE || !OffHeapLongBTree.unpackDate(items[1]).equals(date.minusDays(1)))
+            throw new AssertionError("Keys must sort by date first");
+        if (OffHeapLongBTree.unpackId(items[2]) != 7 || OffHeapLongBTree.unpackId(items[3]) != -1)
+            throw new AssertionError("IDs must sort as unsigned within a date");
+    }
+}
@@ -0,0 +1,113 @@
+package model.tests;
+
+import model.LongBTree;
+import model.storage.BufferPool;
+import model.storage.PagedBTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PagedBTreeTester {
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("paged-btree");
+        try {
+            for (int minChildren = 2; minChildren <= 5; ++minChildren) {
+                testAgainstLongBTree(directory.resolve("tree" + minChildren), minChildren);
+            }
+            testReopen(directory.resolve("reopen"));
+            testMetrics(directory.resolve("metrics"));
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.println("All paged B-Tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates) to a PagedBTree with a tiny buffer pool and a LongBTree,
+     * so that pages are evicted and read back all the time
+     */
+    public static void testAgainstLongBTree(Path file, int minChildren) throws IOException {
+        try (PagedBTree tree = new PagedBTree(file, 128, 4, minChildren)) {
+            LongBTree reference = new LongBTree(minChildren);
+            Random random = new Random(minChildren);
+            for (int j = 0; j < 10; ++j) {
+                for (int i = 0; i < 500; ++i) {
+                    long key = random.nextInt(2000);
+                    tree.add(key);
+                    reference.add(key);
+                }
+                for (int i = 0; i < 450; ++i) {
+                    long key = random.nextInt(2000);
+                    if (tree.delete(key) != reference.delete(key)) throw new AssertionError("delete(" + key + ") disagrees with LongBTree");
+                }
+                check(tree, reference);
+                for (int i = 0; i < 100; ++i) {
+                    long key = random.nextInt(2200);
+                    if (tree.search(key) != reference.search(key)) throw new AssertionError("search(" + key + ") failed");
+                }
+            }
+            if (tree.getBufferPool().getEvictions() == 0) throw new AssertionError("Expected pages to be evicted");
+        }
+    }
+
+    /**
+     * Closing and reopening must give back the same tree, and freed pages must be reused instead of growing the file
+     */
+    public static void testReopen(Path file) throws IOException {
+        LongBTree reference = new LongBTree(PagedBTree.maxMinChildren(512));
+        try (PagedBTree tree = new PagedBTree(file, 512, 16)) {
+            for (long i = 0; i < 20000; ++i) {
+                tree.add(i * 7 % 20000);
+                reference.add(i * 7 % 20000);
+            }
+        }
+        long fileSize = Files.size(file);
+        try (PagedBTree tree = new PagedBTree(file, 512, 16)) {
+            check(tree, reference);
+            for (long i = 0; i < 20000; i += 2) {
+                tree.delete(i);
+                reference.delete(i);
+            }
+        }
+        try (PagedBTree tree = new PagedBTree(file, 512, 16)) {
+            check(tree, reference);
+            for (long i = 0; i < 20000; i += 2) tree.add(i);
+        }
+        if (Files.size(file) > fileSize) throw new AssertionError("Freed pages were not reused");
+        try {
+            new PagedBTree(file, 1024, 16).close();
+            throw new AssertionError("Opening with another page size must fail");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * A working set that fits in the pool must be served without reading pages
+     */
+    public static void testMetrics(Path file) throws IOException {
+        try (PagedBTree tree = new PagedBTree(file, 4096, 64)) {
+            for (long i = 0; i < 10000; ++i) tree.add(i);
+            BufferPool pool = tree.getBufferPool();
+            pool.resetMetrics();
+            for (long i = 0; i < 10000; ++i) tree.search(i);
+            if (pool.getReads() != 0 || pool.getHitRate() != 1) throw new AssertionError("Expected only hits: " + pool);
+        }
+    }
+
+    private static void check(PagedBTree tree, LongBTree reference) {
+        try {
+            tree.validate();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        if (!Arrays.equals(tree.getItems(), reference.getItems())) throw new AssertionError("Items differ from LongBTree");
+        if (tree.size() != reference.size()) throw new AssertionError("Size differs from LongBTree");
+    }
+}
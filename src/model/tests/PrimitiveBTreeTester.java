@@ -0,0 +1,70 @@
+package model.tests;
+
+import model.IntBTree;
+import model.LongBTree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class PrimitiveBTreeTester {
+    public static void main(String[] args) {
+        for (int minChildren = 2; minChildren <= 15; ++minChildren) {
+            testAgainstSortedArray(minChildren);
+        }
+        testLongRange();
+        System.out.println("All primitive B-Tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates) to an IntBTree and a reference multiset
+     */
+    public static void testAgainstSortedArray(int minChildren) {
+        IntBTree tree = new IntBTree(minChildren);
+        int[] counts = new int[2000];
+        Random random = new Random(minChildren);
+        for (int j = 0; j < 20; ++j) {
+            for (int i = 0; i < 500; ++i) {
+                int key = random.nextInt(2000);
+                tree.add(key);
+                counts[key]++;
+            }
+            for (int i = 0; i < 450; ++i) {
+                int key = random.nextInt(2000);
+                boolean deleted = tree.delete(key);
+                if (deleted != counts[key] > 0) throw new AssertionError("delete(" + key + ") returned " + deleted);
+                if (deleted) counts[key]--;
+            }
+            check(tree, counts);
+        }
+    }
+
+    public static void testLongRange() {
+        LongBTree tree = new LongBTree(4);
+        long[] keys = {Long.MIN_VALUE, -1, 0, 1L << 40, Long.MAX_VALUE, 1L << 40};
+        for (long key : keys) tree.add(key);
+        long[] expected = keys.clone();
+        Arrays.sort(expected);
+        if (!Arrays.equals(tree.getItems(), expected))
+            throw new AssertionError("Expected " + Arrays.toString(expected) + " got " + Arrays.toString(tree.getItems()));
+        if (!tree.search(Long.MAX_VALUE) || tree.search(2)) throw new AssertionError("search failed");
+        tree.delete(1L << 40);
+        if (!tree.search(1L << 40) || tree.size() != 5) throw new AssertionError("duplicate delete failed");
+    }
+
+    private static void check(IntBTree tree, int[] counts) {
+        try {
+            tree.validate();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        int[] items = tree.getItems();
+        int index = 0;
+        for (int key = 0; key < counts.length; key++) {
+            for (int c = 0; c < counts[key]; c++) {
+                if (items[index++] != key) throw new AssertionError("Unexpected item " + items[index - 1]);
+            }
+            if (tree.search(key) != counts[key] > 0) throw new AssertionError("search(" + key + ") failed");
+        }
+        if (index != items.length || tree.size() != index) throw new AssertionError("Size mismatch");
+    }
+}
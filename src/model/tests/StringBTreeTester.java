@@ -0,0 +1,127 @@
+package model.tests;
+
+import model.StringBTree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class StringBTreeTester {
+    /**
+     * The order of the tree: UTF-8 bytes, i.e. code points
+     */
+    private static final Comparator<String> CODE_POINT_ORDER =
+            (a, b) -> Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    public static void main(String[] args) {
+        for (int minChildren = 2; minChildren <= 10; ++minChildren) {
+            testAgainstSortedMap(minChildren);
+        }
+        testPrefixes();
+        testUnpairedSurrogates();
+        System.out.println("All String B-Tree tests passed");
+    }
+
+    /**
+     * Applies the same random adds and deletes (with duplicates) to a StringBTree and a reference multiset.
+     * Keys share prefixes of all lengths, including ones longer than 127 bytes, and have multi-byte characters.
+     */
+    public static void testAgainstSortedMap(int minChildren) {
+        Random random = new Random(minChildren);
+        String[] stems = {"", "2021-01-0", "2021-01-01,A,random,", "/home/user/documents/", "Zo\u00eb ",
+                "\u4e2d\u6587", "\ud83d\ude00", "\ufffd", "x".repeat(200)};
+        List<String> vocabulary = new ArrayList<>();
+        for (String stem : stems) {
+            for (int i = 0; i < 60; ++i) vocabulary.add(stem + Integer.toString(i * 7919 % 1000, 36));
+        }
+        StringBTree tree = new StringBTree(minChildren);
+        TreeMap<String, Integer> counts = new TreeMap<>(CODE_POINT_ORDER);
+        for (int j = 0; j < 10; ++j) {
+            for (int i = 0; i < 300; ++i) {
+                String key = vocabulary.get(random.nextInt(vocabulary.size()));
+                tree.add(key);
+                counts.merge(key, 1, Integer::sum);
+            }
+            for (int i = 0; i < 270; ++i) {
+                String key = vocabulary.get(random.nextInt(vocabulary.size()));
+                boolean deleted = tree.delete(key);
+                if (deleted != counts.containsKey(key)) throw new AssertionError("delete(" + key + ") returned " + deleted);
+                if (deleted) counts.compute(key, (k, count) -> count == 1 ? null : count - 1);
+            }
+            check(tree, counts, vocabulary);
+        }
+        for (String key : vocabulary) {
+            while (tree.delete(key)) counts.compute(key, (k, count) -> count == 1 ? null : count - 1);
+        }
+        check(tree, counts, vocabulary);
+        if (tree.size() != 0 || !tree.root.isLeaf) throw new AssertionError("Tree is not empty");
+    }
+
+    /**
+     * Keys that are prefixes of each other, where the scan decides by length rather than by a differing byte
+     */
+    public static void testPrefixes() {
+        StringBTree tree = new StringBTree(3);
+        String[] keys = {"abc", "ab", "abcd", "a", "", "abd", "abc", "b", "abcde"};
+        for (String key : keys) tree.add(key);
+        String[] expected = keys.clone();
+        Arrays.sort(expected, CODE_POINT_ORDER);
+        if (!Arrays.equals(tree.getItems(), expected))
+            throw new AssertionError("Expected " + Arrays.toString(expected) + " got " + Arrays.toString(tree.getItems()));
+        for (String key : keys) {
+            if (!tree.search(key)) throw new AssertionError("search(" + key + ") failed");
+        }
+        for (String key : new String[]{"abcdef", "abb", "aa", "c", "abce"}) {
+            if (tree.search(key)) throw new AssertionError("search(" + key + ") found a missing key");
+        }
+        if (!tree.delete("abc") || !tree.search("abc") || !tree.delete("abc") || tree.search("abc"))
+            throw new AssertionError("duplicate delete failed");
+    }
+
+    /**
+     * Keys with an unpaired surrogate have no UTF-8 form and are refused, instead of being stored as "?"
+     */
+    public static void testUnpairedSurrogates() {
+        StringBTree tree = new StringBTree(3);
+        tree.add("?");
+        for (String key : new String[]{"\ud800", "a\udc00", "\ude00\ud83d", "x\ud83d"}) {
+            expectRefused(() -> tree.add(key));
+            expectRefused(() -> tree.search(key));
+            expectRefused(() -> tree.delete(key));
+        }
+        if (!Arrays.equals(tree.getItems(), new String[]{"?"})) throw new AssertionError("Refused keys changed the tree");
+        tree.add("\ud83d\ude00");
+        if (!tree.search("\ud83d\ude00")) throw new AssertionError("Surrogate pair was not stored");
+    }
+
+    private static void expectRefused(Runnable operation) {
+        try {
+            operation.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("Accepted a key with an unpaired surrogate");
+    }
+
+    private static void check(StringBTree tree, TreeMap<String, Integer> counts, List<String> vocabulary) {
+        try {
+            tree.validate();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        List<String> expected = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            for (int c = 0; c < entry.getValue(); c++) expected.add(entry.getKey());
+        }
+        if (!Arrays.asList(tree.getItems()).equals(expected)) throw new AssertionError("Items are wrong");
+        for (String key : vocabulary) {
+            if (tree.search(key) != counts.containsKey(key)) throw new AssertionError("search(" + key + ") failed");
+        }
+        if (tree.size() != expected.size()) throw new AssertionError("Size mismatch");
+    }
+}